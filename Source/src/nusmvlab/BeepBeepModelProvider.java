@@ -17,24 +17,46 @@
  */
 package nusmvlab;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintStream;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
-import ca.uqac.lif.cep.nusmv.BeepBeepModel;
 import ca.uqac.lif.cep.nusmv.QueueOutOfBoundsException;
 import ca.uqac.lif.nusmv4j.ArrayVariable;
 import ca.uqac.lif.nusmv4j.Module;
-import ca.uqac.lif.nusmv4j.ModuleDomain;
-import ca.uqac.lif.nusmv4j.PrettyPrintStream;
-import ca.uqac.lif.nusmv4j.ScalarVariable;
-import ca.uqac.lif.nusmv4j.Variable;
 
 /**
  * Provides a NuSMV model based on a chain of BeepBeep processors.
+ * <p>
+ * The text of the model is only printed when it is asked for, that is,
+ * when the experiment executes or when its model is displayed or
+ * downloaded. Texts are kept in a cache shared by all the providers, which
+ * holds at most a given number of characters and evicts the least recently
+ * used texts first; providers created for the same {@link ModelId} (for
+ * example with different properties) share the same entry, and the text of
+ * an entry is printed only once, even if several threads ask for it at the
+ * same time. The metadata of the model (number of variables, queue
+ * variables, pipe IDs, state bits) is read from a {@link ModelIndex} built
+ * once when the model is created, and does not require the text nor the
+ * modules.
+ * <p>
+ * The provider does not keep the {@link CanonicalModel} it comes from,
+ * nor its modules or its graph: it only keeps the identifier of the model
+ * and its index, and fetches the model back through the
+ * {@link NuSMVModelLibrary} when it needs to print it or to compute a
+ * variable ordering. Models evicted from the cache of the library can
+ * therefore be reclaimed even if the experiments keep their providers. The
+ * names in the text and in the metadata are canonical, so that the same
+ * chain always yields the same model, even if it is built again.
  */
 public class BeepBeepModelProvider extends ModelProvider
 {
@@ -48,20 +70,60 @@ public class BeepBeepModelProvider extends ModelProvider
 	 */
 	public static final transient String QUEUE_VARIABLES = "Queue variables";
 
+	/**
+	 * Name of parameter "State bits".
+	 */
+	public static final transient String STATE_BITS = "State bits";
+
 	/**
 	 * Name of parameter "k".
 	 */
 	public static final transient String K = "k";
 
 	/**
-	 * The contents of the SMV file to be printed.
+	 * The default maximum number of characters of model text held in the
+	 * cache.
+	 */
+	public static final transient long DEFAULT_TEXT_CACHE_SIZE = 32L * 1000 * 1000;
+
+	/**
+	 * The texts of the models printed so far, from the least to the most
+	 * recently used.
 	 */
-	protected String m_fileContents;
+	protected static final transient Map<ModelId,String> s_texts = new LinkedHashMap<ModelId,String>(16, 0.75f, true);
 
 	/**
-	 * The NuSMV file corresponding to this model.
+	 * The texts being printed, indexed by the identifier of their model, so
+	 * that a text asked for by several threads at once is printed only once.
+	 * This map is protected by the lock on {@link #s_texts}.
 	 */
-	protected BeepBeepModel m_pipeline;
+	protected static final transient Map<ModelId,FutureTask<String>> s_printing = new HashMap<ModelId,FutureTask<String>>();
+
+	/**
+	 * The total number of characters of the texts in the cache.
+	 */
+	protected static transient long s_textSize = 0;
+
+	/**
+	 * The maximum number of characters of the texts in the cache.
+	 */
+	protected static transient long s_maxTextSize = DEFAULT_TEXT_CACHE_SIZE;
+
+	/**
+	 * The library this model comes from, used to fetch its translation.
+	 */
+	protected final transient NuSMVModelLibrary m_library;
+
+	/**
+	 * The identifier of this model, in the library and in the cache of
+	 * texts.
+	 */
+	protected final transient ModelId m_id;
+
+	/**
+	 * The metadata of the model, computed once when the model is created.
+	 */
+	protected ModelIndex m_index;
 
 	/**
 	 * The value of the additional parameter that the processor chain can
@@ -86,7 +148,9 @@ public class BeepBeepModelProvider extends ModelProvider
 
 	/**
 	 * Creates a new instance of model provider.
-	 * @param start The pipeline corresponding to this model
+	 * @param library The library this model comes from
+	 * @param id The identifier of this model in the library
+	 * @param index The metadata of the model
 	 * @param name A (textual) name given to the model in question 
 	 * @param queue_size The size of the queues in the SMV model to generate
 	 * @param domain_size The size of the domains in the SMV model to generate
@@ -97,35 +161,143 @@ public class BeepBeepModelProvider extends ModelProvider
 	 * @param image_url An URL corresponding to the image for that processor
 	 * chain. Set to <tt>null</tt> if no image is available.
 	 */
-	public BeepBeepModelProvider(BeepBeepModel start, String name, int queue_size, int domain_size, int k, String image_url) throws QueueOutOfBoundsException
+	public BeepBeepModelProvider(/*@ non_null @*/ NuSMVModelLibrary library, /*@ non_null @*/ ModelId id, /*@ non_null @*/ ModelIndex index, String name, int queue_size, int domain_size, int k, String image_url) throws QueueOutOfBoundsException
 	{
 		super(name, queue_size, domain_size);
+		m_library = library;
+		m_id = id;
 		m_parameter = k;
-		m_pipeline = start;
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		PrettyPrintStream ps = new PrettyPrintStream(baos);
-		//System.out.println(name);
-		m_pipeline.print(ps);
-		m_fileContents = baos.toString();
-		m_modules = start.getModules();
+		m_index = index;
 		m_imageUrl = image_url;
 	}
 
+	/**
+	 * Sets the maximum number of characters of model text held in the
+	 * cache shared by all the providers.
+	 * @param size The number of characters
+	 */
+	public static void setTextCacheSize(long size)
+	{
+		synchronized (s_texts)
+		{
+			s_maxTextSize = size;
+			evict();
+		}
+	}
+
 	@Override
 	public void printToFile(PrintStream ps) throws IOException
 	{
-		ps.print(m_fileContents);
+		ps.print(getText());
+	}
+
+	/**
+	 * Gets the text of this model, from the cache or by printing it.
+	 * @return The text
+	 * @throws IOException Thrown if the model could not be printed
+	 */
+	/*@ non_null @*/ protected String getText() throws IOException
+	{
+		FutureTask<String> task;
+		boolean printing = false;
+		synchronized (s_texts)
+		{
+			String text = s_texts.get(m_id);
+			if (text != null)
+			{
+				return text;
+			}
+			task = s_printing.get(m_id);
+			if (task == null)
+			{
+				// This thread prints the text; others asking for it wait for the result
+				task = new FutureTask<String>(this::print);
+				s_printing.put(m_id, task);
+				printing = true;
+			}
+		}
+		String text = null;
+		try
+		{
+			if (printing)
+			{
+				task.run();
+			}
+			text = task.get();
+			return text;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable t = e.getCause();
+			throw t instanceof IOException ? (IOException) t : new IOException(t);
+		}
+		finally
+		{
+			if (printing)
+			{
+				synchronized (s_texts)
+				{
+					s_printing.remove(m_id);
+					if (text != null)
+					{
+						String old = s_texts.put(m_id, text);
+						s_textSize += text.length() - (old == null ? 0 : old.length());
+						evict();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints the text of this model, without looking in the cache.
+	 * @return The text
+	 * @throws IOException Thrown if the model could not be printed
+	 */
+	/*@ non_null @*/ protected String print() throws IOException
+	{
+		try
+		{
+			return getModel().print();
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Removes the least recently used texts from the cache until the total
+	 * size of the texts fits the limit. The most recent text is kept even if
+	 * it exceeds the limit by itself. This method must be called while
+	 * holding the lock on the cache.
+	 */
+	protected static void evict()
+	{
+		Iterator<String> it = s_texts.values().iterator();
+		while (s_textSize > s_maxTextSize && s_texts.size() > 1 && it.hasNext())
+		{
+			s_textSize -= it.next().length();
+			it.remove();
+		}
 	}
 
 	@Override
 	public void fillExperiment(NuSMVExperiment e)
 	{
 		super.fillExperiment(e);
-		e.writeOutput(NUM_MODULES, m_modules.size());
+		e.writeOutput(NUM_MODULES, m_index.getNumModules());
 		e.writeOutput(GENERATION_TIME, m_generationTime);
 		e.writeOutput(NUM_VARIABLES, countVariables());
 		e.describe(QUEUE_VARIABLES, "The number of variables in the model corresponding to queues");
-		e.writeOutput(QUEUE_VARIABLES, getQueueVariables().size());
+		e.writeOutput(QUEUE_VARIABLES, m_index.getNumQueueVariables());
+		e.describe(STATE_BITS, "The number of bits needed to encode a state of the SMV model");
+		e.writeOutput(STATE_BITS, m_index.getStateBits());
 		if (m_parameter > 0)
 		{
 			e.describe(K, "The value of parameter k in the processor chain");
@@ -139,189 +311,137 @@ public class BeepBeepModelProvider extends ModelProvider
 	 */
 	public int countVariables()
 	{
-		if (m_modules == null)
-		{
-			return 0;
-		}
-		Set<Variable> vars = new HashSet<Variable>();
-		for (Module m : m_modules)
-		{
-			if (m.getName().compareTo("main") == 0)
-			{
-				fetchAllVariables(m, "", vars);
-			}
-		}
-		return vars.size();
+		return m_index.getNumVariables();
 	}
 
 	/**
-	 * Gets the URL associated to the picture for this processor chain.
-	 * @return The URL, or <tt>null</tt> if no image exists
+	 * Gets the number of bits needed to encode a state of this model.
+	 * @return The base-2 logarithm of the size of the state space
 	 */
-	public String getImageUrl()
+	public long getStateBits()
 	{
-		return m_imageUrl;
+		return m_index.getStateBits();
 	}
 
 	/**
-	 * Recursively fetches the variables in a hierarchy of SMV modules.
-	 * @param m The current module to examine
-	 * @param prefix The prefix given to the variables (non-empty if m is a
-	 * nested module)
-	 * @param vars The set where variables are to be added 
+	 * Gets the metadata of this model.
+	 * @return The index
 	 */
-	protected static void fetchAllVariables(Module m, String prefix, Set<Variable> vars)
+	/*@ non_null @*/ public ModelIndex getIndex()
 	{
-		for (Variable v : m.getVariables())
-		{
-			String var_name = prefix + m.getName() + "." + v.getName();
-			vars.add(duplicateVariable(var_name, v));
-		}
-		for (Map.Entry<String,ModuleDomain> e : m.getSubModules().entrySet())
-		{
-			fetchAllVariables(e.getValue().getModule(), prefix + e.getKey() + ".", vars);
-		}
+		return m_index;
 	}
 
 	/**
-	 * Gets all the variables inside this model that correspond to queue
-	 * flags.
-	 * @return The set of queue variables
+	 * Gets the translation this model comes from, through the library.
+	 * @return The translation
 	 */
-	public Set<ArrayVariable> getQueueVariables()
+	/*@ non_null @*/ protected CanonicalModel getModel()
 	{
-		if (m_modules == null)
+		CanonicalModel model = m_library.getModel(m_id, m_parameter);
+		if (model == null)
 		{
-			return new HashSet<ArrayVariable>(0);
+			throw new IllegalStateException("The chain of " + m_name + " can no longer be built");
 		}
-		return getQueueVariables(m_modules);
+		return model;
 	}
-	
+
 	/**
-	 * Gets all the variables inside this model that correspond to queue
-	 * flags.
-	 * @return The set of queue variables
+	 * Gets the modules of this model. They are fetched from the library, and
+	 * are not kept by the provider.
+	 * @return The set of modules
 	 */
-	public Set<Integer> getInputPipeIds()
+	@Override
+	public Set<Module> getModules()
 	{
-		Set<Integer> vars = new HashSet<Integer>();
-		if (m_modules == null)
+		return getModel().getModules();
+	}
+
+	/**
+	 * Computes an ordering of the variables of this model.
+	 * @param ordering The name of the ordering, as defined in
+	 * {@link VariableOrdering}
+	 * @return The fully qualified names of the variables, in order, or
+	 * <tt>null</tt> if NuSMV's default ordering is to be used
+	 */
+	public List<String> getVariableOrder(String ordering)
+	{
+		CanonicalModel model = getModel();
+		if (model.getModules() == null)
 		{
-			return new HashSet<Integer>(0);
+			return null;
 		}
-		for (Module m : m_modules)
+		List<String> order = VariableOrdering.getOrder(model.getModules(), model.getGraph(), ordering);
+		if (order != null)
 		{
-			if (m.getName().compareTo("main") == 0)
+			for (int i = 0; i < order.size(); i++)
 			{
-				for (Variable v : m.getVariables())
-				{
-					String v_name = v.getName();
-					if (v_name.startsWith("inb"))
-					{
-						int id = Integer.parseInt(v_name.substring(4));
-						vars.add(id);
-					}
-				}
-				break;
+				// The modules have the original names of the chain
+				order.set(i, model.rename(order.get(i)));
 			}
 		}
-		return vars;
+		return order;
+	}
+
+	/**
+	 * Gets the URL associated to the picture for this processor chain.
+	 * @return The URL, or <tt>null</tt> if no image exists
+	 */
+	public String getImageUrl()
+	{
+		return m_imageUrl;
 	}
 
 	/**
 	 * Gets all the variables inside this model that correspond to queue
-	 * flags.
-	 * @return The set of queue variables
+	 * flags. They are created once and shared by all the providers of the
+	 * same model.
+	 * @return The unmodifiable set of queue variables
 	 */
-	public Set<Integer> getOutputPipeIds()
+	public Set<ArrayVariable> getQueueVariables()
 	{
-		Set<Integer> vars = new HashSet<Integer>();
-		if (m_modules == null)
-		{
-			return new HashSet<Integer>(0);
-		}
-		for (Module m : m_modules)
-		{
-			if (m.getName().compareTo("main") == 0)
-			{
-				for (Variable v : m.getVariables())
-				{
-					String v_name = v.getName();
-					if (v_name.startsWith("oc"))
-					{
-						int id = Integer.parseInt(v_name.substring(3));
-						vars.add(id);
-					}
-				}
-				break;
-			}
-		}
-		return vars;
+		return m_index.getQueueVariables();
 	}
 	
 	/**
-	 * Gets the number of processors in the pipeline modeled in this file.
-	 * @return The number of processors
+	 * Gets the IDs of the pipes at the inputs of this processor chain.
+	 * @return The set of IDs
 	 */
-	public int getNumProcessors()
+	public Set<Integer> getInputPipeIds()
 	{
-		return m_numProcessors;
+		return toSet(m_index.getInputPipeIds());
 	}
 
 	/**
-	 * Gets all the variables inside a set of modules that correspond to queue
-	 * flags.
-	 * @param modules The set of modules
-	 * @return The set of queue variables
+	 * Gets the IDs of the pipes at the outputs of this processor chain.
+	 * @return The set of IDs
 	 */
-	public static Set<ArrayVariable> getQueueVariables(Set<Module> modules)
+	public Set<Integer> getOutputPipeIds()
 	{
-		Set<ArrayVariable> queue_variables = new HashSet<ArrayVariable>();
-		for (Module m : modules)
-		{
-			if (m.getName().compareTo("main") == 0)
-			{
-				fetchQueueVariables(m, "", queue_variables);
-			}
-		}
-		return queue_variables;
+		return toSet(m_index.getOutputPipeIds());
 	}
 
 	/**
-	 * Recursively fetches the queue variables in a hierarchy of SMV modules.
-	 * @param m The current module to examine
-	 * @param prefix The prefix given to the variables (non-empty if m is a
-	 * nested module)
-	 * @param queue_variables The set where variables are to be added 
+	 * Copies an array of IDs into a set.
+	 * @param ids The IDs
+	 * @return The set, which iterates over the IDs in the order of the array
 	 */
-	protected static void fetchQueueVariables(Module m, String prefix, Set<ArrayVariable> queue_variables)
+	/*@ non_null @*/ protected static Set<Integer> toSet(/*@ non_null @*/ int[] ids)
 	{
-		for (Variable v : m.getVariables())
+		Set<Integer> set = new LinkedHashSet<Integer>(ids.length);
+		for (int id : ids)
 		{
-			if (v instanceof ArrayVariable && v.getName().startsWith("bfb_"))
-			{
-				ArrayVariable av = (ArrayVariable) v;
-				queue_variables.add(new ArrayVariable(prefix + av.getName(), av.getDomain(), av.getDimension()));
-			}
-		}
-		for (Map.Entry<String,ModuleDomain> e : m.getSubModules().entrySet())
-		{
-			ModuleDomain md = e.getValue();
-			fetchQueueVariables((Module) md.getModule(), prefix + e.getKey() + ".", queue_variables);
+			set.add(id);
 		}
+		return set;
 	}
 	
-	
-	/*@ non_null @*/ protected static Variable duplicateVariable(String new_name, Variable v)
+	/**
+	 * Gets the number of processors in the pipeline modeled in this file.
+	 * @return The number of processors
+	 */
+	public int getNumProcessors()
 	{
-		if (v instanceof ScalarVariable)
-		{
-			return new ScalarVariable(new_name, v.getDomain());
-		}
-		if (v instanceof ArrayVariable)
-		{
-			return new ArrayVariable(new_name, v.getDomain(), ((ArrayVariable) v).getDimension());
-		}
-		throw new RuntimeException("Unknown variable type");
+		return m_numProcessors;
 	}
 }
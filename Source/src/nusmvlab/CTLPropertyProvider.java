@@ -17,6 +17,8 @@
  */
 package nusmvlab;
 
+import java.io.PrintStream;
+
 /**
  * Provider that returns a CTL formula or a list of CTL formulas.
  */
@@ -27,6 +29,11 @@ public abstract class CTLPropertyProvider implements PropertyProvider
 	 */
 	protected transient String m_name;
 	
+	/**
+	 * The formula of the property, built the first time it is asked for
+	 */
+	protected transient Formula m_formula = null;
+	
 	/**
 	 * Creates a new LTL property provider.
 	 * @param name The name given to the property
@@ -49,4 +56,26 @@ public abstract class CTLPropertyProvider implements PropertyProvider
 	{
 		return Logic.CTL;
 	}
+	
+	@Override
+	public final synchronized Formula getFormula()
+	{
+		if (m_formula == null)
+		{
+			m_formula = createFormula();
+		}
+		return m_formula;
+	}
+	
+	@Override
+	public void printToFile(PrintStream ps)
+	{
+		ps.println(getFormula() + ";");
+	}
+	
+	/**
+	 * Builds the formula of the property.
+	 * @return The formula
+	 */
+	/*@ non_null @*/ protected abstract Formula createFormula();
 }
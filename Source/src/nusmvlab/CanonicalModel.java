@@ -0,0 +1,340 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.cep.nusmv.BeepBeepModel;
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+import ca.uqac.lif.nusmv4j.Module;
+import ca.uqac.lif.nusmv4j.PrettyPrintStream;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * A NuSMV translation of a processor chain whose names do not depend on
+ * the order in which chains were created. The processors of a chain are
+ * numbered from a counter shared by the whole program, and these numbers
+ * end up in the names of the modules and variables of the model. Building
+ * the same chain twice therefore produces two different texts.
+ * <p>
+ * The canonical number of each such number is derived from the structure
+ * of the chain when the model is created: the processors are visited in
+ * the topological order of the {@link PipelineGraph}, which only depends
+ * on the order in which the chain is built, and the numbers found in the
+ * name of each processor and of its instance in the main module are
+ * numbered in the order they are met; the numbers found in the other
+ * variables of the main module come next, in the order of their
+ * declaration. The queues at the inputs and outputs of the chain are given
+ * fixed names by the lab (such as <tt>inb_0</tt> or <tt>oc_1</tt>); these
+ * names are left untouched, so that the pipe IDs used by the properties are
+ * the same in every model. Numbers that are not met in this traversal are
+ * left untouched.
+ * <p>
+ * The same renaming is applied to the names read from the modules of the
+ * model, so that properties and variable orderings refer to the names found
+ * in the text.
+ */
+public class CanonicalModel
+{
+	/**
+	 * The regex pattern that finds a NuSMV identifier.
+	 */
+	protected static final transient Pattern s_namePattern = Pattern.compile("[A-Za-z_][A-Za-z0-9_$#]*");
+
+	/**
+	 * The regex pattern that finds a number at the end of a name, or
+	 * before another such number.
+	 */
+	protected static final transient Pattern s_suffixPattern = Pattern.compile("(?<=[A-Za-z0-9_])_(\\d+)(?![A-Za-z0-9])");
+
+	/**
+	 * The prefixes of the variables of the main module that hold the queues
+	 * at the inputs and outputs of the chain.
+	 */
+	protected static final transient String[] s_pipelineQueuePrefixes = {"inb_", "inc_", "ob_", "oc_"};
+
+	/**
+	 * The graph of the chain.
+	 */
+	protected final PipelineGraph m_graph;
+
+	/**
+	 * The translation of the chain, with its original names.
+	 */
+	protected final BeepBeepModel m_model;
+
+	/**
+	 * The modules of the translation.
+	 */
+	protected final Set<Module> m_modules;
+
+	/**
+	 * The canonical number of each number that comes from a processor of the
+	 * chain.
+	 */
+	protected final Map<Integer,Integer> m_numbers;
+
+	/**
+	 * The names that are never renamed, namely those of the queues at the
+	 * inputs and outputs of the chain.
+	 */
+	protected final Set<String> m_fixedNames;
+
+	/**
+	 * The metadata of the model.
+	 */
+	protected final ModelIndex m_index;
+
+	/**
+	 * Translates a processor chain and computes the canonical numbers of its
+	 * names. The model is not printed.
+	 * @param graph The graph of the chain
+	 * @param domain_size The size of the domains in the chain
+	 */
+	public CanonicalModel(/*@ non_null @*/ PipelineGraph graph, int domain_size)
+	{
+		super();
+		m_graph = graph;
+		m_model = new BeepBeepModel(graph.getPipeline());
+		m_modules = m_model.getModules();
+		m_numbers = new HashMap<Integer,Integer>();
+		m_fixedNames = new HashSet<String>();
+		if (m_modules != null)
+		{
+			for (Module m : m_modules)
+			{
+				if (m.getName().compareTo("main") == 0)
+				{
+					number(m);
+					break;
+				}
+			}
+		}
+		m_index = new ModelIndex(this, domain_size);
+	}
+
+	/**
+	 * Gives a canonical number to the numbers found in the names of the
+	 * processors and of the variables of the main module.
+	 * @param main The main module
+	 */
+	protected void number(/*@ non_null @*/ Module main)
+	{
+		for (Variable v : main.getVariables())
+		{
+			if (isPipelineQueue(v.getName()))
+			{
+				m_fixedNames.add(v.getName());
+			}
+		}
+		List<ProcessorModule> processors = m_graph.getTopologicalOrder();
+		Map<Module,String> paths = new IdentityHashMap<Module,String>();
+		for (ProcessorModule p : processors)
+		{
+			paths.put(p, null);
+		}
+		VariableOrdering.findInstances(main, "", paths);
+		for (ProcessorModule p : processors)
+		{
+			number(p.getName());
+			String path = paths.get(p);
+			if (path != null)
+			{
+				number(path);
+			}
+		}
+		for (Variable v : main.getVariables())
+		{
+			if (!m_fixedNames.contains(v.getName()))
+			{
+				number(v.getName());
+			}
+		}
+	}
+
+	/**
+	 * Gives a canonical number to the numbers found at the end of the parts
+	 * of a name that do not have one yet.
+	 * @param name The name
+	 */
+	protected void number(/*@ non_null @*/ String name)
+	{
+		Matcher mat = s_suffixPattern.matcher(name);
+		while (mat.find())
+		{
+			m_numbers.putIfAbsent(Integer.parseInt(mat.group(1)), m_numbers.size());
+		}
+	}
+
+	/**
+	 * Determines if a variable of the main module holds a queue at the input
+	 * or the output of the chain.
+	 * @param name The name of the variable
+	 * @return <tt>true</tt> if the variable is such a queue, <tt>false</tt>
+	 * otherwise
+	 */
+	public static boolean isPipelineQueue(/*@ non_null @*/ String name)
+	{
+		for (String prefix : s_pipelineQueuePrefixes)
+		{
+			if (name.startsWith(prefix))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the graph of the chain this model is the translation of. The
+	 * modules of the model are the processors of this graph.
+	 * @return The graph
+	 */
+	/*@ non_null @*/ public PipelineGraph getGraph()
+	{
+		return m_graph;
+	}
+
+	/**
+	 * Gets the metadata of the model.
+	 * @return The index
+	 */
+	/*@ non_null @*/ public ModelIndex getIndex()
+	{
+		return m_index;
+	}
+
+	/**
+	 * Gets the modules of the translation. Their names are the original ones,
+	 * and must be passed through {@link #rename(String)} before they are
+	 * compared to the text of the model.
+	 * @return The modules
+	 */
+	public Set<Module> getModules()
+	{
+		return m_modules;
+	}
+
+	/**
+	 * Prints the canonical text of the model. The names are renamed one line
+	 * at a time as the model is printed, so that the text is only held once
+	 * before it is returned.
+	 * @return The text
+	 */
+	/*@ non_null @*/ public String print()
+	{
+		LineRenamer out = new LineRenamer();
+		PrettyPrintStream ps = new PrettyPrintStream(out);
+		m_model.print(ps);
+		ps.flush();
+		out.endLine();
+		return out.m_text.toString();
+	}
+
+	/**
+	 * Replaces the numbers that come from the processors of the chain by
+	 * their canonical value.
+	 * @param s The string, which can be a single name or a whole model
+	 * @return The renamed string
+	 */
+	/*@ non_null @*/ public String rename(/*@ non_null @*/ String s)
+	{
+		StringBuilder out = new StringBuilder(s.length());
+		rename(s, out);
+		return out.toString();
+	}
+
+	/**
+	 * Appends a string to a builder, replacing the numbers that come from
+	 * the processors of the chain by their canonical value.
+	 * @param s The string
+	 * @param out The builder
+	 */
+	protected void rename(/*@ non_null @*/ CharSequence s, /*@ non_null @*/ StringBuilder out)
+	{
+		Matcher names = s_namePattern.matcher(s);
+		int last = 0;
+		while (names.find())
+		{
+			String name = names.group();
+			if (m_fixedNames.contains(name))
+			{
+				continue;
+			}
+			Matcher mat = s_suffixPattern.matcher(name);
+			while (mat.find())
+			{
+				Integer n = m_numbers.get(Integer.parseInt(mat.group(1)));
+				if (n != null)
+				{
+					out.append(s, last, names.start() + mat.start(1)).append(n.intValue());
+					last = names.start() + mat.end(1);
+				}
+			}
+		}
+		out.append(s, last, s.length());
+	}
+
+	/**
+	 * An output stream that renames the text written to it one line at a
+	 * time, and accumulates the result.
+	 */
+	protected class LineRenamer extends OutputStream
+	{
+		/**
+		 * The bytes of the current line.
+		 */
+		protected final ByteArrayOutputStream m_line = new ByteArrayOutputStream();
+
+		/**
+		 * The renamed text of the lines written so far.
+		 */
+		protected final StringBuilder m_text = new StringBuilder();
+
+		@Override
+		public void write(int b)
+		{
+			m_line.write(b);
+			if (b == '\n')
+			{
+				endLine();
+			}
+		}
+
+		/**
+		 * Renames the current line and appends it to the text.
+		 */
+		protected void endLine()
+		{
+			if (m_line.size() > 0)
+			{
+				rename(m_line.toString(), m_text);
+				m_line.reset();
+			}
+		}
+	}
+}
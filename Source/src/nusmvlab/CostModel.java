@@ -0,0 +1,639 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import static nusmvlab.BeepBeepModelProvider.K;
+import static nusmvlab.Engine.ENGINE;
+import static nusmvlab.ModelProvider.DOMAIN_SIZE;
+import static nusmvlab.ModelProvider.QUERY;
+import static nusmvlab.ModelProvider.QUEUE_SIZE;
+import static nusmvlab.PropertyProvider.PROPERTY;
+import static nusmvlab.PropertyProvider.SPEC_FORM;
+import static nusmvlab.VariableOrdering.ORDERING;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nusmvlab.PropertyProvider.Logic;
+import nusmvlab.StreamPropertyLibrary.BoundedLiveness;
+
+/**
+ * Predicts the running time and the peak memory of the NuSMV run of an
+ * experiment before it is executed. As in the "Peak memory" of an
+ * experiment, the memory is that of a single NuSMV process, even for
+ * experiments that run several processes at the same time. The prediction is a linear regression
+ * of the logarithm of each quantity over features of the experiment that
+ * are known when it is created: the number of variables, queue variables
+ * and modules of the model (on a logarithmic scale), the queue size, the
+ * domain size, the parameter k, and the kind of property (CTL, LTL or
+ * invariant).
+ * <p>
+ * The regression is fitted on the experiments that completed with a
+ * verdict, and on those that were killed for exceeding the time or memory
+ * limit. The time (or memory) of the latter is censored: what was measured
+ * when the process was killed is only a lower bound. When fitting, the
+ * value of a censored sample is taken as the largest of this bound and of
+ * the prediction of the previous fit, for a few rounds; in addition, an
+ * experiment whose own sample is censored is never predicted to take less
+ * than its bound, so that it is started last when the lab runs again.
+ * <p>
+ * Each sample is appended to a file as soon as it is recorded, so that the
+ * samples accumulated in previous runs of the lab are reloaded when it
+ * starts again. Samples are indexed by the parameters of their experiment;
+ * measuring the same experiment again replaces its sample, and the file is
+ * rewritten with one line per sample when it is loaded.
+ * <p>
+ * Predictions only change when {@link #fit()} is called, so that they can
+ * safely be used to sort experiments while other experiments are still
+ * recording samples.
+ */
+public class CostModel
+{
+	/**
+	 * The name of the file where samples are stored.
+	 */
+	public static final transient String FILENAME = "cost-samples.txt";
+
+	/**
+	 * The number of features of a sample, including the constant term.
+	 */
+	protected static final transient int NUM_FEATURES = 9;
+
+	/**
+	 * The number of values of a sample: the features, the logarithm of the
+	 * time, the logarithm of the memory, and whether each of these two
+	 * values is censored (1) or not (0).
+	 */
+	protected static final transient int SAMPLE_SIZE = NUM_FEATURES + 4;
+
+	/**
+	 * The index of the logarithm of the time in a sample.
+	 */
+	protected static final transient int TIME = NUM_FEATURES;
+
+	/**
+	 * The index of the logarithm of the memory in a sample.
+	 */
+	protected static final transient int MEMORY = NUM_FEATURES + 1;
+
+	/**
+	 * The offset between the index of a value in a sample and the index of
+	 * the flag telling whether it is censored.
+	 */
+	protected static final transient int CENSORED = 2;
+
+	/**
+	 * The number of times the regressions are fitted again after replacing
+	 * the values of censored samples by the previous predictions.
+	 */
+	protected static final transient int CENSORED_ROUNDS = 3;
+
+	/**
+	 * The largest time (in ms) or memory (in kB) ever predicted. Larger
+	 * predictions are brought back to this value, so that they can be added
+	 * without overflowing.
+	 */
+	public static final transient long MAX_PREDICTION = 1000L * 1000 * 1000 * 1000;
+
+	/**
+	 * The minimum number of samples needed to fit a regression.
+	 */
+	protected static final transient int MIN_SAMPLES = 2 * NUM_FEATURES;
+
+	/**
+	 * The weight of the penalty on the coefficients (other than the constant
+	 * term), which keeps the regression stable when some features do not
+	 * vary among the samples.
+	 */
+	protected static final transient double RIDGE = 1e-3;
+
+	/**
+	 * The parameters that identify the experiment a sample comes from.
+	 */
+	protected static final transient String[] s_keyParameters = {QUERY, PROPERTY, QUEUE_SIZE, DOMAIN_SIZE, K, BoundedLiveness.BOUND, SPEC_FORM, ENGINE, ORDERING};
+
+	/**
+	 * The file where samples are stored, or <tt>null</tt> if samples are
+	 * only kept in memory.
+	 */
+	protected final File m_file;
+
+	/**
+	 * The samples, indexed by the parameters of their experiment. Each
+	 * sample contains the features, followed by the logarithm of the time
+	 * and the logarithm of the memory (or NaN if the memory is unknown), and
+	 * then by the censored flag of each of these two values.
+	 */
+	protected final Map<String,double[]> m_samples;
+
+	/**
+	 * The regression fitted by the last call to {@link #fit()}.
+	 */
+	protected volatile Fit m_fit;
+
+	/**
+	 * Creates a new cost model, and fits it on the samples already stored.
+	 * @param file The file where samples are stored, or <tt>null</tt> to
+	 * keep samples only in memory
+	 */
+	public CostModel(File file)
+	{
+		super();
+		m_file = file;
+		m_samples = new LinkedHashMap<String,double[]>();
+		m_fit = new Fit(null, null, 0, new LinkedHashMap<String,double[]>());
+		load();
+		fit();
+	}
+
+	/**
+	 * Records the cost of an experiment that has completed. An experiment
+	 * killed for exceeding the time or memory limit is recorded as a censored
+	 * sample. Experiments without a verdict for other reasons, or whose
+	 * verdict was not obtained from NuSMV, are ignored.
+	 * @param e The experiment
+	 */
+	public void record(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		double[] x = getFeatures(e);
+		Object verdict = e.read(NuSMVExperiment.VERDICT);
+		Object time = e.read(NuSMVExperiment.TIME);
+		boolean timeout = ProcessWatchdog.TIMEOUT.equals(verdict);
+		boolean memout = ProcessWatchdog.MEMOUT.equals(verdict);
+		if (x == null || !("True".equals(verdict) || "False".equals(verdict) || timeout || memout) || !(time instanceof Number)
+				|| Boolean.TRUE.equals(e.read(StaticCheck.STATICALLY_DECIDED)))
+		{
+			return;
+		}
+		Object memory = e.read(NuSMVExperiment.PEAK_MEMORY);
+		double[] sample = new double[SAMPLE_SIZE];
+		System.arraycopy(x, 0, sample, 0, NUM_FEATURES);
+		// A run killed for either limit was cut short: both values are lower bounds
+		sample[TIME] = Math.log1p(Math.max(0, ((Number) time).doubleValue()));
+		sample[TIME + CENSORED] = timeout || memout ? 1 : 0;
+		sample[MEMORY] = memory instanceof Number && ((Number) memory).doubleValue() > 0 ? Math.log(((Number) memory).doubleValue()) : Double.NaN;
+		sample[MEMORY + CENSORED] = timeout || memout ? 1 : 0;
+		String key = getKey(e);
+		synchronized (m_samples)
+		{
+			m_samples.put(key, sample);
+			append(key, sample);
+		}
+	}
+
+	/**
+	 * Fits the regressions on all the samples recorded so far. The
+	 * predictions made afterwards use the new regressions.
+	 */
+	public void fit()
+	{
+		Map<String,double[]> samples;
+		synchronized (m_samples)
+		{
+			samples = new LinkedHashMap<String,double[]>(m_samples);
+		}
+		Map<String,double[]> censored = new LinkedHashMap<String,double[]>();
+		for (Map.Entry<String,double[]> entry : samples.entrySet())
+		{
+			double[] s = entry.getValue();
+			if (s[TIME + CENSORED] != 0 || s[MEMORY + CENSORED] != 0)
+			{
+				censored.put(entry.getKey(), s);
+			}
+		}
+		m_fit = new Fit(regress(samples.values(), TIME), regress(samples.values(), MEMORY), samples.size(), censored);
+	}
+
+	/**
+	 * Fits the regression of one of the values of the samples.
+	 * @param samples The samples
+	 * @param column The index of the value in the samples
+	 * @return The coefficients, or <tt>null</tt> if there are not enough
+	 * samples with this value
+	 */
+	protected static double[] regress(/*@ non_null @*/ Collection<double[]> samples, int column)
+	{
+		double[] beta = null;
+		for (int round = 0; round <= CENSORED_ROUNDS; round++)
+		{
+			double[][] xtx = new double[NUM_FEATURES][NUM_FEATURES];
+			double[] xty = new double[NUM_FEATURES];
+			int n = 0;
+			boolean has_censored = false;
+			for (double[] s : samples)
+			{
+				double y = s[column];
+				if (Double.isNaN(y))
+				{
+					continue;
+				}
+				if (s[column + CENSORED] != 0)
+				{
+					has_censored = true;
+					if (beta != null)
+					{
+						y = Math.max(y, dot(beta, s));
+					}
+				}
+				accumulate(s, y, xtx, xty);
+				n++;
+			}
+			if (n < MIN_SAMPLES)
+			{
+				return null;
+			}
+			double[] new_beta = solve(xtx, xty);
+			if (new_beta == null)
+			{
+				return beta;
+			}
+			beta = new_beta;
+			if (!has_censored)
+			{
+				break;
+			}
+		}
+		return beta;
+	}
+
+	/**
+	 * Predicts the running time of an experiment.
+	 * @param e The experiment
+	 * @return The time in ms, or -1 if no prediction can be made
+	 */
+	public long predictTime(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		return predict(e, TIME);
+	}
+
+	/**
+	 * Predicts the peak memory of an experiment.
+	 * @param e The experiment
+	 * @return The memory in kB, or -1 if no prediction can be made
+	 */
+	public long predictMemory(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		return predict(e, MEMORY);
+	}
+
+	/**
+	 * Predicts the time or the memory of an experiment. The prediction is
+	 * no smaller than the lower bound recorded for the experiment itself, if
+	 * its last run was killed, and no larger than {@link #MAX_PREDICTION}.
+	 * @param e The experiment
+	 * @param column The index of the value to predict in the samples
+	 * @return The prediction, or -1 if no prediction can be made
+	 */
+	protected long predict(/*@ non_null @*/ NuSMVExperiment e, int column)
+	{
+		Fit fit = m_fit;
+		double[] beta = column == TIME ? fit.m_time : fit.m_memory;
+		double[] x = getFeatures(e);
+		if (beta == null || x == null)
+		{
+			return -1;
+		}
+		double y = dot(beta, x);
+		double[] own = fit.m_censored.isEmpty() ? null : fit.m_censored.get(getKey(e));
+		if (own != null && own[column + CENSORED] != 0 && !Double.isNaN(own[column]))
+		{
+			y = Math.max(y, own[column]);
+		}
+		y = Math.min(y, Math.log(MAX_PREDICTION));
+		// The time is the logarithm of one more than its value
+		return Math.max(0, Math.round(column == TIME ? Math.expm1(y) : Math.exp(y)));
+	}
+
+	/**
+	 * Gets the number of samples the current regressions were fitted on.
+	 * @return The number of samples
+	 */
+	public int getNumSamples()
+	{
+		return m_fit.m_samples;
+	}
+
+	/**
+	 * Gets the features of an experiment.
+	 * @param e The experiment
+	 * @return The features, or <tt>null</tt> if the model of the experiment
+	 * is not built from a processor chain
+	 */
+	protected static double[] getFeatures(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		ModelProvider mp = e.getModelProvider();
+		if (!(mp instanceof BeepBeepModelProvider))
+		{
+			return null;
+		}
+		BeepBeepModelProvider bmp = (BeepBeepModelProvider) mp;
+		ModelIndex index = bmp.getIndex();
+		Logic logic = e.getPropertyProvider().getLogic();
+		return new double[] {1, Math.log1p(index.getNumVariables()), Math.log1p(index.getNumQueueVariables()),
+				Math.log1p(index.getNumModules()), bmp.m_queueSize, bmp.m_domainSize, Math.max(0, bmp.m_parameter),
+				logic == Logic.LTL ? 1 : 0, logic == Logic.INVAR ? 1 : 0};
+	}
+
+	/**
+	 * Gets the string identifying the experiment a sample comes from.
+	 * @param e The experiment
+	 * @return The key
+	 */
+	/*@ non_null @*/ protected static String getKey(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		StringBuilder key = new StringBuilder();
+		for (String p : s_keyParameters)
+		{
+			key.append(e.read(p)).append("/");
+		}
+		// The key is written on a single line of the file
+		return key.toString().replace('\t', ' ').replace('\n', ' ');
+	}
+
+	/**
+	 * Adds a sample to the sums of the normal equations of a regression.
+	 * @param s The sample
+	 * @param y The value to predict
+	 * @param xtx The sum of the outer products of the features
+	 * @param xty The sum of the features weighted by the value
+	 */
+	protected static void accumulate(double[] s, double y, double[][] xtx, double[] xty)
+	{
+		for (int i = 0; i < NUM_FEATURES; i++)
+		{
+			for (int j = 0; j < NUM_FEATURES; j++)
+			{
+				xtx[i][j] += s[i] * s[j];
+			}
+			xty[i] += s[i] * y;
+		}
+	}
+
+	/**
+	 * Solves the normal equations of a regression by Gaussian elimination.
+	 * @param xtx The sum of the outer products of the features; this array
+	 * is modified
+	 * @param xty The sum of the features weighted by the value; this array
+	 * is modified
+	 * @return The coefficients, or <tt>null</tt> if the system has no unique
+	 * solution
+	 */
+	protected static double[] solve(double[][] xtx, double[] xty)
+	{
+		int n = xty.length;
+		for (int i = 1; i < n; i++)
+		{
+			xtx[i][i] += RIDGE;
+		}
+		for (int col = 0; col < n; col++)
+		{
+			int pivot = col;
+			for (int row = col + 1; row < n; row++)
+			{
+				if (Math.abs(xtx[row][col]) > Math.abs(xtx[pivot][col]))
+				{
+					pivot = row;
+				}
+			}
+			if (Math.abs(xtx[pivot][col]) < 1e-12)
+			{
+				return null;
+			}
+			double[] r = xtx[col];
+			xtx[col] = xtx[pivot];
+			xtx[pivot] = r;
+			double t = xty[col];
+			xty[col] = xty[pivot];
+			xty[pivot] = t;
+			for (int row = col + 1; row < n; row++)
+			{
+				double f = xtx[row][col] / xtx[col][col];
+				for (int k = col; k < n; k++)
+				{
+					xtx[row][k] -= f * xtx[col][k];
+				}
+				xty[row] -= f * xty[col];
+			}
+		}
+		double[] beta = new double[n];
+		for (int row = n - 1; row >= 0; row--)
+		{
+			double sum = xty[row];
+			for (int k = row + 1; k < n; k++)
+			{
+				sum -= xtx[row][k] * beta[k];
+			}
+			beta[row] = sum / xtx[row][row];
+		}
+		return beta;
+	}
+
+	/**
+	 * Computes the dot product of two vectors of the same length.
+	 * @param a The first vector
+	 * @param b The second vector
+	 * @return The product
+	 */
+	protected static double dot(double[] a, double[] b)
+	{
+		double sum = 0;
+		for (int i = 0; i < a.length; i++)
+		{
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Reads the samples stored in the file. Lines that cannot be read are
+	 * ignored; when the same key occurs more than once, the last line wins.
+	 * Lines written before samples could be censored are read as uncensored
+	 * samples. If the file contains more lines than samples, it is rewritten
+	 * with one line per sample, so that it does not grow each time the same
+	 * experiments are run again.
+	 */
+	protected void load()
+	{
+		if (m_file == null || !m_file.exists())
+		{
+			return;
+		}
+		int lines = 0;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(m_file), StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				lines++;
+				String[] parts = line.split("\t");
+				if (parts.length != SAMPLE_SIZE + 1 && parts.length != NUM_FEATURES + 3)
+				{
+					continue;
+				}
+				try
+				{
+					double[] sample = new double[SAMPLE_SIZE];
+					for (int i = 0; i < parts.length - 1; i++)
+					{
+						sample[i] = Double.parseDouble(parts[i + 1]);
+					}
+					m_samples.put(parts[0], sample);
+				}
+				catch (NumberFormatException e)
+				{
+					// Ignore this line
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			// Start from the samples read so far
+			return;
+		}
+		if (lines > m_samples.size())
+		{
+			compact();
+		}
+	}
+
+	/**
+	 * Rewrites the file with one line per sample. The new contents are
+	 * written to a temporary file, which then replaces the file. Failing to
+	 * do so is not an error; the file is simply left as it is.
+	 */
+	protected void compact()
+	{
+		File tmp = new File(m_file.getPath() + ".tmp");
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))
+		{
+			for (Map.Entry<String,double[]> entry : m_samples.entrySet())
+			{
+				w.write(toLine(entry.getKey(), entry.getValue()));
+			}
+		}
+		catch (IOException e)
+		{
+			tmp.delete();
+			return;
+		}
+		try
+		{
+			Files.move(tmp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Appends a sample to the file. Failing to write the sample is not an
+	 * error; it is simply lost when the lab stops.
+	 * @param key The key of the sample
+	 * @param sample The sample
+	 */
+	protected void append(String key, double[] sample)
+	{
+		if (m_file == null)
+		{
+			return;
+		}
+		try (Writer w = new OutputStreamWriter(new FileOutputStream(m_file, true), StandardCharsets.UTF_8))
+		{
+			w.write(toLine(key, sample));
+		}
+		catch (IOException e)
+		{
+			// Not an error; see above
+		}
+	}
+
+	/**
+	 * Formats a sample as a line of the file.
+	 * @param key The key of the sample
+	 * @param sample The sample
+	 * @return The line, including its line break
+	 */
+	/*@ non_null @*/ protected static String toLine(/*@ non_null @*/ String key, /*@ non_null @*/ double[] sample)
+	{
+		StringBuilder line = new StringBuilder(key);
+		for (double v : sample)
+		{
+			line.append("\t").append(v);
+		}
+		line.append("\n");
+		return line.toString();
+	}
+
+	/**
+	 * The coefficients of the regressions fitted at some point.
+	 */
+	protected static class Fit
+	{
+		/**
+		 * The coefficients for the logarithm of the time, or <tt>null</tt> if
+		 * there were not enough samples.
+		 */
+		protected final double[] m_time;
+
+		/**
+		 * The coefficients for the logarithm of the memory, or <tt>null</tt>
+		 * if there were not enough samples.
+		 */
+		protected final double[] m_memory;
+
+		/**
+		 * The number of samples the regressions were fitted on.
+		 */
+		protected final int m_samples;
+
+		/**
+		 * The censored samples the regressions were fitted on, indexed by the
+		 * parameters of their experiment.
+		 */
+		protected final Map<String,double[]> m_censored;
+
+		/**
+		 * Creates a new set of coefficients.
+		 * @param time The coefficients for the time
+		 * @param memory The coefficients for the memory
+		 * @param samples The number of samples
+		 * @param censored The censored samples
+		 */
+		public Fit(double[] time, double[] memory, int samples, Map<String,double[]> censored)
+		{
+			super();
+			m_time = time;
+			m_memory = memory;
+			m_samples = samples;
+			m_censored = censored;
+		}
+	}
+}
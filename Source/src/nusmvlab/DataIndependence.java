@@ -0,0 +1,142 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import ca.uqac.lif.cep.nusmv.BinaryApplyFunctionModule;
+import ca.uqac.lif.cep.nusmv.CountDecimateModule;
+import ca.uqac.lif.cep.nusmv.CumulateModule;
+import ca.uqac.lif.cep.nusmv.ForkModule;
+import ca.uqac.lif.cep.nusmv.PassthroughModule;
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+import ca.uqac.lif.cep.nusmv.TrimModule;
+import ca.uqac.lif.cep.nusmv.TurnIntoModule;
+import ca.uqac.lif.cep.nusmv.UnaryApplyFunctionModule;
+import ca.uqac.lif.cep.nusmv.WindowModule;
+import nusmvlab.StreamPropertyLibrary.BoundedLiveness;
+import nusmvlab.StreamPropertyLibrary.Liveness;
+import nusmvlab.StreamPropertyLibrary.NoFullQueues;
+
+/**
+ * Determines whether the verdict of a property on a processor chain depends
+ * on the size of the domain of the events. This is the case when both of
+ * the following hold:
+ * <ul>
+ * <li>the property only refers to the presence of events in queues and on
+ * the inputs and outputs of the chain, and never to their values;</li>
+ * <li>every processor of the chain decides when to produce events
+ * regardless of the values of its input events. A processor such as
+ * {@link ca.uqac.lif.cep.nusmv.FilterModule}, whose output depends on the
+ * value of a Boolean input, breaks this condition.</li>
+ * </ul>
+ * The chain is then <em>data-independent</em> with respect to the property:
+ * values only flow through the chain without affecting its control, and the
+ * verdict is the same for any domain.
+ */
+public class DataIndependence
+{
+	/**
+	 * The name of parameter "Checked domain size".
+	 */
+	public static final transient String CHECKED_DOMAIN_SIZE = "Checked domain size";
+
+	/**
+	 * The name of parameter "Verdict transferred".
+	 */
+	public static final transient String TRANSFERRED = "Verdict transferred";
+
+	/**
+	 * The outputs that the model provider of an experiment derives from its
+	 * model. When the verdict is transferred, these outputs describe the model
+	 * with the smaller domain, and are recorded under the names given by
+	 * {@link #getCheckedName(String)} instead.
+	 */
+	public static final transient String[] MODEL_OUTPUTS = {ModelProvider.NUM_MODULES,
+			ModelProvider.NUM_VARIABLES, BeepBeepModelProvider.QUEUE_VARIABLES, BeepBeepModelProvider.STATE_BITS};
+
+	/**
+	 * The processors whose production of events does not depend on the
+	 * values of their inputs. Processors of any other class are assumed to
+	 * depend on these values.
+	 */
+	protected static final transient Set<Class<?>> s_controlIndependent = new HashSet<Class<?>>(Arrays.asList(
+			PassthroughModule.class, ForkModule.class, TrimModule.class, TurnIntoModule.class,
+			CumulateModule.class, WindowModule.class, CountDecimateModule.class,
+			UnaryApplyFunctionModule.class, BinaryApplyFunctionModule.class));
+
+	/**
+	 * The properties that do not refer to the values of events.
+	 */
+	protected static final transient Set<String> s_valueInsensitive = new HashSet<String>(Arrays.asList(
+			NoFullQueues.NAME, Liveness.NAME, BoundedLiveness.NAME));
+
+	/**
+	 * Private constructor, to prevent instantiation.
+	 */
+	private DataIndependence()
+	{
+		super();
+	}
+
+	/**
+	 * Gets the name under which an output derived from the model actually
+	 * checked is recorded, when this model has a smaller domain than the one
+	 * requested.
+	 * @param name The name of the output, one of {@link #MODEL_OUTPUTS}
+	 * @return The name of the recorded output, such as
+	 * "Checked state bits"
+	 */
+	/*@ non_null @*/ public static String getCheckedName(/*@ non_null @*/ String name)
+	{
+		return "Checked " + name.toLowerCase();
+	}
+
+	/**
+	 * Determines if a property refers only to the presence of events, and not
+	 * to their values.
+	 * @param property The name of the property
+	 * @return <tt>true</tt> if the property is value-insensitive,
+	 * <tt>false</tt> otherwise
+	 */
+	public static boolean isValueInsensitive(String property)
+	{
+		return property != null && s_valueInsensitive.contains(property);
+	}
+
+	/**
+	 * Determines if no processor of a chain decides when to produce events
+	 * based on the values of its inputs.
+	 * @param graph The graph of the chain
+	 * @return <tt>true</tt> if the chain is data-independent, <tt>false</tt>
+	 * otherwise
+	 */
+	public static boolean isDataIndependent(/*@ non_null @*/ PipelineGraph graph)
+	{
+		for (ProcessorModule p : graph.getProcessors())
+		{
+			if (!s_controlIndependent.contains(p.getClass()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
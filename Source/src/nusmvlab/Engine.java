@@ -0,0 +1,219 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nusmvlab.PropertyProvider.Logic;
+
+/**
+ * The verification engines of nuXmv that an experiment can use to check
+ * its property, and the commands that invoke each of them. Apart from the
+ * BDD engine, all the engines work on the Boolean encoding of the model and
+ * only handle LTL properties and invariants.
+ */
+public class Engine
+{
+	/**
+	 * The name of parameter "Engine".
+	 */
+	public static final transient String ENGINE = "Engine";
+
+	/**
+	 * The name of the parameter giving the engine that produced the verdict
+	 * in portfolio mode.
+	 */
+	public static final transient String WINNER = "Winning engine";
+
+	/**
+	 * Symbolic model checking with BDDs.
+	 */
+	public static final transient String BDD = "BDD";
+
+	/**
+	 * Bounded model checking with a SAT solver. This engine can only find
+	 * counter-examples; it cannot prove that a property holds.
+	 */
+	public static final transient String BMC = "BMC";
+
+	/**
+	 * The IC3 algorithm, extended to LTL through k-liveness.
+	 */
+	public static final transient String IC3 = "IC3";
+
+	/**
+	 * Simple bounded model checking with a completeness check, which amounts
+	 * to k-induction.
+	 */
+	public static final transient String K_INDUCTION = "k-induction";
+
+	/**
+	 * All the other engines run at the same time, the first conclusive verdict
+	 * being kept.
+	 */
+	public static final transient String PORTFOLIO = "Portfolio";
+
+	/**
+	 * The maximum length of the paths explored by the SAT-based engines.
+	 */
+	public static transient int BMC_BOUND = 20;
+
+	/**
+	 * Private constructor, to prevent instantiation.
+	 */
+	private Engine()
+	{
+		super();
+	}
+
+	/**
+	 * Gets the engines raced in portfolio mode for a given logic.
+	 * @param logic The logic of the property to check
+	 * @return The names of the engines
+	 */
+	/*@ non_null @*/ public static List<String> getPortfolio(/*@ non_null @*/ Logic logic)
+	{
+		List<String> engines = new ArrayList<String>();
+		engines.add(BDD);
+		if (logic == Logic.LTL || logic == Logic.INVAR)
+		{
+			engines.add(IC3);
+			engines.add(K_INDUCTION);
+			engines.add(BMC);
+		}
+		return engines;
+	}
+
+	/**
+	 * Determines if an engine can check properties expressed in a given
+	 * logic.
+	 * @param engine The name of the engine
+	 * @param logic The logic
+	 * @return <tt>true</tt> if the engine supports the logic, <tt>false</tt>
+	 * otherwise
+	 */
+	public static boolean supports(/*@ non_null @*/ String engine, /*@ non_null @*/ Logic logic)
+	{
+		if (engine.compareTo(BDD) == 0 || engine.compareTo(PORTFOLIO) == 0)
+		{
+			return true;
+		}
+		if (engine.compareTo(BMC) == 0 || engine.compareTo(IC3) == 0 || engine.compareTo(K_INDUCTION) == 0)
+		{
+			return logic == Logic.LTL || logic == Logic.INVAR;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the commands that build the internal representation of the model
+	 * needed by an engine.
+	 * @param engine The name of the engine
+	 * @param compute_reachable Set to <tt>true</tt> to make the BDD engine
+	 * compute the reachable states before any property is checked
+	 * @param order_filename The file giving the ordering of BDD variables, or
+	 * <tt>null</tt> to let NuSMV choose the ordering. The SAT-based engines
+	 * ignore this ordering.
+	 * @param reorder Set to <tt>true</tt> to enable the dynamic reordering
+	 * of BDD variables
+	 * @return The commands
+	 */
+	/*@ non_null @*/ public static String[] getBuildCommands(/*@ non_null @*/ String engine, boolean compute_reachable, String order_filename, boolean reorder)
+	{
+		if (engine.compareTo(BDD) != 0)
+		{
+			return new String[] {"go_bmc"};
+		}
+		List<String> commands = new ArrayList<String>();
+		if (order_filename == null && !reorder)
+		{
+			commands.add("go");
+		}
+		else
+		{
+			// Same as go, with an explicit variable ordering and/or reordering
+			commands.add("read_model");
+			commands.add("flatten_hierarchy");
+			commands.add(order_filename == null ? "encode_variables" : "encode_variables -i " + order_filename);
+			if (reorder)
+			{
+				commands.add("dynamic_var_ordering -e sift");
+			}
+			commands.add("build_model");
+		}
+		if (compute_reachable)
+		{
+			commands.add("compute_reachable");
+		}
+		return commands.toArray(new String[commands.size()]);
+	}
+
+	/**
+	 * Gets the command that checks a property with an engine. The index of
+	 * the property to check can be appended to the command with the
+	 * <tt>-n</tt> option.
+	 * @param engine The name of the engine
+	 * @param logic The logic of the property to check
+	 * @return The command
+	 */
+	/*@ non_null @*/ public static String getCheckCommand(/*@ non_null @*/ String engine, /*@ non_null @*/ Logic logic)
+	{
+		if (logic == Logic.INVAR)
+		{
+			return getInvariantCommand(engine);
+		}
+		if (engine.compareTo(BMC) == 0)
+		{
+			return "check_ltlspec_bmc -k " + BMC_BOUND;
+		}
+		if (engine.compareTo(IC3) == 0)
+		{
+			return "check_ltlspec_ic3";
+		}
+		if (engine.compareTo(K_INDUCTION) == 0)
+		{
+			return "check_ltlspec_sbmc_inc -c -k " + BMC_BOUND;
+		}
+		return "check_property";
+	}
+
+	/**
+	 * Gets the command that checks an invariant with an engine. These
+	 * commands only explore the reachable states, without the tableau and
+	 * fair cycle detection needed for an arbitrary LTL formula.
+	 * @param engine The name of the engine
+	 * @return The command
+	 */
+	/*@ non_null @*/ protected static String getInvariantCommand(/*@ non_null @*/ String engine)
+	{
+		if (engine.compareTo(BMC) == 0)
+		{
+			return "check_invar_bmc_inc -a falsification -k " + BMC_BOUND;
+		}
+		if (engine.compareTo(IC3) == 0)
+		{
+			return "check_invar_ic3";
+		}
+		if (engine.compareTo(K_INDUCTION) == 0)
+		{
+			return "check_invar_bmc -a een-sorensson -k " + BMC_BOUND;
+		}
+		return "check_invar";
+	}
+}
@@ -0,0 +1,456 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import static nusmvlab.BeepBeepModelProvider.QUEUE_VARIABLES;
+import static nusmvlab.ModelProvider.DOMAIN_SIZE;
+import static nusmvlab.ModelProvider.NUM_VARIABLES;
+import static nusmvlab.ModelProvider.QUEUE_SIZE;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.uqac.lif.labpal.Stateful.Status;
+
+/**
+ * Runs a set of experiments on multiple threads, so that several NuSMV
+ * processes execute at the same time. Since the BDDs built by concurrent
+ * processes compete for the same physical memory, an experiment is only
+ * started when its predicted memory footprint fits in what remains of a
+ * global memory budget. The order in which waiting experiments are
+ * considered is given by a pluggable policy.
+ * <p>
+ * The predicted footprint and cost of an experiment are derived from the
+ * size of its model, as recorded in its "Variables", "Queue variables",
+ * "Queue size" and "Domain size" parameters. These predictions are coarse;
+ * they are only meant to avoid starting several of the largest models at
+ * the same time.
+ * <p>
+ * The lab's own queue may run some of the same experiments in the
+ * meantime. An experiment that is already done when its turn comes is
+ * skipped, and an experiment that is running in the lab's queue at that
+ * moment waits for this run to end instead of calling NuSMV again (see
+ * {@link NuSMVExperiment#execute()}).
+ */
+public class ExperimentScheduler implements Runnable
+{
+	/**
+	 * The memory (in kB) used by a NuSMV process before any model is built.
+	 */
+	protected static final transient long BASE_MEMORY = 32 * 1024;
+
+	/**
+	 * A factor (in kB) applied to the square of the number of state bits of
+	 * a model to predict the memory used by its BDDs.
+	 */
+	protected static final transient long MEMORY_PER_BIT2 = 64;
+
+	/**
+	 * A policy that starts the experiments with the smallest models first,
+	 * giving quick feedback on a large part of the lab.
+	 */
+	public static final transient Comparator<NuSMVExperiment> SHORTEST_FIRST = Comparator.comparingLong(ExperimentScheduler::estimateCost);
+
+	/**
+	 * A policy that starts the experiments with the largest models first,
+	 * so that they do not end up running alone at the end of the lab.
+	 */
+	public static final transient Comparator<NuSMVExperiment> LONGEST_FIRST = SHORTEST_FIRST.reversed();
+
+	/**
+	 * The number of NuSMV processes that may run at the same time.
+	 */
+	protected final int m_threads;
+
+	/**
+	 * The total memory (in kB) that running experiments may use, or 0 for
+	 * no limit.
+	 */
+	protected final long m_memoryBudget;
+
+	/**
+	 * The policy used to order the experiments waiting to be started.
+	 */
+	protected final Comparator<NuSMVExperiment> m_policy;
+
+	/**
+	 * The experiments that have not been started yet.
+	 */
+	protected final List<NuSMVExperiment> m_waiting;
+
+	/**
+	 * The predicted memory (in kB) of the experiments currently running.
+	 */
+	protected long m_memoryInUse = 0;
+
+	/**
+	 * The memory and the number of processes reserved by each experiment
+	 * currently running, in this order. Predictions change when the cost
+	 * model is fitted again, so an experiment releases what it reserved
+	 * rather than what it would be given now.
+	 */
+	protected final Map<NuSMVExperiment,long[]> m_reserved = new IdentityHashMap<NuSMVExperiment,long[]>();
+
+	/**
+	 * The number of experiments currently running.
+	 */
+	protected int m_running = 0;
+
+	/**
+	 * The number of NuSMV processes reserved by the experiments currently
+	 * running.
+	 */
+	protected int m_processes = 0;
+
+	/**
+	 * The number of experiments that have finished.
+	 */
+	protected int m_finished = 0;
+
+	/**
+	 * Creates a new scheduler.
+	 * @param threads The number of NuSMV processes that may run at the same
+	 * time
+	 * @param memory_budget The total memory (in kB) that running experiments
+	 * may use, or 0 for no limit
+	 * @param policy The policy used to order the experiments waiting to be
+	 * started
+	 */
+	public ExperimentScheduler(int threads, long memory_budget, /*@ non_null @*/ Comparator<NuSMVExperiment> policy)
+	{
+		super();
+		m_threads = Math.max(1, threads);
+		m_memoryBudget = memory_budget;
+		m_policy = policy;
+		m_waiting = new LinkedList<NuSMVExperiment>();
+	}
+
+	/**
+	 * Adds experiments to be run by this scheduler. Experiments that are
+	 * already done are ignored.
+	 * @param experiments The experiments
+	 * @return This scheduler
+	 */
+	public synchronized ExperimentScheduler addAll(/*@ non_null @*/ Collection<NuSMVExperiment> experiments)
+	{
+		for (NuSMVExperiment e : experiments)
+		{
+			if (e.getStatus() != Status.DONE && !m_waiting.contains(e))
+			{
+				m_waiting.add(e);
+			}
+		}
+		m_waiting.sort(m_policy);
+		CostModel model = NuSMVExperiment.getCostModel();
+		if (model != null && NuSMVExperiment.s_timeLimit > 0)
+		{
+			// Experiments predicted to reach the time limit are started last
+			List<NuSMVExperiment> late = new ArrayList<NuSMVExperiment>();
+			Iterator<NuSMVExperiment> it = m_waiting.iterator();
+			while (it.hasNext())
+			{
+				NuSMVExperiment e = it.next();
+				if (model.predictTime(e) >= NuSMVExperiment.s_timeLimit)
+				{
+					late.add(e);
+					it.remove();
+				}
+			}
+			m_waiting.addAll(late);
+		}
+		return this;
+	}
+
+	/**
+	 * Runs all the experiments added to the scheduler, and returns once they
+	 * are all finished.
+	 */
+	@Override
+	public void run()
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(m_threads);
+		try
+		{
+			NuSMVExperiment e;
+			while ((e = admitNext()) != null)
+			{
+				final NuSMVExperiment to_run = e;
+				pool.execute(() -> {
+					try
+					{
+						to_run.run();
+					}
+					finally
+					{
+						finished(to_run);
+					}
+				});
+			}
+			synchronized (this)
+			{
+				while (m_running > 0)
+				{
+					wait();
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Waits until one of the waiting experiments can be started, and
+	 * reserves the resources it needs. An experiment can be started when
+	 * enough threads are free for the NuSMV processes it runs and its
+	 * predicted memory fits in the budget; an experiment larger than the
+	 * whole budget is started only when nothing else is running.
+	 * @return The experiment, or <tt>null</tt> if no experiment is waiting
+	 * @throws InterruptedException Thrown if the thread is interrupted while
+	 * waiting
+	 */
+	protected synchronized NuSMVExperiment admitNext() throws InterruptedException
+	{
+		while (!m_waiting.isEmpty())
+		{
+			if (m_processes < m_threads)
+			{
+				Iterator<NuSMVExperiment> it = m_waiting.iterator();
+				while (it.hasNext())
+				{
+					NuSMVExperiment e = it.next();
+					if (e.getStatus() == Status.DONE)
+					{
+						// Run by the lab's own queue since it was added
+						it.remove();
+						continue;
+					}
+					long memory = estimateMemory(e);
+					int processes = e.getProcesses();
+					if (m_running == 0 || (m_processes + processes <= m_threads
+							&& (m_memoryBudget <= 0 || m_memoryInUse + memory <= m_memoryBudget)))
+					{
+						it.remove();
+						m_running++;
+						m_processes += processes;
+						m_memoryInUse += memory;
+						m_reserved.put(e, new long[] {memory, processes});
+						return e;
+					}
+				}
+				if (m_waiting.isEmpty())
+				{
+					break;
+				}
+			}
+			wait();
+		}
+		return null;
+	}
+
+	/**
+	 * Releases the resources reserved by an experiment that has finished.
+	 * @param e The experiment
+	 */
+	protected synchronized void finished(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		m_running--;
+		m_finished++;
+		long[] reserved = m_reserved.remove(e);
+		if (reserved != null)
+		{
+			m_memoryInUse -= reserved[0];
+			m_processes -= (int) reserved[1];
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gets the number of experiments waiting to be started.
+	 * @return The number of experiments
+	 */
+	public synchronized int getWaiting()
+	{
+		return m_waiting.size();
+	}
+
+	/**
+	 * Gets the number of experiments currently running.
+	 * @return The number of experiments
+	 */
+	public synchronized int getRunning()
+	{
+		return m_running;
+	}
+
+	/**
+	 * Gets the number of experiments that have finished.
+	 * @return The number of experiments
+	 */
+	public synchronized int getFinished()
+	{
+		return m_finished;
+	}
+
+	/**
+	 * Gets the predicted memory of the experiments currently running.
+	 * @return The memory in kB
+	 */
+	public synchronized long getMemoryInUse()
+	{
+		return m_memoryInUse;
+	}
+
+	/**
+	 * Estimates the number of bits needed to encode a state of the model of
+	 * an experiment. For models built from a processor chain, this number is
+	 * read from the index of the model. Otherwise, each variable is counted
+	 * as holding a value of the domain, and each queue variable as holding
+	 * one flag per queue slot.
+	 * @param e The experiment
+	 * @return The number of bits
+	 */
+	public static long estimateStateBits(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		ModelProvider mp = e.getModelProvider();
+		if (mp instanceof BeepBeepModelProvider)
+		{
+			return ((BeepBeepModelProvider) mp).getStateBits();
+		}
+		int variables = e.readInt(NUM_VARIABLES);
+		int queue_variables = e.readInt(QUEUE_VARIABLES);
+		int domain_size = Math.max(2, e.readInt(DOMAIN_SIZE));
+		int queue_size = Math.max(1, e.readInt(QUEUE_SIZE));
+		int bits_per_value = 32 - Integer.numberOfLeadingZeros(domain_size - 1);
+		return (long) variables * bits_per_value + (long) queue_variables * queue_size;
+	}
+
+	/**
+	 * Predicts the memory used by NuSMV to process the model of an
+	 * experiment. The {@link CostModel} is used when it has enough samples;
+	 * otherwise, the memory is extrapolated from the number of state bits.
+	 * Both predict the memory of a single process; it is multiplied by the
+	 * number of processes the experiment runs at the same time. Either way,
+	 * the value is at most {@link CostModel#MAX_PREDICTION}.
+	 * @param e The experiment
+	 * @return The memory in kB
+	 */
+	public static long estimateMemory(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		CostModel model = NuSMVExperiment.getCostModel();
+		double per_process = model == null ? -1 : model.predictMemory(e);
+		if (per_process < 0)
+		{
+			double bits = estimateStateBits(e);
+			per_process = BASE_MEMORY + MEMORY_PER_BIT2 * bits * bits;
+		}
+		// Clamped like the predictions of the cost model, so that sums do not overflow
+		return (long) Math.min(CostModel.MAX_PREDICTION, per_process * e.getProcesses());
+	}
+
+	/**
+	 * Predicts the relative running time of an experiment. Only the order
+	 * between the values returned for different experiments is meaningful.
+	 * When the {@link CostModel} has enough samples, the cost is its
+	 * predicted time in ms.
+	 * @param e The experiment
+	 * @return The predicted cost
+	 */
+	public static long estimateCost(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		CostModel model = NuSMVExperiment.getCostModel();
+		long predicted = model == null ? -1 : model.predictTime(e);
+		if (predicted >= 0)
+		{
+			return predicted;
+		}
+		return estimateStateBits(e);
+	}
+
+	/**
+	 * Predicts the time it will take to run the experiments that are still
+	 * waiting, assuming they keep all the threads busy.
+	 * @return The time in ms, or -1 if the time of some experiment cannot be
+	 * predicted
+	 */
+	public synchronized long getPredictedTimeRemaining()
+	{
+		CostModel model = NuSMVExperiment.getCostModel();
+		if (model == null)
+		{
+			return -1;
+		}
+		long total = 0;
+		for (NuSMVExperiment e : m_waiting)
+		{
+			long t = model.predictTime(e);
+			if (t < 0)
+			{
+				return -1;
+			}
+			total += t;
+		}
+		return total / m_threads;
+	}
+
+	/**
+	 * Gets a scheduling policy from its name.
+	 * @param name The name, either "shortest" or "longest"
+	 * @return The policy
+	 */
+	/*@ non_null @*/ public static Comparator<NuSMVExperiment> getPolicy(String name)
+	{
+		if ("longest".equalsIgnoreCase(name))
+		{
+			return LONGEST_FIRST;
+		}
+		return SHORTEST_FIRST;
+	}
+
+	/**
+	 * Selects the experiments of type {@link NuSMVExperiment} in a
+	 * collection.
+	 * @param experiments The collection
+	 * @return The NuSMV experiments
+	 */
+	/*@ non_null @*/ public static List<NuSMVExperiment> filter(/*@ non_null @*/ Collection<?> experiments)
+	{
+		List<NuSMVExperiment> out = new ArrayList<NuSMVExperiment>(experiments.size());
+		for (Object o : experiments)
+		{
+			if (o instanceof NuSMVExperiment)
+			{
+				out.add((NuSMVExperiment) o);
+			}
+		}
+		return out;
+	}
+}
@@ -0,0 +1,539 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * An LTL or CTL formula, represented as an abstract syntax tree whose
+ * leaves are propositional NuSMV expressions.
+ * <p>
+ * Formulas are hash-consed: they can only be obtained through the static
+ * methods of this class, which return the same object for structurally
+ * equal formulas. These methods also simplify the formula they build:
+ * <ul>
+ * <li><tt>TRUE</tt> and <tt>FALSE</tt> are folded into the conjunctions,
+ * disjunctions, implications and negations that contain them</li>
+ * <li>nested conjunctions and disjunctions are flattened, and their
+ * repeated operands removed</li>
+ * <li>a temporal operator applied twice in a row, such as <i>G G p</i>, is
+ * merged into one</li>
+ * </ul>
+ * The operands of a conjunction or disjunction are sorted, so that the
+ * text of a formula (given by {@link #toString()}) and its hash code do not
+ * depend on the order in which it was built. The hash code is also the same
+ * from one execution to the next.
+ */
+public final class Formula
+{
+	/**
+	 * The operators that can appear in a formula. The temporal operators
+	 * are declared last, starting with X.
+	 */
+	public enum Operator {TRUE, FALSE, ATOM, NOT, AND, OR, IMPLIES, X, F, G, AX, AF, AG, EX, EF, EG}
+
+	/**
+	 * The formulas created so far, used to return the same object for
+	 * equal formulas.
+	 */
+	protected static final transient Map<Formula,WeakReference<Formula>> s_table = new WeakHashMap<Formula,WeakReference<Formula>>();
+
+	/**
+	 * The formula that is always true.
+	 */
+	public static final Formula TRUE = intern(new Formula(Operator.TRUE, null));
+
+	/**
+	 * The formula that is always false.
+	 */
+	public static final Formula FALSE = intern(new Formula(Operator.FALSE, null));
+
+	/**
+	 * The operator at the root of this formula.
+	 */
+	protected final Operator m_operator;
+
+	/**
+	 * The NuSMV expression of an atom, or <tt>null</tt> for other operators.
+	 */
+	protected final String m_atom;
+
+	/**
+	 * The operands of the operator.
+	 */
+	protected final Formula[] m_operands;
+
+	/**
+	 * The hash code of this formula, computed once.
+	 */
+	protected final int m_hash;
+
+	/**
+	 * Whether this formula contains a temporal operator.
+	 */
+	protected final boolean m_temporal;
+
+	/**
+	 * The text of this formula, computed the first time it is asked for.
+	 */
+	protected String m_text = null;
+
+	/**
+	 * Creates a new formula. Formulas must be passed to
+	 * {@link #intern(Formula)} before being returned.
+	 * @param op The operator at the root of the formula
+	 * @param atom The NuSMV expression of an atom, or <tt>null</tt>
+	 * @param operands The operands of the operator
+	 */
+	private Formula(Operator op, String atom, Formula ... operands)
+	{
+		super();
+		m_operator = op;
+		m_atom = atom;
+		m_operands = operands;
+		int hash = op.ordinal();
+		boolean temporal = op.compareTo(Operator.X) >= 0;
+		if (atom != null)
+		{
+			hash = 31 * hash + atom.hashCode();
+		}
+		for (Formula f : operands)
+		{
+			hash = 31 * hash + f.m_hash;
+			temporal |= f.m_temporal;
+		}
+		m_hash = hash;
+		m_temporal = temporal;
+	}
+
+	/**
+	 * Gets the unique instance of a formula.
+	 * @param f The formula
+	 * @return The formula equal to <tt>f</tt> that was created first
+	 */
+	protected static Formula intern(Formula f)
+	{
+		synchronized (s_table)
+		{
+			WeakReference<Formula> ref = s_table.get(f);
+			Formula existing = ref == null ? null : ref.get();
+			if (existing != null)
+			{
+				return existing;
+			}
+			s_table.put(f, new WeakReference<Formula>(f));
+			return f;
+		}
+	}
+
+	/**
+	 * Gets the formula made of a propositional NuSMV expression.
+	 * @param expression The expression
+	 * @return The formula
+	 */
+	/*@ non_null @*/ public static Formula atom(/*@ non_null @*/ String expression)
+	{
+		String e = expression.trim();
+		if (e.compareTo("TRUE") == 0)
+		{
+			return TRUE;
+		}
+		if (e.compareTo("FALSE") == 0)
+		{
+			return FALSE;
+		}
+		return intern(new Formula(Operator.ATOM, e));
+	}
+
+	/**
+	 * Gets the negation of a formula.
+	 * @param f The formula
+	 * @return The negation
+	 */
+	/*@ non_null @*/ public static Formula not(/*@ non_null @*/ Formula f)
+	{
+		if (f == TRUE)
+		{
+			return FALSE;
+		}
+		if (f == FALSE)
+		{
+			return TRUE;
+		}
+		if (f.m_operator == Operator.NOT)
+		{
+			return f.m_operands[0];
+		}
+		return intern(new Formula(Operator.NOT, null, f));
+	}
+
+	/**
+	 * Gets the conjunction of formulas.
+	 * @param operands The formulas
+	 * @return The conjunction, which is <tt>TRUE</tt> if there are no
+	 * operands
+	 */
+	/*@ non_null @*/ public static Formula and(/*@ non_null @*/ Formula ... operands)
+	{
+		return and(Arrays.asList(operands));
+	}
+
+	/**
+	 * Gets the conjunction of formulas.
+	 * @param operands The formulas
+	 * @return The conjunction, which is <tt>TRUE</tt> if there are no
+	 * operands
+	 */
+	/*@ non_null @*/ public static Formula and(/*@ non_null @*/ Collection<Formula> operands)
+	{
+		return associative(Operator.AND, operands, TRUE, FALSE);
+	}
+
+	/**
+	 * Gets the disjunction of formulas.
+	 * @param operands The formulas
+	 * @return The disjunction, which is <tt>FALSE</tt> if there are no
+	 * operands
+	 */
+	/*@ non_null @*/ public static Formula or(/*@ non_null @*/ Formula ... operands)
+	{
+		return or(Arrays.asList(operands));
+	}
+
+	/**
+	 * Gets the disjunction of formulas.
+	 * @param operands The formulas
+	 * @return The disjunction, which is <tt>FALSE</tt> if there are no
+	 * operands
+	 */
+	/*@ non_null @*/ public static Formula or(/*@ non_null @*/ Collection<Formula> operands)
+	{
+		return associative(Operator.OR, operands, FALSE, TRUE);
+	}
+
+	/**
+	 * Gets the conjunction or disjunction of formulas.
+	 * @param op The operator, either AND or OR
+	 * @param operands The formulas
+	 * @param neutral The formula that can be removed from the operands
+	 * @param absorbing The formula that makes the whole formula equal to
+	 * itself
+	 * @return The formula
+	 */
+	protected static Formula associative(Operator op, Collection<Formula> operands, Formula neutral, Formula absorbing)
+	{
+		// Sorting by text removes duplicates and gives a canonical order
+		TreeMap<String,Formula> flat = new TreeMap<String,Formula>();
+		for (Formula f : operands)
+		{
+			if (f == absorbing)
+			{
+				return absorbing;
+			}
+			if (f.m_operator == op)
+			{
+				for (Formula g : f.m_operands)
+				{
+					flat.put(g.toString(), g);
+				}
+			}
+			else if (f != neutral)
+			{
+				flat.put(f.toString(), f);
+			}
+		}
+		if (flat.isEmpty())
+		{
+			return neutral;
+		}
+		if (flat.size() == 1)
+		{
+			return flat.firstEntry().getValue();
+		}
+		return intern(new Formula(op, null, flat.values().toArray(new Formula[flat.size()])));
+	}
+
+	/**
+	 * Gets the implication between two formulas.
+	 * @param left The premise
+	 * @param right The conclusion
+	 * @return The implication
+	 */
+	/*@ non_null @*/ public static Formula implies(/*@ non_null @*/ Formula left, /*@ non_null @*/ Formula right)
+	{
+		if (left == TRUE)
+		{
+			return right;
+		}
+		if (left == FALSE || right == TRUE || left == right)
+		{
+			return TRUE;
+		}
+		if (right == FALSE)
+		{
+			return not(left);
+		}
+		return intern(new Formula(Operator.IMPLIES, null, left, right));
+	}
+
+	/**
+	 * Applies a unary temporal operator to a formula.
+	 * @param op The operator
+	 * @param f The formula
+	 * @return The resulting formula
+	 */
+	/*@ non_null @*/ public static Formula temporal(/*@ non_null @*/ Operator op, /*@ non_null @*/ Formula f)
+	{
+		if (op.compareTo(Operator.X) < 0)
+		{
+			throw new IllegalArgumentException(op + " is not a temporal operator");
+		}
+		if (f == TRUE || f == FALSE)
+		{
+			// On infinite paths, a temporal operator does not change a constant
+			return f;
+		}
+		if (f.m_operator == op && op != Operator.X && op != Operator.AX && op != Operator.EX)
+		{
+			return f;
+		}
+		return intern(new Formula(op, null, f));
+	}
+
+	/**
+	 * Gets the LTL formula <i>G f</i>.
+	 * @param f The formula
+	 * @return The resulting formula
+	 */
+	/*@ non_null @*/ public static Formula globally(/*@ non_null @*/ Formula f)
+	{
+		return temporal(Operator.G, f);
+	}
+
+	/**
+	 * Gets the LTL formula <i>F f</i>.
+	 * @param f The formula
+	 * @return The resulting formula
+	 */
+	/*@ non_null @*/ public static Formula eventually(/*@ non_null @*/ Formula f)
+	{
+		return temporal(Operator.F, f);
+	}
+
+	/**
+	 * Gets the LTL formula <i>X f</i>.
+	 * @param f The formula
+	 * @return The resulting formula
+	 */
+	/*@ non_null @*/ public static Formula next(/*@ non_null @*/ Formula f)
+	{
+		return temporal(Operator.X, f);
+	}
+
+	/**
+	 * Gets the operator at the root of this formula.
+	 * @return The operator
+	 */
+	/*@ non_null @*/ public Operator getOperator()
+	{
+		return m_operator;
+	}
+
+	/**
+	 * Gets the NuSMV expression of this formula, if it is an atom.
+	 * @return The expression, or <tt>null</tt> if the formula is not an atom
+	 */
+	public String getAtom()
+	{
+		return m_atom;
+	}
+
+	/**
+	 * Gets the operands of the operator at the root of this formula.
+	 * @return The operands
+	 */
+	/*@ non_null @*/ public List<Formula> getOperands()
+	{
+		return Collections.unmodifiableList(Arrays.asList(m_operands));
+	}
+
+	/**
+	 * Gets the first operand of the operator at the root of this formula.
+	 * @return The operand, or <tt>null</tt> if the operator has no operand
+	 */
+	public Formula getOperand()
+	{
+		return m_operands.length == 0 ? null : m_operands[0];
+	}
+
+	/**
+	 * Determines if this formula contains a temporal operator.
+	 * @return <tt>true</tt> if the formula is temporal, <tt>false</tt> if it
+	 * is propositional
+	 */
+	public boolean isTemporal()
+	{
+		return m_temporal;
+	}
+
+	/**
+	 * Gets the operands of this formula if it is a conjunction.
+	 * @return The list of conjuncts, which contains only the formula itself
+	 * if it is not a conjunction
+	 */
+	/*@ non_null @*/ public List<Formula> getConjuncts()
+	{
+		if (m_operator == Operator.AND)
+		{
+			return getOperands();
+		}
+		List<Formula> list = new ArrayList<Formula>(1);
+		list.add(this);
+		return list;
+	}
+
+	/**
+	 * Gets the text of this formula as it is written in a NuSMV model. Every
+	 * binary operator is enclosed in parentheses, so that the text does not
+	 * depend on operator precedence.
+	 * @return The text
+	 */
+	@Override
+	public String toString()
+	{
+		if (m_text == null)
+		{
+			m_text = print();
+		}
+		return m_text;
+	}
+
+	/**
+	 * Computes the text of this formula.
+	 * @return The text
+	 */
+	protected String print()
+	{
+		switch (m_operator)
+		{
+		case TRUE:
+			return "TRUE";
+		case FALSE:
+			return "FALSE";
+		case ATOM:
+			return m_atom;
+		case NOT:
+			return "!" + printOperand(m_operands[0]);
+		case AND:
+		case OR:
+		case IMPLIES:
+		{
+			String connective = m_operator == Operator.AND ? " & " : (m_operator == Operator.OR ? " | " : " -> ");
+			StringBuilder out = new StringBuilder();
+			out.append("(");
+			for (int i = 0; i < m_operands.length; i++)
+			{
+				if (i > 0)
+				{
+					out.append(connective);
+				}
+				out.append(printOperand(m_operands[i]));
+			}
+			out.append(")");
+			return out.toString();
+		}
+		default:
+			return m_operator.name() + " " + printOperand(m_operands[0]);
+		}
+	}
+
+	/**
+	 * Computes the text of an operand, enclosed in parentheses unless it
+	 * is a constant, an atom made of a single term, or a formula whose text
+	 * is already enclosed in parentheses.
+	 * @param f The operand
+	 * @return The text
+	 */
+	protected static String printOperand(Formula f)
+	{
+		String text = f.toString();
+		switch (f.m_operator)
+		{
+		case TRUE:
+		case FALSE:
+		case AND:
+		case OR:
+		case IMPLIES:
+			return text;
+		case ATOM:
+			return text.indexOf(' ') < 0 ? text : "(" + text + ")";
+		default:
+			return "(" + text + ")";
+		}
+	}
+
+	/**
+	 * Gets the hash code of this formula. This value only depends on the
+	 * structure of the formula, and is therefore the same from one execution
+	 * of the lab to the next.
+	 */
+	@Override
+	public int hashCode()
+	{
+		return m_hash;
+	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+		{
+			return true;
+		}
+		if (!(o instanceof Formula))
+		{
+			return false;
+		}
+		Formula f = (Formula) o;
+		if (f.m_hash != m_hash || f.m_operator != m_operator || f.m_operands.length != m_operands.length)
+		{
+			return false;
+		}
+		if (m_atom != null && m_atom.compareTo(f.m_atom) != 0)
+		{
+			return false;
+		}
+		for (int i = 0; i < m_operands.length; i++)
+		{
+			// Operands are themselves unique instances
+			if (f.m_operands[i] != m_operands[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -34,6 +34,7 @@ import ca.uqac.lif.labpal.server.LabPalServer;
 import ca.uqac.lif.labpal.server.LaboratoryCallback;
 import ca.uqac.lif.labpal.table.ExperimentTable;
 import ca.uqac.lif.labpal.table.TransformedTable;
+import nusmvlab.PipelineSpec.SpecException;
 import nusmvlab.StreamPropertyLibrary.BoundedLiveness;
 import nusmvlab.StreamPropertyLibrary.Liveness;
 import nusmvlab.StreamPropertyLibrary.NoFullQueues;
@@ -46,6 +47,7 @@ import static ca.uqac.lif.labpal.region.ProductRegion.product;
 import static ca.uqac.lif.labpal.latex.LatexExportable.latexify;
 
 import static nusmvlab.BeepBeepModelProvider.K;
+import static nusmvlab.Engine.ENGINE;
 import static nusmvlab.ModelProvider.DOMAIN_SIZE;
 import static nusmvlab.ModelProvider.QUERY;
 import static nusmvlab.ModelProvider.QUEUE_SIZE;
@@ -63,12 +65,19 @@ import static nusmvlab.NuSMVModelLibrary.Q_SUM_OF_DOUBLES;
 import static nusmvlab.NuSMVModelLibrary.Q_SUM_OF_ODDS;
 import static nusmvlab.NuSMVModelLibrary.Q_WIN_SUM_OF_1;
 import static nusmvlab.PropertyProvider.PROPERTY;
+import static nusmvlab.PropertyProvider.SPEC_FORM;
+import static nusmvlab.VariableOrdering.ORDERING;
 
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * The lab that evaluates NuSMV translations of BeepBeep processor chains.
@@ -80,6 +89,23 @@ public class MainLab extends Laboratory
 	protected final transient StreamPropertyLibrary m_propLibrary = new StreamPropertyLibrary(m_modelLibrary);
 	protected final transient NuSMVExperimentFactory m_factory = new NuSMVExperimentFactory(this, m_modelLibrary, m_propLibrary);
 
+	/**
+	 * The number of experiments run at the same time from the "Parallel run"
+	 * page.
+	 */
+	protected transient int m_threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The total predicted memory (in kB) of the experiments run at the same
+	 * time from the "Parallel run" page, or 0 for no limit.
+	 */
+	protected transient long m_memoryBudget = 0;
+
+	/**
+	 * The order in which the "Parallel run" page starts experiments.
+	 */
+	protected transient Comparator<NuSMVExperiment> m_policy = ExperimentScheduler.SHORTEST_FIRST;
+
 	@Override
 	public void setup()
 	{
@@ -94,6 +120,17 @@ public class MainLab extends Laboratory
 		   equivalence checking. */
 		boolean include_equivalence = false;
 
+		/* Set to true to include experiments comparing properties written as
+		   temporal formulas and as invariants. */
+		boolean include_invariants = false;
+
+		/* Set to true to include experiments comparing LTL properties written
+		   as temporal formulas and checked by observer modules. */
+		boolean include_observers = false;
+
+		/* The queries read from the files given with --pipelines. */
+		List<String> loaded_queries = new ArrayList<String>();
+
 		// Read command line arguments
 		{
 			ArgumentMap args = getCliArguments();
@@ -109,6 +146,87 @@ public class MainLab extends Laboratory
 			{
 				include_equivalence = true;
 			}
+			if (args.hasOption("invariants"))
+			{
+				include_invariants = true;
+			}
+			if (args.hasOption("observers"))
+			{
+				include_observers = true;
+			}
+			if (args.hasOption("batch"))
+			{
+				m_factory.addBatches();
+			}
+			if (args.hasOption("pipelines"))
+			{
+				try
+				{
+					loaded_queries = NuSMVModelLibrary.addSpecs(new File(args.getOptionValue("pipelines")));
+				}
+				catch (IOException | SpecException e)
+				{
+					// Running the lab without the requested queries would be misleading
+					throw new IllegalArgumentException("Could not load pipelines: " + e.getMessage(), e);
+				}
+			}
+			if (args.hasOption("timeout") || args.hasOption("memory-limit"))
+			{
+				long time_limit = 0, memory_limit = 0;
+				if (args.hasOption("timeout"))
+				{
+					time_limit = Long.parseLong(args.getOptionValue("timeout")) * 1000;
+				}
+				if (args.hasOption("memory-limit"))
+				{
+					memory_limit = Long.parseLong(args.getOptionValue("memory-limit")) * 1024;
+				}
+				NuSMVExperiment.setLimits(time_limit, memory_limit);
+			}
+			if (args.hasOption("model-cache"))
+			{
+				BeepBeepModelProvider.setTextCacheSize(Long.parseLong(args.getOptionValue("model-cache")) * 1000 * 1000);
+			}
+			if (args.hasOption("cache-dir"))
+			{
+				// Without a cache, every run measures all its experiments
+				File cache_dir = new File(args.getOptionValue("cache-dir"));
+				NuSMVExperiment.setResultCache(new ResultCache(cache_dir, args.hasOption("remeasure")));
+				NuSMVExperiment.setCostModel(new CostModel(new File(cache_dir, CostModel.FILENAME)));
+			}
+			else
+			{
+				NuSMVExperiment.setCostModel(new CostModel(null));
+			}
+			String order_dir = "learned-orders";
+			if (args.hasOption("order-dir"))
+			{
+				order_dir = args.getOptionValue("order-dir");
+			}
+			NuSMVExperiment.setOrderStore(new OrderStore(new File(order_dir)));
+			NuSMVExperiment.setSlicing(args.hasOption("slice"));
+			NuSMVExperiment.setDecomposition(args.hasOption("decompose"));
+			if (args.hasOption("reduce-domains"))
+			{
+				m_factory.addDomainReduction();
+			}
+			if (args.hasOption("threads"))
+			{
+				m_threads = Integer.parseInt(args.getOptionValue("threads"));
+			}
+			NuSMVDecomposition.setMaxProcesses(m_threads);
+			if (args.hasOption("use-sessions"))
+			{
+				NuSMVExperiment.setSessionPool(new NuSMVSessionPool(NuSMVExperiment.NUSMV_PATH, m_threads));
+			}
+			if (args.hasOption("memory-budget"))
+			{
+				m_memoryBudget = Long.parseLong(args.getOptionValue("memory-budget")) * 1024;
+			}
+			if (args.hasOption("order"))
+			{
+				m_policy = ExperimentScheduler.getPolicy(args.getOptionValue("order"));
+			}
 		}
 		System.out.print("Writing models");
 
@@ -191,6 +309,182 @@ public class MainLab extends Laboratory
 		}
 		System.out.print(".");
 
+		// Comparison of verification engines on the properties that apply to queues
+		{
+			ExperimentGroup g = new ExperimentGroup("Impact of verification engine", "Comparison of the verification engines of nuXmv, and of a portfolio racing them against each other, for increasing queue sizes");
+			add(g);
+			Region r = product(
+					extension(QUERY, Q_PASSTHROUGH, Q_PRODUCT_WINDOW_K, Q_SUM_OF_DOUBLES, Q_SUM_OF_ODDS, Q_PRODUCT_1_K, Q_WIN_SUM_OF_1, Q_OUTPUT_IF_SMALLER_K),
+					extension(PROPERTY, NoFullQueues.NAME, BoundedLiveness.NAME),
+					extension(DOMAIN_SIZE, 3),
+					range(QUEUE_SIZE, 1, 4, 1),
+					extension(ENGINE, Engine.BDD, Engine.BMC, Engine.IC3, Engine.K_INDUCTION, Engine.PORTFOLIO));
+			for (Region q_r : r.all(QUERY, PROPERTY))
+			{
+				Point p = q_r.asPoint();
+				String title = p.getString(PROPERTY) + " on " + p.getString(QUERY);
+				ExperimentTable et = new ExperimentTable(ENGINE, QUEUE_SIZE, TIME);
+				et.setShowInList(false);
+				TransformedTable tt = new TransformedTable(new ExpandAsColumns(ENGINE, TIME), et);
+				tt.setTitle("Running time by engine for " + title);
+				tt.setNickname("tEngine" + latexify(p.getString(PROPERTY) + p.getString(QUERY)));
+				boolean added = false;
+				for (Region t_r : q_r.all(ENGINE, QUEUE_SIZE))
+				{
+					NuSMVExperiment e = m_factory.get(t_r.asPoint());
+					if (e == null)
+					{
+						continue;
+					}
+					added = true;
+					et.add(e);
+					g.add(e);
+				}
+				if (added)
+				{
+					add(et, tt);
+					add(new Plot(tt, new GnuplotScatterplot().setTitle(tt.getTitle()).setCaption(Axis.X, "Queue size").setCaption(Axis.Y, "Time (ms)")).setNickname("p" + tt.getNickname()));
+				}
+			}
+		}
+		System.out.print(".");
+
+		// Impact of the ordering of BDD variables
+		{
+			ExperimentGroup g = new ExperimentGroup("Impact of variable ordering", "Comparison of BDD variable orderings derived from the topology of the processor chain, for increasing queue sizes");
+			add(g);
+			Region r = product(
+					extension(QUERY, Q_PASSTHROUGH, Q_PRODUCT_WINDOW_K, Q_SUM_OF_DOUBLES, Q_SUM_OF_ODDS, Q_PRODUCT_1_K, Q_WIN_SUM_OF_1, Q_OUTPUT_IF_SMALLER_K),
+					extension(PROPERTY, NoFullQueues.NAME),
+					extension(DOMAIN_SIZE, 3),
+					range(QUEUE_SIZE, 1, 4, 1),
+					extension(ORDERING, VariableOrdering.DEFAULT, VariableOrdering.TOPOLOGICAL, VariableOrdering.REVERSE));
+			for (Region q_r : r.all(QUERY))
+			{
+				Point p = q_r.asPoint();
+				ExperimentTable et = new ExperimentTable(ORDERING, QUEUE_SIZE, TIME);
+				et.setShowInList(false);
+				TransformedTable tt = new TransformedTable(new ExpandAsColumns(ORDERING, TIME), et);
+				tt.setTitle("Running time by variable ordering for " + p.getString(QUERY));
+				tt.setNickname("tOrdering" + latexify(p.getString(QUERY)));
+				for (Region t_r : q_r.all(ORDERING, QUEUE_SIZE))
+				{
+					NuSMVExperiment e = m_factory.get(t_r.asPoint());
+					if (e == null)
+					{
+						continue;
+					}
+					et.add(e);
+					g.add(e);
+				}
+				add(et, tt);
+				add(new Plot(tt, new GnuplotScatterplot().setTitle(tt.getTitle()).setCaption(Axis.X, "Queue size").setCaption(Axis.Y, "Time (ms)")).setNickname("p" + tt.getNickname()));
+			}
+		}
+		System.out.print(".");
+
+		// Comparison of the temporal and invariant forms of safety properties
+		if (include_invariants)
+		{
+			ExperimentGroup g = new ExperimentGroup("Impact of specification form", "Comparison of safety properties written as temporal formulas and as invariants, for increasing queue sizes");
+			add(g);
+			Region r = product(
+					extension(QUERY, Q_PASSTHROUGH, Q_PRODUCT_WINDOW_K, Q_SUM_OF_DOUBLES, Q_SUM_OF_ODDS, Q_PRODUCT_1_K, Q_WIN_SUM_OF_1, Q_OUTPUT_IF_SMALLER_K),
+					extension(PROPERTY, NoFullQueues.NAME),
+					extension(DOMAIN_SIZE, 3),
+					range(QUEUE_SIZE, 1, 4, 1),
+					extension(ENGINE, Engine.BDD, Engine.IC3),
+					extension(SPEC_FORM, PropertyProvider.TEMPORAL, PropertyProvider.INVARIANT));
+			for (Region q_r : r.all(QUERY, ENGINE))
+			{
+				Point p = q_r.asPoint();
+				String title = p.getString(QUERY) + " with " + p.getString(ENGINE);
+				ExperimentTable et = new ExperimentTable(SPEC_FORM, QUEUE_SIZE, TIME);
+				et.setShowInList(false);
+				TransformedTable tt = new TransformedTable(new ExpandAsColumns(SPEC_FORM, TIME), et);
+				tt.setTitle("Running time by specification form for " + title);
+				tt.setNickname("tForm" + latexify(p.getString(QUERY) + p.getString(ENGINE)));
+				for (Region t_r : q_r.all(SPEC_FORM, QUEUE_SIZE))
+				{
+					NuSMVExperiment e = m_factory.get(t_r.asPoint());
+					if (e == null)
+					{
+						continue;
+					}
+					et.add(e);
+					g.add(e);
+				}
+				add(et, tt);
+				add(new Plot(tt, new GnuplotScatterplot().setTitle(tt.getTitle()).setCaption(Axis.X, "Queue size").setCaption(Axis.Y, "Time (ms)")).setNickname("p" + tt.getNickname()));
+			}
+			System.out.print(".");
+		}
+
+		// Comparison of LTL properties written as temporal formulas and checked by observers
+		if (include_observers)
+		{
+			ExperimentGroup g = new ExperimentGroup("Impact of observers", "Comparison of liveness properties written as LTL formulas and checked by observer modules, for increasing bounds and queue sizes");
+			add(g);
+			Region r_bounded = product(
+					extension(QUERY, Q_PASSTHROUGH, Q_SUM_OF_DOUBLES, Q_PRODUCT_1_K, Q_WIN_SUM_OF_1),
+					extension(PROPERTY, BoundedLiveness.NAME),
+					extension(DOMAIN_SIZE, 3),
+					extension(QUEUE_SIZE, 2),
+					extension(BoundedLiveness.BOUND, 1, 2, 4, 8, 16),
+					extension(ENGINE, Engine.BDD),
+					extension(SPEC_FORM, PropertyProvider.TEMPORAL, PropertyProvider.OBSERVER));
+			for (Region q_r : r_bounded.all(QUERY))
+			{
+				Point p = q_r.asPoint();
+				ExperimentTable et = new ExperimentTable(SPEC_FORM, BoundedLiveness.BOUND, TIME);
+				et.setShowInList(false);
+				TransformedTable tt = new TransformedTable(new ExpandAsColumns(SPEC_FORM, TIME), et);
+				tt.setTitle("Running time of bounded liveness by bound for " + p.getString(QUERY));
+				tt.setNickname("tObsBound" + latexify(p.getString(QUERY)));
+				for (Region t_r : q_r.all(SPEC_FORM, BoundedLiveness.BOUND))
+				{
+					NuSMVExperiment e = m_factory.get(t_r.asPoint());
+					if (e == null)
+					{
+						continue;
+					}
+					et.add(e);
+					g.add(e);
+				}
+				add(et, tt);
+				add(new Plot(tt, new GnuplotScatterplot().setTitle(tt.getTitle()).setCaption(Axis.X, "Bound").setCaption(Axis.Y, "Time (ms)")).setNickname("p" + tt.getNickname()));
+			}
+			Region r_liveness = product(
+					extension(QUERY, Q_PASSTHROUGH, Q_SUM_OF_DOUBLES, Q_PRODUCT_1_K, Q_WIN_SUM_OF_1),
+					extension(PROPERTY, Liveness.NAME),
+					extension(DOMAIN_SIZE, 3),
+					range(QUEUE_SIZE, 1, 4, 1),
+					extension(ENGINE, Engine.BDD),
+					extension(SPEC_FORM, PropertyProvider.TEMPORAL, PropertyProvider.OBSERVER));
+			for (Region q_r : r_liveness.all(QUERY))
+			{
+				Point p = q_r.asPoint();
+				ExperimentTable et = new ExperimentTable(SPEC_FORM, QUEUE_SIZE, TIME);
+				et.setShowInList(false);
+				TransformedTable tt = new TransformedTable(new ExpandAsColumns(SPEC_FORM, TIME), et);
+				tt.setTitle("Running time of liveness by specification form for " + p.getString(QUERY));
+				tt.setNickname("tObsLive" + latexify(p.getString(QUERY)));
+				for (Region t_r : q_r.all(SPEC_FORM, QUEUE_SIZE))
+				{
+					NuSMVExperiment e = m_factory.get(t_r.asPoint());
+					if (e == null)
+					{
+						continue;
+					}
+					et.add(e);
+					g.add(e);
+				}
+				add(et, tt);
+				add(new Plot(tt, new GnuplotScatterplot().setTitle(tt.getTitle()).setCaption(Axis.X, "Queue size").setCaption(Axis.Y, "Time (ms)")).setNickname("p" + tt.getNickname()));
+			}
+			System.out.print(".");
+		}
+
 		// Impact of window width on processors that contain a window
 		{
 			ExperimentGroup g = new ExperimentGroup("Impact of parameter k");
@@ -249,6 +543,35 @@ public class MainLab extends Laboratory
 				g.add(e);
 			}
 		}
+		// Pipelines loaded from specification files, in the same conditions as above
+		if (!loaded_queries.isEmpty())
+		{
+			ExperimentGroup g = new ExperimentGroup("Loaded pipelines", "Processor chains read from the files given with --pipelines, on all properties, for a fixed queue size and domain size");
+			add(g);
+			Region r = product(
+					extension(QUERY, loaded_queries.toArray()),
+					extension(PROPERTY, NoFullQueues.NAME, Liveness.NAME, BoundedLiveness.NAME),
+					extension(QUEUE_SIZE, 2),
+					extension(DOMAIN_SIZE, 4),
+					extension(K, 3));
+			ExperimentTable et_time = new ExperimentTable(QUERY, PROPERTY, TIME);
+			et_time.setShowInList(false);
+			add(et_time);
+			TransformedTable tt_time = new TransformedTable(new ExpandAsColumns(PROPERTY, TIME), et_time);
+			tt_time.setTitle("Running time by loaded processor chain");
+			tt_time.setNickname("tLoadedTime");
+			add(tt_time);
+			for (Region q_r : r.all(QUERY, PROPERTY))
+			{
+				NuSMVExperiment e = m_factory.get(q_r.asPoint());
+				if (e == null)
+				{
+					continue;
+				}
+				et_time.add(e);
+				g.add(e);
+			}
+		}
 		// Comparison of processor chains on all properties, for a fixed queue size and domain size
 		{
 			ExperimentGroup g = new ExperimentGroup("Impact of query", "Comparison of processor chains on all properties, for a fixed queue size and domain size");
@@ -319,6 +642,82 @@ public class MainLab extends Laboratory
 		add(new TimeStats(this));
 	}
 
+	/**
+	 * For a given processor chain and property, prepares a table and a plot
+	 * that compare the running time by queue size when NuSMV reorders
+	 * variables from scratch, and when it starts from the ordering learned on
+	 * a smaller queue size. Each transfer experiment depends on the dynamic
+	 * experiment of the next smaller queue size, which it runs first if
+	 * needed; the transfer experiment of the smallest queue size has no such
+	 * source, and is left out of the table.
+	 * @param r A region that specifies a unique query, property and domain
+	 * size
+	 * @param g If not null, the group to which the experiments are to be
+	 * added
+	 */
+	protected void setupOrderTransfer(Region r, ExperimentGroup g)
+	{
+		Point p = r.asPoint();
+		String query = p.getString(QUERY);
+		String property = p.getString(PROPERTY);
+		int domain = p.getInt(DOMAIN_SIZE);
+		Region o_r = product(
+				extension(QUERY, query),
+				extension(PROPERTY, property),
+				extension(DOMAIN_SIZE, domain),
+				range(QUEUE_SIZE, 1, 4, 1),
+				extension(ORDERING, VariableOrdering.DYNAMIC, VariableOrdering.TRANSFER));
+		ExperimentTable et = new ExperimentTable(ORDERING, QUEUE_SIZE, TIME);
+		et.setShowInList(false);
+		TransformedTable tt = new TransformedTable(new ExpandAsColumns(ORDERING, TIME), et);
+		tt.setTitle("Running time with order transfer for " + property + " on " + query + " (domain = " + domain + ")");
+		tt.setNickname("tTransfer" + latexify(property + query + "D" + domain));
+		boolean added = false;
+		TreeMap<Integer,NuSMVExperiment> dynamic = new TreeMap<Integer,NuSMVExperiment>();
+		Map<Integer,NuSMVExperiment> transfer = new TreeMap<Integer,NuSMVExperiment>();
+		for (Region t_r : o_r.all(ORDERING, QUEUE_SIZE))
+		{
+			Point t_p = t_r.asPoint();
+			NuSMVExperiment e = m_factory.get(t_p);
+			if (e == null)
+			{
+				continue;
+			}
+			if (t_p.getString(ORDERING).compareTo(VariableOrdering.DYNAMIC) == 0)
+			{
+				dynamic.put(t_p.getInt(QUEUE_SIZE), e);
+				added = true;
+				et.add(e);
+			}
+			else
+			{
+				transfer.put(t_p.getInt(QUEUE_SIZE), e);
+			}
+			if (g != null)
+			{
+				g.add(e);
+			}
+		}
+		for (Map.Entry<Integer,NuSMVExperiment> entry : transfer.entrySet())
+		{
+			// Each transfer starts from the ordering learned on the next smaller queue size
+			Map.Entry<Integer,NuSMVExperiment> source = dynamic.lowerEntry(entry.getKey());
+			if (source == null)
+			{
+				// Nothing to transfer from in the lab: the run would be cold
+				continue;
+			}
+			entry.getValue().setTransferSource(source.getValue());
+			added = true;
+			et.add(entry.getValue());
+		}
+		if (added)
+		{
+			add(et, tt);
+			add(new Plot(tt, new GnuplotScatterplot().setTitle(tt.getTitle()).setCaption(Axis.X, "Queue size").setCaption(Axis.Y, "Time (ms)")).setNickname("p" + tt.getNickname()));
+		}
+	}
+
 	/**
 	 * For a given processor chain and a given list of properties to evaluate,
 	 * prepares a set of tables and plots that compare both verification time
@@ -385,6 +784,10 @@ public class MainLab extends Laboratory
 					add(et_time, tt_time, et_mem, tt_mem, et_space, tt_space);
 					add(plot_time, plot_mem, plot_space);
 				}
+				for (Region t_p : t_r.all(PROPERTY))
+				{
+					setupOrderTransfer(t_p, g_q);
+				}
 			}
 		}
 		{
@@ -504,14 +907,34 @@ public class MainLab extends Laboratory
 		callbacks.add(new ModelDownloadCallback(server));
 		callbacks.add(new InnerFileCallback(server));
 		callbacks.add(new AllQueriesCallback(server));
+		ScheduleCallback schedule = new ScheduleCallback(server, m_threads, m_memoryBudget, m_policy);
+		callbacks.add(schedule);
+		callbacks.add(new ScheduleCallback.Start(server, schedule));
 	}
 
 	@Override
 	public void setupCli(CliParser parser)
 	{
-		parser.addArgument(new Argument().withLongName("with-stats").withDescription("Gather stats about state space size (takes much longer)"));
+		parser.addArgument(new Argument().withLongName("with-stats").withDescription("Gather stats about state space size"));
 		parser.addArgument(new Argument().withLongName("use-nusmv").withDescription("Call NuSMV instead of nuXmv"));
 		parser.addArgument(new Argument().withLongName("with-equivalence").withDescription("Add experiments performing implementation comparison"));
+		parser.addArgument(new Argument().withLongName("observers").withDescription("Add experiments comparing LTL properties written as temporal formulas and checked by observer modules"));
+		parser.addArgument(new Argument().withLongName("invariants").withDescription("Add experiments comparing safety properties written as temporal formulas and as invariants"));
+		parser.addArgument(new Argument().withLongName("batch").withDescription("Check all properties on the same model in a single nuXmv run"));
+		parser.addArgument(new Argument().withLongName("pipelines").withArgument("f").withDescription("Add the processor chains specified in file f, or in the .json files of directory f"));
+		parser.addArgument(new Argument().withLongName("use-sessions").withDescription("Reuse long-lived nuXmv processes instead of starting one per run"));
+		parser.addArgument(new Argument().withLongName("timeout").withArgument("s").withDescription("Kill a nuXmv run after s seconds"));
+		parser.addArgument(new Argument().withLongName("memory-limit").withArgument("m").withDescription("Kill a nuXmv run that uses more than m MB of memory"));
+		parser.addArgument(new Argument().withLongName("model-cache").withArgument("m").withDescription("Keep at most m million characters of model text in memory (default 32)"));
+		parser.addArgument(new Argument().withLongName("cache-dir").withArgument("d").withDescription("Store the results of nuXmv runs in directory d"));
+		parser.addArgument(new Argument().withLongName("remeasure").withDescription("Ignore the results stored in the cache and call nuXmv again"));
+		parser.addArgument(new Argument().withLongName("order-dir").withArgument("d").withDescription("Store the variable orderings learned by nuXmv in directory d"));
+		parser.addArgument(new Argument().withLongName("slice").withDescription("Remove the parts of models that cannot influence the property"));
+		parser.addArgument(new Argument().withLongName("decompose").withDescription("Check the conjuncts of properties separately and at the same time"));
+		parser.addArgument(new Argument().withLongName("reduce-domains").withDescription("Check data-independent properties on the smallest possible domain"));
+		parser.addArgument(new Argument().withLongName("threads").withArgument("n").withDescription("Run n experiments at the same time from the parallel run page"));
+		parser.addArgument(new Argument().withLongName("memory-budget").withArgument("m").withDescription("Limit the predicted memory of concurrent experiments to m MB"));
+		parser.addArgument(new Argument().withLongName("order").withArgument("p").withDescription("Start experiments in parallel runs by shortest or longest first"));
 	}
 
 	public static void main(String[] args)
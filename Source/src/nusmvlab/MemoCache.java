@@ -0,0 +1,170 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+
+/**
+ * A map of values that are computed on demand and then kept. When several
+ * threads ask for the value of the same key at the same time, it is computed
+ * only once: the first thread computes it, and the others wait for its
+ * result. Values for different keys are computed concurrently.
+ * <p>
+ * Contrary to a {@link ConcurrentHashMap}, the cache can hold
+ * <tt>null</tt> values. A computation that throws an exception is not
+ * kept, so that it is attempted again the next time its key is requested.
+ * <p>
+ * The cache can be given a maximum number of values; when this number is
+ * exceeded, the least recently used values are discarded, and are computed
+ * again if they are requested later. This is only appropriate when
+ * computing the same key twice yields an equivalent value.
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public class MemoCache<K,V>
+{
+	/**
+	 * The computations started so far, completed or not, indexed by key.
+	 */
+	protected final ConcurrentMap<K,FutureTask<V>> m_values;
+
+	/**
+	 * The completed computations, from the least to the most recently used.
+	 * This map is only filled if the cache has a maximum size.
+	 */
+	protected final Map<K,FutureTask<V>> m_recent;
+
+	/**
+	 * The maximum number of completed values kept in the cache, or 0 if
+	 * there is no limit.
+	 */
+	protected final int m_maxSize;
+
+	/**
+	 * Creates a new empty cache with no limit on its size.
+	 */
+	public MemoCache()
+	{
+		this(0);
+	}
+
+	/**
+	 * Creates a new empty cache.
+	 * @param max_size The maximum number of values kept in the cache, or 0
+	 * if there is no limit
+	 */
+	public MemoCache(int max_size)
+	{
+		super();
+		m_values = new ConcurrentHashMap<K,FutureTask<V>>();
+		m_recent = new LinkedHashMap<K,FutureTask<V>>(16, 0.75f, true);
+		m_maxSize = max_size;
+	}
+
+	/**
+	 * Gets the value for a key, computing it if no other thread has already
+	 * done so.
+	 * @param key The key
+	 * @param builder The function that computes the value, called at most
+	 * once per key
+	 * @return The value
+	 */
+	public V get(/*@ non_null @*/ K key, /*@ non_null @*/ Supplier<V> builder)
+	{
+		FutureTask<V> task = m_values.get(key);
+		if (task == null)
+		{
+			FutureTask<V> created = new FutureTask<V>(builder::get);
+			task = m_values.putIfAbsent(key, created);
+			if (task == null)
+			{
+				// This thread won the race; the value is computed here
+				task = created;
+				created.run();
+			}
+		}
+		try
+		{
+			V value = task.get();
+			touch(key, task);
+			return value;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (ExecutionException e)
+		{
+			m_values.remove(key, task);
+			Throwable t = e.getCause();
+			if (t instanceof RuntimeException)
+			{
+				throw (RuntimeException) t;
+			}
+			if (t instanceof Error)
+			{
+				throw (Error) t;
+			}
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+	 * Marks a value as the most recently used, and discards the least
+	 * recently used values if the cache exceeds its maximum size.
+	 * @param key The key of the value
+	 * @param task The computation of the value
+	 */
+	protected void touch(K key, FutureTask<V> task)
+	{
+		if (m_maxSize <= 0)
+		{
+			return;
+		}
+		synchronized (m_recent)
+		{
+			m_recent.put(key, task);
+			Iterator<Map.Entry<K,FutureTask<V>>> it = m_recent.entrySet().iterator();
+			while (m_recent.size() > m_maxSize && it.hasNext())
+			{
+				Map.Entry<K,FutureTask<V>> e = it.next();
+				// Only this computation is removed, not one that replaced it
+				m_values.remove(e.getKey(), e.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of keys for which a value is computed or being
+	 * computed.
+	 * @return The number of keys
+	 */
+	public int size()
+	{
+		return m_values.size();
+	}
+}
@@ -48,11 +48,16 @@ public class ModelId
 		}
 		
 		public ModelId(Point p)
+		{
+			this(p, p.getInt(DOMAIN_SIZE));
+		}
+		
+		public ModelId(Point p, int domain_size)
 		{
 			super();
 			m_name = p.getString(QUERY);
 			m_queueSize = p.getInt(QUEUE_SIZE);
-			m_domainSize = p.getInt(DOMAIN_SIZE);
+			m_domainSize = domain_size;
 			m_property = p.getString(PROPERTY);
 			m_k = p.getInt(K);
 		}
@@ -60,7 +65,8 @@ public class ModelId
 		@Override
 		public int hashCode()
 		{
-			return m_name.hashCode();
+			// The property is left out, as it is not always part of the identity
+			return ((m_name.hashCode() * 31 + m_queueSize) * 31 + m_domainSize) * 31 + m_k;
 		}
 		
 		@Override
@@ -0,0 +1,326 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.Module;
+import ca.uqac.lif.nusmv4j.ModuleDomain;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * The metadata of a model, computed in a single traversal of its modules
+ * when the model is created. The index only contains numbers, strings and
+ * arrays of these, so that it is cheap to query, can be shared by all the
+ * providers of the same model and is saved along with the lab. All the
+ * names it contains are canonical, as defined by {@link CanonicalModel};
+ * the pipe IDs are those of the queues at the inputs and outputs of the
+ * chain, which are never renamed.
+ * <p>
+ * An index is never modified after it is created; the only state it
+ * computes afterwards is the set of queue variables, which is built the
+ * first time it is asked for and then shared.
+ */
+public class ModelIndex
+{
+	/**
+	 * The number of modules in the model.
+	 */
+	private final int m_numModules;
+
+	/**
+	 * The number of bits needed to encode each distinct variable of the
+	 * model. The length of the array is the number of variables.
+	 */
+	private final int[] m_variableBits;
+
+	/**
+	 * The number of bits needed to encode a state of the model, that is, the
+	 * base-2 logarithm of the size of its state space.
+	 */
+	private final long m_stateBits;
+
+	/**
+	 * The fully qualified names of the queue flag variables.
+	 */
+	private final String[] m_queueNames;
+
+	/**
+	 * The dimension of each queue flag variable, in the same order as
+	 * {@link #m_queueNames}.
+	 */
+	private final int[] m_queueDimensions;
+
+	/**
+	 * The IDs of the pipes at the inputs of the chain, in increasing order.
+	 */
+	private final int[] m_inputPipeIds;
+
+	/**
+	 * The IDs of the pipes at the outputs of the chain, in increasing order.
+	 */
+	private final int[] m_outputPipeIds;
+
+	/**
+	 * The queue flag variables, created the first time they are asked for.
+	 * This is the only part of the index that is not saved with the lab.
+	 */
+	private transient Set<ArrayVariable> m_queueVariables = null;
+
+	/**
+	 * Builds the index of a model.
+	 * @param model The model
+	 * @param domain_size The size of the domains in the model; non-Boolean
+	 * variables are counted as holding a value of this domain
+	 */
+	public ModelIndex(/*@ non_null @*/ CanonicalModel model, int domain_size)
+	{
+		super();
+		Set<Module> modules = model.getModules();
+		m_numModules = modules == null ? 0 : modules.size();
+		Map<String,Integer> bits = new LinkedHashMap<String,Integer>();
+		Map<String,Integer> queues = new LinkedHashMap<String,Integer>();
+		Set<Integer> inputs = new TreeSet<Integer>();
+		Set<Integer> outputs = new TreeSet<Integer>();
+		int bits_per_value = 32 - Integer.numberOfLeadingZeros(Math.max(2, domain_size) - 1);
+		if (modules != null)
+		{
+			for (Module m : modules)
+			{
+				if (m.getName().compareTo("main") == 0)
+				{
+					for (Variable v : m.getVariables())
+					{
+						String v_name = v.getName();
+						if (v_name.startsWith("inb"))
+						{
+							inputs.add(Integer.parseInt(v_name.substring(4)));
+						}
+						else if (v_name.startsWith("oc"))
+						{
+							outputs.add(Integer.parseInt(v_name.substring(3)));
+						}
+					}
+					visit(model, m, "", bits_per_value, bits, queues);
+					break;
+				}
+			}
+		}
+		m_variableBits = new int[bits.size()];
+		long state_bits = 0;
+		int i = 0;
+		for (int b : bits.values())
+		{
+			m_variableBits[i++] = b;
+			state_bits += b;
+		}
+		m_stateBits = state_bits;
+		m_queueNames = new String[queues.size()];
+		m_queueDimensions = new int[queues.size()];
+		i = 0;
+		for (Map.Entry<String,Integer> e : queues.entrySet())
+		{
+			m_queueNames[i] = e.getKey();
+			m_queueDimensions[i] = e.getValue();
+			i++;
+		}
+		m_inputPipeIds = toArray(inputs);
+		m_outputPipeIds = toArray(outputs);
+	}
+
+	/**
+	 * Empty constructor, used only for deserialization of lab data. The
+	 * fields are given empty values, which the deserializer then replaces.
+	 */
+	protected ModelIndex()
+	{
+		super();
+		m_numModules = 0;
+		m_variableBits = new int[0];
+		m_stateBits = 0;
+		m_queueNames = new String[0];
+		m_queueDimensions = new int[0];
+		m_inputPipeIds = new int[0];
+		m_outputPipeIds = new int[0];
+	}
+
+	/**
+	 * Recursively records the variables of a module and of its submodules.
+	 * @param model The model, used to make names canonical
+	 * @param m The current module
+	 * @param prefix The path of the current module (empty for the main
+	 * module)
+	 * @param bits_per_value The number of bits of a non-Boolean value
+	 * @param bits The map where the number of bits of each variable is added
+	 * @param queues The map where the dimension of each queue flag variable
+	 * is added
+	 */
+	protected static void visit(CanonicalModel model, Module m, String prefix, int bits_per_value, Map<String,Integer> bits, Map<String,Integer> queues)
+	{
+		for (Variable v : m.getVariables())
+		{
+			int size = v.getDomain() instanceof BooleanDomain ? 1 : bits_per_value;
+			if (v instanceof ArrayVariable)
+			{
+				int dimension = ((ArrayVariable) v).getDimension();
+				size *= dimension;
+				if (v.getName().startsWith("bfb_"))
+				{
+					queues.put(model.rename(prefix + v.getName()), dimension);
+				}
+			}
+			bits.put(prefix + m.getName() + "." + v.getName(), size);
+		}
+		for (Map.Entry<String,ModuleDomain> e : m.getSubModules().entrySet())
+		{
+			visit(model, (Module) e.getValue().getModule(), prefix + e.getKey() + ".", bits_per_value, bits, queues);
+		}
+	}
+
+	/**
+	 * Gets the number of modules in the model.
+	 * @return The number of modules
+	 */
+	public int getNumModules()
+	{
+		return m_numModules;
+	}
+
+	/**
+	 * Gets the number of distinct variables in the model.
+	 * @return The number of variables
+	 */
+	public int getNumVariables()
+	{
+		return m_variableBits.length;
+	}
+
+	/**
+	 * Gets the number of bits needed to encode a variable of the model.
+	 * @param index The index of the variable, between 0 and
+	 * {@link #getNumVariables()}
+	 * @return The number of bits
+	 */
+	public int getVariableBits(int index)
+	{
+		return m_variableBits[index];
+	}
+
+	/**
+	 * Gets the number of bits needed to encode a state of the model.
+	 * @return The base-2 logarithm of the size of the state space
+	 */
+	public long getStateBits()
+	{
+		return m_stateBits;
+	}
+
+	/**
+	 * Gets the number of queue flag variables in the model.
+	 * @return The number of variables
+	 */
+	public int getNumQueueVariables()
+	{
+		return m_queueNames.length;
+	}
+
+	/**
+	 * Gets the name of a queue flag variable.
+	 * @param index The index of the variable, between 0 and
+	 * {@link #getNumQueueVariables()}
+	 * @return The fully qualified name of the variable
+	 */
+	/*@ non_null @*/ public String getQueueName(int index)
+	{
+		return m_queueNames[index];
+	}
+
+	/**
+	 * Gets the dimension of a queue flag variable.
+	 * @param index The index of the variable, between 0 and
+	 * {@link #getNumQueueVariables()}
+	 * @return The dimension
+	 */
+	public int getQueueDimension(int index)
+	{
+		return m_queueDimensions[index];
+	}
+
+	/**
+	 * Gets the queue flag variables of the model. The variables are created
+	 * the first time this method is called, and the same set is returned
+	 * afterwards.
+	 * @return An unmodifiable set of variables
+	 */
+	/*@ non_null @*/ public synchronized Set<ArrayVariable> getQueueVariables()
+	{
+		if (m_queueVariables == null)
+		{
+			Set<ArrayVariable> vars = new LinkedHashSet<ArrayVariable>();
+			for (int i = 0; i < m_queueNames.length; i++)
+			{
+				// Queue flags are Boolean
+				vars.add(new ArrayVariable(m_queueNames[i], BooleanDomain.instance, m_queueDimensions[i]));
+			}
+			m_queueVariables = Collections.unmodifiableSet(vars);
+		}
+		return m_queueVariables;
+	}
+
+	/**
+	 * Gets the IDs of the pipes at the inputs of the chain.
+	 * @return A copy of the IDs, in increasing order
+	 */
+	/*@ non_null @*/ public int[] getInputPipeIds()
+	{
+		return Arrays.copyOf(m_inputPipeIds, m_inputPipeIds.length);
+	}
+
+	/**
+	 * Gets the IDs of the pipes at the outputs of the chain.
+	 * @return A copy of the IDs, in increasing order
+	 */
+	/*@ non_null @*/ public int[] getOutputPipeIds()
+	{
+		return Arrays.copyOf(m_outputPipeIds, m_outputPipeIds.length);
+	}
+
+	/**
+	 * Copies a set of integers into an array.
+	 * @param set The set
+	 * @return The array
+	 */
+	/*@ non_null @*/ protected static int[] toArray(/*@ non_null @*/ Set<Integer> set)
+	{
+		int[] a = new int[set.size()];
+		int i = 0;
+		for (int n : set)
+		{
+			a[i++] = n;
+		}
+		return a;
+	}
+}
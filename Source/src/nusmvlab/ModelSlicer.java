@@ -0,0 +1,1015 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Removes from an SMV model the parts that cannot influence the verdict of
+ * a property. The slicer computes the <em>cone of influence</em> of the
+ * property: the variables it mentions, the variables their assignments
+ * read, and so on. Variables outside the cone are dropped with their
+ * assignments, and so are submodule instances that contain nothing from
+ * the cone. A variable outside the cone that is still passed as an
+ * argument to a remaining instance is kept, but its assignments are
+ * dropped, which turns it into a free variable.
+ * <p>
+ * The model is sliced at the level of its text, since the modules produced
+ * by the translation of a pipeline do not expose their assignments. The
+ * cone is computed on the instances of the modules, but a module is printed
+ * once for all its instances; a part of a module is therefore kept as soon
+ * as it is in the cone for one of its instances. Arrays are treated as a
+ * whole, and the variables of <tt>INIT</tt>, <tt>INVAR</tt>,
+ * <tt>TRANS</tt> and fairness constraints are always in the cone, as these
+ * constraints restrict the executions of the whole model.
+ */
+public class ModelSlicer
+{
+	/**
+	 * The keywords that start a section of a module.
+	 */
+	protected static final transient Pattern s_sectionPattern = Pattern.compile("\\b(MODULE|VAR|IVAR|FROZENVAR|DEFINE|ASSIGN|INIT|INVAR|TRANS|FAIRNESS|JUSTICE|COMPASSION|CONSTANTS|CTLSPEC|LTLSPEC|INVARSPEC|SPEC)\\b");
+
+	/**
+	 * The pattern of identifiers, possibly made of several dotted parts.
+	 */
+	protected static final transient Pattern s_identifierPattern = Pattern.compile("(?<![A-Za-z0-9_$#.])[A-Za-z_][A-Za-z0-9_$#]*(\\.[A-Za-z_][A-Za-z0-9_$#]*)*");
+
+	/**
+	 * The keywords and operators of the SMV language that match the pattern
+	 * of identifiers.
+	 */
+	protected static final transient Set<String> s_keywords = new HashSet<String>(Arrays.asList(
+			"array", "of", "boolean", "integer", "real", "word", "unsigned", "signed", "process",
+			"case", "esac", "next", "init", "self", "TRUE", "FALSE", "mod", "xor", "xnor", "in",
+			"union", "count", "toint", "bool", "resize", "extend", "swconst", "uwconst", "max", "min",
+			"A", "E", "F", "G", "X", "U", "V", "Y", "Z", "H", "O", "S", "T", "AG", "AF", "AX", "AU",
+			"EG", "EF", "EX", "EU", "ABF", "ABG", "EBF", "EBG"));
+
+	/**
+	 * The sections whose contents are a list of statements ending with a
+	 * semicolon.
+	 */
+	protected static final transient Set<String> s_listSections = new HashSet<String>(Arrays.asList(
+			"VAR", "IVAR", "FROZENVAR", "DEFINE", "ASSIGN"));
+
+	/**
+	 * The sections that declare variables.
+	 */
+	protected static final transient Set<String> s_varSections = new HashSet<String>(Arrays.asList(
+			"VAR", "IVAR", "FROZENVAR"));
+
+	/**
+	 * The sections whose variables are always in the cone of influence.
+	 */
+	protected static final transient Set<String> s_constraintSections = new HashSet<String>(Arrays.asList(
+			"INIT", "INVAR", "TRANS", "FAIRNESS", "JUSTICE", "COMPASSION"));
+
+	/**
+	 * The modules of the model, indexed by name, in the order in which they
+	 * appear.
+	 */
+	protected final Map<String,SmvModule> m_modules;
+
+	/**
+	 * The instances of modules, starting with the main module.
+	 */
+	protected final List<Instance> m_instances;
+
+	/**
+	 * The variables and definitions each symbol directly depends on.
+	 */
+	protected final Map<String,Set<String>> m_dependencies;
+
+	/**
+	 * For each formal parameter of an instance, the symbols passed to it.
+	 */
+	protected final Map<String,Set<String>> m_aliases;
+
+	/**
+	 * The symbols that are defined with <tt>DEFINE</tt>.
+	 */
+	protected final Set<String> m_defines;
+
+	/**
+	 * The symbols that must be in the cone of influence whatever the
+	 * property.
+	 */
+	protected final Set<String> m_seeds;
+
+	/**
+	 * The number of variables in the model, counted once per instance.
+	 */
+	protected int m_variablesBefore = 0;
+
+	/**
+	 * The number of variables in the last sliced model, counted once per
+	 * instance.
+	 */
+	protected int m_variablesAfter = 0;
+
+	/**
+	 * Creates a new slicer for a model.
+	 * @param model The text of the model, without its specifications
+	 */
+	public ModelSlicer(/*@ non_null @*/ String model)
+	{
+		super();
+		m_modules = new LinkedHashMap<String,SmvModule>();
+		m_instances = new ArrayList<Instance>();
+		m_dependencies = new HashMap<String,Set<String>>();
+		m_aliases = new HashMap<String,Set<String>>();
+		m_defines = new HashSet<String>();
+		m_seeds = new HashSet<String>();
+		parse(model);
+		SmvModule main = m_modules.get("main");
+		if (main != null)
+		{
+			instantiate(new Instance("", main, new HashMap<String,Set<String>>()));
+			for (Instance inst : m_instances)
+			{
+				addDependencies(inst);
+				m_variablesBefore += inst.m_module.m_variables.size();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of variables in the model, counted once per instance.
+	 * @return The number of variables
+	 */
+	public int getVariablesBefore()
+	{
+		return m_variablesBefore;
+	}
+
+	/**
+	 * Gets the number of variables in the last sliced model, counted once
+	 * per instance.
+	 * @return The number of variables
+	 */
+	public int getVariablesAfter()
+	{
+		return m_variablesAfter;
+	}
+
+	/**
+	 * Slices the model with respect to a set of specifications.
+	 * @param spec The text of the specifications; they are interpreted in
+	 * the context of the main module
+	 * @return The text of the sliced model
+	 */
+	/*@ non_null @*/ public String slice(/*@ non_null @*/ String spec)
+	{
+		if (m_instances.isEmpty())
+		{
+			// Nothing was understood of the model; leave it as is
+			return printModules(null, null, null, null);
+		}
+		Set<String> cone = new HashSet<String>(m_seeds);
+		cone.addAll(resolve(m_instances.get(0), spec));
+		Set<String> kept_locals = new HashSet<String>();
+		Set<String> freed_locals = new HashSet<String>();
+		Set<String> kept_instances = new HashSet<String>();
+		Set<String> kept_formals = new HashSet<String>();
+		boolean changed = true;
+		while (changed)
+		{
+			closeCone(cone);
+			Set<String> prefixes = getPrefixes(cone);
+			kept_locals.clear();
+			freed_locals.clear();
+			kept_instances.clear();
+			kept_formals.clear();
+			for (Instance inst : m_instances)
+			{
+				for (String local : inst.m_module.m_locals.keySet())
+				{
+					String sym = qualify(inst.m_path, local);
+					if (inst.m_module.m_submodules.containsKey(local))
+					{
+						if (prefixes.contains(sym))
+						{
+							kept_instances.add(inst.m_module.m_name + "#" + local);
+						}
+					}
+					else if (cone.contains(sym))
+					{
+						kept_locals.add(inst.m_module.m_name + "#" + local);
+					}
+				}
+				for (Map.Entry<String,Set<String>> e : inst.m_binding.entrySet())
+				{
+					for (String actual : e.getValue())
+					{
+						if (cone.contains(actual))
+						{
+							kept_formals.add(inst.m_module.m_name + "#" + e.getKey());
+						}
+					}
+				}
+			}
+			// The arguments of the remaining instances must still be declared
+			changed = false;
+			for (Instance inst : m_instances)
+			{
+				for (Map.Entry<String,String> e : inst.m_module.m_submodules.entrySet())
+				{
+					if (!kept_instances.contains(inst.m_module.m_name + "#" + e.getKey()))
+					{
+						continue;
+					}
+					for (String sym : resolve(inst, e.getValue()))
+					{
+						if (cone.contains(sym))
+						{
+							continue;
+						}
+						if (m_defines.contains(sym))
+						{
+							cone.add(sym);
+							changed = true;
+						}
+						else
+						{
+							freed_locals.add(getOwner(sym));
+						}
+					}
+				}
+			}
+		}
+		freed_locals.removeAll(kept_locals);
+		return printModules(kept_locals, freed_locals, kept_instances, kept_formals);
+	}
+
+	/**
+	 * Adds to a set of symbols all the symbols they transitively depend on.
+	 * @param cone The set of symbols
+	 */
+	protected void closeCone(Set<String> cone)
+	{
+		Deque<String> to_visit = new ArrayDeque<String>(cone);
+		while (!to_visit.isEmpty())
+		{
+			String sym = to_visit.pop();
+			Set<String> deps = m_dependencies.get(sym);
+			if (deps == null)
+			{
+				continue;
+			}
+			for (String d : deps)
+			{
+				if (cone.add(d))
+				{
+					to_visit.push(d);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets all the instance paths that are a strict prefix of a symbol in a
+	 * set.
+	 * @param symbols The symbols
+	 * @return The set of prefixes
+	 */
+	protected static Set<String> getPrefixes(Set<String> symbols)
+	{
+		Set<String> prefixes = new HashSet<String>();
+		for (String sym : symbols)
+		{
+			int pos = sym.lastIndexOf('.');
+			while (pos > 0 && prefixes.add(sym.substring(0, pos)))
+			{
+				pos = sym.lastIndexOf('.', pos - 1);
+			}
+		}
+		return prefixes;
+	}
+
+	/**
+	 * Gets the module-level name of the local symbol an instance-level
+	 * symbol refers to.
+	 * @param sym The instance-level symbol
+	 * @return The name of the module and the name of the symbol in that
+	 * module, separated by <tt>#</tt>
+	 */
+	protected String getOwner(String sym)
+	{
+		for (Instance inst : m_instances)
+		{
+			String prefix = inst.m_path.isEmpty() ? "" : inst.m_path + ".";
+			if (sym.startsWith(prefix))
+			{
+				String local = sym.substring(prefix.length());
+				if (inst.m_module.m_locals.containsKey(local))
+				{
+					return inst.m_module.m_name + "#" + local;
+				}
+			}
+		}
+		return sym;
+	}
+
+	/**
+	 * Prints the modules of the model, keeping only some of their parts.
+	 * When all the arguments are <tt>null</tt>, the model is printed as is.
+	 * @param kept_locals The variables and definitions to keep with their
+	 * assignments
+	 * @param freed_locals The variables to keep without their assignments
+	 * @param kept_instances The submodule instances to keep
+	 * @param kept_formals The formal parameters whose assignments are kept
+	 * @return The text of the model
+	 */
+	protected String printModules(Set<String> kept_locals, Set<String> freed_locals, Set<String> kept_instances, Set<String> kept_formals)
+	{
+		boolean all = kept_locals == null;
+		// Only the modules that are still instantiated are printed; instances
+		// are listed with each parent before its children
+		Set<String> live = new HashSet<String>();
+		Set<String> used_modules = new HashSet<String>();
+		live.add("");
+		m_variablesAfter = 0;
+		for (Instance inst : m_instances)
+		{
+			if (!live.contains(inst.m_path))
+			{
+				continue;
+			}
+			used_modules.add(inst.m_module.m_name);
+			for (String local : inst.m_module.m_variables)
+			{
+				String key = inst.m_module.m_name + "#" + local;
+				if (all || kept_locals.contains(key) || freed_locals.contains(key))
+				{
+					m_variablesAfter++;
+				}
+			}
+			for (String local : inst.m_module.m_submodules.keySet())
+			{
+				if (all || kept_instances.contains(inst.m_module.m_name + "#" + local))
+				{
+					live.add(qualify(inst.m_path, local));
+				}
+			}
+		}
+		StringBuilder out = new StringBuilder();
+		for (SmvModule m : m_modules.values())
+		{
+			if (!all && m.m_name.compareTo("main") != 0 && !used_modules.contains(m.m_name))
+			{
+				continue;
+			}
+			out.append(m.m_header).append("\n");
+			for (Section s : m.m_sections)
+			{
+				List<String> statements = new ArrayList<String>();
+				for (Statement st : s.m_statements)
+				{
+					if (all || st.m_local == null || isKept(m, s.m_keyword, st, kept_locals, freed_locals, kept_instances, kept_formals))
+					{
+						statements.add(st.m_text);
+					}
+				}
+				if (statements.isEmpty() && !s.m_statements.isEmpty())
+				{
+					continue;
+				}
+				out.append(s.m_keyword).append("\n");
+				for (String st : statements)
+				{
+					out.append("  ").append(st);
+					if (s_listSections.contains(s.m_keyword))
+					{
+						out.append(";");
+					}
+					out.append("\n");
+				}
+			}
+			out.append("\n");
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Determines if a statement of a module is kept in the sliced model.
+	 * @param m The module
+	 * @param section The section containing the statement
+	 * @param st The statement
+	 * @param kept_locals The variables and definitions to keep with their
+	 * assignments
+	 * @param freed_locals The variables to keep without their assignments
+	 * @param kept_instances The submodule instances to keep
+	 * @param kept_formals The formal parameters whose assignments are kept
+	 * @return <tt>true</tt> if the statement is kept, <tt>false</tt>
+	 * otherwise
+	 */
+	protected static boolean isKept(SmvModule m, String section, Statement st, Set<String> kept_locals, Set<String> freed_locals, Set<String> kept_instances, Set<String> kept_formals)
+	{
+		String key = m.m_name + "#" + st.m_local;
+		if (s_varSections.contains(section))
+		{
+			if (m.m_submodules.containsKey(st.m_local))
+			{
+				return kept_instances.contains(key);
+			}
+			return kept_locals.contains(key) || freed_locals.contains(key);
+		}
+		if (m.m_params.contains(st.m_local))
+		{
+			return kept_formals.contains(key);
+		}
+		if (m.m_submodules.containsKey(st.m_local))
+		{
+			// Assignment to a variable of a submodule; kept with the submodule
+			return kept_instances.contains(key);
+		}
+		return kept_locals.contains(key);
+	}
+
+	/**
+	 * Creates an instance of a module, and recursively all the instances of
+	 * its submodules.
+	 * @param inst The instance
+	 */
+	protected void instantiate(Instance inst)
+	{
+		m_instances.add(inst);
+		for (Map.Entry<String,Set<String>> e : inst.m_binding.entrySet())
+		{
+			m_aliases.put(qualify(inst.m_path, e.getKey()), e.getValue());
+		}
+		for (Map.Entry<String,String> e : inst.m_module.m_submodules.entrySet())
+		{
+			String path = qualify(inst.m_path, e.getKey());
+			SmvModule sub = m_modules.get(inst.m_module.m_submoduleTypes.get(e.getKey()));
+			List<String> args = splitArguments(e.getValue());
+			Map<String,Set<String>> binding = new HashMap<String,Set<String>>();
+			for (int i = 0; i < sub.m_params.size() && i < args.size(); i++)
+			{
+				binding.put(sub.m_params.get(i), resolve(inst, args.get(i)));
+			}
+			instantiate(new Instance(path, sub, binding));
+		}
+	}
+
+	/**
+	 * Records the dependencies between the symbols of an instance.
+	 * @param inst The instance
+	 */
+	protected void addDependencies(Instance inst)
+	{
+		for (Section s : inst.m_module.m_sections)
+		{
+			if (s_constraintSections.contains(s.m_keyword))
+			{
+				for (Statement st : s.m_statements)
+				{
+					m_seeds.addAll(resolve(inst, st.m_text));
+				}
+				continue;
+			}
+			if (s.m_keyword.compareTo("DEFINE") == 0)
+			{
+				for (Statement st : s.m_statements)
+				{
+					String sym = qualify(inst.m_path, st.m_local);
+					m_defines.add(sym);
+					addDependencies(sym, resolve(inst, st.m_body));
+				}
+				continue;
+			}
+			if (s.m_keyword.compareTo("ASSIGN") == 0)
+			{
+				for (Statement st : s.m_statements)
+				{
+					Set<String> reads = resolve(inst, st.m_body);
+					// Indices in the target are read as well
+					int bracket = st.m_target.indexOf('[');
+					if (bracket >= 0)
+					{
+						reads.addAll(resolve(inst, st.m_target.substring(bracket)));
+					}
+					Set<String> targets = resolve(inst, bracket >= 0 ? st.m_target.substring(0, bracket) : st.m_target);
+					if (st.m_target.indexOf('.') >= 0)
+					{
+						// Assignment to a variable of a submodule; always kept
+						m_seeds.addAll(targets);
+						m_seeds.addAll(reads);
+					}
+					for (String target : targets)
+					{
+						addDependencies(target, reads);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records that a symbol depends on other symbols.
+	 * @param sym The symbol
+	 * @param deps The symbols it depends on
+	 */
+	protected void addDependencies(String sym, Set<String> deps)
+	{
+		Set<String> set = m_dependencies.get(sym);
+		if (set == null)
+		{
+			set = new HashSet<String>();
+			m_dependencies.put(sym, set);
+		}
+		set.addAll(deps);
+	}
+
+	/**
+	 * Finds the instance-level symbols mentioned in an expression.
+	 * @param inst The instance in the context of which the expression is
+	 * evaluated
+	 * @param expression The expression
+	 * @return The set of symbols
+	 */
+	/*@ non_null @*/ protected Set<String> resolve(Instance inst, String expression)
+	{
+		Set<String> symbols = new HashSet<String>();
+		Matcher mat = s_identifierPattern.matcher(expression);
+		while (mat.find())
+		{
+			String id = mat.group();
+			if (s_keywords.contains(id))
+			{
+				continue;
+			}
+			int dot = id.indexOf('.');
+			String first = dot < 0 ? id : id.substring(0, dot);
+			String rest = dot < 0 ? "" : id.substring(dot);
+			Set<String> actuals = inst.m_binding.get(first);
+			if (actuals != null)
+			{
+				for (String a : actuals)
+				{
+					symbols.add(a + rest);
+				}
+			}
+			else if (inst.m_module.m_locals.containsKey(first))
+			{
+				String sym = qualify(inst.m_path, id);
+				Set<String> aliased = m_aliases.get(sym);
+				if (aliased != null)
+				{
+					symbols.addAll(aliased);
+				}
+				else
+				{
+					symbols.add(sym);
+				}
+			}
+		}
+		return symbols;
+	}
+
+	/**
+	 * Gets the instance-level name of a symbol.
+	 * @param path The path of the instance
+	 * @param local The name of the symbol in its module
+	 * @return The instance-level name
+	 */
+	protected static String qualify(String path, String local)
+	{
+		if (path.isEmpty())
+		{
+			return local;
+		}
+		return path + "." + local;
+	}
+
+	/**
+	 * Parses the text of a model into modules.
+	 * @param model The text of the model
+	 */
+	protected void parse(String model)
+	{
+		String text = model.replaceAll("--[^\\n]*", "");
+		Matcher mat = s_sectionPattern.matcher(text);
+		List<Integer> starts = new ArrayList<Integer>();
+		while (mat.find())
+		{
+			starts.add(mat.start());
+		}
+		SmvModule current = null;
+		for (int i = 0; i < starts.size(); i++)
+		{
+			int end = i + 1 < starts.size() ? starts.get(i + 1) : text.length();
+			String chunk = text.substring(starts.get(i), end).trim();
+			mat.reset(chunk);
+			mat.lookingAt();
+			String keyword = mat.group(1);
+			String body = chunk.substring(keyword.length()).trim();
+			if (keyword.compareTo("MODULE") == 0)
+			{
+				current = new SmvModule(chunk);
+				m_modules.put(current.m_name, current);
+				continue;
+			}
+			if (current == null)
+			{
+				continue;
+			}
+			current.m_sections.add(new Section(keyword, body));
+		}
+		// Instances can only be recognized once all module names are known
+		for (SmvModule m : m_modules.values())
+		{
+			m.indexSymbols(m_modules.keySet());
+		}
+	}
+
+	/**
+	 * Splits a list of arguments at the commas that are not nested inside
+	 * parentheses or brackets.
+	 * @param args The list of arguments, without the enclosing parentheses
+	 * @return The arguments
+	 */
+	/*@ non_null @*/ protected static List<String> splitArguments(String args)
+	{
+		List<String> out = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < args.length(); i++)
+		{
+			char c = args.charAt(i);
+			if (c == '(' || c == '[' || c == '{')
+			{
+				depth++;
+			}
+			else if (c == ')' || c == ']' || c == '}')
+			{
+				depth--;
+			}
+			else if (c == ',' && depth == 0)
+			{
+				out.add(args.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		String last = args.substring(start).trim();
+		if (!last.isEmpty())
+		{
+			out.add(last);
+		}
+		return out;
+	}
+
+	/**
+	 * Splits the contents of a section into statements ending with a
+	 * semicolon that is not nested inside an expression.
+	 * @param body The contents of the section
+	 * @return The statements, without their semicolon
+	 */
+	/*@ non_null @*/ protected static List<String> splitStatements(String body)
+	{
+		List<String> out = new ArrayList<String>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < body.length(); i++)
+		{
+			char c = body.charAt(i);
+			if (c == '(' || c == '[' || c == '{')
+			{
+				depth++;
+			}
+			else if (c == ')' || c == ']' || c == '}')
+			{
+				depth--;
+			}
+			else if (body.startsWith("case", i) && isWordAt(body, i, 4))
+			{
+				depth++;
+			}
+			else if (body.startsWith("esac", i) && isWordAt(body, i, 4))
+			{
+				depth--;
+			}
+			else if (c == ';' && depth == 0)
+			{
+				String st = body.substring(start, i).trim();
+				if (!st.isEmpty())
+				{
+					out.add(st);
+				}
+				start = i + 1;
+			}
+		}
+		String last = body.substring(start).trim();
+		if (!last.isEmpty())
+		{
+			out.add(last);
+		}
+		return out;
+	}
+
+	/**
+	 * Determines if a portion of a string is a whole word.
+	 * @param s The string
+	 * @param start The start of the portion
+	 * @param length The length of the portion
+	 * @return <tt>true</tt> if the portion is not preceded or followed by a
+	 * character that can be part of an identifier
+	 */
+	protected static boolean isWordAt(String s, int start, int length)
+	{
+		return (start == 0 || !isIdentifierChar(s.charAt(start - 1)))
+				&& (start + length >= s.length() || !isIdentifierChar(s.charAt(start + length)));
+	}
+
+	/**
+	 * Determines if a character can be part of an identifier.
+	 * @param c The character
+	 * @return <tt>true</tt> if it can, <tt>false</tt> otherwise
+	 */
+	protected static boolean isIdentifierChar(char c)
+	{
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#';
+	}
+
+	/**
+	 * A module of the model, as read from its text.
+	 */
+	protected static class SmvModule
+	{
+		/**
+		 * The pattern of the header of a module.
+		 */
+		protected static final transient Pattern s_headerPattern = Pattern.compile("MODULE\\s+([A-Za-z_][A-Za-z0-9_$#\\-]*)\\s*(\\((.*)\\))?", Pattern.DOTALL);
+
+		/**
+		 * The header of the module, as it appears in the text.
+		 */
+		protected final String m_header;
+
+		/**
+		 * The name of the module.
+		 */
+		protected final String m_name;
+
+		/**
+		 * The formal parameters of the module.
+		 */
+		protected final List<String> m_params;
+
+		/**
+		 * The sections of the module, in order.
+		 */
+		protected final List<Section> m_sections;
+
+		/**
+		 * The names of the symbols declared in the module, associated to the
+		 * section that declares them.
+		 */
+		protected final Map<String,String> m_locals;
+
+		/**
+		 * The variables declared in the module, excluding submodule
+		 * instances.
+		 */
+		protected final List<String> m_variables;
+
+		/**
+		 * The arguments of each submodule instance.
+		 */
+		protected final Map<String,String> m_submodules;
+
+		/**
+		 * The module of each submodule instance.
+		 */
+		protected final Map<String,String> m_submoduleTypes;
+
+		/**
+		 * Creates a module from its header.
+		 * @param header The header
+		 */
+		public SmvModule(String header)
+		{
+			super();
+			m_header = header.trim();
+			m_params = new ArrayList<String>();
+			m_sections = new ArrayList<Section>();
+			m_locals = new HashMap<String,String>();
+			m_variables = new ArrayList<String>();
+			m_submodules = new LinkedHashMap<String,String>();
+			m_submoduleTypes = new HashMap<String,String>();
+			Matcher mat = s_headerPattern.matcher(m_header);
+			if (!mat.matches())
+			{
+				throw new IllegalArgumentException("Cannot read module header " + m_header);
+			}
+			m_name = mat.group(1);
+			if (mat.group(3) != null)
+			{
+				m_params.addAll(splitArguments(mat.group(3)));
+			}
+		}
+
+		/**
+		 * Finds the symbols declared in the module.
+		 * @param module_names The names of all the modules of the model
+		 */
+		protected void indexSymbols(Set<String> module_names)
+		{
+			for (Section s : m_sections)
+			{
+				for (Statement st : s.m_statements)
+				{
+					if (st.m_local == null)
+					{
+						continue;
+					}
+					if (s_varSections.contains(s.m_keyword))
+					{
+						m_locals.put(st.m_local, s.m_keyword);
+						String type = st.m_body.trim();
+						if (type.startsWith("process "))
+						{
+							type = type.substring(8).trim();
+						}
+						int paren = type.indexOf('(');
+						String type_name = (paren < 0 ? type : type.substring(0, paren)).trim();
+						if (module_names.contains(type_name))
+						{
+							m_submodules.put(st.m_local, paren < 0 ? "" : type.substring(paren + 1, type.lastIndexOf(')')));
+							m_submoduleTypes.put(st.m_local, type_name);
+						}
+						else
+						{
+							m_variables.add(st.m_local);
+						}
+					}
+					else if (s.m_keyword.compareTo("DEFINE") == 0)
+					{
+						m_locals.put(st.m_local, s.m_keyword);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A section of a module.
+	 */
+	protected static class Section
+	{
+		/**
+		 * The keyword that starts the section.
+		 */
+		protected final String m_keyword;
+
+		/**
+		 * The statements of the section. Sections that are not lists of
+		 * statements contain a single statement.
+		 */
+		protected final List<Statement> m_statements;
+
+		/**
+		 * Creates a section.
+		 * @param keyword The keyword that starts the section
+		 * @param body The contents of the section
+		 */
+		public Section(String keyword, String body)
+		{
+			super();
+			m_keyword = keyword;
+			m_statements = new ArrayList<Statement>();
+			if (s_listSections.contains(keyword))
+			{
+				for (String st : splitStatements(body))
+				{
+					m_statements.add(new Statement(keyword, st));
+				}
+			}
+			else if (!body.isEmpty())
+			{
+				m_statements.add(new Statement(keyword, body));
+			}
+		}
+	}
+
+	/**
+	 * A statement of a section.
+	 */
+	protected static class Statement
+	{
+		/**
+		 * The text of the statement, without its semicolon.
+		 */
+		protected final String m_text;
+
+		/**
+		 * The name of the symbol declared or assigned by the statement, or
+		 * <tt>null</tt> if the statement is not about a single symbol.
+		 */
+		protected String m_local = null;
+
+		/**
+		 * The symbol declared or assigned by the statement, as written, with
+		 * its indices.
+		 */
+		protected String m_target = null;
+
+		/**
+		 * The right-hand side of the statement.
+		 */
+		protected String m_body = null;
+
+		/**
+		 * Creates a statement.
+		 * @param keyword The keyword of the section containing the statement
+		 * @param text The text of the statement
+		 */
+		public Statement(String keyword, String text)
+		{
+			super();
+			m_text = text;
+			String separator = s_varSections.contains(keyword) ? ":" : ":=";
+			int pos = text.indexOf(separator);
+			if (!s_listSections.contains(keyword) || pos < 0)
+			{
+				return;
+			}
+			String lhs = text.substring(0, pos).trim();
+			m_body = text.substring(pos + separator.length());
+			if (lhs.startsWith("init(") || lhs.startsWith("next("))
+			{
+				lhs = lhs.substring(5, lhs.lastIndexOf(')')).trim();
+			}
+			m_target = lhs;
+			int end = 0;
+			while (end < lhs.length() && lhs.charAt(end) != '[' && lhs.charAt(end) != '.')
+			{
+				end++;
+			}
+			m_local = lhs.substring(0, end).trim();
+		}
+	}
+
+	/**
+	 * An instance of a module.
+	 */
+	protected static class Instance
+	{
+		/**
+		 * The path of the instance from the main module; empty for the main
+		 * module itself.
+		 */
+		protected final String m_path;
+
+		/**
+		 * The module this is an instance of.
+		 */
+		protected final SmvModule m_module;
+
+		/**
+		 * The symbols passed to each formal parameter of the module.
+		 */
+		protected final Map<String,Set<String>> m_binding;
+
+		/**
+		 * Creates an instance.
+		 * @param path The path of the instance
+		 * @param module The module this is an instance of
+		 * @param binding The symbols passed to each formal parameter
+		 */
+		public Instance(String path, SmvModule module, Map<String,Set<String>> binding)
+		{
+			super();
+			m_path = path;
+			m_module = module;
+			m_binding = binding;
+		}
+	}
+}
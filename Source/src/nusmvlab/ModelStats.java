@@ -177,7 +177,7 @@ public class ModelStats extends MacroGroup
 		@Override
 		protected void aggregate(NuSMVExperiment ne, BeepBeepModelProvider bmp)
 		{
-			m_value = Math.max(m_value, bmp.getModules().size());
+			m_value = Math.max(m_value, bmp.getIndex().getNumModules());
 		}
 	}
 	
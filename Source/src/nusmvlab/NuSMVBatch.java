@@ -0,0 +1,325 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.labpal.experiment.ExperimentException;
+import nusmvlab.PropertyProvider.Logic;
+
+/**
+ * A group of experiments that evaluate different properties on the same
+ * model. Instead of calling NuSMV once per experiment, the batch writes a
+ * single model containing the specifications of all its experiments, so
+ * that NuSMV parses the model and builds its BDD only once. Each property
+ * is then checked separately with <tt>check_property -n</tt>, and NuSMV's
+ * <tt>time</tt> command is used to measure the shared build time and the
+ * time taken by each individual check.
+ * <p>
+ * The batch is run by the first of its experiments to execute; the results
+ * for the other experiments are kept until these experiments execute in
+ * turn and pick them up. Experiments whose results are taken from the
+ * result cache are left out of the batch, so that no result is kept for an
+ * experiment that will never pick it up.
+ */
+public class NuSMVBatch
+{
+	/**
+	 * The experiments that are part of this batch, in the order in which
+	 * their specifications are written to the model.
+	 */
+	protected final List<NuSMVExperiment> m_experiments;
+
+	/**
+	 * The portion of NuSMV's output corresponding to each experiment, for
+	 * the experiments that have not yet picked up their results.
+	 */
+	protected final Map<NuSMVExperiment,Result> m_results;
+
+	/**
+	 * The experiments of this batch whose results were taken from the result
+	 * cache, and which are therefore not checked when NuSMV is called.
+	 */
+	protected final Set<NuSMVExperiment> m_cached;
+
+	/**
+	 * Creates a new empty batch.
+	 */
+	public NuSMVBatch()
+	{
+		super();
+		m_experiments = new ArrayList<NuSMVExperiment>();
+		m_results = new HashMap<NuSMVExperiment,Result>();
+		m_cached = new HashSet<NuSMVExperiment>();
+	}
+
+	/**
+	 * Adds an experiment to the batch.
+	 * @param e The experiment
+	 */
+	public synchronized void add(NuSMVExperiment e)
+	{
+		if (!m_experiments.contains(e))
+		{
+			m_experiments.add(e);
+		}
+	}
+
+	/**
+	 * Gets the number of experiments in this batch.
+	 * @return The number of experiments
+	 */
+	public synchronized int size()
+	{
+		return m_experiments.size();
+	}
+
+	/**
+	 * Records that the results of an experiment of this batch were taken
+	 * from the result cache. The experiment is left out of the next calls to
+	 * NuSMV, and any result already produced for it is dropped.
+	 * @param e The experiment
+	 */
+	public synchronized void setCached(NuSMVExperiment e)
+	{
+		m_cached.add(e);
+		m_results.remove(e);
+	}
+
+	/**
+	 * Fills the results of an experiment of this batch, running NuSMV on
+	 * the whole batch if these results are not already available.
+	 * @param e The experiment
+	 * @throws ExperimentException Thrown if the call to NuSMV did not succeed
+	 */
+	public synchronized void execute(NuSMVExperiment e) throws ExperimentException
+	{
+		m_cached.remove(e);
+		if (!m_results.containsKey(e))
+		{
+			run(e);
+		}
+		Result r = m_results.remove(e);
+		if (r == null)
+		{
+			throw new ExperimentException("No result was produced for this experiment");
+		}
+		e.writeMeasure(NuSMVExperiment.BATCH_SIZE, r.m_batchSize);
+		// The model file is shared by the whole batch
+		e.m_modelSize = r.m_modelSize;
+		e.m_writeTime = r.m_writeTime;
+		if (r.m_limit != null)
+		{
+			e.writeLimitExceeded(r.m_limit);
+			return;
+		}
+		e.parseCheckResults(r.m_check);
+		e.writeMeasure(NuSMVExperiment.TIME, r.m_checkTime);
+		e.writeMeasure(NuSMVExperiment.BUILD_TIME, r.m_buildTime);
+		r.m_usage.fillExperiment(e);
+		if (r.m_stats != null)
+		{
+			e.parseStatsResults(r.m_stats);
+		}
+	}
+
+	/**
+	 * Runs NuSMV on a model containing the specifications of all the
+	 * experiments in the batch that do not have their results yet, and
+	 * splits its output among them.
+	 * @param leader The experiment on behalf of which NuSMV is called
+	 * @throws ExperimentException Thrown if the call to NuSMV did not succeed
+	 */
+	protected void run(NuSMVExperiment leader) throws ExperimentException
+	{
+		List<NuSMVExperiment> members = new ArrayList<NuSMVExperiment>();
+		for (NuSMVExperiment e : m_experiments)
+		{
+			if (!m_cached.contains(e) && (e == leader || !m_results.containsKey(e)))
+			{
+				members.add(e);
+			}
+		}
+		String specs;
+		try
+		{
+			ByteArrayOutputStream specs_baos = new ByteArrayOutputStream();
+			PrintStream specs_ps = new PrintStream(specs_baos, true, "UTF-8");
+			for (NuSMVExperiment e : members)
+			{
+				specs_ps.println();
+				e.printSpec(specs_ps);
+			}
+			specs_ps.close();
+			specs = specs_baos.toString("UTF-8");
+		}
+		catch (IOException ex)
+		{
+			throw new ExperimentException(ex);
+		}
+		NuSMVExperiment.Printer printer = ps ->
+		{
+			if (NuSMVExperiment.s_slicing)
+			{
+				// The model must keep what any of the properties depends on
+				ps.print(leader.sliceModel(specs));
+			}
+			else
+			{
+				leader.getModelProvider().printToFile(ps);
+			}
+			ps.print(specs);
+		};
+		String model_filename = leader.writeModelFile(printer).getFilename();
+		List<String> commands = new ArrayList<String>();
+		for (String c : leader.getBuildCommands())
+		{
+			commands.add(c);
+		}
+		commands.add("time");
+		for (int i = 0; i < members.size(); i++)
+		{
+			// Properties are numbered in the order of the model, whatever their kind
+			Logic logic = members.get(i).getPropertyProvider().getLogic();
+			commands.add(Engine.getCheckCommand(leader.getEngine(), logic) + " -n " + i);
+			commands.add("time");
+		}
+		if (leader.m_withStats)
+		{
+			for (String c : leader.getStatsCommands())
+			{
+				commands.add(c);
+			}
+		}
+		NuSMVOutputParser parser;
+		try
+		{
+			parser = leader.runCommands(model_filename, commands.toArray(new String[commands.size()]));
+		}
+		catch (ResourceLimitException ex)
+		{
+			// The limit applies to the whole batch; every experiment is censored
+			for (NuSMVExperiment e : members)
+			{
+				m_results.put(e, new Result(ex, leader, members.size()));
+			}
+			return;
+		}
+		List<NuSMVOutputParser.Section> sections = parser.getSections();
+		if (sections.size() != members.size() + 2)
+		{
+			throw new ExperimentException("NuSMV did not complete the batch of commands");
+		}
+		NuSMVOutputParser.Section stats = leader.m_withStats ? parser.getLastSection() : null;
+		long build_time = sections.get(0).getElapsed();
+		for (int i = 0; i < members.size(); i++)
+		{
+			m_results.put(members.get(i), new Result(sections.get(i + 1), build_time, stats, leader, members.size()));
+		}
+	}
+
+	/**
+	 * The portion of NuSMV's output pertaining to a single experiment.
+	 */
+	protected static class Result
+	{
+		/**
+		 * The data extracted from the check of the experiment's property.
+		 */
+		protected final NuSMVOutputParser.Section m_check;
+
+		/**
+		 * The time (in ms) shared by all experiments to build the model.
+		 */
+		protected final long m_buildTime;
+
+		/**
+		 * The time (in ms) taken to check the experiment's property.
+		 */
+		protected final long m_checkTime;
+
+		/**
+		 * The data extracted from the stats gathering commands, or
+		 * <tt>null</tt> if no stats were gathered.
+		 */
+		protected final NuSMVOutputParser.Section m_stats;
+
+		/**
+		 * The resources consumed by the NuSMV process that ran the whole
+		 * batch.
+		 */
+		protected final ResourceUsage m_usage;
+
+		/**
+		 * The exception raised if the NuSMV process was killed for exceeding
+		 * a limit, or <tt>null</tt> otherwise.
+		 */
+		protected final ResourceLimitException m_limit;
+
+		/**
+		 * The size of the model file of the batch.
+		 */
+		protected final long m_modelSize;
+
+		/**
+		 * The time (in &micro;s) taken to write the model file of the batch.
+		 */
+		protected final long m_writeTime;
+
+		/**
+		 * The number of properties checked in the call to NuSMV.
+		 */
+		protected final int m_batchSize;
+
+		public Result(NuSMVOutputParser.Section check, long build_time, NuSMVOutputParser.Section stats, NuSMVExperiment leader, int batch_size)
+		{
+			super();
+			m_check = check;
+			m_buildTime = build_time;
+			m_checkTime = check.getElapsed();
+			m_stats = stats;
+			m_usage = leader.m_usage;
+			m_limit = null;
+			m_modelSize = leader.m_modelSize;
+			m_writeTime = leader.m_writeTime;
+			m_batchSize = batch_size;
+		}
+
+		public Result(ResourceLimitException limit, NuSMVExperiment leader, int batch_size)
+		{
+			super();
+			m_check = null;
+			m_buildTime = -1;
+			m_checkTime = -1;
+			m_stats = null;
+			m_usage = limit.getUsage();
+			m_limit = limit;
+			m_modelSize = leader.m_modelSize;
+			m_writeTime = leader.m_writeTime;
+			m_batchSize = batch_size;
+		}
+	}
+}
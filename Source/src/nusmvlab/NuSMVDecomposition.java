@@ -0,0 +1,378 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.uqac.lif.labpal.experiment.ExperimentException;
+import ca.uqac.lif.labpal.util.FileHelper;
+
+/**
+ * Checks a property made of a conjunction by checking each of its conjuncts
+ * separately. One NuSMV process is started for each conjunct, on a model
+ * that contains only this conjunct as its specification; the number of
+ * processes running at the same time is bounded by
+ * {@link #setMaxProcesses(int)}, and the {@link ExperimentScheduler}
+ * reserves that many of its slots for the experiment. As soon as one
+ * conjunct is found to be false, the property is false and the remaining
+ * processes are killed. The time and memory limits of the experiment apply
+ * to each process separately. The model files of the conjuncts are deleted
+ * once the check is over.
+ */
+public class NuSMVDecomposition
+{
+	/**
+	 * The experiment whose property is checked.
+	 */
+	protected final NuSMVExperiment m_experiment;
+
+	/**
+	 * The conjuncts of the property.
+	 */
+	protected final List<Formula> m_conjuncts;
+
+	/**
+	 * The NuSMV processes started so far.
+	 */
+	protected final List<Process> m_processes;
+
+	/**
+	 * Whether the check is over, in which case no new process must be
+	 * started.
+	 */
+	protected boolean m_stopped = false;
+
+	/**
+	 * The maximum number of NuSMV processes that the check of a single
+	 * property runs at the same time.
+	 */
+	protected static transient int s_maxProcesses = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Creates a new decomposition.
+	 * @param e The experiment whose property is checked
+	 * @param conjuncts The conjuncts of the property
+	 */
+	public NuSMVDecomposition(/*@ non_null @*/ NuSMVExperiment e, /*@ non_null @*/ List<Formula> conjuncts)
+	{
+		super();
+		m_experiment = e;
+		m_conjuncts = conjuncts;
+		m_processes = new ArrayList<Process>();
+	}
+
+	/**
+	 * Checks all the conjuncts of the property.
+	 * @return The outcome of the check
+	 * @throws ResourceLimitException Thrown if no conjunct was found to be
+	 * false and at least one process was killed for exceeding a limit
+	 * @throws ExperimentException Thrown if a model could not be written, if
+	 * a conjunct could not be checked, or if the check was interrupted
+	 */
+	/*@ non_null @*/ public Outcome run() throws ExperimentException
+	{
+		String source_filename = NuSMVExperiment.TMP_DIR + NuSMVExperiment.FILE_SEPARATOR + "source-" + m_experiment.getId() + "-conjuncts.smv";
+		List<String> model_filenames = new ArrayList<String>(m_conjuncts.size());
+		try
+		{
+			// The commands do not write the ordering learned by NuSMV, as all the processes would write the same file
+			FileHelper.writeFromString(new File(source_filename), NuSMVExperiment.toSourceScript(m_experiment.getCheckCommands(m_experiment.getEngine())));
+			for (int i = 0; i < m_conjuncts.size(); i++)
+			{
+				String model_filename = NuSMVExperiment.TMP_DIR + NuSMVExperiment.FILE_SEPARATOR + "model-" + m_experiment.getId() + "-" + i + ".smv";
+				Formula conjunct = m_conjuncts.get(i);
+				model_filenames.add(model_filename);
+				m_experiment.writeFile(new File(model_filename), ps -> m_experiment.printConjunctModel(conjunct, ps));
+			}
+			return check(source_filename, model_filenames);
+		}
+		finally
+		{
+			FileHelper.deleteFile(source_filename);
+			for (String model_filename : model_filenames)
+			{
+				FileHelper.deleteFile(model_filename);
+			}
+		}
+	}
+
+	/**
+	 * Runs NuSMV on the model files of the conjuncts, with at most
+	 * {@link #getProcesses(int)} processes at the same time.
+	 * @param source_filename The file containing the commands to run
+	 * @param model_filenames The model files, one for each conjunct
+	 * @return The outcome of the check
+	 * @throws ResourceLimitException Thrown if no conjunct was found to be
+	 * false and at least one process was killed for exceeding a limit
+	 * @throws ExperimentException Thrown if a process could not be run, or
+	 * if the check was interrupted
+	 */
+	/*@ non_null @*/ protected Outcome check(String source_filename, List<String> model_filenames) throws ExperimentException
+	{
+		long start = System.currentTimeMillis();
+		ExecutorService pool = Executors.newFixedThreadPool(getProcesses(m_conjuncts.size()));
+		CompletionService<Run> runs = new ExecutorCompletionService<Run>(pool);
+		for (String model_filename : model_filenames)
+		{
+			runs.submit(() -> runConjunct(source_filename, model_filename));
+		}
+		List<ResourceUsage> usages = new ArrayList<ResourceUsage>();
+		ResourceLimitException limit = null;
+		NuSMVOutputParser.Section false_section = null;
+		boolean all_true = true;
+		int checked = 0;
+		try
+		{
+			for (int i = 0; i < m_conjuncts.size() && false_section == null; i++)
+			{
+				Run r = runs.take().get();
+				if (r == null)
+				{
+					continue;
+				}
+				checked++;
+				usages.add(r.m_usage);
+				String verdict = r.m_section.getVerdict();
+				if (verdict != null && verdict.compareTo("False") == 0)
+				{
+					false_section = r.m_section;
+				}
+				else if (verdict == null)
+				{
+					all_true = false;
+					if (limit == null)
+					{
+						limit = r.m_limit;
+					}
+				}
+			}
+		}
+		catch (ExecutionException e)
+		{
+			// A conjunct that could not be checked leaves the verdict undecided
+			throw new ExperimentException(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ExperimentException(e);
+		}
+		finally
+		{
+			stop();
+			pool.shutdownNow();
+		}
+		ResourceUsage usage = ResourceUsage.combine(usages, System.currentTimeMillis() - start);
+		if (false_section != null)
+		{
+			return new Outcome(false_section, checked, usage);
+		}
+		if (limit != null)
+		{
+			throw limit;
+		}
+		NuSMVOutputParser.Section section = new NuSMVOutputParser.Section();
+		section.m_verdict = all_true ? "True" : null;
+		return new Outcome(section, checked, usage);
+	}
+
+	/**
+	 * Sets the maximum number of NuSMV processes that the check of a single
+	 * property may run at the same time.
+	 * @param processes The number of processes
+	 */
+	public static void setMaxProcesses(int processes)
+	{
+		s_maxProcesses = Math.max(1, processes);
+	}
+
+	/**
+	 * Gets the number of NuSMV processes that the check of a property run
+	 * at the same time.
+	 * @param conjuncts The number of conjuncts of the property
+	 * @return The number of processes
+	 */
+	public static int getProcesses(int conjuncts)
+	{
+		return Math.max(1, Math.min(conjuncts, s_maxProcesses));
+	}
+
+	/**
+	 * Checks a single conjunct of the property.
+	 * @param source_filename The file containing the commands to run
+	 * @param model_filename The model file, whose specification is the
+	 * conjunct
+	 * @return The run, or <tt>null</tt> if the check was over before the
+	 * process could start
+	 * @throws IOException Thrown if the process could not be started
+	 * @throws InterruptedException Thrown if the thread was interrupted
+	 */
+	protected Run runConjunct(String source_filename, String model_filename) throws IOException, InterruptedException
+	{
+		Process p;
+		synchronized (m_processes)
+		{
+			if (m_stopped)
+			{
+				return null;
+			}
+			p = NuSMVExperiment.getProcessBuilder(source_filename, model_filename).start();
+			m_processes.add(p);
+		}
+		ProcessWatchdog watchdog = new ProcessWatchdog(p, NuSMVExperiment.s_timeLimit, NuSMVExperiment.s_memoryLimit).start();
+		NuSMVOutputParser parser = new NuSMVOutputParser();
+		p.getOutputStream().close();
+		try (InputStream is = p.getInputStream())
+		{
+			parser.parse(is);
+		}
+		watchdog.sample();
+		p.waitFor();
+		watchdog.stop();
+		ResourceLimitException limit = null;
+		if (watchdog.getExceededLimit() != null)
+		{
+			limit = new ResourceLimitException(watchdog);
+		}
+		return new Run(parser.getLastSection(), watchdog.getUsage(), limit);
+	}
+
+	/**
+	 * Ends the check by killing all the processes still running.
+	 */
+	protected void stop()
+	{
+		synchronized (m_processes)
+		{
+			m_stopped = true;
+			for (Process p : m_processes)
+			{
+				p.destroyForcibly();
+			}
+		}
+	}
+
+	/**
+	 * The outcome of the check of a single conjunct.
+	 */
+	protected static class Run
+	{
+		/**
+		 * The data extracted from the output of NuSMV.
+		 */
+		protected final NuSMVOutputParser.Section m_section;
+
+		/**
+		 * The resources consumed by the process.
+		 */
+		protected final ResourceUsage m_usage;
+
+		/**
+		 * The exception describing the limit exceeded by the process, or
+		 * <tt>null</tt> if the process ran to completion.
+		 */
+		protected final ResourceLimitException m_limit;
+
+		/**
+		 * Creates a new run.
+		 * @param section The data extracted from the output of NuSMV
+		 * @param usage The resources consumed by the process
+		 * @param limit The exception describing the limit exceeded by the
+		 * process, or <tt>null</tt>
+		 */
+		public Run(NuSMVOutputParser.Section section, ResourceUsage usage, ResourceLimitException limit)
+		{
+			super();
+			m_section = section;
+			m_usage = usage;
+			m_limit = limit;
+		}
+	}
+
+	/**
+	 * The outcome of the check of the whole property.
+	 */
+	public static class Outcome
+	{
+		/**
+		 * The section of output giving the verdict: that of the first
+		 * conjunct found to be false, if any.
+		 */
+		protected final NuSMVOutputParser.Section m_section;
+
+		/**
+		 * The number of conjuncts checked before the verdict was reached.
+		 */
+		protected final int m_checked;
+
+		/**
+		 * The resources consumed by all the processes.
+		 */
+		protected final ResourceUsage m_usage;
+
+		/**
+		 * Creates a new outcome.
+		 * @param section The section of output giving the verdict
+		 * @param checked The number of conjuncts checked
+		 * @param usage The resources consumed by all the processes
+		 */
+		public Outcome(NuSMVOutputParser.Section section, int checked, ResourceUsage usage)
+		{
+			super();
+			m_section = section;
+			m_checked = checked;
+			m_usage = usage;
+		}
+
+		/**
+		 * Gets the section of output giving the verdict.
+		 * @return The section
+		 */
+		public NuSMVOutputParser.Section getSection()
+		{
+			return m_section;
+		}
+
+		/**
+		 * Gets the number of conjuncts checked before the verdict was reached.
+		 * @return The number of conjuncts
+		 */
+		public int getChecked()
+		{
+			return m_checked;
+		}
+
+		/**
+		 * Gets the resources consumed by all the processes.
+		 * @return The resource usage
+		 */
+		public ResourceUsage getUsage()
+		{
+			return m_usage;
+		}
+	}
+}
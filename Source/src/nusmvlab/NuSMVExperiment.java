@@ -17,16 +17,30 @@
  */
 package nusmvlab;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import ca.uqac.lif.labpal.Stateful.Status;
 import ca.uqac.lif.labpal.experiment.Experiment;
 import ca.uqac.lif.labpal.experiment.ExperimentException;
-import ca.uqac.lif.labpal.util.CommandRunner;
 import ca.uqac.lif.labpal.util.FileHelper;
 import nusmvlab.PropertyProvider.Logic;
 
@@ -81,55 +95,173 @@ public class NuSMVExperiment extends Experiment
 	 */
 	public static final transient String SYSTEM_DIAMETER = "System diameter";
 
+	/**
+	 * The name of attribute "Startup time saved".
+	 */
+	public static final transient String STARTUP_TIME_SAVED = "Startup time saved";
+
+	/**
+	 * The name of attribute "Model size".
+	 */
+	public static final transient String MODEL_SIZE = "Model size";
+
+	/**
+	 * The name of attribute "Model write time".
+	 */
+	public static final transient String MODEL_WRITE_TIME = "Model write time";
+
+	/**
+	 * The name of attribute "Build time".
+	 */
+	public static final transient String BUILD_TIME = "Build time";
+
+	/**
+	 * The name of attribute "Batch size".
+	 */
+	public static final transient String BATCH_SIZE = "Batch size";
+
+	/**
+	 * The name of attribute "Cached".
+	 */
+	public static final transient String CACHED = "Cached";
+
+	/**
+	 * The name of attribute "User time".
+	 */
+	public static final transient String USER_TIME = "User time";
+
+	/**
+	 * The name of attribute "System time".
+	 */
+	public static final transient String SYSTEM_TIME = "System time";
+
+	/**
+	 * The name of attribute "Wall time".
+	 */
+	public static final transient String WALL_TIME = "Wall time";
+
+	/**
+	 * The name of attribute "Peak memory".
+	 */
+	public static final transient String PEAK_MEMORY = "Peak memory";
+
+	/**
+	 * The name of parameter "Order source".
+	 */
+	public static final transient String ORDER_SOURCE = "Order source";
+
+	/**
+	 * The name of parameter "Variables before slicing".
+	 */
+	public static final transient String VARIABLES_BEFORE_SLICING = "Variables before slicing";
+
+	/**
+	 * The name of parameter "Variables after slicing".
+	 */
+	public static final transient String VARIABLES_AFTER_SLICING = "Variables after slicing";
+
+	/**
+	 * The name of parameter "Conjuncts".
+	 */
+	public static final transient String CONJUNCTS = "Conjuncts";
+
+	/**
+	 * The name of parameter "Conjuncts checked".
+	 */
+	public static final transient String CONJUNCTS_CHECKED = "Conjuncts checked";
+
 	/**
 	 * The command to call to run NuSMV from the command line.
 	 */
 	public static transient String NUSMV_PATH = "nuXmv";
 
 	/**
-	 * The name of the OS's temporary directory.
+	 * A pool of long-lived NuSMV processes. When set to <tt>null</tt>, a new
+	 * NuSMV process is started for every call.
 	 */
-	protected static final transient String TMP_DIR = System.getProperty("java.io.tmpdir");
+	protected static transient NuSMVSessionPool s_sessionPool = null;
 
 	/**
-	 * The OS-dependent file separator character.
+	 * The cache where the results of experiments are stored from one
+	 * execution of the lab to the next, or <tt>null</tt> to always call
+	 * NuSMV.
 	 */
-	protected static final transient String FILE_SEPARATOR = System.getProperty("file.separator");
+	protected static transient ResultCache s_resultCache = null;
+
+	/**
+	 * The store of the variable orderings learned by NuSMV, or <tt>null</tt>
+	 * to never transfer orderings from one experiment to another.
+	 */
+	protected static transient OrderStore s_orderStore = null;
+
+	/**
+	 * The model that predicts the cost of experiments from the ones that
+	 * have completed, or <tt>null</tt> if costs are not predicted.
+	 */
+	protected static transient CostModel s_costModel = null;
+
+	/**
+	 * Whether models are sliced with respect to the property before being
+	 * given to NuSMV.
+	 */
+	protected static transient boolean s_slicing = false;
+
+	/**
+	 * Whether the conjuncts of a property are checked separately and at the
+	 * same time.
+	 */
+	protected static transient boolean s_decomposition = false;
 
 	/**
-	 * The regex pattern to read memory consumption from NuSMV's output
+	 * The maximum wall-clock time (in ms) a NuSMV process may run for a
+	 * single experiment, or 0 for no limit.
 	 */
-	protected static final transient Pattern s_memoryPattern = Pattern.compile("Memory in use: (\\d+)");
+	protected static transient long s_timeLimit = 0;
 
 	/**
-	 * The regex pattern to read total nodes from NuSMV's output
+	 * The maximum resident memory (in kB) a NuSMV process may use for a
+	 * single experiment, or 0 for no limit.
 	 */
-	protected static final transient Pattern s_totalNodesPattern = Pattern.compile("Peak number of nodes: (\\d+)");
+	protected static transient long s_memoryLimit = 0;
 
 	/**
-	 * The regex pattern to read live nodes from NuSMV's output
+	 * The name of the OS's temporary directory.
 	 */
-	protected static final transient Pattern s_liveNodesPattern = Pattern.compile("Peak number of live nodes: (\\d+)");
+	protected static final transient String TMP_DIR = System.getProperty("java.io.tmpdir");
 
 	/**
-	 * The regex pattern to identify states of a counter-example trace
+	 * The OS-dependent file separator character.
 	 */
-	protected static final transient Pattern s_witnessPattern = Pattern.compile("State: (\\d+)\\.(\\d+)");
+	protected static final transient String FILE_SEPARATOR = System.getProperty("file.separator");
 
 	/**
-	 * The regex pattern to identify system diameter
+	 * The size of the buffer through which models are written.
 	 */
-	protected static final transient Pattern s_diameterPattern = Pattern.compile("system diameter: (\\d+)");
+	protected static final transient int WRITE_BUFFER_SIZE = 64 * 1024;
 
 	/**
-	 * The regex pattern to identify system diameter
+	 * The directory where the model files of this run are written, or
+	 * <tt>null</tt> if it has not been created yet.
 	 */
-	protected static final transient Pattern s_reachableStatesPattern = Pattern.compile("reachable states: .*?\\^([\\d\\.]+)");
+	protected static transient File s_modelDir = null;
 
 	/**
-	 * The regex pattern to identify system diameter
+	 * A stream that discards everything written to it.
 	 */
-	protected static final transient Pattern s_totalStatesPattern = Pattern.compile("out of .*?\\^([\\d\\.]+)");
+	protected static final transient OutputStream s_discard = new OutputStream()
+	{
+		@Override
+		public void write(int b)
+		{
+			// Discard
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			// Discard
+		}
+	};
 
 	/**
 	 * An object that provides a NuSMV model to the experiment.
@@ -155,6 +287,78 @@ public class NuSMVExperiment extends Experiment
 	 */
 	protected boolean m_computeReachable = true;
 
+	/**
+	 * The verification engine used to check the property.
+	 */
+	protected String m_engine = Engine.BDD;
+
+	/**
+	 * The ordering of BDD variables passed to NuSMV.
+	 */
+	protected String m_ordering = VariableOrdering.DEFAULT;
+
+	/**
+	 * The ordering taken from the order store and given to NuSMV as the
+	 * starting point of dynamic reordering, or <tt>null</tt> if there is
+	 * none.
+	 */
+	protected transient List<String> m_transferredOrder = null;
+
+	/**
+	 * The experiment that learns the ordering this experiment starts from,
+	 * when its ordering is transferred, or <tt>null</tt> if there is none.
+	 */
+	protected transient NuSMVExperiment m_transferSource = null;
+
+	/**
+	 * The cumulative startup time of the NuSMV processes that were reused
+	 * instead of being started anew by this experiment.
+	 */
+	protected transient long m_startupTimeSaved = 0;
+
+	/**
+	 * The number of bytes of model files written for the last execution of
+	 * this experiment.
+	 */
+	protected transient long m_modelSize = 0;
+
+	/**
+	 * The time (in &micro;s) spent writing model files for the last
+	 * execution of this experiment.
+	 */
+	protected transient long m_writeTime = 0;
+
+	/**
+	 * The batch of experiments sharing the same model this experiment belongs
+	 * to, or <tt>null</tt> if the experiment calls NuSMV on its own.
+	 */
+	protected transient NuSMVBatch m_batch = null;
+
+	/**
+	 * The resources consumed by the NuSMV process during the last call, or
+	 * <tt>null</tt> if they could not be measured.
+	 */
+	protected transient ResourceUsage m_usage = null;
+
+	/**
+	 * The values measured by NuSMV during the last execution of this
+	 * experiment, to be stored in the result cache.
+	 */
+	protected transient Map<String,Object> m_measures = null;
+
+	/**
+	 * A lock held while the experiment executes. The lab's own queue and
+	 * the "Parallel run" page may both start the same experiment; the lock
+	 * makes the second of them wait for the first instead of calling NuSMV
+	 * a second time.
+	 */
+	protected final transient Object m_executionLock = new Object();
+
+	/**
+	 * The number of executions of this experiment that have completed.
+	 */
+	protected transient volatile int m_executions = 0;
+
 	/**
 	 * Creates a new instance of NuSMVExperiment.
 	 * @param model  An object that provides a NuSMV file to the experiment
@@ -175,10 +379,40 @@ public class NuSMVExperiment extends Experiment
 		describe(REACHABLE_STATES, "The base-2 logarithm of the number of reachable states in the NuSMV model");
 		describe(TOTAL_STATES, "The base-2 logarithm of the total number of states in the NuSMV model");
 		describe(SYSTEM_DIAMETER, "The system diameter of the NuSMV model");
+		describe(STARTUP_TIME_SAVED, "The time (in ms) saved by reusing running NuSMV processes instead of starting new ones");
+		describe(MODEL_SIZE, "The number of bytes of the model files given to NuSMV");
+		describe(MODEL_WRITE_TIME, "The time (in µs) spent writing the model files given to NuSMV");
+		describe(BUILD_TIME, "The time (in ms) taken by NuSMV to build the model, shared by all the experiments of a batch");
+		describe(BATCH_SIZE, "The number of properties checked on the same model in a single call to NuSMV");
+		describe(CACHED, "Whether the results were taken from the result cache instead of being measured");
+		describe(USER_TIME, "The CPU time (in ms) spent by the NuSMV process in user mode");
+		describe(SYSTEM_TIME, "The CPU time (in ms) spent by the NuSMV process in kernel mode");
+		describe(WALL_TIME, "The wall-clock time (in ms) of the NuSMV process, from its start to its end");
+		describe(PEAK_MEMORY, "The peak resident memory (in kB) of the NuSMV process; when several processes run at the same time, that of the largest one");
+		describe(StaticCheck.STATICALLY_DECIDED, "Whether the verdict was obtained from the formula of the property alone, without calling NuSMV");
+		if (s_slicing)
+		{
+			describe(VARIABLES_BEFORE_SLICING, "The number of variables in the model, counted once per module instance, before slicing");
+			describe(VARIABLES_AFTER_SLICING, "The number of variables in the model, counted once per module instance, after slicing");
+		}
+		if (s_decomposition)
+		{
+			describe(CONJUNCTS, "The number of conjuncts of the property that are checked separately");
+			describe(CONJUNCTS_CHECKED, "The number of conjuncts that were checked before the verdict was reached");
+		}
 		m_modelProvider = model;
 		m_propertyProvider = property;
 		m_modelProvider.fillExperiment(this);
 		m_propertyProvider.fillExperiment(this);
+		describe(PropertyProvider.SPEC_FORM, "Whether the property is written as a temporal formula, as a state invariant, or checked by observer modules");
+		if (property instanceof ObserverCompiler.ObserverProperty)
+		{
+			writeInput(PropertyProvider.SPEC_FORM, PropertyProvider.OBSERVER);
+		}
+		else
+		{
+			writeInput(PropertyProvider.SPEC_FORM, property.getLogic() == Logic.INVAR ? PropertyProvider.INVARIANT : PropertyProvider.TEMPORAL);
+		}
 		m_withStats = with_stats;
 	}
 	
@@ -193,271 +427,1424 @@ public class NuSMVExperiment extends Experiment
 	@Override
 	public void execute() throws ExperimentException
 	{
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		PrintStream ps = null;
-		try
+		int executions = m_executions;
+		synchronized (m_executionLock)
 		{
-			ps = new PrintStream(baos, true, "UTF-8");
-			printModel(ps);
-			ps.close();
+			if (m_executions != executions && m_measures != null)
+			{
+				// Executed by another runner while this one was waiting
+				for (Map.Entry<String,Object> entry : m_measures.entrySet())
+				{
+					writeOutput(entry.getKey(), entry.getValue());
+				}
+				return;
+			}
+			executeAlone();
+			m_executions++;
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * Executes the experiment, assuming that no other thread is executing
+	 * it at the same time.
+	 * @throws ExperimentException Thrown if the experiment could not be
+	 * executed
+	 */
+	protected void executeAlone() throws ExperimentException
+	{
+		m_startupTimeSaved = 0;
+		m_modelSize = 0;
+		m_writeTime = 0;
+		m_usage = null;
+		m_measures = new LinkedHashMap<String,Object>();
+		Formula decided = StaticCheck.decide(m_propertyProvider);
+		if (decided != null)
 		{
-			throw new ExperimentException(e);
+			writeMeasure(VERDICT, decided == Formula.TRUE ? "True" : "False");
+			writeMeasure(WITNESS_LENGTH, 0);
+			writeMeasure(TIME, 0);
+			writeMeasure(StaticCheck.STATICALLY_DECIDED, true);
+			writeMeasure(CACHED, false);
+			return;
+		}
+		writeMeasure(StaticCheck.STATICALLY_DECIDED, false);
+		if (m_ordering.compareTo(VariableOrdering.TRANSFER) == 0)
+		{
+			prepareTransfer();
 		}
-		String model = baos.toString();
-		long start_time = System.currentTimeMillis();
-		String output = runNuSMV(model, getSourceCheckFilename());
-		long end_time = System.currentTimeMillis();
-		parseCheckResults(output);
-		writeOutput(TIME, end_time - start_time);
-		if (m_withStats)
+		String key = null;
+		if (s_resultCache != null)
 		{
-			output = runNuSMV(model, getSourceStatsFilename());
-			parseStatsResults(output);
+			// Looking up the cache only needs the digest; the model file is written on a miss
+			key = getCacheKey(getModelDigest());
+			Map<String,Object> cached = s_resultCache.get(key);
+			if (cached != null && !isLearnedOrderMissing())
+			{
+				// Recorded as measures, so that a runner waiting for this one replays them
+				for (Map.Entry<String,Object> entry : cached.entrySet())
+				{
+					writeMeasure(entry.getKey(), entry.getValue());
+				}
+				writeMeasure(CACHED, true);
+				if (m_batch != null)
+				{
+					m_batch.setCached(this);
+				}
+				// The cost was recorded when the result was measured
+				return;
+			}
 		}
+		if (m_batch != null)
+		{
+			// The batch writes a file of its own, with the properties of all its members
+			m_batch.execute(this);
+		}
+		else
+		{
+			measure(writeModelFile(this::printModel).getFilename());
+		}
+		if (VariableOrdering.isDynamic(m_ordering))
+		{
+			saveLearnedOrder();
+		}
+		if (s_resultCache != null)
+		{
+			s_resultCache.put(key, m_measures);
+		}
+		// These values describe this run, and are not stored in the cache
+		writeMeasure(MODEL_SIZE, m_modelSize);
+		writeMeasure(MODEL_WRITE_TIME, m_writeTime);
+		writeMeasure(CACHED, false);
+		recordCost();
 	}
 
 	/**
-	 * Prints the complete NuSMV model of this experiment.
-	 * @param ps The print stream where the model is to be printed 
-	 * @throws IOException Thrown if printing the model did not succeed
+	 * Adds the cost of this experiment to the samples of the cost model, if
+	 * any.
 	 */
-	public void printModel(PrintStream ps) throws IOException
+	protected void recordCost()
 	{
-		m_modelProvider.printToFile(ps);
-		ps.println();
-		if (m_propertyProvider.getLogic() == Logic.CTL)
-		{
-			ps.println("CTLSPEC");
-		}
-		else
+		if (s_costModel != null)
 		{
-			ps.println("LTLSPEC");
+			s_costModel.record(this);
 		}
-		m_propertyProvider.printToFile(ps);
 	}
 
 	/**
-	 * Runs NuSMV on a model file. The model file is first written to an external
-	 * file, after which NuSMV is called and its output is parsed to extract some
-	 * data about its execution.
-	 * @param model The model to process with NuSMV
-	 * @param source_filename
-	 * @throws ExperimentException Thrown if the call to NuSMV did not succeed
-	 * for some reason
+	 * Determines if this experiment learns an ordering that is not in the
+	 * order store. Such an experiment is measured even if its result is in
+	 * the cache, since the cache does not hold orderings, and experiments
+	 * that transfer from it would otherwise run cold.
+	 * @return <tt>true</tt> if the ordering is missing, <tt>false</tt>
+	 * otherwise
+	 */
+	protected boolean isLearnedOrderMissing()
+	{
+		return s_orderStore != null && VariableOrdering.isDynamic(m_ordering) && m_modelProvider instanceof BeepBeepModelProvider
+				&& !s_orderStore.contains(getConfiguration());
+	}
+
+	/**
+	 * Looks for an ordering learned on a smaller configuration of the same
+	 * query, and makes NuSMV start from this ordering. If this experiment has
+	 * a transfer source that has not run yet, the source is run first, so
+	 * that the result does not depend on the order in which experiments are
+	 * scheduled.
+	 * @throws ExperimentException Thrown if the ordering could not be read
 	 */
-	protected String runNuSMV(String model, String source_filename) throws ExperimentException
+	protected void prepareTransfer() throws ExperimentException
 	{
-		CommandRunner runner = getRunner(false, model, source_filename);
-		runner.run();
-		byte[] bytes = runner.getBytes();
-		if (bytes == null)
+		m_transferredOrder = null;
+		if (m_transferSource != null && m_transferSource.getStatus() != Status.DONE)
 		{
-			throw new ExperimentException("The call to NuSMV returned null");
+			m_transferSource.run();
 		}
-		String output = new String(bytes);
-		int outcode = runner.getErrorCode();
-		if (outcode != 0)
+		OrderStore.Configuration source = null;
+		if (s_orderStore != null)
 		{
-			throw new ExperimentException("NuSMV exited with code " + outcode);
+			source = s_orderStore.getSource(getConfiguration());
 		}
-		return output;
+		if (source != null)
+		{
+			try
+			{
+				List<String> reference = ((BeepBeepModelProvider) m_modelProvider).getVariableOrder(VariableOrdering.TOPOLOGICAL);
+				m_transferredOrder = OrderStore.instantiate(s_orderStore.get(source), reference);
+			}
+			catch (IOException e)
+			{
+				throw new ExperimentException(e);
+			}
+		}
+		writeOutput(ORDER_SOURCE, source == null ? "None" : source.toString());
+		// The commands depend on whether an ordering was found
+		writeSourceFiles();
 	}
 
 	/**
-	 * Parses the results output by NuSMV and fills experiment parameters,
-	 * for the property checking part.
-	 * @param output The string containing the standard output as written to by
-	 * NuSMV
+	 * Stores the ordering NuSMV ended up with, so that it can be transferred
+	 * to larger configurations of the same query. Nothing is stored if NuSMV
+	 * did not get to write its ordering, for example because it was killed.
+	 * @throws ExperimentException Thrown if the ordering could not be stored
 	 */
-	protected void parseCheckResults(String output)
+	protected void saveLearnedOrder() throws ExperimentException
 	{
-		if (output.contains("is false"))
+		File learned = new File(getLearnedOrderFilename());
+		if (s_orderStore == null || !learned.exists() || !(m_modelProvider instanceof BeepBeepModelProvider))
 		{
-			writeOutput(VERDICT, "False");
+			return;
 		}
-		if (output.contains("is true"))
+		try
+		{
+			List<String> order = new ArrayList<String>();
+			for (String line : Files.readAllLines(learned.toPath(), StandardCharsets.UTF_8))
+			{
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("--") && !line.startsWith("#"))
+				{
+					order.add(line);
+				}
+			}
+			List<String> reference = ((BeepBeepModelProvider) m_modelProvider).getVariableOrder(VariableOrdering.TOPOLOGICAL);
+			s_orderStore.put(getConfiguration(), OrderStore.canonicalize(order, reference));
+		}
+		catch (IOException e)
 		{
-			writeOutput(VERDICT, "True");
+			throw new ExperimentException(e);
 		}
-		int w_len = 0;
-		Matcher mat = s_witnessPattern.matcher(output);
-		while (mat.find())
+		finally
 		{
-			w_len++;
+			learned.delete();
 		}
-		writeOutput(WITNESS_LENGTH, w_len);
 	}
 
 	/**
-	 * Parses the results output by NuSMV and fills experiment parameters,
-	 * for the stats gathering part.
-	 * @param output The string containing the standard output as written to by
-	 * NuSMV
+	 * Gets the configuration of the model of this experiment, under which
+	 * its learned ordering is stored.
+	 * @return The configuration
 	 */
-	protected void parseStatsResults(String output)
+	/*@ non_null @*/ protected OrderStore.Configuration getConfiguration()
 	{
-		writeOutput(MEMORY, readIntFromOutput(output, s_memoryPattern));
-		writeOutput(TOTAL_NODES, readIntFromOutput(output, s_totalNodesPattern));
-		writeOutput(LIVE_NODES, readIntFromOutput(output, s_liveNodesPattern));
-		writeOutput(SYSTEM_DIAMETER, readIntFromOutput(output, s_diameterPattern));
-		writeOutput(TOTAL_STATES, readFloatFromOutput(output, s_totalStatesPattern));
-		writeOutput(REACHABLE_STATES, readFloatFromOutput(output, s_reachableStatesPattern));
+		int k = 0;
+		if (m_modelProvider instanceof BeepBeepModelProvider)
+		{
+			k = ((BeepBeepModelProvider) m_modelProvider).m_parameter;
+		}
+		return new OrderStore.Configuration(readString(ModelProvider.QUERY), readInt(ModelProvider.QUEUE_SIZE), readInt(ModelProvider.DOMAIN_SIZE), k);
 	}
 
 	/**
-	 * Extracts an integer number from a regex expression.
-	 * @param output The string where to apply the regex
-	 * @param pat The pattern to look for
-	 * @return The integer parsed from the pattern
+	 * Runs NuSMV on the model of this experiment alone and fills the
+	 * experiment's parameters with the results.
+	 * @param model_filename The file containing the complete model of this
+	 * experiment
+	 * @throws ExperimentException Thrown if the call to NuSMV did not succeed
 	 */
-	protected int readIntFromOutput(String output, Pattern pat)
+	protected void measure(String model_filename) throws ExperimentException
 	{
-		Matcher mat = pat.matcher(output);
-		if (!mat.find())
+		if (m_engine.compareTo(Engine.PORTFOLIO) == 0)
+		{
+			measurePortfolio(model_filename);
+			return;
+		}
+		if (s_decomposition && !m_withStats)
+		{
+			List<Formula> conjuncts = StreamPropertyLibrary.getConjuncts(m_propertyProvider);
+			writeMeasure(CONJUNCTS, conjuncts.size());
+			if (conjuncts.size() > 1)
+			{
+				measureDecomposition(conjuncts);
+				return;
+			}
+			writeMeasure(CONJUNCTS_CHECKED, 1);
+		}
+		try
+		{
+			if (m_withStats)
+			{
+				// Check and stats are collected in the same run
+				NuSMVOutputParser parser;
+				if (s_sessionPool == null)
+				{
+					parser = runNuSMV(model_filename, getSourceStatsFilename());
+				}
+				else
+				{
+					parser = runSession(model_filename, getCheckStatsCommands());
+				}
+				if (parser.getSections().size() != 3)
+				{
+					throw new ExperimentException("NuSMV did not complete the batch of commands");
+				}
+				parseCheckResults(parser.getSection(1));
+				writeMeasure(TIME, parser.getSection(1).getElapsed());
+				parseStatsResults(parser.getSection(2));
+			}
+			else
+			{
+				NuSMVOutputParser parser;
+				if (s_sessionPool == null)
+				{
+					parser = runNuSMV(model_filename, getSourceCheckFilename());
+				}
+				else
+				{
+					parser = runSession(model_filename, getCheckCommands());
+				}
+				parseCheckResults(parser.getLastSection());
+				writeMeasure(TIME, m_usage.getWallTime());
+			}
+			m_usage.fillExperiment(this);
+		}
+		catch (ResourceLimitException e)
 		{
-			return -1;
+			writeLimitExceeded(e);
+		}
+		if (s_sessionPool != null)
+		{
+			writeOutput(STARTUP_TIME_SAVED, m_startupTimeSaved);
 		}
-		return Integer.parseInt(mat.group(1));
 	}
 
 	/**
-	 * Extracts a float from a regex expression.
-	 * @param output The string where to apply the regex
-	 * @param pat The pattern to look for
-	 * @return The float parsed from the pattern
+	 * Checks the property of this experiment with several engines at the
+	 * same time, and fills the experiment's parameters with the results of
+	 * the first engine to reach a conclusive verdict.
+	 * @param model_filename The file containing the model
+	 * @throws ExperimentException Thrown if the calls to NuSMV did not succeed
 	 */
-	protected float readFloatFromOutput(String output, Pattern pat)
+	protected void measurePortfolio(String model_filename) throws ExperimentException
 	{
-		Matcher mat = pat.matcher(output);
-		if (!mat.find())
+		NuSMVPortfolio.Run r;
+		try
+		{
+			r = new NuSMVPortfolio(this).run(model_filename);
+		}
+		catch (ResourceLimitException e)
+		{
+			writeLimitExceeded(e);
+			return;
+		}
+		if (r == null)
 		{
-			return -1;
+			writeMeasure(VERDICT, "Unknown");
+			return;
 		}
-		return Float.parseFloat(mat.group(1));
+		writeMeasure(Engine.WINNER, r.getEngine());
+		parseCheckResults(r.getSection());
+		writeMeasure(TIME, r.getUsage().getWallTime());
+		r.getUsage().fillExperiment(this);
 	}
 
 	/**
-	 * Prepares the description text to be added to each experiment.
-	 * @param id The experiment's id
+	 * Checks the conjuncts of the property of this experiment separately
+	 * and at the same time, and fills the experiment's parameters with the
+	 * combined results.
+	 * @param conjuncts The conjuncts of the property
+	 * @throws ExperimentException Thrown if the calls to NuSMV did not succeed
 	 */
-	public String getDescription()
+	protected void measureDecomposition(List<Formula> conjuncts) throws ExperimentException
 	{
-		StringBuilder out = new StringBuilder();
-		out.append("<p>Experiment that turns a BeepBeep chain of processors into a NuSMV model, and verifies a CTL or LTL property on this model.</p>\n");
-		String image_url = ((BeepBeepModelProvider) m_modelProvider).getImageUrl();
-		if (image_url != null)
+		NuSMVDecomposition.Outcome o;
+		try
 		{
-			out.append("<img src=\"" + image_url + "\" alt=\"Processor chain\" />\n");
+			o = new NuSMVDecomposition(this, conjuncts).run();
 		}
-		out.append("<p><a href=\"/view-model?id=" + getId() + "\">View the SMV model file</a></p>");
-		out.append("<p>The property to evaluate is:</p>\n");
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		PrintStream ps = new PrintStream(baos);
-		try
+		catch (ResourceLimitException e)
 		{
-			m_propertyProvider.printToFile(ps);
+			writeLimitExceeded(e);
+			return;
 		}
-		catch (IOException e)
+		if (o.getSection().getVerdict() == null)
 		{
-			// Do nothing in such a case
+			writeMeasure(VERDICT, "Unknown");
 		}
-		out.append("<blockquote>").append(baos.toString()).append("</blockquote>\n");
-		return out.toString();
+		writeMeasure(CONJUNCTS_CHECKED, o.getChecked());
+		parseCheckResults(o.getSection());
+		writeMeasure(TIME, o.getUsage().getWallTime());
+		o.getUsage().fillExperiment(this);
 	}
 
 	/**
-	 * Gets an instance of {@link CommandRunner} that calls NuSMV on the
-	 * input model.
-	 * @param use_stdin Set to <tt>true</tt> to pass the model to NuSMV
-	 * through the standard input. Set to <tt>false</tt> to write the model
-	 * to a temporary file instead. Currently, NuSMV seems to be unable to
-	 * read a model from stdin despite what its documentation says, so it is
-	 * advisable to call this method using <tt>false</tt>.
-	 * @param model The model to send to NuSMV
-	 * @param source_filename The source filename to provide to NuSMV
-	 * @return An instance of the command runner, ready to be executed
+	 * Prints the NuSMV model of this experiment with a single conjunct of its
+	 * property as the specification. When slicing is enabled, the model is
+	 * sliced with respect to this conjunct only.
+	 * @param conjunct The conjunct
+	 * @param ps The print stream where the model is to be printed
+	 * @throws IOException Thrown if printing the model did not succeed
 	 */
-	protected CommandRunner getRunner(boolean use_stdin, String model, String source_filename)
+	protected void printConjunctModel(Formula conjunct, PrintStream ps) throws IOException
 	{
-		if (use_stdin)
+		String spec = getSpecKeyword() + "\n" + conjunct + ";\n";
+		if (s_slicing)
 		{
-			return new CommandRunner(new String[] {NUSMV_PATH, "-source", source_filename}, model);
+			ModelSlicer slicer = new ModelSlicer(getModelProviderText());
+			ps.print(slicer.slice(spec));
 		}
 		else
 		{
-			String model_filename = TMP_DIR + FILE_SEPARATOR + "model-" + getId() + ".smv";
-			FileHelper.writeFromString(new File(model_filename), model);
-			return new CommandRunner(new String[] {NUSMV_PATH, "-source", source_filename, model_filename});
+			m_modelProvider.printToFile(ps);
 		}
+		ps.println();
+		ps.print(spec);
 	}
 
 	/**
-	 * Gets the model provider associated to this experiment.
-	 * @return The model provider
+	 * Writes a value of an output parameter that results from the
+	 * measurement made by NuSMV. Such values are also recorded so that they
+	 * can be stored in the result cache.
+	 * @param key The name of the parameter
+	 * @param value The value
 	 */
-	public ModelProvider getModelProvider()
+	protected void writeMeasure(String key, Object value)
 	{
-		return m_modelProvider;
+		writeOutput(key, value);
+		if (m_measures != null)
+		{
+			m_measures.put(key, value);
+		}
 	}
 
 	/**
-	 * Gets the property provider associated to this experiment.
-	 * @return The property provider
+	 * Gets the key of this experiment in the result cache. Besides the
+	 * model, the key depends on the model checker, on the commands sent to
+	 * it and on the way it is called, since all these can change the values
+	 * that are measured.
+	 * @param model_digest The digest of the complete model of this
+	 * experiment
+	 * @return The key
 	 */
-	public PropertyProvider getPropertyProvider()
-	{
-		return m_propertyProvider;
-	}
-
-	@Override
-	public boolean prerequisitesFulfilled()
-	{
-		return FileHelper.fileExists(getSourceCheckFilename()) && 
-				FileHelper.fileExists(getSourceStatsFilename());
-	}
-
-	@Override
-	public void fulfillPrerequisites()
+	/*@ non_null @*/ protected String getCacheKey(String model_digest)
 	{
-		writeSourceFiles();
+		String mode = m_engine + "-" + m_ordering + "-" + (m_batch != null ? "batch" : "single") + (s_sessionPool != null ? "-session" : "")
+				+ (s_decomposition ? "-decomposed" : "")
+				+ "-" + s_timeLimit + "-" + s_memoryLimit;
+		String script = toSourceScript(m_withStats ? getCheckStatsCommands() : getCheckCommands())
+				.replace(getLearnedOrderFilename(), "LEARNED");
+		if (getOrderFilename() != null)
+		{
+			script = script.replace(getOrderFilename(), "ORDER");
+		}
+		if (m_transferredOrder != null)
+		{
+			return ResultCache.getKey(ResultCache.getCheckerId(NUSMV_PATH), mode, script, model_digest, String.join("\n", m_transferredOrder));
+		}
+		return ResultCache.getKey(ResultCache.getCheckerId(NUSMV_PATH), mode, script, model_digest);
 	}
 
-	@Override
-	public void cleanPrerequisites()
+	/**
+	 * Computes the SHA-256 digest of the complete NuSMV model of this
+	 * experiment. The model is printed into the digest as it is produced,
+	 * without being kept in memory.
+	 * @return The digest, in hexadecimal
+	 * @throws ExperimentException Thrown if printing the model did not
+	 * succeed
+	 */
+	/*@ non_null @*/ protected String getModelDigest() throws ExperimentException
 	{
-		FileHelper.deleteFile(getSourceCheckFilename());
+		return getDigest(this::printModel);
 	}
 
 	/**
-	 * Gets the name of the "source" file containing the batch of commands that
-	 * NuSMV should run on the input model for the checking step.
-	 * @return The absolute path of the source file
+	 * Computes the SHA-256 digest of the contents of a model file, without
+	 * keeping these contents in memory.
+	 * @param printer The object that prints the contents of the file
+	 * @return The digest, in hexadecimal
+	 * @throws ExperimentException Thrown if printing the contents did not
+	 * succeed
 	 */
-	/*@ non_null @*/ protected static String getSourceCheckFilename()
+	/*@ non_null @*/ protected static String getDigest(/*@ non_null @*/ Printer printer) throws ExperimentException
 	{
-		return TMP_DIR + FILE_SEPARATOR + "check.smv";
+		MessageDigest md = newDigest();
+		try
+		{
+			PrintStream ps = new PrintStream(new BufferedOutputStream(new DigestOutputStream(s_discard, md), WRITE_BUFFER_SIZE), false, "UTF-8");
+			printer.print(ps);
+			ps.close();
+		}
+		catch (IOException e)
+		{
+			throw new ExperimentException(e);
+		}
+		return ResultCache.toHex(md.digest());
 	}
 
 	/**
-	 * Gets the name of the "source" file containing the batch of commands that
-	 * NuSMV should run on the input model for the stats gathering step.
-	 * @return The absolute path of the source file
+	 * Creates a new SHA-256 digest.
+	 * @return The digest
 	 */
-	/*@ non_null @*/ protected static String getSourceStatsFilename()
+	/*@ non_null @*/ protected static MessageDigest newDigest()
 	{
-		return TMP_DIR + FILE_SEPARATOR + "stats.smv";
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
 	}
 
 	/**
-	 * Writes the "source" files containing the batch of commands that NuSMV
-	 * should run on the input model. These files will be the same for all
-	 * models sent to the model checker.
-	 */
-	protected void writeSourceFiles()
+	 * Prints the complete NuSMV model of this experiment.
+	 * @param ps The print stream where the model is to be printed 
+	 * @throws IOException Thrown if printing the model did not succeed
+	 */
+	public void printModel(PrintStream ps) throws IOException
+	{
+		if (s_slicing)
+		{
+			ByteArrayOutputStream spec = new ByteArrayOutputStream();
+			PrintStream spec_ps = new PrintStream(spec, true, "UTF-8");
+			printSpec(spec_ps);
+			spec_ps.close();
+			ps.print(sliceModel(spec.toString("UTF-8")));
+		}
+		else
+		{
+			m_modelProvider.printToFile(ps);
+		}
+		ps.println();
+		printSpec(ps);
+	}
+
+	/**
+	 * Slices the model of this experiment with respect to some
+	 * specifications, and records the number of variables before and after
+	 * slicing.
+	 * @param spec The text of the specifications
+	 * @return The text of the sliced model, without the specifications
+	 * @throws IOException Thrown if printing the model did not succeed
+	 */
+	/*@ non_null @*/ protected String sliceModel(String spec) throws IOException
+	{
+		ModelSlicer slicer = new ModelSlicer(getModelProviderText());
+		String sliced = slicer.slice(spec);
+		writeOutput(VARIABLES_BEFORE_SLICING, slicer.getVariablesBefore());
+		writeOutput(VARIABLES_AFTER_SLICING, slicer.getVariablesAfter());
+		return sliced;
+	}
+
+	/**
+	 * Gets the text of the model written by the model provider of this
+	 * experiment, without any specification.
+	 * @return The text of the model
+	 * @throws IOException Thrown if printing the model did not succeed
+	 */
+	/*@ non_null @*/ protected String getModelProviderText() throws IOException
+	{
+		if (m_modelProvider instanceof BeepBeepModelProvider)
+		{
+			// The text kept by the provider is used as is
+			return ((BeepBeepModelProvider) m_modelProvider).getText();
+		}
+		ByteArrayOutputStream model = new ByteArrayOutputStream();
+		PrintStream model_ps = new PrintStream(model, true, "UTF-8");
+		m_modelProvider.printToFile(model_ps);
+		model_ps.close();
+		return model.toString("UTF-8");
+	}
+
+	/**
+	 * Gets the keyword that introduces the specification of this
+	 * experiment in a NuSMV model.
+	 * @return The keyword
+	 */
+	/*@ non_null @*/ protected String getSpecKeyword()
+	{
+		if (m_propertyProvider.getLogic() == Logic.CTL)
+		{
+			return "CTLSPEC";
+		}
+		if (m_propertyProvider.getLogic() == Logic.INVAR)
+		{
+			return "INVARSPEC";
+		}
+		return "LTLSPEC";
+	}
+
+	/**
+	 * Prints the specification section of the NuSMV model of this
+	 * experiment.
+	 * @param ps The print stream where the specification is to be printed 
+	 * @throws IOException Thrown if printing the specification did not
+	 * succeed
+	 */
+	public void printSpec(PrintStream ps) throws IOException
+	{
+		ps.println(getSpecKeyword());
+		m_propertyProvider.printToFile(ps);
+	}
+
+	/**
+	 * Runs NuSMV on a model file. NuSMV is called and its output is parsed,
+	 * as it is being produced, to extract some data about its execution.
+	 * @param model_filename The file containing the model to process with
+	 * NuSMV
+	 * @param source_filename The "source" file containing the commands to run
+	 * @return The parser containing the data extracted from NuSMV's output
+	 * @throws ExperimentException Thrown if the call to NuSMV did not succeed
+	 * for some reason
+	 */
+	protected NuSMVOutputParser runNuSMV(String model_filename, String source_filename) throws ExperimentException
+	{
+		ProcessBuilder pb = getProcessBuilder(source_filename, model_filename);
+		NuSMVOutputParser parser = new NuSMVOutputParser();
+		Process p = null;
+		ProcessWatchdog watchdog = null;
+		int outcode;
+		try
+		{
+			p = pb.start();
+			watchdog = new ProcessWatchdog(p, s_timeLimit, s_memoryLimit).start();
+			p.getOutputStream().close();
+			try (InputStream is = p.getInputStream())
+			{
+				parser.parse(is);
+			}
+			// The output ends when the process exits; sample it before the JVM reaps it, if still possible
+			watchdog.sample();
+			outcode = p.waitFor();
+		}
+		catch (IOException e)
+		{
+			checkLimits(watchdog);
+			throw new ExperimentException(e);
+		}
+		catch (InterruptedException e)
+		{
+			p.destroyForcibly();
+			Thread.currentThread().interrupt();
+			throw new ExperimentException(e);
+		}
+		checkLimits(watchdog);
+		if (outcode != 0)
+		{
+			throw new ExperimentException("NuSMV exited with code " + outcode);
+		}
+		return parser;
+	}
+
+	/**
+	 * Gets a process builder that calls NuSMV on a model file with a "source"
+	 * file of commands. The standard error of the process is discarded.
+	 * @param source_filename The "source" file containing the commands to run
+	 * @param model_filename The model file
+	 * @return The process builder
+	 */
+	/*@ non_null @*/ protected static ProcessBuilder getProcessBuilder(String source_filename, String model_filename)
+	{
+		ProcessBuilder pb = new ProcessBuilder(NUSMV_PATH, "-source", source_filename, model_filename);
+		pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+		return pb;
+	}
+
+	/**
+	 * Runs an arbitrary sequence of commands on a model, either inside a
+	 * NuSMV session or by starting a new NuSMV process.
+	 * @param model_filename The file containing the model to process with
+	 * NuSMV
+	 * @param commands The commands to run once the model is read
+	 * @return The parser containing the data extracted from NuSMV's output
+	 * @throws ExperimentException Thrown if the call to NuSMV did not succeed
+	 * for some reason
+	 */
+	protected NuSMVOutputParser runCommands(String model_filename, String ... commands) throws ExperimentException
+	{
+		if (s_sessionPool != null)
+		{
+			return runSession(model_filename, commands);
+		}
+		String source_filename = TMP_DIR + FILE_SEPARATOR + "source-" + getId() + ".smv";
+		FileHelper.writeFromString(new File(source_filename), toSourceScript(commands));
+		return runNuSMV(model_filename, source_filename);
+	}
+
+	/**
+	 * Runs a sequence of commands on a model file inside a NuSMV session
+	 * taken from the pool. The session is first reset, so that nothing from
+	 * a previously processed model remains in memory. The commands must
+	 * start by reading the model, as the build commands of every engine do.
+	 * @param model_filename The file containing the model to process with
+	 * NuSMV
+	 * @param commands The commands to run once the model is read
+	 * @return The parser containing the data extracted from NuSMV's output
+	 * @throws ExperimentException Thrown if the session could not be
+	 * started, died during the call, or reported an error; such a session
+	 * is discarded instead of being given back to the pool
+	 */
+	protected NuSMVOutputParser runSession(String model_filename, String ... commands) throws ExperimentException
+	{
+		String[] all_commands = new String[commands.length + 2];
+		all_commands[0] = "reset";
+		// The model is read by the first of the commands
+		all_commands[1] = "set input_file " + model_filename;
+		System.arraycopy(commands, 0, all_commands, 2, commands.length);
+		NuSMVSession session = null;
+		ProcessWatchdog watchdog = null;
+		boolean completed = false;
+		try
+		{
+			session = s_sessionPool.acquire();
+			if (session.getUses() > 0)
+			{
+				m_startupTimeSaved += session.getStartupTime();
+			}
+			NuSMVOutputParser parser = new NuSMVOutputParser();
+			// The session keeps the memory it allocated for earlier models
+			watchdog = new ProcessWatchdog(session.getProcess(), s_timeLimit, s_memoryLimit, true).start();
+			session.execute(parser, all_commands);
+			completed = true;
+			checkLimits(watchdog);
+			return parser;
+		}
+		catch (IOException e)
+		{
+			checkLimits(watchdog);
+			throw new ExperimentException(e);
+		}
+		finally
+		{
+			if (session != null)
+			{
+				if (completed)
+				{
+					s_sessionPool.release(session);
+				}
+				else
+				{
+					s_sessionPool.discard(session);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the watchdog of a NuSMV process and records the resources it
+	 * observed.
+	 * @param watchdog The watchdog, or <tt>null</tt> if the process could not
+	 * be started
+	 * @throws ResourceLimitException Thrown if the watchdog killed the
+	 * process for exceeding one of its limits
+	 */
+	protected void checkLimits(ProcessWatchdog watchdog) throws ResourceLimitException
+	{
+		if (watchdog == null)
+		{
+			return;
+		}
+		watchdog.stop();
+		m_usage = watchdog.getUsage();
+		if (watchdog.getExceededLimit() != null)
+		{
+			throw new ResourceLimitException(watchdog);
+		}
+	}
+
+	/**
+	 * Fills experiment parameters for a run that was killed for exceeding
+	 * its time or memory limit. The verdict is set to the limit that was
+	 * exceeded, so that such censored points can be told apart from the
+	 * others in tables and plots.
+	 * @param e The exception describing the run
+	 */
+	protected void writeLimitExceeded(/*@ non_null @*/ ResourceLimitException e)
+	{
+		writeMeasure(VERDICT, e.getLimit());
+		writeMeasure(TIME, e.getUsage().getWallTime());
+		e.getUsage().fillExperiment(this);
+	}
+
+	/**
+	 * Fills experiment parameters from the results output by NuSMV, for the
+	 * property checking part.
+	 * @param section The section of NuSMV's output produced by the check
+	 */
+	protected void parseCheckResults(NuSMVOutputParser.Section section)
+	{
+		if (section.getVerdict() != null)
+		{
+			writeMeasure(VERDICT, section.getVerdict());
+		}
+		writeMeasure(WITNESS_LENGTH, section.getWitnessLength());
+	}
+
+	/**
+	 * Fills experiment parameters from the results output by NuSMV, for the
+	 * stats gathering part.
+	 * @param section The section of NuSMV's output produced by the stats
+	 * gathering commands
+	 */
+	protected void parseStatsResults(NuSMVOutputParser.Section section)
+	{
+		writeMeasure(MEMORY, section.getMemory());
+		writeMeasure(TOTAL_NODES, section.getTotalNodes());
+		writeMeasure(LIVE_NODES, section.getLiveNodes());
+		writeMeasure(SYSTEM_DIAMETER, section.getDiameter());
+		writeMeasure(TOTAL_STATES, section.getTotalStates());
+		writeMeasure(REACHABLE_STATES, section.getReachableStates());
+	}
+
+	/**
+	 * Prepares the description text to be added to each experiment.
+	 * @param id The experiment's id
+	 */
+	public String getDescription()
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("<p>Experiment that turns a BeepBeep chain of processors into a NuSMV model, and verifies a CTL or LTL property on this model.</p>\n");
+		String image_url = ((BeepBeepModelProvider) m_modelProvider).getImageUrl();
+		if (image_url != null)
+		{
+			out.append("<img src=\"" + image_url + "\" alt=\"Processor chain\" />\n");
+		}
+		out.append("<p><a href=\"/view-model?id=" + getId() + "\">View the SMV model file</a></p>");
+		long time = s_costModel == null ? -1 : s_costModel.predictTime(this);
+		if (time >= 0)
+		{
+			out.append("<p>Predicted running time: ").append(time).append(" ms");
+			long memory = s_costModel.predictMemory(this);
+			if (memory >= 0)
+			{
+				out.append("; predicted peak memory: ").append(memory / 1024).append(" MB");
+			}
+			out.append(" (from ").append(s_costModel.getNumSamples()).append(" completed experiments)</p>\n");
+		}
+		out.append("<p>The property to evaluate is:</p>\n");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos);
+		try
+		{
+			m_propertyProvider.printToFile(ps);
+		}
+		catch (IOException e)
+		{
+			// Do nothing in such a case
+		}
+		out.append("<blockquote>").append(baos.toString()).append("</blockquote>\n");
+		return out.toString();
+	}
+
+	/**
+	 * Writes a model file named after the digest of its contents. The
+	 * contents are printed once, into a temporary file, while their digest
+	 * is computed; the file is then renamed after the digest, unless a file
+	 * with the same contents already exists, in which case it is reused.
+	 * Experiments with the same model (with other engines or orderings, or
+	 * when an experiment is run again) thereby share the same file. The
+	 * files are written in the directory returned by {@link #getModelDir()}.
+	 * @param printer The object that prints the contents of the file
+	 * @return The file and its digest
+	 * @throws ExperimentException Thrown if the file could not be written
+	 */
+	/*@ non_null @*/ protected ModelFile writeModelFile(/*@ non_null @*/ Printer printer) throws ExperimentException
+	{
+		long start = System.nanoTime();
+		MessageDigest md = newDigest();
+		File tmp = null;
+		try
+		{
+			File dir = getModelDir();
+			tmp = File.createTempFile("model-", ".tmp", dir);
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				PrintStream ps = new PrintStream(new BufferedOutputStream(new DigestOutputStream(Channels.newOutputStream(channel), md), WRITE_BUFFER_SIZE), false, "UTF-8");
+				printer.print(ps);
+				ps.flush();
+				if (ps.checkError())
+				{
+					throw new IOException("Could not write " + tmp);
+				}
+				m_modelSize += channel.size();
+			}
+			String digest = ResultCache.toHex(md.digest());
+			File f = new File(dir, "model-" + digest + ".smv");
+			if (!f.exists())
+			{
+				Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			return new ModelFile(f.getAbsolutePath(), digest);
+		}
+		catch (IOException e)
+		{
+			throw new ExperimentException(e);
+		}
+		finally
+		{
+			if (tmp != null)
+			{
+				// Only left if the file was not renamed
+				tmp.delete();
+			}
+			m_writeTime += (System.nanoTime() - start) / 1000;
+		}
+	}
+
+	/**
+	 * Gets the directory where the model files are written. The directory is
+	 * created in the OS's temporary directory the first time it is needed,
+	 * and is deleted with its contents when the lab exits.
+	 * @return The directory
+	 * @throws IOException Thrown if the directory could not be created
+	 */
+	/*@ non_null @*/ protected static synchronized File getModelDir() throws IOException
+	{
+		if (s_modelDir == null)
+		{
+			File dir = Files.createTempDirectory(new File(TMP_DIR).toPath(), "nusmvlab-models-").toFile();
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				File[] files = dir.listFiles();
+				if (files != null)
+				{
+					for (File f : files)
+					{
+						f.delete();
+					}
+				}
+				dir.delete();
+			}));
+			s_modelDir = dir;
+		}
+		return s_modelDir;
+	}
+
+	/**
+	 * Writes a model file through a buffered file channel, without building
+	 * its contents in memory. The file is first written under a temporary
+	 * name and then renamed, so that another experiment never sees it
+	 * partially written. The size of the file and the time taken to write
+	 * it are added to those recorded for this experiment.
+	 * @param f The file
+	 * @param printer The object that prints the contents of the file
+	 * @throws ExperimentException Thrown if the file could not be written
+	 */
+	protected void writeFile(/*@ non_null @*/ File f, /*@ non_null @*/ Printer printer) throws ExperimentException
+	{
+		long start = System.nanoTime();
+		try
+		{
+			File tmp = File.createTempFile(f.getName(), ".tmp", f.getParentFile());
+			try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				PrintStream ps = new PrintStream(new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE), false, "UTF-8");
+				printer.print(ps);
+				ps.flush();
+				if (ps.checkError())
+				{
+					throw new IOException("Could not write " + f);
+				}
+				m_modelSize += channel.size();
+			}
+			Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			throw new ExperimentException(e);
+		}
+		m_writeTime += (System.nanoTime() - start) / 1000;
+	}
+
+	/**
+	 * Makes this experiment part of a batch of experiments sharing the same
+	 * model.
+	 * @param batch The batch
+	 */
+	public void setBatch(NuSMVBatch batch)
+	{
+		m_batch = batch;
+		batch.add(this);
+	}
+
+	/**
+	 * Sets the pool of NuSMV sessions used by all experiments.
+	 * @param pool The pool, or <tt>null</tt> to start a new NuSMV process
+	 * for every call
+	 */
+	public static void setSessionPool(NuSMVSessionPool pool)
+	{
+		s_sessionPool = pool;
+	}
+
+	/**
+	 * Sets the cache where the results of all experiments are stored.
+	 * @param cache The cache, or <tt>null</tt> to always call NuSMV
+	 */
+	public static void setResultCache(ResultCache cache)
+	{
+		s_resultCache = cache;
+	}
+
+	/**
+	 * Sets the model that predicts the cost of all experiments.
+	 * @param model The model, or <tt>null</tt> to not predict costs
+	 */
+	public static void setCostModel(CostModel model)
+	{
+		s_costModel = model;
+	}
+
+	/**
+	 * Gets the model that predicts the cost of all experiments.
+	 * @return The model, or <tt>null</tt> if costs are not predicted
+	 */
+	public static CostModel getCostModel()
+	{
+		return s_costModel;
+	}
+
+	/**
+	 * Sets the store of the variable orderings learned by NuSMV.
+	 * @param store The store, or <tt>null</tt> to never transfer orderings
+	 */
+	public static void setOrderStore(OrderStore store)
+	{
+		s_orderStore = store;
+	}
+
+	/**
+	 * Sets whether models are sliced with respect to the property before
+	 * being given to NuSMV.
+	 * @param slicing Set to <tt>true</tt> to slice models
+	 */
+	public static void setSlicing(boolean slicing)
+	{
+		s_slicing = slicing;
+	}
+
+	/**
+	 * Sets whether the conjuncts of a property are checked separately and at
+	 * the same time, the check stopping as soon as one of them is false.
+	 * @param decomposition Set to <tt>true</tt> to decompose properties
+	 */
+	public static void setDecomposition(boolean decomposition)
+	{
+		s_decomposition = decomposition;
+	}
+
+	/**
+	 * Sets the limits on the resources a NuSMV process may use for a single
+	 * experiment. A process that exceeds one of these limits is killed.
+	 * @param time_limit The maximum wall-clock time (in ms), or 0 for no
+	 * limit
+	 * @param memory_limit The maximum resident memory (in kB), or 0 for no
+	 * limit
+	 */
+	public static void setLimits(long time_limit, long memory_limit)
+	{
+		s_timeLimit = time_limit;
+		s_memoryLimit = memory_limit;
+	}
+
+	/**
+	 * Sets the verification engine used to check the property.
+	 * @param engine The name of the engine
+	 */
+	public void setEngine(/*@ non_null @*/ String engine)
+	{
+		m_engine = engine;
+		describe(Engine.ENGINE, "The verification engine used to check the property");
+		writeInput(Engine.ENGINE, engine);
+		if (engine.compareTo(Engine.PORTFOLIO) == 0)
+		{
+			describe(Engine.WINNER, "The engine that produced the verdict in portfolio mode");
+		}
+	}
+
+	/**
+	 * Records that the property of this experiment is checked on a model
+	 * whose domain is smaller than the one requested. The verdict obtained on
+	 * that model is transferred to the requested domain size, which remains
+	 * the value of the experiment's "Domain size" parameter. The outputs
+	 * derived from the model, such as its number of state bits, describe the
+	 * model actually checked; they are therefore moved to the names given by
+	 * {@link DataIndependence#getCheckedName(String)}, and are not recorded
+	 * against the requested domain size.
+	 * @param requested The requested domain size
+	 * @param checked The domain size of the model actually checked
+	 */
+	public void setCheckedDomainSize(int requested, int checked)
+	{
+		writeInput(ModelProvider.DOMAIN_SIZE, requested);
+		describe(DataIndependence.CHECKED_DOMAIN_SIZE, "The domain size of the model actually given to NuSMV");
+		writeOutput(DataIndependence.CHECKED_DOMAIN_SIZE, checked);
+		describe(DataIndependence.TRANSFERRED, "Whether the verdict was obtained on a model with a smaller domain, which does not change it");
+		writeOutput(DataIndependence.TRANSFERRED, checked != requested);
+		if (checked == requested)
+		{
+			return;
+		}
+		for (String key : DataIndependence.MODEL_OUTPUTS)
+		{
+			Object value = read(key);
+			if (value != null)
+			{
+				String checked_key = DataIndependence.getCheckedName(key);
+				describe(checked_key, "Output \"" + key + "\" for the model actually given to NuSMV");
+				writeOutput(checked_key, value);
+				writeOutput(key, null);
+			}
+		}
+	}
+
+	/**
+	 * Sets the experiment that learns the ordering this experiment starts
+	 * from, when its ordering is transferred.
+	 * @param source The experiment, whose ordering is "Dynamic"
+	 */
+	public void setTransferSource(NuSMVExperiment source)
+	{
+		m_transferSource = source;
+	}
+
+	/**
+	 * Sets the ordering of BDD variables passed to NuSMV. Orderings other
+	 * than the default and dynamic ones are only available for models coming
+	 * from a BeepBeep pipeline.
+	 * @param ordering The name of the ordering, as defined in
+	 * {@link VariableOrdering}
+	 */
+	public void setOrdering(/*@ non_null @*/ String ordering)
+	{
+		if (!(m_modelProvider instanceof BeepBeepModelProvider) && ordering.compareTo(VariableOrdering.DYNAMIC) != 0)
+		{
+			ordering = VariableOrdering.DEFAULT;
+		}
+		m_ordering = ordering;
+		describe(VariableOrdering.ORDERING, "The ordering of BDD variables passed to NuSMV");
+		writeInput(VariableOrdering.ORDERING, ordering);
+		if (ordering.compareTo(VariableOrdering.TRANSFER) == 0)
+		{
+			describe(ORDER_SOURCE, "The configuration whose learned ordering NuSMV started from");
+		}
+	}
+
+	/**
+	 * Gets the verification engine used to check the property.
+	 * @return The name of the engine
+	 */
+	public String getEngine()
+	{
+		return m_engine;
+	}
+
+	/**
+	 * Gets the number of NuSMV processes that this experiment runs at the
+	 * same time. This is more than one only when the engines of a portfolio
+	 * race each other, or when the conjuncts of its property are checked
+	 * separately.
+	 * @return The number of processes
+	 */
+	public int getProcesses()
+	{
+		if (m_engine.compareTo(Engine.PORTFOLIO) == 0)
+		{
+			// All the engines of the portfolio are started at once
+			return Engine.getPortfolio(m_propertyProvider.getLogic()).size();
+		}
+		if (!s_decomposition || m_withStats)
+		{
+			return 1;
+		}
+		return NuSMVDecomposition.getProcesses(StreamPropertyLibrary.getConjuncts(m_propertyProvider).size());
+	}
+
+	/**
+	 * Gets the model provider associated to this experiment.
+	 * @return The model provider
+	 */
+	public ModelProvider getModelProvider()
+	{
+		return m_modelProvider;
+	}
+
+	/**
+	 * Gets the property provider associated to this experiment.
+	 * @return The property provider
+	 */
+	public PropertyProvider getPropertyProvider()
+	{
+		return m_propertyProvider;
+	}
+
+	@Override
+	public boolean prerequisitesFulfilled()
+	{
+		return FileHelper.fileExists(getSourceCheckFilename()) && 
+				FileHelper.fileExists(getSourceStatsFilename()) &&
+				(!VariableOrdering.isStatic(m_ordering) || FileHelper.fileExists(getOrderFilename()));
+	}
+
+	@Override
+	public void fulfillPrerequisites()
+	{
+		writeSourceFiles();
+	}
+
+	@Override
+	public void cleanPrerequisites()
+	{
+		FileHelper.deleteFile(getSourceCheckFilename());
+		FileHelper.deleteFile(getSourceStatsFilename());
+		if (getOrderFilename() != null)
+		{
+			FileHelper.deleteFile(getOrderFilename());
+		}
+	}
+
+	/**
+	 * Gets the name of the "source" file containing the batch of commands that
+	 * NuSMV should run on the input model for the checking step.
+	 * @return The absolute path of the source file
+	 */
+	/*@ non_null @*/ protected String getSourceCheckFilename()
+	{
+		return TMP_DIR + FILE_SEPARATOR + "check-" + getId() + ".smv";
+	}
+
+	/**
+	 * Gets the name of the "source" file containing the batch of commands that
+	 * NuSMV should run on the input model to check the property and gather
+	 * stats in a single run.
+	 * @return The absolute path of the source file
+	 */
+	/*@ non_null @*/ protected String getSourceStatsFilename()
+	{
+		return TMP_DIR + FILE_SEPARATOR + "stats-" + getId() + ".smv";
+	}
+
+	/**
+	 * Writes the "source" files containing the batch of commands that NuSMV
+	 * should run on the input model. Each experiment has its own files, so
+	 * that experiments running at the same time do not overwrite each
+	 * other's files.
+	 */
+	protected void writeSourceFiles()
+	{
+		FileHelper.writeFromString(new File(getSourceCheckFilename()), toSourceScript(getCheckCommands()));
+		FileHelper.writeFromString(new File(getSourceStatsFilename()), toSourceScript(getCheckStatsCommands()));
+		List<String> order = m_transferredOrder;
+		if (VariableOrdering.isStatic(m_ordering))
+		{
+			order = ((BeepBeepModelProvider) m_modelProvider).getVariableOrder(m_ordering);
+		}
+		if (order != null)
+		{
+			FileHelper.writeFromString(new File(getOrderFilename()), String.join("\n", order) + "\n");
+		}
+	}
+
+	/**
+	 * Gets the name of the file giving the ordering of BDD variables to NuSMV.
+	 * @return The absolute path of the file, or <tt>null</tt> if NuSMV
+	 * chooses the ordering by itself
+	 */
+	protected String getOrderFilename()
+	{
+		if (!VariableOrdering.isStatic(m_ordering) && m_transferredOrder == null)
+		{
+			return null;
+		}
+		return TMP_DIR + FILE_SEPARATOR + "order-" + getId() + ".ord";
+	}
+
+	/**
+	 * Gets the name of the file where NuSMV writes the ordering of BDD
+	 * variables it ended up with.
+	 * @return The absolute path of the file
+	 */
+	/*@ non_null @*/ protected String getLearnedOrderFilename()
+	{
+		return TMP_DIR + FILE_SEPARATOR + "learned-" + getId() + ".ord";
+	}
+
+	/**
+	 * Gets the commands that NuSMV should run on the input model for the
+	 * checking step.
+	 * @return The commands
+	 */
+	/*@ non_null @*/ protected String[] getCheckCommands()
+	{
+		List<String> commands = new ArrayList<String>();
+		for (String c : getCheckCommands(m_engine))
+		{
+			commands.add(c);
+		}
+		for (String c : getOrderCommands())
+		{
+			commands.add(c);
+		}
+		return commands.toArray(new String[commands.size()]);
+	}
+
+	/**
+	 * Gets the commands that NuSMV should run on the input model to check
+	 * the property with a given engine.
+	 * @param engine The name of the engine
+	 * @return The commands
+	 */
+	/*@ non_null @*/ protected String[] getCheckCommands(String engine)
+	{
+		String[] build = Engine.getBuildCommands(engine, m_computeReachable, getOrderFilename(), isReordering(engine));
+		String[] commands = new String[build.length + 1];
+		System.arraycopy(build, 0, commands, 0, build.length);
+		commands[build.length] = Engine.getCheckCommand(engine, m_propertyProvider.getLogic());
+		return commands;
+	}
+
+	/**
+	 * Gets the commands that NuSMV should run on the input model to build
+	 * its internal representation, before any property is checked.
+	 * @return The commands
+	 */
+	/*@ non_null @*/ protected String[] getBuildCommands()
+	{
+		return Engine.getBuildCommands(m_engine, m_computeReachable, getOrderFilename(), isReordering(m_engine));
+	}
+
+	/**
+	 * Determines if NuSMV should reorder BDD variables dynamically.
+	 * @param engine The name of the engine used
+	 * @return <tt>true</tt> if variables are reordered, <tt>false</tt>
+	 * otherwise
+	 */
+	protected boolean isReordering(String engine)
+	{
+		return VariableOrdering.isDynamic(m_ordering) && engine.compareTo(Engine.BDD) == 0;
+	}
+
+	/**
+	 * Gets the commands that make NuSMV write the ordering it ended up with,
+	 * once the property is checked.
+	 * @return The commands, possibly none
+	 */
+	/*@ non_null @*/ protected String[] getOrderCommands()
+	{
+		if (!isReordering(m_engine))
+		{
+			return new String[0];
+		}
+		return new String[] {"write_order -o " + getLearnedOrderFilename()};
+	}
+
+	/**
+	 * Gets the commands that NuSMV should run on the input model for the
+	 * stats gathering step, once the model is built. These commands read
+	 * the BDD of the model, which the SAT-based engines do not build; with
+	 * these engines, a failing command would make NuSMV quit before the
+	 * commands that follow, so no stats are gathered.
+	 * @return The commands, possibly none
+	 */
+	/*@ non_null @*/ protected String[] getStatsCommands()
+	{
+		if (m_engine.compareTo(Engine.BDD) != 0)
+		{
+			return new String[0];
+		}
+		return new String[] {"print_bdd_stats", "print_reachable_states"};
+	}
+
+	/**
+	 * Gets the commands that NuSMV should run on the input model to check
+	 * the property and gather stats in a single run. Calls to the
+	 * <tt>time</tt> command delimit the checking part, whose duration is
+	 * thus measured by NuSMV itself.
+	 * @return The commands
+	 */
+	/*@ non_null @*/ protected String[] getCheckStatsCommands()
+	{
+		List<String> commands = new ArrayList<String>();
+		commands.add("time");
+		for (String c : getCheckCommands(m_engine))
+		{
+			commands.add(c);
+		}
+		commands.add("time");
+		for (String c : getStatsCommands())
+		{
+			commands.add(c);
+		}
+		for (String c : getOrderCommands())
+		{
+			commands.add(c);
+		}
+		return commands.toArray(new String[commands.size()]);
+	}
+
+	/**
+	 * Turns a list of commands into the contents of a "source" file for
+	 * NuSMV.
+	 * @param commands The commands
+	 * @return The contents of the file
+	 */
+	/*@ non_null @*/ protected static String toSourceScript(String ... commands)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("set on_failure_script_quits; ");
+		for (String command : commands)
+		{
+			out.append(command).append("; ");
+		}
+		out.append("quit;");
+		return out.toString();
+	}
+
+	/**
+	 * A model file named after the digest of its contents.
+	 */
+	protected static class ModelFile
+	{
+		/**
+		 * The absolute path of the file.
+		 */
+		protected final String m_filename;
+
+		/**
+		 * The digest of the contents of the file, in hexadecimal.
+		 */
+		protected final String m_digest;
+
+		/**
+		 * Creates a new model file.
+		 * @param filename The absolute path of the file
+		 * @param digest The digest of its contents
+		 */
+		public ModelFile(String filename, String digest)
+		{
+			super();
+			m_filename = filename;
+			m_digest = digest;
+		}
+
+		/**
+		 * Gets the absolute path of the file.
+		 * @return The path
+		 */
+		/*@ non_null @*/ public String getFilename()
+		{
+			return m_filename;
+		}
+
+		/**
+		 * Gets the digest of the contents of the file.
+		 * @return The digest, in hexadecimal
+		 */
+		/*@ non_null @*/ public String getDigest()
+		{
+			return m_digest;
+		}
+	}
+
+	/**
+	 * An object that prints the contents of a model file.
+	 */
+	protected interface Printer
 	{
-		FileHelper.writeFromString(new File(getSourceCheckFilename()), "set on_failure_script_quits; go; " + (m_computeReachable ? "compute_reachable; " : "") + "check_property; quit;");
-		FileHelper.writeFromString(new File(getSourceStatsFilename()), "set on_failure_script_quits; go; print_bdd_stats; print_reachable_states; quit;");
+		/**
+		 * Prints the contents of the file.
+		 * @param ps The print stream where the contents are to be printed
+		 * @throws IOException Thrown if printing did not succeed
+		 */
+		public void print(PrintStream ps) throws IOException;
 	}
 }
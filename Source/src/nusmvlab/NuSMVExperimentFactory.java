@@ -17,11 +17,17 @@
  */
 package nusmvlab;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import ca.uqac.lif.labpal.experiment.SingleClassExperimentFactory;
 import ca.uqac.lif.labpal.region.Point;
 import ca.uqac.lif.labpal.region.Region;
 
+import static nusmvlab.Engine.ENGINE;
+import static nusmvlab.ModelProvider.DOMAIN_SIZE;
 import static nusmvlab.ModelProvider.GENERATION_TIME;
+import static nusmvlab.VariableOrdering.ORDERING;
 
 /**
  * Creates instances of {@link NuSMVExperiment} based on parameters found in
@@ -45,14 +51,23 @@ public class NuSMVExperimentFactory extends SingleClassExperimentFactory<NuSMVEx
 	 */
 	protected boolean m_withStats;
 	
+	/**
+	 * The batches of experiments sharing the same model, or <tt>null</tt> if
+	 * experiments are not to be grouped into batches.
+	 */
+	protected transient Map<String,Map<ModelId,NuSMVBatch>> m_batches;
+	
+	/**
+	 * Sets whether data-independent experiments are checked on a model with
+	 * the smallest possible domain.
+	 */
+	protected boolean m_reduceDomains = false;
+	
 	/**
 	 * Creates a new instance of the factory
 	 * @param lab The lab the experiments will be added to
 	 * @param models A library that provides models based on a region
 	 * @param props A library that provides properties based on a region
-	 * @param with_stats Set to true to make experiments gather extra stats
-	 * about state space size. Activating this option takes much longer than
-	 * simply checking properties.
 	 */
 	public NuSMVExperimentFactory(MainLab lab, Library<ModelProvider> models, Library<PropertyProvider> props)
 	{
@@ -60,31 +75,108 @@ public class NuSMVExperimentFactory extends SingleClassExperimentFactory<NuSMVEx
 		m_modelLibrary = models;
 		m_propertyLibrary = props;
 		m_withStats = false;
+		m_batches = null;
 	}
 	
 	/**
 	 * Sets the factory so that experiments gather extra stats about state
-	 * space size. Activating this option takes much longer than simply checking
-	 * properties.
+	 * space size.
 	 */
 	public void addStats()
 	{
 		m_withStats = true;
 	}
 	
+	/**
+	 * Sets the factory so that experiments evaluating different properties
+	 * on the same model are grouped into a single call to NuSMV.
+	 */
+	public void addBatches()
+	{
+		m_batches = new HashMap<String,Map<ModelId,NuSMVBatch>>();
+	}
+	
+	/**
+	 * Sets the factory so that experiments whose verdict does not depend on
+	 * the domain size are checked on a model with the smallest possible
+	 * domain.
+	 */
+	public void addDomainReduction()
+	{
+		m_reduceDomains = true;
+	}
+	
 	@Override
 	protected NuSMVExperiment createExperiment(Point region)
 	{
+		int checked_domain = -1;
+		if (m_reduceDomains && m_modelLibrary instanceof NuSMVModelLibrary && m_propertyLibrary instanceof StreamPropertyLibrary)
+		{
+			checked_domain = ((NuSMVModelLibrary) m_modelLibrary).getCheckedDomainSize(region);
+		}
 		long start = System.currentTimeMillis();
-		ModelProvider model = m_modelLibrary.get(region);
+		ModelProvider model;
+		PropertyProvider prop;
+		if (checked_domain < 0)
+		{
+			model = m_modelLibrary.get(region);
+			prop = m_propertyLibrary.get(region);
+		}
+		else
+		{
+			// The property must refer to the variables of the reduced model
+			model = ((NuSMVModelLibrary) m_modelLibrary).get(region, checked_domain);
+			prop = ((StreamPropertyLibrary) m_propertyLibrary).get(region, model);
+		}
 		long end = System.currentTimeMillis();
-		PropertyProvider prop = m_propertyLibrary.get(region);
 		if (model == null || prop == null)
 		{
 			return null;
 		}
+		String engine = region.getString(ENGINE);
+		if (engine == null)
+		{
+			engine = Engine.BDD;
+		}
+		if (!Engine.supports(engine, prop.getLogic()))
+		{
+			return null;
+		}
 		NuSMVExperiment e = new NuSMVExperiment(model, prop, m_withStats);
 		e.writeOutput(GENERATION_TIME, end - start);
+		if (checked_domain >= 0)
+		{
+			e.setCheckedDomainSize(region.getInt(DOMAIN_SIZE), checked_domain);
+		}
+		e.setEngine(engine);
+		String ordering = region.getString(ORDERING);
+		if (ordering == null)
+		{
+			ordering = VariableOrdering.DEFAULT;
+		}
+		e.setOrdering(ordering);
+		// Decomposed properties are checked in processes of their own, and statically decided ones are not checked;
+		// observers add sections and fairness constraints to the model, which cannot be shared
+		if (m_batches != null && engine.compareTo(Engine.PORTFOLIO) != 0 && !VariableOrdering.isDynamic(ordering) && !NuSMVExperiment.s_decomposition
+				&& StaticCheck.decide(prop) == null && !(prop instanceof ObserverCompiler.ObserverProperty))
+		{
+			// Only experiments using the same engine and ordering can share a call to NuSMV
+			String key = engine + "/" + ordering;
+			Map<ModelId,NuSMVBatch> batches = m_batches.get(key);
+			if (batches == null)
+			{
+				batches = new HashMap<ModelId,NuSMVBatch>();
+				m_batches.put(key, batches);
+			}
+			ModelId id = new ModelId(region);
+			NuSMVBatch batch = batches.get(id);
+			if (batch == null)
+			{
+				batch = new NuSMVBatch();
+				batches.put(id, batch);
+			}
+			e.setBatch(batch);
+		}
 		return e;
 	}
 }
@@ -17,26 +17,29 @@
  */
 package nusmvlab;
 
-import ca.uqac.lif.cep.nusmv.BeepBeepModel;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import ca.uqac.lif.cep.nusmv.BeepBeepPipeline;
 import ca.uqac.lif.cep.nusmv.BinaryApplyFunctionModule;
-import ca.uqac.lif.cep.nusmv.CountDecimateModule;
-import ca.uqac.lif.cep.nusmv.CumulateModule;
-import ca.uqac.lif.cep.nusmv.FilterModule;
 import ca.uqac.lif.cep.nusmv.ForkModule;
 import ca.uqac.lif.cep.nusmv.NusmvNumbers;
-import ca.uqac.lif.cep.nusmv.PassthroughModule;
 import ca.uqac.lif.cep.nusmv.ProcessorModule;
 import ca.uqac.lif.cep.nusmv.ProcessorQueue;
-import ca.uqac.lif.cep.nusmv.TrimModule;
-import ca.uqac.lif.cep.nusmv.TurnIntoModule;
-import ca.uqac.lif.cep.nusmv.UnaryApplyFunctionModule;
-import ca.uqac.lif.cep.nusmv.WindowModule;
 import ca.uqac.lif.labpal.region.Point;
-import ca.uqac.lif.labpal.region.Region;
+import ca.uqac.lif.labpal.util.FileHelper;
 import ca.uqac.lif.nusmv4j.BooleanDomain;
 import ca.uqac.lif.nusmv4j.Domain;
 import ca.uqac.lif.nusmv4j.IntegerRange;
+import nusmvlab.PipelineSpec.SpecException;
 import nusmvlab.StreamPropertyLibrary.OutputAlwaysTrue;
 import nusmvlab.StreamPropertyLibrary.OutputsAlwaysEqual;
 
@@ -45,14 +48,12 @@ import static nusmvlab.PropertyProvider.PROPERTY;
 import static nusmvlab.BeepBeepModelProvider.QUERY;
 import static nusmvlab.BeepBeepModelProvider.QUEUE_SIZE;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import static nusmvlab.BeepBeepModelProvider.K;
 
 /**
  * Library that produces NUSMV model providers based on the contents of a
- * region.
+ * region. The processor chain of each query is built from its
+ * {@link PipelineSpec}, looked up by name.
  */
 public class NuSMVModelLibrary implements Library<ModelProvider>
 {
@@ -116,15 +117,60 @@ public class NuSMVModelLibrary implements Library<ModelProvider>
 	 */
 	public static final transient String Q_COMPARE_PASSTHROUGH_DELAY = "Passthrough vs delay comparison";
 
+	/**
+	 * The maximum number of pipelines, and of translations, kept in the
+	 * caches of the library.
+	 */
+	public static final transient int CACHE_SIZE = 64;
+
 	/**
 	 * A cache of pipelines already generated. When requested another time,
-	 * the chain is fetched from this map instead of being regenerated. The issue
-	 * here is not performance, but rather that every time the chain is created,
-	 * its processors are given different unique IDs; this could create a
-	 * mismatch between NuSMV variables for the chain, and those that occur in
-	 * the CTL/LTL formulas (which are generated in a later step).
+	 * the chain is fetched from this map instead of being regenerated. Every
+	 * time the chain is created, its processors are given different unique
+	 * IDs; since the names in the model are made canonical by
+	 * {@link CanonicalModel}, a chain that has been evicted from the cache can
+	 * be created again without creating a mismatch with the CTL/LTL formulas
+	 * generated earlier. The cache can be used by several threads at once, and
+	 * each chain is created only once while it is in the cache.
+	 */
+	protected final transient MemoCache<ModelId,PipelineGraph> m_cache;
+
+	/**
+	 * A cache of the NuSMV translations of the pipelines in {@link #m_cache}.
+	 * All the model providers for the same model share the same translation.
+	 */
+	protected final transient MemoCache<ModelId,CanonicalModel> m_models;
+
+	/**
+	 * A lock held while a processor chain is being created or translated into
+	 * NuSMV modules. Processors are given their unique IDs from a counter
+	 * shared by the whole program, so two chains cannot be created at the
+	 * same time. The translation is done by nusmv4j, which makes no promise
+	 * of being usable by several threads at once; it is therefore serialized
+	 * as well.
+	 */
+	protected static final transient Object s_chainLock = new Object();
+
+	/**
+	 * The specifications of the queries handled by the library, by name, in
+	 * the order in which they were added. The queries that come with the lab
+	 * are read from {@link PipelineSpec#FILENAME}; others can be added with
+	 * {@link #addSpecs(File)}.
 	 */
-	protected transient Map<ModelId,BeepBeepPipeline> m_cache;
+	protected static final transient Map<String,PipelineSpec> s_specs = new LinkedHashMap<String,PipelineSpec>();
+
+	static
+	{
+		try
+		{
+			addSpecs(FileHelper.internalFileToString(NuSMVModelLibrary.class, PipelineSpec.FILENAME));
+		}
+		catch (SpecException e)
+		{
+			// The file is part of the lab; it must be valid
+			throw new IllegalStateException(e);
+		}
+	}
 
 	/**
 	 * Creates a new instance of the library.
@@ -132,57 +178,137 @@ public class NuSMVModelLibrary implements Library<ModelProvider>
 	public NuSMVModelLibrary()
 	{
 		super();
-		m_cache = new HashMap<ModelId,BeepBeepPipeline>();
+		m_cache = new MemoCache<ModelId,PipelineGraph>(CACHE_SIZE);
+		m_models = new MemoCache<ModelId,CanonicalModel>(CACHE_SIZE);
 	}
 
 	/**
-	 * Gets the names of all queries handled by this model provider.
-	 * @return The names of all queries
+	 * Gets the names of all queries handled by the library: those that come
+	 * with the lab, followed by those added with {@link #addSpecs(File)}, in
+	 * the order in which they were added. A query that replaced another one
+	 * keeps the position of the query it replaced.
+	 * @return A new array with the names of the queries; changing it does
+	 * not change the queries of the library
 	 */
-	public static String[] getQueryNames()
+	public static synchronized String[] getQueryNames()
 	{
-		return new String[] {Q_PASSTHROUGH, Q_PRODUCT_WINDOW_K, Q_WIN_SUM_OF_1,
-				Q_SUM_OF_DOUBLES, Q_PRODUCT, Q_PRODUCT_1_K, Q_SUM_OF_ODDS,
-				Q_OUTPUT_IF_SMALLER_K, Q_COMPARE_WINDOW_SUM_2, Q_COMPARE_WINDOW_SUM_3,
-				Q_COMPARE_PASSTHROUGH_DELAY};
+		return s_specs.keySet().toArray(new String[s_specs.size()]);
 	}
 
-	@Override
-	public ModelProvider get(Point p)
+	/**
+	 * Adds the queries of a list of specifications to those handled by the
+	 * library. A query with the same name as an existing one replaces it.
+	 * @param contents The JSON contents of a file of specifications, in the
+	 * format described in {@link PipelineSpec}
+	 * @return The names of the queries added, in the order of the file
+	 * @throws SpecException Thrown if the contents are not a valid list of
+	 * specifications; in such a case, no query is added
+	 */
+	public static List<String> addSpecs(String contents) throws SpecException
 	{
-		String query = p.getString(QUERY);
-		int domain_size = p.getInt(DOMAIN_SIZE);
-		int queue_size = p.getInt(QUEUE_SIZE);
-		Count c = new Count();
-		c.x = -1;
-		Object o_k = p.get(K);
-		if (o_k instanceof Number)
+		return add(PipelineSpec.read(contents));
+	}
+
+	/**
+	 * Adds specifications to those handled by the library.
+	 * @param specs The specifications
+	 * @return The names of the queries added, in the order of the list
+	 */
+	protected static synchronized List<String> add(/*@ non_null @*/ List<PipelineSpec> specs)
+	{
+		List<String> names = new ArrayList<String>();
+		for (PipelineSpec spec : specs)
 		{
-			c.x = ((Number) o_k).intValue();
+			s_specs.put(spec.getQuery(), spec);
+			names.add(spec.getQuery());
 		}
-		if (query.compareTo(Q_DUMMY) == 0)
+		return names;
+	}
+
+	/**
+	 * Adds the queries of specification files to those handled by the
+	 * library.
+	 * @param f A file of specifications, or a directory whose
+	 * <tt>.json</tt> files are read in alphabetical order
+	 * @return The names of the queries added
+	 * @throws IOException Thrown if a file could not be read
+	 * @throws SpecException Thrown if a file is not a valid list of
+	 * specifications. All the files are read before any query is added, so
+	 * that in such a case, no query is added.
+	 */
+	public static List<String> addSpecs(/*@ non_null @*/ File f) throws IOException, SpecException
+	{
+		List<File> files = new ArrayList<File>();
+		if (f.isDirectory())
 		{
-			return new DummyModelProvider(queue_size, domain_size);
+			File[] children = f.listFiles((dir, name) -> name.endsWith(".json"));
+			if (children != null)
+			{
+				Arrays.sort(children);
+				Collections.addAll(files, children);
+			}
 		}
-		ModelId m = new ModelId(p);
-		BeepBeepPipeline start = null;
-		if (m_cache.containsKey(m)) 
+		else
 		{
-			start = m_cache.get(m);
+			files.add(f);
 		}
-		else
+		List<PipelineSpec> specs = new ArrayList<PipelineSpec>();
+		for (File spec_file : files)
 		{
-			start = getProcessorChain(p, c);
-			m_cache.put(m, start);
+			try
+			{
+				specs.addAll(PipelineSpec.read(new String(Files.readAllBytes(spec_file.toPath()), StandardCharsets.UTF_8)));
+			}
+			catch (SpecException e)
+			{
+				throw new SpecException(spec_file.getName() + ": " + e.getMessage());
+			}
 		}
-		if (start == null)
+		return add(specs);
+	}
+
+	/**
+	 * Gets the specification of a query.
+	 * @param query The name of the query
+	 * @return The specification, or <tt>null</tt> if the query is unknown
+	 */
+	protected static synchronized PipelineSpec getSpec(String query)
+	{
+		return s_specs.get(query);
+	}
+
+	@Override
+	public ModelProvider get(Point p)
+	{
+		return get(p, p.getInt(DOMAIN_SIZE));
+	}
+
+	/**
+	 * Gets the model for a point, with a domain size that may differ from
+	 * the one specified by the point.
+	 * @param p The point
+	 * @param domain_size The size of the domains in the model
+	 * @return The model, or <tt>null</tt> if the point does not correspond
+	 * to a valid model
+	 */
+	public ModelProvider get(Point p, int domain_size)
+	{
+		String query = p.getString(QUERY);
+		int queue_size = p.getInt(QUEUE_SIZE);
+		if (query.compareTo(Q_DUMMY) == 0)
 		{
-			return null;
+			return new DummyModelProvider(queue_size, domain_size);
 		}
+		Count c = getParameter(p);
 		try
 		{
-			BeepBeepModelProvider bbmp = new BeepBeepModelProvider(new BeepBeepModel(start), query, queue_size, domain_size, c.x, getImageUrl(query));			
-			return bbmp;
+			ModelId id = new ModelId(p, domain_size);
+			CanonicalModel model = getModel(id, c.x);
+			if (model == null)
+			{
+				return null;
+			}
+			return new BeepBeepModelProvider(this, id, model.getIndex(), query, queue_size, domain_size, c.x, getImageUrl(query));
 		}
 		catch (RuntimeException e)
 		{
@@ -192,33 +318,133 @@ public class NuSMVModelLibrary implements Library<ModelProvider>
 	}
 
 	/**
-	 * Creates a chain of BeepBeep processors, based on a textual name.
-	 * This method is used internally by {@link #getModel(Region, int, int)}. 
-	 * @param p The point corresponding to the chain to create
-	 * @param query The name of the chain to create
-	 * @return A reference to the first processor of the chain
+	 * Gets the smallest domain size with which the verdict of the property
+	 * of a point can be obtained. This is the domain size of the point,
+	 * unless the property does not depend on data values and the processor
+	 * chain is data-independent, as determined by {@link DataIndependence}.
+	 * In that case, the verdict is the same for every domain size, and the
+	 * smallest size for which the chain can be built is returned.
+	 * @param p The point
+	 * @return The domain size
 	 */
-	protected static BeepBeepPipeline getProcessorChain(Point r, Count c)
+	public int getCheckedDomainSize(Point p)
 	{
-		String property = r.getString(PROPERTY);
-		int dom_size = r.getInt(DOMAIN_SIZE);
+		int requested = p.getInt(DOMAIN_SIZE);
+		String query = p.getString(QUERY);
+		if (query.compareTo(Q_DUMMY) == 0 || !DataIndependence.isValueInsensitive(p.getString(PROPERTY)))
+		{
+			return requested;
+		}
+		for (int d = 1; d < requested; d++)
+		{
+			PipelineGraph g = getGraph(new ModelId(p, d), getParameter(p).x);
+			if (g != null)
+			{
+				return DataIndependence.isDataIndependent(g) ? d : requested;
+			}
+		}
+		return requested;
+	}
+
+	/**
+	 * Gets the graph of the processor chain of a model, either from the
+	 * cache or by creating it.
+	 * @param id The identifier of the model
+	 * @param k The parameter of the chain
+	 * @return The graph, or <tt>null</tt> if the identifier does not
+	 * correspond to a valid chain
+	 */
+	protected PipelineGraph getGraph(/*@ non_null @*/ ModelId id, int k)
+	{
+		return m_cache.get(id, () ->
+		{
+			synchronized (s_chainLock)
+			{
+				return getProcessorChain(id, k);
+			}
+		});
+	}
+
+	/**
+	 * Gets the canonical NuSMV translation of the processor chain of a
+	 * model, either from the cache or by creating it. Model providers do not
+	 * keep the translation, and fetch it again through this method when they
+	 * need it; a translation that has been evicted from the cache is then
+	 * created again, with the same canonical names.
+	 * @param id The identifier of the model
+	 * @param k The parameter of the chain
+	 * @return The translation, or <tt>null</tt> if the identifier does not
+	 * correspond to a valid chain
+	 */
+	public CanonicalModel getModel(/*@ non_null @*/ ModelId id, int k)
+	{
+		return m_models.get(id, () ->
+		{
+			PipelineGraph start = getGraph(id, k);
+			if (start == null)
+			{
+				return null;
+			}
+			synchronized (s_chainLock)
+			{
+				return new CanonicalModel(start, id.m_domainSize);
+			}
+		});
+	}
+
+	/**
+	 * Reads the parameter k of a point. If the point does not give a positive
+	 * value, the default value of the query's specification is used, if any.
+	 * @param p The point
+	 * @return The parameter, equal to -1 if neither the point nor the query
+	 * specify it
+	 */
+	/*@ non_null @*/ protected static Count getParameter(Point p)
+	{
+		Count c = new Count();
+		c.x = -1;
+		Object o_k = p.get(K);
+		if (o_k instanceof Number)
+		{
+			c.x = ((Number) o_k).intValue();
+		}
+		PipelineSpec spec = getSpec(p.getString(QUERY));
+		if (spec != null)
+		{
+			c.x = spec.getParameter(c.x);
+		}
+		return c;
+	}
+
+	/**
+	 * Creates a chain of BeepBeep processors from the specification of the
+	 * query of a model. This method is used internally by
+	 * {@link #getGraph(ModelId, int)}.
+	 * @param id The identifier of the model whose chain is to be created
+	 * @param k The parameter of the chain
+	 * @return The graph of the pipeline, whose connections are recorded, or
+	 * <tt>null</tt> if the query is unknown or its chain cannot be built
+	 * with these parameters
+	 */
+	protected static PipelineGraph getProcessorChain(/*@ non_null @*/ ModelId id, int k)
+	{
+		String property = id.m_property;
+		int dom_size = id.m_domainSize;
 		Domain domain = new IntegerRange(0, dom_size);
-		int q_size = r.getInt(QUEUE_SIZE);
+		int q_size = id.m_queueSize;
 		boolean is_comparison = property.compareTo(OutputsAlwaysEqual.NAME) == 0 || property.compareTo(OutputAlwaysTrue.NAME) == 0;
 		boolean is_stepwise = property.compareTo(OutputsAlwaysEqual.NAME) == 0;
 		int Q_in = 1, Q_out = 1;
-		PipelineCreatorPair pcp = getPipelineCreators(r, c);
-		if (pcp == null)
+		PipelineSpec spec = getSpec(id.m_name);
+		if (spec == null || !spec.accepts(dom_size, k))
 		{
 			return null;
 		}
-		PipelineCreator pc1 = pcp.pc1;
-		PipelineCreator pc2 = pcp.pc2;
-		String pipeline_name = pcp.pipeline_name;
+		String pipeline_name = spec.getPipelineName();
 		if (!is_comparison)
 		{
-			BeepBeepPipeline bp = new BeepBeepPipeline(pipeline_name, new ProcessorQueue[] {new ProcessorQueue("in", "inc_0", "inb_0", 1, domain)}, new ProcessorQueue[] {new ProcessorQueue("o", "oc_0", "ob_0", 1, domain)});
-			ProcessorModule[] ports = pc1.get(bp, domain, Q_in, q_size, Q_out, c);
+			PipelineGraph bp = new PipelineGraph(new BeepBeepPipeline(pipeline_name, new ProcessorQueue[] {new ProcessorQueue("in", "inc_0", "inb_0", 1, domain)}, new ProcessorQueue[] {new ProcessorQueue("o", "oc_0", "ob_0", 1, domain)}));
+			ProcessorModule[] ports = spec.build(0, bp, domain, Q_in, q_size, Q_out, k);
 			bp.setInput(ports[0], 0, 0);
 			bp.setOutput(ports[1], 0, 0);
 			return bp;
@@ -234,13 +460,13 @@ public class NuSMVModelLibrary implements Library<ModelProvider>
 			{
 				out_queues = new ProcessorQueue[] {new ProcessorQueue("ou0", "oc_0", "ob_0", 1, BooleanDomain.instance)};
 			}
-			BeepBeepPipeline bp = new BeepBeepPipeline(pipeline_name, new ProcessorQueue[] {new ProcessorQueue("in", "inc_0", "inb_0", 1, domain)}, out_queues);
+			PipelineGraph bp = new PipelineGraph(new BeepBeepPipeline(pipeline_name, new ProcessorQueue[] {new ProcessorQueue("in", "inc_0", "inb_0", 1, domain)}, out_queues));
 			ForkModule compare_fork = new ForkModule("Fork2", domain, 2, Q_in);
 			bp.add(compare_fork);
 			bp.setInput(compare_fork, 0, 0);
-			ProcessorModule[] ports1 = pc1.get(bp, domain, Q_in, q_size, Q_out, c);
+			ProcessorModule[] ports1 = spec.build(0, bp, domain, Q_in, q_size, Q_out, k);
 			bp.connect(compare_fork, 0, ports1[0], 0);
-			ProcessorModule[] ports2 = pc2.get(bp, domain, Q_in, q_size, Q_out, c);
+			ProcessorModule[] ports2 = spec.build(1, bp, domain, Q_in, q_size, Q_out, k);
 			bp.connect(compare_fork, 1, ports2[0], 0);
 			if (!is_stepwise)
 			{
@@ -266,51 +492,8 @@ public class NuSMVModelLibrary implements Library<ModelProvider>
 	 */
 	protected static String getImageUrl(String query)
 	{
-		if (query.compareTo(Q_PASSTHROUGH) == 0)
-		{
-			return "/resource/Passthrough.png";
-		}
-		if (query.compareTo(Q_PRODUCT) == 0)
-		{
-			return "/resource/Product.png";
-		}
-		if (query.compareTo(Q_PRODUCT_1_K) == 0)
-		{
-			return "/resource/Product1_k.png";
-		}
-		if (query.compareTo(Q_SUM_OF_DOUBLES) == 0)
-		{
-			return "/resource/SumOfDoubles.png";
-		}
-		if (query.compareTo(Q_SUM_OF_ODDS) == 0)
-		{
-			return "/resource/SumOfOdds.png";
-		}
-		if (query.compareTo(Q_PRODUCT_WINDOW_K) == 0)
-		{
-			return "/resource/ProductWindow_k.png";
-		}
-		if (query.compareTo(Q_WIN_SUM_OF_1) == 0)
-		{
-			return "/resource/SumOfOnesWindow_k.png";
-		}
-		if (query.compareTo(Q_OUTPUT_IF_SMALLER_K) == 0)
-		{
-			return "/resource/OutputIfSmallerThan_k.png";
-		}
-		if (query.compareTo(Q_COMPARE_WINDOW_SUM_2) == 0)
-		{
-			return "/resource/CompareWindowSum2.png";
-		}
-		if (query.compareTo(Q_COMPARE_WINDOW_SUM_3) == 0)
-		{
-			return "/resource/CompareWindowSum3.png";
-		}
-		if (query.compareTo(Q_COMPARE_PASSTHROUGH_DELAY) == 0)
-		{
-			return "/resource/ComparePassthroughDelay_k.png";
-		}
-		return null;
+		PipelineSpec spec = getSpec(query);
+		return spec == null ? null : spec.getImageUrl();
 	}
 
 	/**
@@ -320,335 +503,4 @@ public class NuSMVModelLibrary implements Library<ModelProvider>
 	{
 		public int x = 0;
 	}
-	
-	protected static PipelineCreatorPair getPipelineCreators(Point r, Count c)
-	{
-		String query = r.getString(QUERY);
-		PipelineCreator pc1 = null, pc2 = null;
-		String pipeline_name = "";
-		if (query.compareTo(Q_PASSTHROUGH) == 0)
-		{
-			pc1 = new CreatePassthrough();
-			pc2 = new CreatePassthrough();
-			pipeline_name = "Passthrough";
-		}
-		else if (query.compareTo(Q_PRODUCT) == 0)
-		{
-			pc1 = new CreateProduct();
-			pc2 = new CreateProduct();
-			pipeline_name = "Product";
-		}
-		else if (query.compareTo(Q_PRODUCT_1_K) == 0)
-		{
-			// Decimation interval is 3 if not specified
-			c.x = c.x > 0 ? c.x : 3;
-			pc1 = new CreateProductOneK();
-			pc2 = new CreateProductOneK();
-			pipeline_name = "ProductOneK";
-		}
-		else if (query.compareTo(Q_PRODUCT_WINDOW_K) == 0)
-		{
-			// Window width is 3 if not specified
-			c.x = c.x > 0 ? c.x : 3;
-			pc1 = new CreateProductWindowK();
-			pc2 = new CreateProductWindowK();
-			pipeline_name = "ProductWindowK";
-		}
-		else if (query.compareTo(Q_SUM_OF_ODDS) == 0)
-		{
-			pc1 = new CreateSumOfOdds();
-			pc2 = new CreateSumOfOdds();
-			pipeline_name = "SumOfOdds";
-		}
-		else if (query.compareTo(Q_SUM_OF_DOUBLES) == 0)
-		{
-			if (r.getInt(DOMAIN_SIZE) < 3)
-			{
-				// This query is only possible if domain contains number 2
-				return null;
-			}
-			pc1 = new CreateSumOfDoubles();
-			pc2 = new CreateSumOfDoubles();
-			pipeline_name = "SumOfDoubles";
-		}
-		else if (query.compareTo(Q_WIN_SUM_OF_1) == 0)
-		{
-			// Window width is 3 if not specified
-			c.x = c.x > 0 ? c.x : 3;
-			pc1 = new CreateWinSumOfOne();
-			pc2 = new CreateWinSumOfOne();
-			pipeline_name = "WindowSumOfOne";
-		}
-		else if (query.compareTo(Q_OUTPUT_IF_SMALLER_K) == 0)
-		{
-			// Parameter value is 3 if not specified
-			c.x = c.x > 0 ? c.x : 3;
-			if (r.getInt(DOMAIN_SIZE) <= c.x)
-			{
-				// This query is only possible if domain contains number k
-				return null;
-			}
-			pc1 = new CreateOutputIfSmallerThanK();
-			pc2 = new CreateOutputIfSmallerThanK();
-			pipeline_name = "OutputIfSmallerThanK";
-		}
-		else if (query.compareTo(Q_COMPARE_WINDOW_SUM_3) == 0)
-		{
-			pc1 = new CreateCompareWindowSum3a();
-			pc2 = new CreateCompareWindowSum3b();
-			pipeline_name = "CompareWindowSumThree";
-		}
-		else if (query.compareTo(Q_COMPARE_WINDOW_SUM_2) == 0)
-		{
-			pc1 = new CreateCompareWindowSum2a();
-			pc2 = new CreateCompareWindowSum2b();
-			pipeline_name = "CompareWindowSumTwo";
-		}
-		else if (query.compareTo(Q_COMPARE_PASSTHROUGH_DELAY) == 0)
-		{
-			pc1 = new CreatePassthrough();
-			pc2 = new CreateFilterDelay();
-			pipeline_name = "ComparePassthroughDelay";
-		}
-		return new PipelineCreatorPair(pc1, pc2, pipeline_name);
-	}
-
-	protected interface PipelineCreator
-	{
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c);
-	}
-
-	protected static class CreatePassthrough implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			PassthroughModule pt = new PassthroughModule("pt", domain, Q_in);
-			bp.add(pt);
-			return new ProcessorModule[] {pt, pt};
-		}
-	}
-	
-	protected static class CreateProduct implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			CumulateModule prod = new CumulateModule("prod", new NusmvNumbers.Multiplication(domain), Q_in, Q_out);
-			bp.add(prod);
-			return new ProcessorModule[] {prod, prod};
-		}
-	}
-	
-	protected static class CreateProductOneK implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			ForkModule f = new ForkModule("Fork2", domain, 2, Q_in);
-			BinaryApplyFunctionModule mul = new BinaryApplyFunctionModule("Mul", new NusmvNumbers.Multiplication(domain), Q_in, q_size, Q_out);
-			CountDecimateModule dec = new CountDecimateModule("Decimate" + c.x, c.x, domain, Q_in, Q_out);
-			bp.connect(f, 0, mul, 0);
-			bp.connect(f, 1, dec, 0);
-			bp.connect(dec, 0, mul, 1);
-			bp.add(f, mul, dec);
-			return new ProcessorModule[] {f, mul};
-		}
-	}
-	
-	protected static class CreateProductWindowK implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			CumulateModule prod = new CumulateModule("Product", new NusmvNumbers.Multiplication(domain), c.x, c.x);
-			WindowModule win = new WindowModule("Win", prod, c.x, domain, domain, Q_in, Q_out);
-			bp.add(win);
-			return new ProcessorModule[] {win, win};
-		}
-	}
-	
-	protected static class CreateSumOfOdds implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			TurnIntoModule one_1 = new TurnIntoModule("TurnOne", domain, domain, 1, Q_in, Q_out);
-			CumulateModule sum_1 = new CumulateModule("Sum", new NusmvNumbers.Addition(domain), Q_in, Q_out);
-			bp.connect(one_1, 0, sum_1, 0);
-			ForkModule f = new ForkModule("Fork3", domain, 3, 1);
-			bp.connect(sum_1, 0, f, 0);
-			TrimModule trim = new TrimModule("Trim1", 1, domain, 1);
-			bp.connect(f, 0, trim, 0);
-			UnaryApplyFunctionModule even = new UnaryApplyFunctionModule("IsEven", new NusmvNumbers.IsEven(domain), Q_in, Q_out);
-			bp.connect(trim, 0, even, 0);
-			TurnIntoModule one_2 = new TurnIntoModule("TurnOne", domain, domain, 1, Q_in, Q_out);
-			bp.connect(f, 2, one_2, 0);
-			BinaryApplyFunctionModule add = new BinaryApplyFunctionModule("Add", new NusmvNumbers.Addition(domain), Q_in, q_size, Q_out);
-			bp.connect(f, 1, add, 0);
-			bp.connect(one_2, 0, add, 1);
-			FilterModule filter = new FilterModule("Filter", domain, Q_in, q_size, Q_out);
-			bp.connect(even, 0, filter, 1);
-			bp.connect(add, 0, filter, 0);
-			CumulateModule sum_2 = new CumulateModule("Sum", new NusmvNumbers.Addition(domain), Q_in, Q_out);
-			bp.connect(filter, 0, sum_2, 0);
-			bp.add(one_1, sum_1, f, trim, even, one_2, add, filter);
-			return new ProcessorModule[] {one_1, sum_2};
-		}
-	}
-	
-	protected static class CreateSumOfDoubles implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			ForkModule f = new ForkModule("Fork2", domain, 2, 1);
-			BinaryApplyFunctionModule mul = new BinaryApplyFunctionModule("Mul", new NusmvNumbers.Multiplication(domain), Q_in, q_size, Q_out);
-			TurnIntoModule two = new TurnIntoModule("TurnTwo", domain, domain, 2, Q_in, Q_out);
-			bp.connect(f, 0, mul, 0);
-			bp.connect(f, 1, two, 0);
-			bp.connect(two, 0, mul, 1);
-			CumulateModule sum = new CumulateModule("Sum", new NusmvNumbers.Addition(domain), Q_in, Q_out);
-			bp.connect(mul, 0, sum, 0);
-			bp.add(f, mul, two, sum);
-			return new ProcessorModule[] {f, sum};
-		}
-	}
-	
-	protected static class CreateWinSumOfOne implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			TurnIntoModule one = new TurnIntoModule("TurnOne", domain, domain, 1, Q_in, Q_out);
-			CumulateModule sum = new CumulateModule("Sum1", new NusmvNumbers.Addition(domain), Q_in, Q_out);
-			bp.connect(one, 0, sum, 0);
-			CumulateModule add = new CumulateModule("Sum2", new NusmvNumbers.Addition(domain), c.x, c.x);
-			WindowModule win = new WindowModule("Win", add, c.x, domain, domain, Q_in, Q_out);
-			bp.connect(sum, 0, win, 0);
-			bp.add(win, sum);
-			return new ProcessorModule[] {sum, win};
-		}
-	}
-	
-	protected static class CreateOutputIfSmallerThanK implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			ForkModule f = new ForkModule("Fork3", domain, 3, 1);
-			FilterModule filter = new FilterModule("Filter", domain, Q_in, q_size, Q_out);
-			bp.connect(f, 0, filter, 0);
-			TurnIntoModule turn_k = new TurnIntoModule("TurnK", domain, domain, c.x, Q_in, Q_out);
-			bp.connect(f, 1, turn_k, 0);
-			TurnIntoModule turn_1 = new TurnIntoModule("TurnOne", domain, domain, 1, Q_in, Q_out);
-			bp.connect(f, 2, turn_1, 0);
-			CumulateModule sum = new CumulateModule("Sum", new NusmvNumbers.Addition(domain), Q_in, Q_out);
-			bp.connect(turn_1, 0, sum, 0);
-			BinaryApplyFunctionModule gt = new BinaryApplyFunctionModule("Greater", new NusmvNumbers.IsLessOrEqual(domain), Q_in, q_size, Q_out);
-			bp.connect(turn_k, 0, gt, 1);
-			bp.connect(sum, 0, gt, 0);
-			bp.connect(gt, 0, filter, 1);
-			bp.add(f, filter, turn_k, turn_1, sum, gt);
-			bp.setInput(f, 0, 0);
-			bp.setOutput(filter, 0, 0);
-			return new ProcessorModule[] {f, filter};
-		}
-	}
-	
-	protected static class CreateCompareWindowSum3a implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			int width = 3;
-			CumulateModule add = new CumulateModule("Sum", new NusmvNumbers.Addition(domain), width, width);
-			WindowModule win = new WindowModule("Win", add, width, domain, domain, Q_in, Q_out);
-			bp.add(win);
-			return new ProcessorModule[] {win, win};
-		}
-	}
-	
-	protected static class CreateCompareWindowSum3b implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			ForkModule f = new ForkModule("Fork3", domain, 3, Q_in);
-			TrimModule trim1 = new TrimModule("Trim1", 1, domain, Q_in);
-			BinaryApplyFunctionModule add1 = new BinaryApplyFunctionModule("Add", new NusmvNumbers.Addition(domain), Q_in, q_size, Q_out);
-			bp.connect(f, 0, add1, 0);
-			bp.connect(f, 1, trim1, 0);
-			bp.connect(trim1, 0, add1, 1);
-			TrimModule trim2 = new TrimModule("Trim2", 2, domain, Q_in);
-			BinaryApplyFunctionModule add2 = new BinaryApplyFunctionModule("Add", new NusmvNumbers.Addition(domain), Q_in, q_size, Q_out);
-			bp.connect(f, 2, trim2, 0);
-			bp.connect(add1, 0, add2, 0);
-			bp.connect(trim2, 0, add2, 1);
-			bp.add(f, trim1, add1, trim2, add2);
-			return new ProcessorModule[] {f, add2};
-		}
-	}
-	
-	protected static class CreateCompareWindowSum2a implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			int width = 2;
-			CumulateModule add = new CumulateModule("Sum", new NusmvNumbers.Addition(domain), width, width);
-			WindowModule win = new WindowModule("Win", add, width, domain, domain, Q_in, Q_out);
-			bp.add(win);
-			return new ProcessorModule[] {win, win};
-		}
-	}
-	
-	protected static class CreateCompareWindowSum2b implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			ForkModule f = new ForkModule("Fork2", domain, 2, Q_in);
-			TrimModule trim1 = new TrimModule("Trim1", 1, domain, Q_in);
-			BinaryApplyFunctionModule add1 = new BinaryApplyFunctionModule("Add", new NusmvNumbers.Addition(domain), Q_in, q_size, Q_out);
-			bp.connect(f, 0, add1, 0);
-			bp.connect(f, 1, trim1, 0);
-			bp.connect(trim1, 0, add1, 1);
-			bp.add(f, trim1, add1);
-			return new ProcessorModule[] {f, add1};
-		}
-	}
-	
-	protected static class CreateFilterDelay implements PipelineCreator
-	{
-		@Override
-		public ProcessorModule[] get(BeepBeepPipeline bp, Domain domain, int Q_in, int q_size, int Q_out, Count c)
-		{
-			ForkModule f = new ForkModule("Fork2", domain, 2, Q_in);
-			TrimModule trim = new TrimModule("Trim1", 1, domain, Q_in);
-			bp.connect(f, 1, trim, 0);
-			TurnIntoModule t = new TurnIntoModule("TurnTrue", domain, BooleanDomain.instance, true, Q_in, Q_out);
-			bp.connect(trim, 0, t, 0);
-			FilterModule filter = new FilterModule("Filter", domain, Q_in, q_size, Q_out);
-			bp.connect(f, 0, filter, 0);
-			bp.connect(t, 0, filter, 1);
-			bp.add(f, trim, t, filter);
-			return new ProcessorModule[] {f, filter};
-		}
-	}
-	
-	protected static class PipelineCreatorPair
-	{
-		public PipelineCreator pc1;
-		public PipelineCreator pc2;
-		public String pipeline_name;
-		
-		public PipelineCreatorPair(PipelineCreator pc1, PipelineCreator pc2, String pipeline_name)
-		{
-			super();
-			this.pc1 = pc1;
-			this.pc2 = pc2;
-			this.pipeline_name = pipeline_name;
-		}
-	}
 }
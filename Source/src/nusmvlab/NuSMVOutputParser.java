@@ -0,0 +1,450 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts data from the output of NuSMV in a single pass, as the output is
+ * being produced. The output is read line by line into a reusable buffer,
+ * and only the values of interest are kept; in particular, the states of a
+ * counter-example trace are counted but never stored. The memory used by
+ * the parser therefore does not depend on the size of NuSMV's output.
+ * <p>
+ * The output is divided into {@link Section}s, each line printed by NuSMV's
+ * <tt>time</tt> command closing the current section and starting a new one.
+ */
+public class NuSMVOutputParser
+{
+	/**
+	 * The regex pattern to read memory consumption from NuSMV's output
+	 */
+	protected static final transient Pattern s_memoryPattern = Pattern.compile("Memory in use: (\\d+)");
+
+	/**
+	 * The regex pattern to read total nodes from NuSMV's output
+	 */
+	protected static final transient Pattern s_totalNodesPattern = Pattern.compile("Peak number of nodes: (\\d+)");
+
+	/**
+	 * The regex pattern to read live nodes from NuSMV's output
+	 */
+	protected static final transient Pattern s_liveNodesPattern = Pattern.compile("Peak number of live nodes: (\\d+)");
+
+	/**
+	 * The regex pattern to identify states of a counter-example trace
+	 */
+	protected static final transient Pattern s_witnessPattern = Pattern.compile("State: (\\d+)\\.(\\d+)");
+
+	/**
+	 * The regex pattern to identify system diameter
+	 */
+	protected static final transient Pattern s_diameterPattern = Pattern.compile("system diameter: (\\d+)");
+
+	/**
+	 * The regex pattern to identify the number of reachable states
+	 */
+	protected static final transient Pattern s_reachableStatesPattern = Pattern.compile("reachable states: .*?\\^([\\d\\.]+)");
+
+	/**
+	 * The regex pattern to identify the total number of states
+	 */
+	protected static final transient Pattern s_totalStatesPattern = Pattern.compile("out of .*?\\^([\\d\\.]+)");
+
+	/**
+	 * The regex pattern to read the elapsed time printed by NuSMV's
+	 * <tt>time</tt> command
+	 */
+	protected static final transient Pattern s_elapsePattern = Pattern.compile("elapse: ([\\d\\.]+) seconds");
+
+	/**
+	 * The sections parsed so far.
+	 */
+	protected final List<Section> m_sections;
+
+	/**
+	 * The section currently being filled.
+	 */
+	protected Section m_current;
+
+	/**
+	 * One matcher per pattern, reused from one line to the next.
+	 */
+	protected final Matcher m_memoryMatcher = s_memoryPattern.matcher("");
+	protected final Matcher m_totalNodesMatcher = s_totalNodesPattern.matcher("");
+	protected final Matcher m_liveNodesMatcher = s_liveNodesPattern.matcher("");
+	protected final Matcher m_witnessMatcher = s_witnessPattern.matcher("");
+	protected final Matcher m_diameterMatcher = s_diameterPattern.matcher("");
+	protected final Matcher m_reachableStatesMatcher = s_reachableStatesPattern.matcher("");
+	protected final Matcher m_totalStatesMatcher = s_totalStatesPattern.matcher("");
+	protected final Matcher m_elapseMatcher = s_elapsePattern.matcher("");
+
+	/**
+	 * Creates a new parser.
+	 */
+	public NuSMVOutputParser()
+	{
+		super();
+		m_sections = new ArrayList<Section>();
+		m_current = new Section();
+		m_sections.add(m_current);
+	}
+
+	/**
+	 * Parses the whole contents of an input stream.
+	 * @param is The input stream
+	 * @throws IOException Thrown if reading from the stream failed
+	 */
+	public void parse(InputStream is) throws IOException
+	{
+		LineReader reader = new LineReader(is);
+		StringBuilder line = new StringBuilder();
+		while (reader.readLine(line))
+		{
+			parseLine(line);
+		}
+	}
+
+	/**
+	 * Parses a single line of NuSMV's output. Cheap substring tests are done
+	 * first, so that at most one regex is applied to any given line.
+	 * @param line The line, without its line terminator
+	 */
+	public void parseLine(StringBuilder line)
+	{
+		if (line.indexOf("State: ") >= 0)
+		{
+			if (m_witnessMatcher.reset(line).find())
+			{
+				m_current.m_witnessLength++;
+			}
+			return;
+		}
+		if (line.indexOf("is false") >= 0)
+		{
+			m_current.m_verdict = "False";
+			return;
+		}
+		if (line.indexOf("is true") >= 0)
+		{
+			m_current.m_verdict = "True";
+			return;
+		}
+		if (line.indexOf("elapse: ") >= 0)
+		{
+			if (m_elapseMatcher.reset(line).find())
+			{
+				m_current.m_elapse = (long) (Float.parseFloat(m_elapseMatcher.group(1)) * 1000);
+				m_current = new Section();
+				m_sections.add(m_current);
+			}
+			return;
+		}
+		if (line.indexOf("reachable states: ") >= 0)
+		{
+			if (m_current.m_reachableStates < 0 && m_reachableStatesMatcher.reset(line).find())
+			{
+				m_current.m_reachableStates = Float.parseFloat(m_reachableStatesMatcher.group(1));
+			}
+			if (m_current.m_totalStates < 0 && m_totalStatesMatcher.reset(line).find())
+			{
+				m_current.m_totalStates = Float.parseFloat(m_totalStatesMatcher.group(1));
+			}
+			return;
+		}
+		if (line.indexOf("Memory in use: ") >= 0)
+		{
+			m_current.m_memory = readInt(m_current.m_memory, m_memoryMatcher, line);
+			return;
+		}
+		if (line.indexOf("Peak number of nodes: ") >= 0)
+		{
+			m_current.m_totalNodes = readInt(m_current.m_totalNodes, m_totalNodesMatcher, line);
+			return;
+		}
+		if (line.indexOf("Peak number of live nodes: ") >= 0)
+		{
+			m_current.m_liveNodes = readInt(m_current.m_liveNodes, m_liveNodesMatcher, line);
+			return;
+		}
+		if (line.indexOf("system diameter: ") >= 0)
+		{
+			m_current.m_diameter = readInt(m_current.m_diameter, m_diameterMatcher, line);
+		}
+	}
+
+	/**
+	 * Extracts an integer number from a line, unless a value has already
+	 * been found in the current section.
+	 * @param current The current value
+	 * @param mat The matcher to apply on the line
+	 * @param line The line
+	 * @return The new value
+	 */
+	protected static int readInt(int current, Matcher mat, StringBuilder line)
+	{
+		if (current >= 0 || !mat.reset(line).find())
+		{
+			return current;
+		}
+		return Integer.parseInt(mat.group(1));
+	}
+
+	/**
+	 * Gets the sections parsed so far. There is always one more section than
+	 * the number of calls to <tt>time</tt> found in the output.
+	 * @return The list of sections
+	 */
+	public List<Section> getSections()
+	{
+		return m_sections;
+	}
+
+	/**
+	 * Gets a section of the output.
+	 * @param index The index of the section
+	 * @return The section
+	 */
+	public Section getSection(int index)
+	{
+		return m_sections.get(index);
+	}
+
+	/**
+	 * Gets the last section parsed so far.
+	 * @return The section
+	 */
+	public Section getLastSection()
+	{
+		return m_current;
+	}
+
+	/**
+	 * The values extracted from a portion of NuSMV's output. Values that were
+	 * not found in the section are equal to -1 (or <tt>null</tt> for the
+	 * verdict).
+	 */
+	public static class Section
+	{
+		/**
+		 * The verdict of the property checked in this section.
+		 */
+		protected String m_verdict = null;
+
+		/**
+		 * The number of counter-example states found in this section.
+		 */
+		protected int m_witnessLength = 0;
+
+		/**
+		 * The elapsed time (in ms) printed at the end of this section.
+		 */
+		protected long m_elapse = -1;
+
+		/**
+		 * The memory (in bytes) used by NuSMV.
+		 */
+		protected int m_memory = -1;
+
+		/**
+		 * The peak number of BDD nodes.
+		 */
+		protected int m_totalNodes = -1;
+
+		/**
+		 * The peak number of live BDD nodes.
+		 */
+		protected int m_liveNodes = -1;
+
+		/**
+		 * The system diameter.
+		 */
+		protected int m_diameter = -1;
+
+		/**
+		 * The base-2 logarithm of the number of reachable states.
+		 */
+		protected float m_reachableStates = -1;
+
+		/**
+		 * The base-2 logarithm of the total number of states.
+		 */
+		protected float m_totalStates = -1;
+
+		/**
+		 * Gets the verdict found in this section.
+		 * @return "True", "False", or <tt>null</tt> if no verdict was found
+		 */
+		public String getVerdict()
+		{
+			return m_verdict;
+		}
+
+		/**
+		 * Gets the number of counter-example states found in this section.
+		 * @return The number of states
+		 */
+		public int getWitnessLength()
+		{
+			return m_witnessLength;
+		}
+
+		/**
+		 * Gets the elapsed time printed by the <tt>time</tt> command that
+		 * closes this section.
+		 * @return The time in ms, or -1 if this is the last section
+		 */
+		public long getElapsed()
+		{
+			return m_elapse;
+		}
+
+		/**
+		 * Gets the memory used by NuSMV.
+		 * @return The memory in bytes
+		 */
+		public int getMemory()
+		{
+			return m_memory;
+		}
+
+		/**
+		 * Gets the peak number of BDD nodes.
+		 * @return The number of nodes
+		 */
+		public int getTotalNodes()
+		{
+			return m_totalNodes;
+		}
+
+		/**
+		 * Gets the peak number of live BDD nodes.
+		 * @return The number of nodes
+		 */
+		public int getLiveNodes()
+		{
+			return m_liveNodes;
+		}
+
+		/**
+		 * Gets the system diameter.
+		 * @return The diameter
+		 */
+		public int getDiameter()
+		{
+			return m_diameter;
+		}
+
+		/**
+		 * Gets the number of reachable states.
+		 * @return The base-2 logarithm of the number of states
+		 */
+		public float getReachableStates()
+		{
+			return m_reachableStates;
+		}
+
+		/**
+		 * Gets the total number of states.
+		 * @return The base-2 logarithm of the number of states
+		 */
+		public float getTotalStates()
+		{
+			return m_totalStates;
+		}
+	}
+
+	/**
+	 * Reads an input stream line by line into a reusable buffer, without
+	 * creating a new string for every line.
+	 */
+	public static class LineReader
+	{
+		/**
+		 * The stream to read from.
+		 */
+		protected final InputStream m_input;
+
+		/**
+		 * A buffer of bytes read from the stream.
+		 */
+		protected final byte[] m_buffer = new byte[8192];
+
+		/**
+		 * The position of the next byte to read in the buffer.
+		 */
+		protected int m_position = 0;
+
+		/**
+		 * The number of valid bytes in the buffer.
+		 */
+		protected int m_limit = 0;
+
+		/**
+		 * Creates a new line reader.
+		 * @param is The stream to read from
+		 */
+		public LineReader(InputStream is)
+		{
+			super();
+			m_input = is;
+		}
+
+		/**
+		 * Reads the next line of the stream.
+		 * @param line A buffer, whose contents are replaced by those of the
+		 * line, without its line terminator
+		 * @return <tt>true</tt> if a line has been read, <tt>false</tt> if the
+		 * end of the stream has been reached
+		 * @throws IOException Thrown if reading from the stream failed
+		 */
+		public boolean readLine(StringBuilder line) throws IOException
+		{
+			line.setLength(0);
+			boolean read_something = false;
+			while (true)
+			{
+				if (m_position >= m_limit)
+				{
+					m_limit = m_input.read(m_buffer, 0, m_buffer.length);
+					m_position = 0;
+					if (m_limit <= 0)
+					{
+						m_limit = 0;
+						return read_something;
+					}
+				}
+				read_something = true;
+				char c = (char) (m_buffer[m_position++] & 0xFF);
+				if (c == '\n')
+				{
+					return true;
+				}
+				if (c != '\r')
+				{
+					line.append(c);
+				}
+			}
+		}
+	}
+}
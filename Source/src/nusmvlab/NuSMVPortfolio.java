@@ -0,0 +1,259 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.uqac.lif.labpal.experiment.ExperimentException;
+import ca.uqac.lif.labpal.util.FileHelper;
+
+/**
+ * Checks the property of an experiment by racing several verification
+ * engines against each other. One NuSMV process is started for each engine;
+ * as soon as one of them reaches a conclusive verdict, the others are
+ * killed. The time and memory limits of the experiment apply to each
+ * process separately.
+ */
+public class NuSMVPortfolio
+{
+	/**
+	 * The experiment whose property is checked.
+	 */
+	protected final NuSMVExperiment m_experiment;
+
+	/**
+	 * The NuSMV processes started so far.
+	 */
+	protected final List<Process> m_processes;
+
+	/**
+	 * Whether the race is over, in which case no new process must be started.
+	 */
+	protected boolean m_stopped = false;
+
+	/**
+	 * Creates a new portfolio.
+	 * @param e The experiment whose property is checked
+	 */
+	public NuSMVPortfolio(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		super();
+		m_experiment = e;
+		m_processes = new ArrayList<Process>();
+	}
+
+	/**
+	 * Runs all the engines of the portfolio on a model file.
+	 * @param model_filename The model file
+	 * @return The run of the first engine that reached a conclusive verdict,
+	 * or <tt>null</tt> if no engine did
+	 * @throws ResourceLimitException Thrown if no engine reached a conclusive
+	 * verdict and at least one of them was killed for exceeding a limit
+	 * @throws ExperimentException Thrown if the race was interrupted
+	 */
+	public Run run(String model_filename) throws ExperimentException
+	{
+		List<String> engines = Engine.getPortfolio(m_experiment.getPropertyProvider().getLogic());
+		ExecutorService pool = Executors.newFixedThreadPool(engines.size());
+		CompletionService<Run> runs = new ExecutorCompletionService<Run>(pool);
+		for (String engine : engines)
+		{
+			runs.submit(() -> runEngine(engine, model_filename));
+		}
+		ResourceLimitException limit = null;
+		try
+		{
+			for (int i = 0; i < engines.size(); i++)
+			{
+				Run r;
+				try
+				{
+					r = runs.take().get();
+				}
+				catch (ExecutionException e)
+				{
+					// This engine failed; the others may still succeed
+					continue;
+				}
+				if (r == null)
+				{
+					continue;
+				}
+				if (r.getSection().getVerdict() != null)
+				{
+					return r;
+				}
+				if (limit == null)
+				{
+					limit = r.m_limit;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new ExperimentException(e);
+		}
+		finally
+		{
+			stop();
+			pool.shutdownNow();
+		}
+		if (limit != null)
+		{
+			throw limit;
+		}
+		return null;
+	}
+
+	/**
+	 * Runs a single engine of the portfolio.
+	 * @param engine The name of the engine
+	 * @param model_filename The model file
+	 * @return The run, or <tt>null</tt> if the race was over before the
+	 * engine could start
+	 * @throws IOException Thrown if the process could not be started
+	 * @throws InterruptedException Thrown if the thread was interrupted
+	 */
+	protected Run runEngine(String engine, String model_filename) throws IOException, InterruptedException
+	{
+		String source_filename = NuSMVExperiment.TMP_DIR + NuSMVExperiment.FILE_SEPARATOR + "source-" + m_experiment.getId() + "-" + engine + ".smv";
+		FileHelper.writeFromString(new File(source_filename), NuSMVExperiment.toSourceScript(m_experiment.getCheckCommands(engine)));
+		Process p;
+		synchronized (m_processes)
+		{
+			if (m_stopped)
+			{
+				return null;
+			}
+			p = NuSMVExperiment.getProcessBuilder(source_filename, model_filename).start();
+			m_processes.add(p);
+		}
+		ProcessWatchdog watchdog = new ProcessWatchdog(p, NuSMVExperiment.s_timeLimit, NuSMVExperiment.s_memoryLimit).start();
+		NuSMVOutputParser parser = new NuSMVOutputParser();
+		p.getOutputStream().close();
+		try (InputStream is = p.getInputStream())
+		{
+			parser.parse(is);
+		}
+		watchdog.sample();
+		p.waitFor();
+		watchdog.stop();
+		ResourceLimitException limit = null;
+		if (watchdog.getExceededLimit() != null)
+		{
+			limit = new ResourceLimitException(watchdog);
+		}
+		return new Run(engine, parser.getLastSection(), watchdog.getUsage(), limit);
+	}
+
+	/**
+	 * Ends the race by killing all the processes still running.
+	 */
+	protected void stop()
+	{
+		synchronized (m_processes)
+		{
+			m_stopped = true;
+			for (Process p : m_processes)
+			{
+				p.destroyForcibly();
+			}
+		}
+	}
+
+	/**
+	 * The outcome of a single engine of the portfolio.
+	 */
+	public static class Run
+	{
+		/**
+		 * The name of the engine.
+		 */
+		protected final String m_engine;
+
+		/**
+		 * The data extracted from the output of the engine.
+		 */
+		protected final NuSMVOutputParser.Section m_section;
+
+		/**
+		 * The resources consumed by the engine.
+		 */
+		protected final ResourceUsage m_usage;
+
+		/**
+		 * The exception describing the limit exceeded by the engine, or
+		 * <tt>null</tt> if the engine ran to completion.
+		 */
+		protected final ResourceLimitException m_limit;
+
+		/**
+		 * Creates a new run.
+		 * @param engine The name of the engine
+		 * @param section The data extracted from the output of the engine
+		 * @param usage The resources consumed by the engine
+		 * @param limit The exception describing the limit exceeded by the
+		 * engine, or <tt>null</tt>
+		 */
+		public Run(String engine, NuSMVOutputParser.Section section, ResourceUsage usage, ResourceLimitException limit)
+		{
+			super();
+			m_engine = engine;
+			m_section = section;
+			m_usage = usage;
+			m_limit = limit;
+		}
+
+		/**
+		 * Gets the name of the engine.
+		 * @return The name
+		 */
+		public String getEngine()
+		{
+			return m_engine;
+		}
+
+		/**
+		 * Gets the data extracted from the output of the engine.
+		 * @return The section of output
+		 */
+		public NuSMVOutputParser.Section getSection()
+		{
+			return m_section;
+		}
+
+		/**
+		 * Gets the resources consumed by the engine.
+		 * @return The resource usage
+		 */
+		public ResourceUsage getUsage()
+		{
+			return m_usage;
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.regex.Pattern;
+
+/**
+ * A long-lived instance of NuSMV running in interactive mode. Instead of
+ * starting a new process for every model, commands are written to the
+ * standard input of the same process. The end of the output produced by a
+ * batch of commands is detected by making NuSMV echo a unique sentinel
+ * string after the last command.
+ * <p>
+ * A command that fails leaves the session in a state that cannot be
+ * trusted for the next model. The session therefore asks NuSMV to quit on
+ * the first failing command, and also looks for error messages in the
+ * output; in both cases, {@link #execute(NuSMVOutputParser, String...)}
+ * throws an exception and the session must be discarded.
+ */
+public class NuSMVSession
+{
+	/**
+	 * The prefix of the sentinel strings echoed by NuSMV.
+	 */
+	protected static final transient String SENTINEL_PREFIX = "__NUSMVLAB_END_";
+
+	/**
+	 * The regex pattern to identify the error messages printed by NuSMV
+	 * when a command fails.
+	 */
+	protected static final transient Pattern s_errorPattern = Pattern.compile("^(\\*+ )?(ERROR|Error)\\b|^file .*: line \\d+|^Command .* not found|^Unknown command");
+
+	/**
+	 * The NuSMV process.
+	 */
+	protected Process m_process;
+
+	/**
+	 * A writer to the standard input of the process.
+	 */
+	protected Writer m_input;
+
+	/**
+	 * A reader on the (merged) standard output and error of the process.
+	 */
+	protected NuSMVOutputParser.LineReader m_output;
+
+	/**
+	 * A reusable buffer for the lines read from the process.
+	 */
+	protected final StringBuilder m_line = new StringBuilder();
+
+	/**
+	 * The number of sentinels sent so far; used to make each sentinel unique.
+	 */
+	protected int m_sentinelCount = 0;
+
+	/**
+	 * The time (in ms) it took for the process to start and become ready to
+	 * accept commands.
+	 */
+	protected long m_startupTime = -1;
+
+	/**
+	 * The number of batches of commands executed by this session so far.
+	 */
+	protected int m_uses = 0;
+
+	/**
+	 * The first error message printed by NuSMV during the last batch of
+	 * commands, or <tt>null</tt> if there was none.
+	 */
+	protected String m_error = null;
+
+	/**
+	 * Starts a new NuSMV process in interactive mode and waits until it is
+	 * ready to accept commands.
+	 * @param nusmv_path The command to call to run NuSMV
+	 * @throws IOException Thrown if the process could not be started
+	 */
+	public NuSMVSession(String nusmv_path) throws IOException
+	{
+		super();
+		long start = System.currentTimeMillis();
+		ProcessBuilder pb = new ProcessBuilder(nusmv_path, "-int");
+		pb.redirectErrorStream(true);
+		m_process = pb.start();
+		m_input = new OutputStreamWriter(m_process.getOutputStream());
+		m_output = new NuSMVOutputParser.LineReader(m_process.getInputStream());
+		// Skip the banner; from now on, a failing command makes NuSMV quit
+		execute(null, "set on_failure_script_quits");
+		m_startupTime = System.currentTimeMillis() - start;
+		m_uses = 0;
+	}
+
+	/**
+	 * Sends a sequence of commands to NuSMV and waits for their completion.
+	 * @param parser The parser to which each line of output produced by NuSMV
+	 * for these commands is sent, or <tt>null</tt> to discard this output
+	 * @param commands The commands to execute, without the trailing
+	 * semicolon
+	 * @throws IOException Thrown if the process died or could not be
+	 * communicated with, or if one of the commands failed
+	 */
+	public synchronized void execute(NuSMVOutputParser parser, String ... commands) throws IOException
+	{
+		String sentinel = SENTINEL_PREFIX + (m_sentinelCount++) + "__";
+		m_error = null;
+		for (String command : commands)
+		{
+			m_input.write(command);
+			m_input.write("\n");
+		}
+		m_input.write("echo " + sentinel + "\n");
+		m_input.flush();
+		while (m_output.readLine(m_line))
+		{
+			// Skip the command itself, in case NuSMV echoes its input
+			if (m_line.indexOf(sentinel) >= 0 && m_line.indexOf("echo ") < 0)
+			{
+				m_uses++;
+				if (m_error != null)
+				{
+					throw new IOException("NuSMV reported an error: " + m_error);
+				}
+				return;
+			}
+			if (m_error == null && s_errorPattern.matcher(m_line).find())
+			{
+				m_error = m_line.toString();
+			}
+			if (parser != null)
+			{
+				parser.parseLine(m_line);
+			}
+		}
+		throw new IOException("The NuSMV session terminated unexpectedly" + (m_error == null ? "" : ": " + m_error));
+	}
+
+	/**
+	 * Gets the time it took for the process to start.
+	 * @return The time in ms
+	 */
+	public long getStartupTime()
+	{
+		return m_startupTime;
+	}
+
+	/**
+	 * Gets the number of batches of commands this session has executed.
+	 * @return The number of uses
+	 */
+	public int getUses()
+	{
+		return m_uses;
+	}
+
+	/**
+	 * Gets the underlying NuSMV process.
+	 * @return The process
+	 */
+	public Process getProcess()
+	{
+		return m_process;
+	}
+
+	/**
+	 * Determines if the underlying process is still running.
+	 * @return <tt>true</tt> if the process is alive, <tt>false</tt> otherwise
+	 */
+	public boolean isAlive()
+	{
+		return m_process.isAlive();
+	}
+
+	/**
+	 * Asks NuSMV to quit and terminates the process.
+	 */
+	public void close()
+	{
+		try
+		{
+			m_input.write("quit\n");
+			m_input.flush();
+		}
+		catch (IOException e)
+		{
+			// Process is already dead; nothing to do
+		}
+		m_process.destroy();
+	}
+}
@@ -0,0 +1,187 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A pool of long-lived {@link NuSMVSession}s. A worker thread acquires a
+ * session for the duration of an experiment and gives it back afterwards;
+ * new sessions are only started when all the existing ones are busy, so
+ * that the pool ends up containing one session per concurrent worker. The
+ * number of sessions is bounded; when all of them are busy, a worker waits
+ * until one is given back.
+ */
+public class NuSMVSessionPool
+{
+	/**
+	 * The command to call to run NuSMV.
+	 */
+	protected String m_nusmvPath;
+
+	/**
+	 * The sessions that are currently not used by any experiment.
+	 */
+	protected final Deque<NuSMVSession> m_idle;
+
+	/**
+	 * All the sessions created by this pool.
+	 */
+	protected final List<NuSMVSession> m_all;
+
+	/**
+	 * The maximum number of sessions that may exist at the same time.
+	 */
+	protected final int m_maxSize;
+
+	/**
+	 * The number of sessions currently being started.
+	 */
+	protected int m_starting = 0;
+
+	/**
+	 * Creates a new empty session pool.
+	 * @param nusmv_path The command to call to run NuSMV
+	 * @param max_size The maximum number of sessions that may exist at the
+	 * same time
+	 */
+	public NuSMVSessionPool(String nusmv_path, int max_size)
+	{
+		super();
+		m_nusmvPath = nusmv_path;
+		m_maxSize = Math.max(1, max_size);
+		m_idle = new ArrayDeque<NuSMVSession>();
+		m_all = new ArrayList<NuSMVSession>();
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+	}
+
+	/**
+	 * Gets a session from the pool, starting a new one if none is idle and
+	 * the pool is not full. Otherwise, waits until a session is given back.
+	 * @return The session
+	 * @throws IOException Thrown if a new session could not be started, or
+	 * if the thread was interrupted while waiting
+	 */
+	public NuSMVSession acquire() throws IOException
+	{
+		synchronized (m_idle)
+		{
+			while (true)
+			{
+				while (!m_idle.isEmpty())
+				{
+					NuSMVSession s = m_idle.pop();
+					if (s.isAlive())
+					{
+						return s;
+					}
+					m_all.remove(s);
+				}
+				if (m_all.size() + m_starting < m_maxSize)
+				{
+					break;
+				}
+				try
+				{
+					m_idle.wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a NuSMV session");
+				}
+			}
+			m_starting++;
+		}
+		NuSMVSession s = null;
+		try
+		{
+			s = new NuSMVSession(m_nusmvPath);
+			return s;
+		}
+		finally
+		{
+			synchronized (m_idle)
+			{
+				m_starting--;
+				if (s != null)
+				{
+					m_all.add(s);
+				}
+				m_idle.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Gives a session back to the pool.
+	 * @param s The session
+	 */
+	public void release(NuSMVSession s)
+	{
+		synchronized (m_idle)
+		{
+			if (s.isAlive())
+			{
+				m_idle.push(s);
+			}
+			else
+			{
+				m_all.remove(s);
+			}
+			m_idle.notifyAll();
+		}
+	}
+
+	/**
+	 * Removes a session from the pool and terminates it. This should be
+	 * called instead of {@link #release(NuSMVSession)} when the state of
+	 * the session can no longer be trusted.
+	 * @param s The session
+	 */
+	public void discard(NuSMVSession s)
+	{
+		s.close();
+		synchronized (m_idle)
+		{
+			m_all.remove(s);
+			m_idle.notifyAll();
+		}
+	}
+
+	/**
+	 * Terminates all the sessions of the pool.
+	 */
+	public void close()
+	{
+		synchronized (m_idle)
+		{
+			for (NuSMVSession s : m_all)
+			{
+				s.close();
+			}
+			m_all.clear();
+			m_idle.clear();
+		}
+	}
+}
@@ -0,0 +1,454 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import nusmvlab.Formula.Operator;
+import nusmvlab.PropertyProvider.Logic;
+
+/**
+ * Compiles LTL properties into explicit observer modules. Instead of
+ * letting NuSMV build a tableau for the temporal operators of a formula,
+ * each conjunct of the formula is watched by an instance of a small SMV
+ * module that reads the propositional conditions of the conjunct, and the
+ * specification only refers to the state of these observers.
+ * <p>
+ * Two kinds of conjuncts are recognized:
+ * <ul>
+ * <li><em>Bounded responses</em> <i>G (p &rarr; (q &or; X (q &or; &hellip;
+ * X q)))</i>, where <i>q</i> must hold at most <i>n</i> steps after every
+ * state where <i>p</i> holds. The observer is a safety automaton that
+ * counts the steps elapsed since the oldest pending request; the counter
+ * ranges from 0 to <i>n</i>, and therefore takes log <i>n</i> Boolean
+ * variables instead of the <i>n</i> nested <i>X</i> of the formula. The
+ * conjuncts <i>G q</i> and <i>!F !q</i> are bounded responses with
+ * <i>n</i> = 0, which need no observer. The property is checked with an
+ * <tt>INVARSPEC</tt> stating that no observer is in a bad state.</li>
+ * <li><em>Responses</em> <i>G (p &rarr; F q)</i> and <i>G F q</i>. The
+ * observer is a B&uuml;chi automaton for the negation of the conjunct: it
+ * guesses a state where <i>p</i> holds and <i>q</i> does not, and accepts
+ * if <i>q</i> never holds afterwards. A <tt>FAIRNESS</tt> constraint
+ * restricts the paths of the model to the accepting runs of the
+ * observers, and the property holds if and only if there is no such
+ * path.</li>
+ * </ul>
+ * A formula containing other kinds of conjuncts, or mixing the two kinds,
+ * is not compiled. The observers of a formula only depend on the formula,
+ * and are compiled once for all the properties that share it.
+ */
+public class ObserverCompiler
+{
+	/**
+	 * The name of the definition that is true when a safety observer
+	 * detects a violation.
+	 */
+	protected static final transient String BAD = "observer_bad";
+
+	/**
+	 * The name of the definition that is true when a liveness observer is
+	 * in an accepting state.
+	 */
+	protected static final transient String ACCEPTING = "observer_accepting";
+
+	/**
+	 * The prefix of the names of observer instances.
+	 */
+	protected static final transient String INSTANCE_PREFIX = "observer_";
+
+	/**
+	 * The observers compiled so far, indexed by the formula they watch.
+	 */
+	protected static final transient Map<Formula,Observer> s_cache = new WeakHashMap<Formula,Observer>();
+
+	/**
+	 * Private constructor, to prevent instantiation.
+	 */
+	private ObserverCompiler()
+	{
+		super();
+	}
+
+	/**
+	 * Compiles the formula of an LTL property into observers.
+	 * @param property The property
+	 * @return A property that checks the same formula with observers, or
+	 * <tt>null</tt> if the formula cannot be compiled
+	 */
+	public static PropertyProvider compile(/*@ non_null @*/ LTLPropertyProvider property)
+	{
+		Formula formula = property.getFormula();
+		Observer o;
+		synchronized (s_cache)
+		{
+			if (s_cache.containsKey(formula))
+			{
+				o = s_cache.get(formula);
+			}
+			else
+			{
+				o = compile(formula);
+				s_cache.put(formula, o);
+			}
+		}
+		return o == null ? null : new ObserverProperty(property, o);
+	}
+
+	/**
+	 * Compiles a formula into observers.
+	 * @param formula The formula
+	 * @return The observers, or <tt>null</tt> if the formula cannot be
+	 * compiled
+	 */
+	protected static Observer compile(/*@ non_null @*/ Formula formula)
+	{
+		List<Formula> conjuncts = new ArrayList<Formula>();
+		StreamPropertyLibrary.addConjuncts(formula, conjuncts);
+		List<Obligation> obligations = new ArrayList<Obligation>();
+		int unbounded = 0;
+		for (Formula c : conjuncts)
+		{
+			if (c == Formula.TRUE)
+			{
+				continue;
+			}
+			Obligation ob = getObligation(c);
+			if (ob == null)
+			{
+				return null;
+			}
+			obligations.add(ob);
+			if (ob.m_bound < 0)
+			{
+				unbounded++;
+			}
+		}
+		if (unbounded > 0 && unbounded < obligations.size())
+		{
+			return null;
+		}
+		if (obligations.isEmpty())
+		{
+			// Nothing to observe; the property is true
+			return new Observer(Logic.INVAR, Formula.TRUE, "");
+		}
+		StringBuilder instances = new StringBuilder();
+		List<String> terms = new ArrayList<String>();
+		Map<String,String> modules = new LinkedHashMap<String,String>();
+		for (int i = 0; i < obligations.size(); i++)
+		{
+			Obligation ob = obligations.get(i);
+			if (ob.m_bound == 0)
+			{
+				// A violation is visible in a single state
+				terms.add(Formula.and(ob.m_trigger, Formula.not(ob.m_response)).toString());
+				continue;
+			}
+			String module = ob.m_bound < 0 ? "observer_response" : "observer_bounded_" + ob.m_bound;
+			if (!modules.containsKey(module))
+			{
+				modules.put(module, ob.m_bound < 0 ? getResponseModule(module) : getBoundedModule(module, ob.m_bound));
+			}
+			String name = INSTANCE_PREFIX + i;
+			instances.append("  ").append(name).append(" : ").append(module).append("(").append(ob.m_trigger).append(", ").append(ob.m_response).append(");\n");
+			terms.add(name + (ob.m_bound < 0 ? ".accepting" : ".bad"));
+		}
+		StringBuilder out = new StringBuilder();
+		String define = unbounded > 0 ? ACCEPTING : BAD;
+		if (unbounded > 0)
+		{
+			out.append("FAIRNESS\n  ").append(ACCEPTING).append(";\n");
+		}
+		out.append("DEFINE\n  ").append(define).append(" := ").append(String.join(" | ", terms)).append(";\n");
+		if (instances.length() > 0)
+		{
+			out.append("VAR\n").append(instances);
+		}
+		for (String text : modules.values())
+		{
+			out.append("\n").append(text);
+		}
+		if (unbounded > 0)
+		{
+			// Every fair path visits an accepting state of some observer
+			return new Observer(Logic.LTL, Formula.globally(Formula.not(Formula.atom(ACCEPTING))), out.toString());
+		}
+		return new Observer(Logic.INVAR, Formula.not(Formula.atom(BAD)), out.toString());
+	}
+
+	/**
+	 * Recognizes the obligation expressed by a conjunct.
+	 * @param c The conjunct
+	 * @return The obligation, or <tt>null</tt> if the conjunct is not a
+	 * response or a bounded response
+	 */
+	protected static Obligation getObligation(/*@ non_null @*/ Formula c)
+	{
+		if (c.getOperator() == Operator.NOT && c.getOperand().getOperator() == Operator.F && !c.getOperand().getOperand().isTemporal())
+		{
+			return new Obligation(Formula.TRUE, Formula.not(c.getOperand().getOperand()), 0);
+		}
+		if (c.getOperator() != Operator.G)
+		{
+			return null;
+		}
+		Formula trigger = Formula.TRUE;
+		Formula body = c.getOperand();
+		if (body.getOperator() == Operator.IMPLIES)
+		{
+			trigger = body.getOperands().get(0);
+			body = body.getOperands().get(1);
+			if (trigger.isTemporal())
+			{
+				return null;
+			}
+		}
+		if (body.getOperator() == Operator.F && !body.getOperand().isTemporal())
+		{
+			return new Obligation(trigger, body.getOperand(), -1);
+		}
+		// Unfold q | X (q | X ( ... q))
+		Formula response = null;
+		int bound = 0;
+		while (body.isTemporal())
+		{
+			if (body.getOperator() != Operator.OR)
+			{
+				return null;
+			}
+			List<Formula> now = new ArrayList<Formula>();
+			Formula later = null;
+			for (Formula o : body.getOperands())
+			{
+				if (!o.isTemporal())
+				{
+					now.add(o);
+				}
+				else if (later == null && o.getOperator() == Operator.X)
+				{
+					later = o.getOperand();
+				}
+				else
+				{
+					return null;
+				}
+			}
+			Formula q = Formula.or(now);
+			if (response != null && q != response)
+			{
+				return null;
+			}
+			response = q;
+			body = later;
+			bound++;
+		}
+		if (response != null && body != response)
+		{
+			return null;
+		}
+		return new Obligation(trigger, body, bound);
+	}
+
+	/**
+	 * Gets the text of the observer module for bounded responses.
+	 * @param name The name of the module
+	 * @param bound The maximum number of steps between a request and its
+	 * response
+	 * @return The text of the module
+	 */
+	/*@ non_null @*/ protected static String getBoundedModule(String name, int bound)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("MODULE ").append(name).append("(p, q)\n");
+		out.append("VAR\n");
+		// The number of steps since the oldest request that has no response yet
+		out.append("  age : 0..").append(bound).append(";\n");
+		out.append("ASSIGN\n");
+		out.append("  init(age) := 0;\n");
+		out.append("  next(age) := case\n");
+		out.append("    q : 0;\n");
+		out.append("    age = ").append(bound).append(" : ").append(bound).append(";\n");
+		out.append("    age > 0 : age + 1;\n");
+		out.append("    p : 1;\n");
+		out.append("    TRUE : 0;\n");
+		out.append("  esac;\n");
+		out.append("DEFINE\n");
+		out.append("  bad := age = ").append(bound).append(" & !q;\n");
+		return out.toString();
+	}
+
+	/**
+	 * Gets the text of the observer module for responses.
+	 * @param name The name of the module
+	 * @return The text of the module
+	 */
+	/*@ non_null @*/ protected static String getResponseModule(String name)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("MODULE ").append(name).append("(p, q)\n");
+		out.append("VAR\n");
+		out.append("  state : {idle, armed, dead};\n");
+		out.append("ASSIGN\n");
+		out.append("  init(state) := idle;\n");
+		out.append("  next(state) := case\n");
+		// Guess a request that is never answered
+		out.append("    state = idle & p & !q : {idle, armed};\n");
+		out.append("    state = idle : idle;\n");
+		out.append("    state = armed & !q : armed;\n");
+		out.append("    TRUE : dead;\n");
+		out.append("  esac;\n");
+		out.append("DEFINE\n");
+		out.append("  accepting := state = armed;\n");
+		return out.toString();
+	}
+
+	/**
+	 * A condition <i>q</i> that must hold at most a number of steps after
+	 * each state where a condition <i>p</i> holds.
+	 */
+	protected static class Obligation
+	{
+		/**
+		 * The condition <i>p</i>.
+		 */
+		protected final Formula m_trigger;
+
+		/**
+		 * The condition <i>q</i>.
+		 */
+		protected final Formula m_response;
+
+		/**
+		 * The maximum number of steps, or -1 if the response may come at any
+		 * time.
+		 */
+		protected final int m_bound;
+
+		/**
+		 * Creates a new obligation.
+		 * @param trigger The condition <i>p</i>
+		 * @param response The condition <i>q</i>
+		 * @param bound The maximum number of steps, or -1 if the response may
+		 * come at any time
+		 */
+		public Obligation(Formula trigger, Formula response, int bound)
+		{
+			super();
+			m_trigger = trigger;
+			m_response = response;
+			m_bound = bound;
+		}
+	}
+
+	/**
+	 * The observers compiled from a formula.
+	 */
+	protected static class Observer
+	{
+		/**
+		 * The kind of specification that checks the observers.
+		 */
+		protected final Logic m_logic;
+
+		/**
+		 * The specification, which refers to the state of the observers.
+		 */
+		protected final Formula m_check;
+
+		/**
+		 * The sections that declare the observers, followed by the modules
+		 * they are instances of.
+		 */
+		protected final String m_text;
+
+		/**
+		 * Creates a new set of observers.
+		 * @param logic The kind of specification that checks the observers
+		 * @param check The specification
+		 * @param text The sections that declare the observers
+		 */
+		public Observer(Logic logic, Formula check, String text)
+		{
+			super();
+			m_logic = logic;
+			m_check = check;
+			m_text = text;
+		}
+	}
+
+	/**
+	 * A property checked with observers instead of the temporal formula of
+	 * the provider it replaces. The sections that declare the observers are
+	 * printed after the specification; they still belong to the main
+	 * module, and the observer modules come last in the file.
+	 */
+	public static class ObserverProperty implements PropertyProvider
+	{
+		/**
+		 * The provider of the temporal formula.
+		 */
+		protected final PropertyProvider m_property;
+
+		/**
+		 * The observers compiled from the formula.
+		 */
+		protected final Observer m_observer;
+
+		/**
+		 * Creates a new observer property.
+		 * @param property The provider of the temporal formula
+		 * @param observer The observers compiled from the formula
+		 */
+		protected ObserverProperty(/*@ non_null @*/ PropertyProvider property, /*@ non_null @*/ Observer observer)
+		{
+			super();
+			m_property = property;
+			m_observer = observer;
+		}
+
+		@Override
+		public void printToFile(PrintStream ps)
+		{
+			ps.println(m_observer.m_check + ";");
+			ps.print(m_observer.m_text);
+		}
+
+		@Override
+		public void fillExperiment(NuSMVExperiment e)
+		{
+			m_property.fillExperiment(e);
+		}
+
+		@Override
+		public Logic getLogic()
+		{
+			return m_observer.m_logic;
+		}
+
+		@Override
+		public Formula getFormula()
+		{
+			return m_observer.m_check;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A persistent store of the variable orderings learned by NuSMV's dynamic
+ * reordering. Orderings are stored by query and by configuration (queue
+ * size, domain size and parameter k), so that a run on a larger
+ * configuration of a query can start from the ordering found on a smaller
+ * one instead of reordering from scratch.
+ * <p>
+ * The names of variables contain identifiers that depend on the processor
+ * instances of a particular model. Orderings are therefore stored in a
+ * canonical form, where each identifier is replaced by its rank in a
+ * reference list of the model's variables; they are mapped back to the
+ * names of a new model using the same reference list for that model.
+ */
+public class OrderStore
+{
+	/**
+	 * The extension of the files containing orderings.
+	 */
+	protected static final transient String EXTENSION = ".ord";
+
+	/**
+	 * The pattern of the numerical identifiers found in variable names.
+	 */
+	protected static final transient Pattern s_idPattern = Pattern.compile("_(\\d+)");
+
+	/**
+	 * The pattern of the name of an array element.
+	 */
+	protected static final transient Pattern s_elementPattern = Pattern.compile("^(.*)\\[\\d+\\]$");
+
+	/**
+	 * The directory where orderings are stored.
+	 */
+	protected final File m_directory;
+
+	/**
+	 * Creates a new order store.
+	 * @param directory The directory where orderings are stored; it is
+	 * created if it does not exist
+	 */
+	public OrderStore(/*@ non_null @*/ File directory)
+	{
+		super();
+		m_directory = directory;
+		m_directory.mkdirs();
+	}
+
+	/**
+	 * Stores the ordering learned for a configuration of a query, replacing
+	 * any ordering previously stored for the same configuration.
+	 * @param c The configuration
+	 * @param order The canonical ordering
+	 * @throws IOException Thrown if the ordering could not be written
+	 */
+	public void put(/*@ non_null @*/ Configuration c, /*@ non_null @*/ List<String> order) throws IOException
+	{
+		File target = new File(m_directory, c.getFilename());
+		File tmp = File.createTempFile("order", ".tmp", m_directory);
+		Files.write(tmp.toPath(), order, StandardCharsets.UTF_8);
+		Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Finds the stored ordering that is the best starting point for a
+	 * configuration of a query. This is the ordering of the largest
+	 * configuration of the same query that is smaller than the one given.
+	 * Among configurations that are equally good, the one with the first
+	 * file name in alphabetical order is chosen, so that the choice does
+	 * not depend on the order in which the files are listed.
+	 * @param c The configuration
+	 * @return The configuration whose ordering should be used, or
+	 * <tt>null</tt> if no such ordering is stored
+	 */
+	public Configuration getSource(/*@ non_null @*/ Configuration c)
+	{
+		File[] files = m_directory.listFiles();
+		if (files == null)
+		{
+			return null;
+		}
+		// Among equally good candidates, the first name in this order wins
+		Arrays.sort(files);
+		Configuration best = null;
+		for (File f : files)
+		{
+			Configuration candidate = Configuration.fromFilename(f.getName());
+			if (candidate == null || !candidate.isSmallerThan(c))
+			{
+				continue;
+			}
+			if (best == null || best.isSmallerThan(candidate))
+			{
+				best = candidate;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Determines if an ordering is stored for a configuration.
+	 * @param c The configuration
+	 * @return <tt>true</tt> if an ordering is stored, <tt>false</tt>
+	 * otherwise
+	 */
+	public boolean contains(/*@ non_null @*/ Configuration c)
+	{
+		return new File(m_directory, c.getFilename()).exists();
+	}
+
+	/**
+	 * Reads the ordering stored for a configuration.
+	 * @param c The configuration
+	 * @return The canonical ordering
+	 * @throws IOException Thrown if the ordering could not be read
+	 */
+	/*@ non_null @*/ public List<String> get(/*@ non_null @*/ Configuration c) throws IOException
+	{
+		return Files.readAllLines(new File(m_directory, c.getFilename()).toPath(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Puts an ordering in canonical form.
+	 * @param order The ordering, as written by NuSMV
+	 * @param reference The reference list of the variables of the model,
+	 * which must not depend on the identifiers of its processors
+	 * @return The canonical ordering
+	 */
+	/*@ non_null @*/ public static List<String> canonicalize(/*@ non_null @*/ List<String> order, /*@ non_null @*/ List<String> reference)
+	{
+		Map<String,String> ranks = new HashMap<String,String>();
+		for (Map.Entry<String,Integer> e : rankIds(reference).entrySet())
+		{
+			ranks.put(e.getKey(), "_#" + e.getValue());
+		}
+		return replaceIds(order, ranks);
+	}
+
+	/**
+	 * Maps a canonical ordering to the variables of a model. Variables of
+	 * the ordering that do not exist in the model are dropped. Variables of
+	 * the reference list that are not in the ordering, such as the extra
+	 * cells of a larger queue, are placed right after the last element of
+	 * the same array, or at the end if the ordering has no such element.
+	 * @param canonical The canonical ordering
+	 * @param reference The reference list of the variables of the model
+	 * @return The ordering of the variables of the model
+	 */
+	/*@ non_null @*/ public static List<String> instantiate(/*@ non_null @*/ List<String> canonical, /*@ non_null @*/ List<String> reference)
+	{
+		Map<String,String> ids = new HashMap<String,String>();
+		for (Map.Entry<String,Integer> e : rankIds(reference).entrySet())
+		{
+			ids.put("_#" + e.getValue(), e.getKey());
+		}
+		Set<String> existing = new HashSet<String>(reference);
+		// Each variable of the ordering is followed by the missing elements of its array
+		Map<String,List<String>> groups = new LinkedHashMap<String,List<String>>();
+		Map<String,String> last_of_array = new HashMap<String,String>();
+		for (String name : replaceIds(canonical, ids))
+		{
+			if (existing.remove(name))
+			{
+				groups.put(name, new ArrayList<String>());
+				last_of_array.put(getArrayName(name), name);
+			}
+		}
+		List<String> unplaced = new ArrayList<String>();
+		for (String name : reference)
+		{
+			if (!existing.contains(name))
+			{
+				continue;
+			}
+			String last = last_of_array.get(getArrayName(name));
+			if (last == null)
+			{
+				unplaced.add(name);
+			}
+			else
+			{
+				groups.get(last).add(name);
+			}
+		}
+		List<String> order = new ArrayList<String>();
+		for (Map.Entry<String,List<String>> e : groups.entrySet())
+		{
+			order.add(e.getKey());
+			order.addAll(e.getValue());
+		}
+		order.addAll(unplaced);
+		return order;
+	}
+
+	/**
+	 * Ranks the identifiers found in a list of variable names by order of
+	 * first appearance.
+	 * @param names The names
+	 * @return A map from each identifier to its rank
+	 */
+	protected static Map<String,Integer> rankIds(List<String> names)
+	{
+		Map<String,Integer> ranks = new HashMap<String,Integer>();
+		Matcher mat = s_idPattern.matcher("");
+		for (String name : names)
+		{
+			mat.reset(name);
+			while (mat.find())
+			{
+				if (!ranks.containsKey(mat.group()))
+				{
+					ranks.put(mat.group(), ranks.size());
+				}
+			}
+		}
+		return ranks;
+	}
+
+	/**
+	 * Replaces identifiers in a list of variable names.
+	 * @param names The names
+	 * @param replacements A map from identifiers to their replacement;
+	 * identifiers that are not in the map are left unchanged
+	 * @return The names after replacement
+	 */
+	protected static List<String> replaceIds(List<String> names, Map<String,String> replacements)
+	{
+		Pattern pat = replacements.isEmpty() ? null : Pattern.compile("_#?\\d+");
+		List<String> out = new ArrayList<String>(names.size());
+		for (String name : names)
+		{
+			if (pat == null)
+			{
+				out.add(name);
+				continue;
+			}
+			Matcher mat = pat.matcher(name);
+			StringBuffer sb = new StringBuffer();
+			while (mat.find())
+			{
+				String r = replacements.get(mat.group());
+				mat.appendReplacement(sb, Matcher.quoteReplacement(r == null ? mat.group() : r));
+			}
+			mat.appendTail(sb);
+			out.add(sb.toString());
+		}
+		return out;
+	}
+
+	/**
+	 * Gets the name of the array a variable is an element of.
+	 * @param name The name of the variable
+	 * @return The name of the array, or the name of the variable itself if
+	 * it is not an array element
+	 */
+	protected static String getArrayName(String name)
+	{
+		Matcher mat = s_elementPattern.matcher(name);
+		if (mat.matches())
+		{
+			return mat.group(1);
+		}
+		return name;
+	}
+
+	/**
+	 * A configuration of a query, for which an ordering is stored.
+	 */
+	public static class Configuration
+	{
+		/**
+		 * The pattern of the names of the files containing orderings.
+		 */
+		protected static final transient Pattern s_filenamePattern = Pattern.compile("^(.*)-Q(\\d+)-D(\\d+)-K(\\d+)\\" + EXTENSION + "$");
+
+		/**
+		 * The name of the query, made safe for use in a file name.
+		 */
+		protected final String m_query;
+
+		/**
+		 * The size of the queues.
+		 */
+		protected final int m_queueSize;
+
+		/**
+		 * The size of the domains.
+		 */
+		protected final int m_domainSize;
+
+		/**
+		 * The value of parameter k.
+		 */
+		protected final int m_k;
+
+		/**
+		 * Creates a new configuration.
+		 * @param query The name of the query
+		 * @param queue_size The size of the queues
+		 * @param domain_size The size of the domains
+		 * @param k The value of parameter k
+		 */
+		public Configuration(/*@ non_null @*/ String query, int queue_size, int domain_size, int k)
+		{
+			super();
+			m_query = query.replaceAll("[^A-Za-z0-9]", "_");
+			m_queueSize = queue_size;
+			m_domainSize = domain_size;
+			m_k = Math.max(0, k);
+		}
+
+		/**
+		 * Reads a configuration from the name of a file in the store.
+		 * @param filename The name of the file
+		 * @return The configuration, or <tt>null</tt> if the file does not
+		 * contain an ordering
+		 */
+		protected static Configuration fromFilename(String filename)
+		{
+			Matcher mat = s_filenamePattern.matcher(filename);
+			if (!mat.matches())
+			{
+				return null;
+			}
+			return new Configuration(mat.group(1), Integer.parseInt(mat.group(2)), Integer.parseInt(mat.group(3)), Integer.parseInt(mat.group(4)));
+		}
+
+		/**
+		 * Gets the name of the file containing the ordering for this
+		 * configuration.
+		 * @return The name of the file
+		 */
+		/*@ non_null @*/ protected String getFilename()
+		{
+			return m_query + "-Q" + m_queueSize + "-D" + m_domainSize + "-K" + m_k + EXTENSION;
+		}
+
+		/**
+		 * Determines if this configuration is a strictly smaller configuration
+		 * of the same query.
+		 * @param c The other configuration
+		 * @return <tt>true</tt> if no dimension of this configuration is larger
+		 * than that of the other, and at least one is smaller
+		 */
+		public boolean isSmallerThan(/*@ non_null @*/ Configuration c)
+		{
+			if (m_query.compareTo(c.m_query) != 0 || m_queueSize > c.m_queueSize
+					|| m_domainSize > c.m_domainSize || m_k > c.m_k)
+			{
+				return false;
+			}
+			return m_queueSize < c.m_queueSize || m_domainSize < c.m_domainSize || m_k < c.m_k;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Q" + m_queueSize + " D" + m_domainSize + " K" + m_k;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.cep.nusmv.BeepBeepPipeline;
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+
+/**
+ * A {@link BeepBeepPipeline} together with a record of how its processors
+ * are connected. All the calls that build the pipeline go through this
+ * object, which forwards them to the pipeline and keeps the resulting
+ * graph, so that it can later be walked without depending on the internals
+ * of the pipeline.
+ */
+public class PipelineGraph
+{
+	/**
+	 * The pipeline being built.
+	 */
+	protected final BeepBeepPipeline m_pipeline;
+
+	/**
+	 * The processors of the pipeline, in the order in which they were first
+	 * mentioned.
+	 */
+	protected final List<ProcessorModule> m_processors;
+
+	/**
+	 * The connections of the pipeline, from each processor to the processors
+	 * it feeds.
+	 */
+	protected final Map<ProcessorModule,List<ProcessorModule>> m_successors;
+
+	/**
+	 * The processors that receive the inputs of the pipeline.
+	 */
+	protected final List<ProcessorModule> m_inputs;
+
+	/**
+	 * The processors that produce the outputs of the pipeline.
+	 */
+	protected final List<ProcessorModule> m_outputs;
+
+	/**
+	 * Creates a new graph for a pipeline.
+	 * @param pipeline The pipeline, which should not contain any processor yet
+	 */
+	public PipelineGraph(/*@ non_null @*/ BeepBeepPipeline pipeline)
+	{
+		super();
+		m_pipeline = pipeline;
+		m_processors = new ArrayList<ProcessorModule>();
+		m_successors = new HashMap<ProcessorModule,List<ProcessorModule>>();
+		m_inputs = new ArrayList<ProcessorModule>();
+		m_outputs = new ArrayList<ProcessorModule>();
+	}
+
+	/**
+	 * Adds processors to the pipeline.
+	 * @param processors The processors
+	 */
+	public void add(ProcessorModule ... processors)
+	{
+		m_pipeline.add(processors);
+		for (ProcessorModule p : processors)
+		{
+			register(p);
+		}
+	}
+
+	/**
+	 * Connects an output of a processor to an input of another.
+	 * @param from The upstream processor
+	 * @param out_index The index of the output of the upstream processor
+	 * @param to The downstream processor
+	 * @param in_index The index of the input of the downstream processor
+	 */
+	public void connect(ProcessorModule from, int out_index, ProcessorModule to, int in_index)
+	{
+		m_pipeline.connect(from, out_index, to, in_index);
+		register(from);
+		register(to);
+		m_successors.get(from).add(to);
+	}
+
+	/**
+	 * Connects an input of the pipeline to an input of a processor.
+	 * @param p The processor
+	 * @param in_index The index of the input of the processor
+	 * @param pipe_index The index of the input of the pipeline
+	 */
+	public void setInput(ProcessorModule p, int in_index, int pipe_index)
+	{
+		m_pipeline.setInput(p, in_index, pipe_index);
+		register(p);
+		m_inputs.add(p);
+	}
+
+	/**
+	 * Connects an output of a processor to an output of the pipeline.
+	 * @param p The processor
+	 * @param out_index The index of the output of the processor
+	 * @param pipe_index The index of the output of the pipeline
+	 */
+	public void setOutput(ProcessorModule p, int out_index, int pipe_index)
+	{
+		m_pipeline.setOutput(p, out_index, pipe_index);
+		register(p);
+		m_outputs.add(p);
+	}
+
+	/**
+	 * Records a processor the first time it is mentioned.
+	 * @param p The processor
+	 */
+	protected void register(ProcessorModule p)
+	{
+		if (!m_successors.containsKey(p))
+		{
+			m_successors.put(p, new ArrayList<ProcessorModule>());
+			m_processors.add(p);
+		}
+	}
+
+	/**
+	 * Gets the pipeline.
+	 * @return The pipeline
+	 */
+	public BeepBeepPipeline getPipeline()
+	{
+		return m_pipeline;
+	}
+
+	/**
+	 * Gets the processors of the pipeline.
+	 * @return The list of processors, in the order in which they were first
+	 * mentioned
+	 */
+	public List<ProcessorModule> getProcessors()
+	{
+		return m_processors;
+	}
+
+	/**
+	 * Gets the processors fed by a processor.
+	 * @param p The processor
+	 * @return The list of downstream processors
+	 */
+	public List<ProcessorModule> getSuccessors(ProcessorModule p)
+	{
+		List<ProcessorModule> succ = m_successors.get(p);
+		if (succ == null)
+		{
+			return Collections.emptyList();
+		}
+		return succ;
+	}
+
+	/**
+	 * Gets the processors of the pipeline sorted so that every processor
+	 * comes after the processors that feed it. Processors that are not
+	 * ordered by the connections keep the order in which they were added.
+	 * @return The list of processors
+	 */
+	/*@ non_null @*/ public List<ProcessorModule> getTopologicalOrder()
+	{
+		Map<ProcessorModule,Integer> in_degree = new HashMap<ProcessorModule,Integer>();
+		for (ProcessorModule p : m_processors)
+		{
+			in_degree.put(p, 0);
+		}
+		for (ProcessorModule p : m_processors)
+		{
+			for (ProcessorModule s : getSuccessors(p))
+			{
+				in_degree.put(s, in_degree.get(s) + 1);
+			}
+		}
+		List<ProcessorModule> order = new ArrayList<ProcessorModule>(m_processors.size());
+		Deque<ProcessorModule> ready = new ArrayDeque<ProcessorModule>();
+		for (ProcessorModule p : m_processors)
+		{
+			if (in_degree.get(p) == 0)
+			{
+				ready.add(p);
+			}
+		}
+		while (!ready.isEmpty())
+		{
+			ProcessorModule p = ready.poll();
+			order.add(p);
+			for (ProcessorModule s : getSuccessors(p))
+			{
+				int d = in_degree.get(s) - 1;
+				in_degree.put(s, d);
+				if (d == 0)
+				{
+					ready.add(s);
+				}
+			}
+		}
+		// Processors on a cycle, if any, are put at the end
+		for (ProcessorModule p : m_processors)
+		{
+			if (!order.contains(p))
+			{
+				order.add(p);
+			}
+		}
+		return order;
+	}
+}
@@ -0,0 +1,810 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.cep.nusmv.BinaryApplyFunctionModule;
+import ca.uqac.lif.cep.nusmv.CountDecimateModule;
+import ca.uqac.lif.cep.nusmv.CumulateModule;
+import ca.uqac.lif.cep.nusmv.FilterModule;
+import ca.uqac.lif.cep.nusmv.ForkModule;
+import ca.uqac.lif.cep.nusmv.NusmvNumbers;
+import ca.uqac.lif.cep.nusmv.PassthroughModule;
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+import ca.uqac.lif.cep.nusmv.TrimModule;
+import ca.uqac.lif.cep.nusmv.TurnIntoModule;
+import ca.uqac.lif.cep.nusmv.UnaryApplyFunctionModule;
+import ca.uqac.lif.cep.nusmv.WindowModule;
+import ca.uqac.lif.json.JsonElement;
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonNumber;
+import ca.uqac.lif.json.JsonParser;
+import ca.uqac.lif.json.JsonParser.JsonParseException;
+import ca.uqac.lif.json.JsonString;
+import ca.uqac.lif.nusmv4j.BooleanDomain;
+import ca.uqac.lif.nusmv4j.Domain;
+
+/**
+ * The declarative specification of a processor chain. A file of
+ * specifications is a JSON list of objects, each with the following keys:
+ * <ul>
+ * <li><tt>query</tt>: the name of the query, as used in the lab's
+ * parameters</li>
+ * <li><tt>pipeline</tt>: the name of the generated NuSMV pipeline</li>
+ * <li><tt>image</tt> (optional): the URL of a picture of the chain</li>
+ * <li><tt>k</tt> (optional): the value of parameter <i>k</i> when the
+ * experiment does not give a positive one</li>
+ * <li><tt>requires</tt> (optional): a condition of the form
+ * <tt>a op b</tt> on the domain size and <i>k</i>, such as
+ * <tt>"domain &gt; k"</tt>; no chain is built when it does not hold</li>
+ * <li><tt>chains</tt>: a list of one or two chains. The second chain is
+ * compared to the first by the equivalence properties; when it is absent,
+ * the first chain is compared to itself.</li>
+ * </ul>
+ * A chain is a list of statements, executed in order:
+ * <ul>
+ * <li><tt>id = Type Name args...</tt> creates a processor; the types and
+ * their arguments are those of {@link #s_arguments}. The functions are
+ * <tt>add</tt> and <tt>mul</tt> for <tt>Cumulate</tt>, these two and
+ * <tt>eq</tt> and <tt>leq</tt> for <tt>BinaryApply</tt>, and <tt>even</tt>
+ * for <tt>UnaryApply</tt>.</li>
+ * <li><tt>connect a.i b.j</tt> connects output <i>i</i> of <tt>a</tt> to
+ * input <i>j</i> of <tt>b</tt></li>
+ * <li><tt>add a b ...</tt> adds processors to the pipeline</li>
+ * <li><tt>input a.i n</tt> and <tt>output a.i n</tt> connect a processor to
+ * input or output <i>n</i> of the pipeline</li>
+ * <li><tt>return a b</tt> designates the processors that receive and
+ * produce the events of the chain; it must be the last statement</li>
+ * </ul>
+ * Numerical arguments are either integers or one of <tt>k</tt>, <tt>q</tt>
+ * (the queue size of the experiment), <tt>qin</tt> and <tt>qout</tt> (the
+ * sizes of the input and output queues); the string <tt>{k}</tt> in a
+ * processor name is replaced by the value of <i>k</i>.
+ * <p>
+ * Statements are parsed and checked once, when the specification is
+ * read; building a chain only creates and connects the processors.
+ */
+public class PipelineSpec
+{
+	/**
+	 * The name of the file containing the specifications of the queries that
+	 * come with the lab.
+	 */
+	public static final transient String FILENAME = "pipelines.json";
+
+	/**
+	 * The arguments expected by each type of processor, after its name.
+	 */
+	protected static final transient Map<String,String[]> s_arguments = new HashMap<String,String[]>();
+
+	static
+	{
+		s_arguments.put("Passthrough", new String[] {"qin"});
+		s_arguments.put("Fork", new String[] {"arity", "qin"});
+		s_arguments.put("Cumulate", new String[] {"operation", "qin", "qout"});
+		s_arguments.put("Window", new String[] {"processor", "width", "qin", "qout"});
+		s_arguments.put("Filter", new String[] {"qin", "q", "qout"});
+		s_arguments.put("Trim", new String[] {"n", "qin"});
+		s_arguments.put("TurnInto", new String[] {"value", "qin", "qout"});
+		s_arguments.put("CountDecimate", new String[] {"interval", "qin", "qout"});
+		s_arguments.put("BinaryApply", new String[] {"binary", "qin", "q", "qout"});
+		s_arguments.put("UnaryApply", new String[] {"unary", "qin", "qout"});
+	}
+
+	/**
+	 * The name of the query.
+	 */
+	/*@ non_null @*/ protected final String m_query;
+
+	/**
+	 * The name of the generated pipeline.
+	 */
+	/*@ non_null @*/ protected final String m_pipelineName;
+
+	/**
+	 * The URL of a picture of the chain, or <tt>null</tt> if none.
+	 */
+	protected final String m_imageUrl;
+
+	/**
+	 * The value of <i>k</i> when the experiment does not give a positive
+	 * one, or -1 to keep the value of the experiment.
+	 */
+	protected final int m_defaultK;
+
+	/**
+	 * The three tokens of the condition for the chain to exist, or
+	 * <tt>null</tt> if there is no condition.
+	 */
+	protected final String[] m_requirement;
+
+	/**
+	 * The statements of each chain.
+	 */
+	/*@ non_null @*/ protected final List<List<Statement>> m_chains;
+
+	/**
+	 * Reads a list of specifications.
+	 * @param contents The JSON contents of a file of specifications
+	 * @return The specifications, in the order of the file
+	 * @throws SpecException Thrown if the contents are not a valid list of
+	 * specifications
+	 */
+	/*@ non_null @*/ public static List<PipelineSpec> read(String contents) throws SpecException
+	{
+		JsonElement root;
+		try
+		{
+			root = new JsonParser().parse(contents);
+		}
+		catch (JsonParseException e)
+		{
+			throw new SpecException("Invalid JSON: " + e.getMessage());
+		}
+		if (!(root instanceof JsonList))
+		{
+			throw new SpecException("Expected a list of specifications");
+		}
+		List<PipelineSpec> specs = new ArrayList<PipelineSpec>();
+		for (JsonElement je : (JsonList) root)
+		{
+			if (!(je instanceof JsonMap))
+			{
+				throw new SpecException("Expected a specification");
+			}
+			specs.add(new PipelineSpec((JsonMap) je));
+		}
+		return specs;
+	}
+
+	/**
+	 * Creates a specification from its JSON representation.
+	 * @param map The JSON object
+	 * @throws SpecException Thrown if the object is not a valid specification
+	 */
+	public PipelineSpec(/*@ non_null @*/ JsonMap map) throws SpecException
+	{
+		super();
+		m_query = getString(map, "query", null);
+		m_pipelineName = getString(map, "pipeline", m_query);
+		m_imageUrl = getString(map, "image", "");
+		JsonElement k = map.get("k");
+		if (k == null)
+		{
+			m_defaultK = -1;
+		}
+		else if (k instanceof JsonNumber)
+		{
+			m_defaultK = ((JsonNumber) k).numberValue().intValue();
+		}
+		else
+		{
+			throw new SpecException(m_query + ": k must be a number");
+		}
+		String requirement = getString(map, "requires", "");
+		if (requirement.isEmpty())
+		{
+			m_requirement = null;
+		}
+		else
+		{
+			m_requirement = requirement.trim().split("\\s+");
+			if (m_requirement.length != 3 || !isOperand(m_requirement[0]) || !isOperand(m_requirement[2]) || compare(0, m_requirement[1], 0) == null)
+			{
+				throw new SpecException(m_query + ": invalid condition " + requirement);
+			}
+		}
+		JsonElement chains = map.get("chains");
+		if (!(chains instanceof JsonList) || ((JsonList) chains).size() < 1 || ((JsonList) chains).size() > 2)
+		{
+			throw new SpecException(m_query + ": expected a list of one or two chains");
+		}
+		List<List<Statement>> chain_list = new ArrayList<List<Statement>>();
+		for (JsonElement chain : (JsonList) chains)
+		{
+			if (!(chain instanceof JsonList))
+			{
+				throw new SpecException(m_query + ": a chain must be a list of statements");
+			}
+			chain_list.add(parseChain((JsonList) chain));
+		}
+		m_chains = Collections.unmodifiableList(chain_list);
+	}
+
+	/**
+	 * Gets the name of the query.
+	 * @return The name
+	 */
+	/*@ non_null @*/ public String getQuery()
+	{
+		return m_query;
+	}
+
+	/**
+	 * Gets the name of the generated pipeline.
+	 * @return The name
+	 */
+	/*@ non_null @*/ public String getPipelineName()
+	{
+		return m_pipelineName;
+	}
+
+	/**
+	 * Gets the URL of a picture of the chain.
+	 * @return The URL, or <tt>null</tt> if no image is available
+	 */
+	public String getImageUrl()
+	{
+		return m_imageUrl.isEmpty() ? null : m_imageUrl;
+	}
+
+	/**
+	 * Gets the value of <i>k</i> used to build the chain.
+	 * @param k The value of <i>k</i> given by the experiment, or -1 if it
+	 * does not give one
+	 * @return The value of <i>k</i>
+	 */
+	public int getParameter(int k)
+	{
+		return k <= 0 && m_defaultK > 0 ? m_defaultK : k;
+	}
+
+	/**
+	 * Determines if the chain can be built for a domain size and a value of
+	 * <i>k</i>.
+	 * @param domain_size The domain size
+	 * @param k The value of <i>k</i>
+	 * @return <tt>true</tt> if the chain can be built, <tt>false</tt>
+	 * otherwise
+	 */
+	public boolean accepts(int domain_size, int k)
+	{
+		if (m_requirement == null)
+		{
+			return true;
+		}
+		int left = getNumber(m_requirement[0], domain_size, k);
+		int right = getNumber(m_requirement[2], domain_size, k);
+		return compare(left, m_requirement[1], right);
+	}
+
+	/**
+	 * Adds the processors of one of the chains to a pipeline.
+	 * @param index The index of the chain; if the specification has only one
+	 * chain, this chain is built for any index
+	 * @param bp The pipeline
+	 * @param domain The domain of the events in the chain
+	 * @param Q_in The size of input queues
+	 * @param q_size The queue size of the experiment
+	 * @param Q_out The size of output queues
+	 * @param k The value of <i>k</i>
+	 * @return An array with the processor that receives the events of the
+	 * chain, and the processor that produces them
+	 */
+	/*@ non_null @*/ public ProcessorModule[] build(int index, PipelineGraph bp, Domain domain, int Q_in, int q_size, int Q_out, int k)
+	{
+		List<Statement> chain = m_chains.get(Math.min(index, m_chains.size() - 1));
+		Map<String,ProcessorModule> modules = new HashMap<String,ProcessorModule>();
+		for (Statement s : chain)
+		{
+			if (s.m_target != null)
+			{
+				String name = s.m_args[0].replace("{k}", Integer.toString(k));
+				modules.put(s.m_target, createModule(s.m_verb, name, s.m_args, modules, domain, Q_in, q_size, Q_out, k));
+			}
+			else if (s.m_verb.compareTo("connect") == 0)
+			{
+				bp.connect(modules.get(getId(s.m_args[0])), getIndex(s.m_args[0]), modules.get(getId(s.m_args[1])), getIndex(s.m_args[1]));
+			}
+			else if (s.m_verb.compareTo("add") == 0)
+			{
+				ProcessorModule[] to_add = new ProcessorModule[s.m_args.length];
+				for (int i = 0; i < s.m_args.length; i++)
+				{
+					to_add[i] = modules.get(s.m_args[i]);
+				}
+				bp.add(to_add);
+			}
+			else if (s.m_verb.compareTo("input") == 0)
+			{
+				bp.setInput(modules.get(getId(s.m_args[0])), getIndex(s.m_args[0]), Integer.parseInt(s.m_args[1]));
+			}
+			else if (s.m_verb.compareTo("output") == 0)
+			{
+				bp.setOutput(modules.get(getId(s.m_args[0])), getIndex(s.m_args[0]), Integer.parseInt(s.m_args[1]));
+			}
+			else if (s.m_verb.compareTo("return") == 0)
+			{
+				return new ProcessorModule[] {modules.get(s.m_args[0]), modules.get(s.m_args[1])};
+			}
+		}
+		// Not reached; parseChain ensures the chain ends with a return
+		throw new IllegalStateException("Chain without return statement");
+	}
+
+	/**
+	 * Creates a processor.
+	 * @param type The type of the processor
+	 * @param name The name of the processor
+	 * @param args The arguments of the statement, starting with the name
+	 * @param modules The processors created so far, by identifier
+	 * @param domain The domain of the events in the chain
+	 * @param Q_in The size of input queues
+	 * @param q_size The queue size of the experiment
+	 * @param Q_out The size of output queues
+	 * @param k The value of <i>k</i>
+	 * @return The processor
+	 */
+	protected static ProcessorModule createModule(String type, String name, String[] args, Map<String,ProcessorModule> modules, Domain domain, int Q_in, int q_size, int Q_out, int k)
+	{
+		int[] n = new int[args.length];
+		for (int i = 1; i < args.length; i++)
+		{
+			n[i] = isNumber(args[i]) ? getNumber(args[i], Q_in, q_size, Q_out, k) : 0;
+		}
+		if (type.compareTo("Passthrough") == 0)
+		{
+			return new PassthroughModule(name, domain, n[1]);
+		}
+		if (type.compareTo("Fork") == 0)
+		{
+			return new ForkModule(name, domain, n[1], n[2]);
+		}
+		if (type.compareTo("Cumulate") == 0)
+		{
+			if (args[1].compareTo("mul") == 0)
+			{
+				return new CumulateModule(name, new NusmvNumbers.Multiplication(domain), n[2], n[3]);
+			}
+			return new CumulateModule(name, new NusmvNumbers.Addition(domain), n[2], n[3]);
+		}
+		if (type.compareTo("Window") == 0)
+		{
+			return new WindowModule(name, modules.get(args[1]), n[2], domain, domain, n[3], n[4]);
+		}
+		if (type.compareTo("Filter") == 0)
+		{
+			return new FilterModule(name, domain, n[1], n[2], n[3]);
+		}
+		if (type.compareTo("Trim") == 0)
+		{
+			return new TrimModule(name, n[1], domain, n[2]);
+		}
+		if (type.compareTo("TurnInto") == 0)
+		{
+			if (args[1].compareTo("true") == 0 || args[1].compareTo("false") == 0)
+			{
+				return new TurnIntoModule(name, domain, BooleanDomain.instance, Boolean.parseBoolean(args[1]), n[2], n[3]);
+			}
+			return new TurnIntoModule(name, domain, domain, n[1], n[2], n[3]);
+		}
+		if (type.compareTo("CountDecimate") == 0)
+		{
+			return new CountDecimateModule(name, n[1], domain, n[2], n[3]);
+		}
+		if (type.compareTo("BinaryApply") == 0)
+		{
+			if (args[1].compareTo("add") == 0)
+			{
+				return new BinaryApplyFunctionModule(name, new NusmvNumbers.Addition(domain), n[2], n[3], n[4]);
+			}
+			if (args[1].compareTo("mul") == 0)
+			{
+				return new BinaryApplyFunctionModule(name, new NusmvNumbers.Multiplication(domain), n[2], n[3], n[4]);
+			}
+			if (args[1].compareTo("eq") == 0)
+			{
+				return new BinaryApplyFunctionModule(name, new NusmvNumbers.IsEqual(domain), n[2], n[3], n[4]);
+			}
+			return new BinaryApplyFunctionModule(name, new NusmvNumbers.IsLessOrEqual(domain), n[2], n[3], n[4]);
+		}
+		// UnaryApply; the only unary function is "even"
+		return new UnaryApplyFunctionModule(name, new NusmvNumbers.IsEven(domain), n[2], n[3]);
+	}
+
+	/**
+	 * Parses and checks the statements of a chain.
+	 * @param list The JSON list of statements
+	 * @return The statements
+	 * @throws SpecException Thrown if a statement is invalid
+	 */
+	protected List<Statement> parseChain(JsonList list) throws SpecException
+	{
+		List<Statement> chain = new ArrayList<Statement>();
+		Set<String> declared = new HashSet<String>();
+		for (JsonElement je : list)
+		{
+			if (!(je instanceof JsonString))
+			{
+				throw new SpecException(m_query + ": a statement must be a string");
+			}
+			String line = ((JsonString) je).stringValue().trim();
+			if (!chain.isEmpty() && chain.get(chain.size() - 1).m_verb.compareTo("return") == 0)
+			{
+				throw new SpecException(m_query + ": statement after return: " + line);
+			}
+			Statement s = parseStatement(line);
+			if (s == null)
+			{
+				throw new SpecException(m_query + ": invalid statement: " + line);
+			}
+			String undeclared = s.getUndeclared(declared);
+			if (undeclared != null)
+			{
+				throw new SpecException(m_query + ": undeclared processor " + undeclared + " in: " + line);
+			}
+			if (s.m_target != null)
+			{
+				declared.add(s.m_target);
+			}
+			chain.add(s);
+		}
+		if (chain.isEmpty() || chain.get(chain.size() - 1).m_verb.compareTo("return") != 0)
+		{
+			throw new SpecException(m_query + ": a chain must end with a return statement");
+		}
+		return chain;
+	}
+
+	/**
+	 * Parses a single statement.
+	 * @param line The text of the statement
+	 * @return The statement, or <tt>null</tt> if the text is not a valid
+	 * statement
+	 */
+	protected static Statement parseStatement(String line)
+	{
+		String[] tokens = line.split("\\s+");
+		if (tokens.length >= 4 && tokens[1].compareTo("=") == 0)
+		{
+			String[] expected = s_arguments.get(tokens[2]);
+			if (expected == null || tokens.length != expected.length + 4)
+			{
+				return null;
+			}
+			String[] args = new String[expected.length + 1];
+			System.arraycopy(tokens, 3, args, 0, args.length);
+			for (int i = 0; i < expected.length; i++)
+			{
+				if (!isValidArgument(expected[i], args[i + 1]))
+				{
+					return null;
+				}
+			}
+			return new Statement(tokens[0], tokens[2], args);
+		}
+		String[] args = new String[tokens.length - 1];
+		System.arraycopy(tokens, 1, args, 0, args.length);
+		String verb = tokens[0];
+		if (verb.compareTo("connect") == 0 && args.length == 2 && isPort(args[0]) && isPort(args[1]))
+		{
+			return new Statement(null, verb, args);
+		}
+		if (verb.compareTo("add") == 0 && args.length >= 1)
+		{
+			return new Statement(null, verb, args);
+		}
+		if ((verb.compareTo("input") == 0 || verb.compareTo("output") == 0) && args.length == 2 && isPort(args[0]) && args[1].matches("\\d+"))
+		{
+			return new Statement(null, verb, args);
+		}
+		if (verb.compareTo("return") == 0 && args.length == 2)
+		{
+			return new Statement(null, verb, args);
+		}
+		return null;
+	}
+
+	/**
+	 * Determines if a token is a valid value for an argument of a processor.
+	 * @param kind The kind of argument, as given by {@link #s_arguments}
+	 * @param token The token
+	 * @return <tt>true</tt> if the token is valid, <tt>false</tt> otherwise
+	 */
+	protected static boolean isValidArgument(String kind, String token)
+	{
+		if (kind.compareTo("operation") == 0)
+		{
+			return token.matches("add|mul");
+		}
+		if (kind.compareTo("binary") == 0)
+		{
+			return token.matches("add|mul|eq|leq");
+		}
+		if (kind.compareTo("unary") == 0)
+		{
+			return token.matches("even");
+		}
+		if (kind.compareTo("processor") == 0)
+		{
+			return true;
+		}
+		if (kind.compareTo("value") == 0 && token.matches("true|false"))
+		{
+			return true;
+		}
+		return isNumber(token);
+	}
+
+	/**
+	 * Determines if a token designates a number.
+	 * @param token The token
+	 * @return <tt>true</tt> if the token is an integer or a symbol,
+	 * <tt>false</tt> otherwise
+	 */
+	protected static boolean isNumber(String token)
+	{
+		return token.matches("-?\\d+|k|q|qin|qout");
+	}
+
+	/**
+	 * Determines if a token designates an operand of the condition of a
+	 * specification.
+	 * @param token The token
+	 * @return <tt>true</tt> if the token is an integer, <tt>k</tt> or
+	 * <tt>domain</tt>, <tt>false</tt> otherwise
+	 */
+	protected static boolean isOperand(String token)
+	{
+		return token.matches("-?\\d+|k|domain");
+	}
+
+	/**
+	 * Determines if a token designates a port of a processor, of the form
+	 * <tt>id.index</tt>.
+	 * @param token The token
+	 * @return <tt>true</tt> if the token is a port, <tt>false</tt> otherwise
+	 */
+	protected static boolean isPort(String token)
+	{
+		return token.matches("[^.]+\\.\\d+");
+	}
+
+	/**
+	 * Gets the identifier of the processor in a port.
+	 * @param port The port
+	 * @return The identifier
+	 */
+	protected static String getId(String port)
+	{
+		return port.substring(0, port.lastIndexOf('.'));
+	}
+
+	/**
+	 * Gets the index in a port.
+	 * @param port The port
+	 * @return The index
+	 */
+	protected static int getIndex(String port)
+	{
+		return Integer.parseInt(port.substring(port.lastIndexOf('.') + 1));
+	}
+
+	/**
+	 * Gets the value of a numerical argument of a processor.
+	 * @param token The argument
+	 * @param Q_in The size of input queues
+	 * @param q_size The queue size of the experiment
+	 * @param Q_out The size of output queues
+	 * @param k The value of <i>k</i>
+	 * @return The value
+	 */
+	protected static int getNumber(String token, int Q_in, int q_size, int Q_out, int k)
+	{
+		if (token.compareTo("qin") == 0)
+		{
+			return Q_in;
+		}
+		if (token.compareTo("q") == 0)
+		{
+			return q_size;
+		}
+		if (token.compareTo("qout") == 0)
+		{
+			return Q_out;
+		}
+		if (token.compareTo("k") == 0)
+		{
+			return k;
+		}
+		return Integer.parseInt(token);
+	}
+
+	/**
+	 * Gets the value of an operand of the condition of the specification.
+	 * @param token The operand
+	 * @param domain_size The domain size
+	 * @param k The value of <i>k</i>
+	 * @return The value
+	 */
+	protected static int getNumber(String token, int domain_size, int k)
+	{
+		if (token.compareTo("domain") == 0)
+		{
+			return domain_size;
+		}
+		if (token.compareTo("k") == 0)
+		{
+			return k;
+		}
+		return Integer.parseInt(token);
+	}
+
+	/**
+	 * Compares two numbers.
+	 * @param left The left operand
+	 * @param op The comparison operator
+	 * @param right The right operand
+	 * @return The result of the comparison, or <tt>null</tt> if the operator
+	 * is unknown
+	 */
+	protected static Boolean compare(int left, String op, int right)
+	{
+		if (op.compareTo("<") == 0)
+		{
+			return left < right;
+		}
+		if (op.compareTo("<=") == 0)
+		{
+			return left <= right;
+		}
+		if (op.compareTo(">") == 0)
+		{
+			return left > right;
+		}
+		if (op.compareTo(">=") == 0)
+		{
+			return left >= right;
+		}
+		if (op.compareTo("==") == 0)
+		{
+			return left == right;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the value of an optional string in a JSON object.
+	 * @param map The JSON object
+	 * @param key The key of the string
+	 * @param default_value The value if the key is absent, or <tt>null</tt>
+	 * if the key is mandatory
+	 * @return The string
+	 * @throws SpecException Thrown if the key is mandatory and absent, or if
+	 * its value is not a string
+	 */
+	protected String getString(JsonMap map, String key, String default_value) throws SpecException
+	{
+		JsonElement je = map.get(key);
+		if (je == null && default_value != null)
+		{
+			return default_value;
+		}
+		if (!(je instanceof JsonString))
+		{
+			throw new SpecException((m_query == null ? "" : m_query + ": ") + key + " must be a string");
+		}
+		return ((JsonString) je).stringValue();
+	}
+
+	/**
+	 * A statement of a chain.
+	 */
+	protected static class Statement
+	{
+		/**
+		 * The identifier of the processor created by the statement, or
+		 * <tt>null</tt> if the statement does not create a processor.
+		 */
+		protected final String m_target;
+
+		/**
+		 * The type of the processor created, or the name of the statement.
+		 */
+		/*@ non_null @*/ protected final String m_verb;
+
+		/**
+		 * The arguments of the statement.
+		 */
+		/*@ non_null @*/ protected final String[] m_args;
+
+		/**
+		 * Creates a new statement.
+		 * @param target The identifier of the processor created by the
+		 * statement, or <tt>null</tt>
+		 * @param verb The type of the processor created, or the name of the
+		 * statement
+		 * @param args The arguments of the statement
+		 */
+		public Statement(String target, String verb, String[] args)
+		{
+			super();
+			m_target = target;
+			m_verb = verb;
+			m_args = args;
+		}
+
+		/**
+		 * Finds a processor used by this statement that has not been created
+		 * by an earlier statement.
+		 * @param declared The identifiers of the processors created so far
+		 * @return The identifier of such a processor, or <tt>null</tt> if
+		 * there is none
+		 */
+		public String getUndeclared(Set<String> declared)
+		{
+			List<String> used = new ArrayList<String>();
+			if (m_target != null)
+			{
+				if (m_verb.compareTo("Window") == 0)
+				{
+					used.add(m_args[1]);
+				}
+			}
+			else if (m_verb.compareTo("connect") == 0)
+			{
+				used.add(getId(m_args[0]));
+				used.add(getId(m_args[1]));
+			}
+			else if (m_verb.compareTo("input") == 0 || m_verb.compareTo("output") == 0)
+			{
+				used.add(getId(m_args[0]));
+			}
+			else
+			{
+				Collections.addAll(used, m_args);
+			}
+			for (String id : used)
+			{
+				if (!declared.contains(id))
+				{
+					return id;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Exception thrown when a specification is invalid.
+	 */
+	public static class SpecException extends Exception
+	{
+		/**
+		 * Dummy UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Creates a new exception.
+		 * @param message The message of the exception
+		 */
+		public SpecException(String message)
+		{
+			super(message);
+		}
+	}
+}
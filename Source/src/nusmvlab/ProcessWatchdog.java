@@ -0,0 +1,435 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Watches a running NuSMV process, measures the resources it consumes, and
+ * kills it when it exceeds a limit on its wall-clock running time or on its
+ * resident memory. The CPU time and memory of the process are sampled at
+ * regular intervals from <tt>/proc/&lt;pid&gt;/stat</tt> and
+ * <tt>/proc/&lt;pid&gt;/status</tt>; on systems without a <tt>/proc</tt>
+ * file system, only the wall-clock time is measured and only the time limit
+ * is enforced.
+ * <p>
+ * The watchdog can be started on a process that has already been running,
+ * such as a NuSMV session; the CPU time it reports is then the time spent
+ * since the watchdog was started. The memory of such a process is measured
+ * relative to its resident memory when the watchdog starts, so that the
+ * memory built up by earlier uses of the process is neither reported nor
+ * counted against the limit.
+ */
+public class ProcessWatchdog implements Runnable
+{
+	/**
+	 * The verdict given to an experiment whose process exceeded its time
+	 * limit.
+	 */
+	public static final transient String TIMEOUT = "TIMEOUT";
+
+	/**
+	 * The verdict given to an experiment whose process exceeded its memory
+	 * limit.
+	 */
+	public static final transient String MEMOUT = "MEMOUT";
+
+	/**
+	 * The interval (in ms) between two samples of the process' memory.
+	 */
+	protected static final transient long POLL_INTERVAL = 20;
+
+	/**
+	 * The number of clock ticks per second in which the kernel expresses CPU
+	 * times, as given by <tt>getconf CLK_TCK</tt>.
+	 */
+	protected static final transient long CLOCK_TICKS = getClockTicks();
+
+	/**
+	 * The process being watched.
+	 */
+	protected final ProcessHandle m_process;
+
+	/**
+	 * The maximum running time (in ms), or 0 for no limit.
+	 */
+	protected final long m_timeLimit;
+
+	/**
+	 * The maximum resident memory (in kB), or 0 for no limit.
+	 */
+	protected final long m_memoryLimit;
+
+	/**
+	 * The moment (in ms) when the watchdog was started.
+	 */
+	protected long m_startTime;
+
+	/**
+	 * The moment (in ms) when the watchdog was stopped, or when it killed
+	 * the process.
+	 */
+	protected long m_endTime = -1;
+
+	/**
+	 * The highest resident memory (in kB) observed for the process, or -1 if
+	 * it could not be read.
+	 */
+	protected long m_peakMemory = -1;
+
+	/**
+	 * Whether memory is measured relative to the resident memory of the
+	 * process when the watchdog starts.
+	 */
+	protected final boolean m_relative;
+
+	/**
+	 * The resident memory (in kB) of the process when the watchdog started,
+	 * which is subtracted from the memory observed afterwards; 0 if memory
+	 * is not measured relative to the start.
+	 */
+	protected long m_baseMemory = 0;
+
+	/**
+	 * Whether the kernel's record of the peak memory of the process only
+	 * covers the period during which the watchdog runs, and can therefore
+	 * be used in addition to the samples of the current memory.
+	 */
+	protected boolean m_useHighWaterMark = true;
+
+	/**
+	 * The CPU times (in clock ticks) of the process in user and kernel mode
+	 * when the watchdog was started, or -1 if they could not be read.
+	 */
+	protected long m_userStart = -1, m_systemStart = -1;
+
+	/**
+	 * The CPU times (in clock ticks) of the process in user and kernel mode
+	 * at the last sample, or -1 if they could not be read.
+	 */
+	protected long m_userTicks = -1, m_systemTicks = -1;
+
+	/**
+	 * The limit that caused the process to be killed, or <tt>null</tt> if
+	 * the process was not killed.
+	 */
+	protected volatile String m_exceeded = null;
+
+	/**
+	 * Whether the watchdog has been asked to stop.
+	 */
+	protected volatile boolean m_stopped = false;
+
+	/**
+	 * The thread running the watchdog.
+	 */
+	protected Thread m_thread;
+
+	/**
+	 * Creates a new watchdog.
+	 * @param p The process to watch
+	 * @param time_limit The maximum running time (in ms), or 0 for no limit
+	 * @param memory_limit The maximum resident memory (in kB), or 0 for no
+	 * limit
+	 */
+	public ProcessWatchdog(/*@ non_null @*/ Process p, long time_limit, long memory_limit)
+	{
+		this(p, time_limit, memory_limit, false);
+	}
+
+	/**
+	 * Creates a new watchdog.
+	 * @param p The process to watch
+	 * @param time_limit The maximum running time (in ms), or 0 for no limit
+	 * @param memory_limit The maximum resident memory (in kB), or 0 for no
+	 * limit
+	 * @param relative Set to <tt>true</tt> to measure memory relative to the
+	 * resident memory of the process when the watchdog starts, as for a
+	 * process that is reused from one call to the next
+	 */
+	public ProcessWatchdog(/*@ non_null @*/ Process p, long time_limit, long memory_limit, boolean relative)
+	{
+		super();
+		m_process = p.toHandle();
+		m_timeLimit = time_limit;
+		m_memoryLimit = memory_limit;
+		m_relative = relative;
+	}
+
+	/**
+	 * Starts watching the process in a separate thread.
+	 * @return This watchdog
+	 */
+	public ProcessWatchdog start()
+	{
+		m_startTime = System.currentTimeMillis();
+		// Without a reset, the peak of a reused process covers its earlier uses
+		m_useHighWaterMark = resetPeakMemory() || !m_relative;
+		long rss = sample();
+		if (m_relative)
+		{
+			m_baseMemory = Math.max(0, rss);
+		}
+		m_userStart = m_userTicks;
+		m_systemStart = m_systemTicks;
+		m_thread = new Thread(this, "watchdog-" + m_process.pid());
+		m_thread.setDaemon(true);
+		m_thread.start();
+		return this;
+	}
+
+	/**
+	 * Stops watching the process. The process itself is left untouched.
+	 */
+	public void stop()
+	{
+		m_stopped = true;
+		if (m_thread != null)
+		{
+			m_thread.interrupt();
+			try
+			{
+				m_thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (m_endTime < 0)
+		{
+			m_endTime = System.currentTimeMillis();
+		}
+		sample();
+	}
+
+	@Override
+	public void run()
+	{
+		while (!m_stopped && m_process.isAlive())
+		{
+			long rss = sample();
+			if (m_memoryLimit > 0 && rss - m_baseMemory > m_memoryLimit)
+			{
+				kill(MEMOUT);
+				return;
+			}
+			if (m_timeLimit > 0 && System.currentTimeMillis() - m_startTime > m_timeLimit)
+			{
+				kill(TIMEOUT);
+				return;
+			}
+			try
+			{
+				Thread.sleep(POLL_INTERVAL);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Kills the process and all its descendants.
+	 * @param reason The limit that was exceeded
+	 */
+	protected void kill(String reason)
+	{
+		m_endTime = System.currentTimeMillis();
+		m_exceeded = reason;
+		m_process.descendants().forEach(ProcessHandle::destroyForcibly);
+		m_process.destroyForcibly();
+	}
+
+	/**
+	 * Reads the current CPU times and memory of the process. Once the process
+	 * is gone, the last values read are kept. The JVM reaps a process as soon
+	 * as it terminates, so a last call made when its output ends may come too
+	 * late; the CPU times then miss at most the last {@link #POLL_INTERVAL}
+	 * ms of the process.
+	 * @return The current resident memory of the process (in kB), or -1 if
+	 * it could not be read
+	 */
+	public synchronized long sample()
+	{
+		File f = new File("/proc/" + m_process.pid() + "/stat");
+		try (BufferedReader br = new BufferedReader(new FileReader(f)))
+		{
+			String line = br.readLine();
+			if (line != null)
+			{
+				// The name of the command is in parentheses and may contain spaces
+				String[] fields = line.substring(line.lastIndexOf(')') + 2).split(" ");
+				m_userTicks = Long.parseLong(fields[11]);
+				m_systemTicks = Long.parseLong(fields[12]);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// No /proc file system, or the process is gone
+		}
+		long rss = readMemory("VmRSS:");
+		m_peakMemory = Math.max(m_peakMemory, m_useHighWaterMark ? Math.max(rss, readMemory("VmHWM:")) : rss);
+		return rss;
+	}
+
+	/**
+	 * Resets the kernel's record of the peak resident memory of the process,
+	 * so that the peak memory reported by the watchdog only covers the period
+	 * during which it is running.
+	 * @return <tt>true</tt> if the record was reset, <tt>false</tt> if this
+	 * is not supported
+	 */
+	protected boolean resetPeakMemory()
+	{
+		try (FileWriter fw = new FileWriter("/proc/" + m_process.pid() + "/clear_refs"))
+		{
+			fw.write("5");
+			return true;
+		}
+		catch (IOException e)
+		{
+			// Not supported; the peak memory may include earlier uses of the process
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a memory figure of the process from its status file.
+	 * @param key The name of the field to read, such as <tt>VmRSS:</tt>
+	 * @return The value of the field (in kB), or -1 if it could not be read
+	 */
+	protected long readMemory(String key)
+	{
+		File f = new File("/proc/" + m_process.pid() + "/status");
+		try (BufferedReader br = new BufferedReader(new FileReader(f)))
+		{
+			String line;
+			while ((line = br.readLine()) != null)
+			{
+				if (line.startsWith(key))
+				{
+					String value = line.substring(key.length()).trim();
+					int space = value.indexOf(' ');
+					if (space > 0)
+					{
+						value = value.substring(0, space);
+					}
+					return Long.parseLong(value);
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			// No /proc file system, or the process is gone
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the limit that caused the process to be killed.
+	 * @return {@link #TIMEOUT}, {@link #MEMOUT}, or <tt>null</tt> if the
+	 * process was not killed
+	 */
+	public String getExceededLimit()
+	{
+		return m_exceeded;
+	}
+
+	/**
+	 * Gets the time elapsed between the start of the watchdog and the moment
+	 * it was stopped or killed the process.
+	 * @return The time in ms
+	 */
+	public long getElapsed()
+	{
+		return m_endTime - m_startTime;
+	}
+
+	/**
+	 * Gets the highest resident memory observed for the process, relative to
+	 * its memory when the watchdog started if the watchdog measures memory
+	 * this way.
+	 * @return The memory in kB, or -1 if it could not be read
+	 */
+	public long getPeakMemory()
+	{
+		if (m_peakMemory < 0)
+		{
+			return -1;
+		}
+		return Math.max(0, m_peakMemory - m_baseMemory);
+	}
+
+	/**
+	 * Asks the system for the number of clock ticks per second in which the
+	 * kernel expresses CPU times.
+	 * @return The number of ticks, or 100 (the value on virtually all Linux
+	 * systems) if it could not be obtained
+	 */
+	protected static long getClockTicks()
+	{
+		try
+		{
+			Process p = new ProcessBuilder("getconf", "CLK_TCK").redirectErrorStream(true).start();
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream())))
+			{
+				String line = br.readLine();
+				if (p.waitFor() == 0 && line != null)
+				{
+					long ticks = Long.parseLong(line.trim());
+					if (ticks > 0)
+					{
+						return ticks;
+					}
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			// No getconf; fall back to the usual value
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return 100;
+	}
+
+	/**
+	 * Gets the resources consumed by the process since the watchdog was
+	 * started.
+	 * @return The resource usage
+	 */
+	/*@ non_null @*/ public synchronized ResourceUsage getUsage()
+	{
+		long user = -1, system = -1;
+		if (m_userStart >= 0)
+		{
+			user = (m_userTicks - m_userStart) * 1000 / CLOCK_TICKS;
+			system = (m_systemTicks - m_systemStart) * 1000 / CLOCK_TICKS;
+		}
+		return new ResourceUsage(user, system, getElapsed(), getPeakMemory());
+	}
+}
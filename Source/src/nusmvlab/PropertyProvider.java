@@ -25,13 +25,42 @@ public interface PropertyProvider extends NuSMVProvider
 	public static final String PROPERTY = "Property";
 	
 	/**
-	 * The type of formula this provider writes.
+	 * The name of parameter "Specification form"
 	 */
-	public enum Logic {LTL, CTL}
+	public static final String SPEC_FORM = "Specification form";
 	
 	/**
-	 * Gets the type of formula this provider writes (CTL or LTL).
+	 * The property is written as a temporal formula (<tt>LTLSPEC</tt> or
+	 * <tt>CTLSPEC</tt>).
+	 */
+	public static final String TEMPORAL = "Temporal";
+	
+	/**
+	 * The property is written as a state invariant (<tt>INVARSPEC</tt>).
+	 */
+	public static final String INVARIANT = "Invariant";
+	
+	/**
+	 * The property is checked by observer modules added to the model (see
+	 * {@link ObserverCompiler}).
+	 */
+	public static final String OBSERVER = "Observer";
+	
+	/**
+	 * The type of formula this provider writes. An invariant is a
+	 * propositional formula that must hold in every reachable state.
+	 */
+	public enum Logic {LTL, CTL, INVAR}
+	
+	/**
+	 * Gets the type of formula this provider writes (CTL, LTL or invariant).
 	 * @return The formula type
 	 */
 	public Logic getLogic();
+	
+	/**
+	 * Gets the formula this provider writes.
+	 * @return The formula
+	 */
+	public Formula getFormula();
 }
@@ -0,0 +1,71 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import ca.uqac.lif.labpal.experiment.ExperimentException;
+
+/**
+ * Exception thrown when the NuSMV process of an experiment was killed for
+ * exceeding its time or memory limit.
+ */
+public class ResourceLimitException extends ExperimentException
+{
+	/**
+	 * Dummy UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The limit that was exceeded.
+	 */
+	protected final String m_limit;
+
+	/**
+	 * The resources consumed by the process until it was killed.
+	 */
+	protected final ResourceUsage m_usage;
+
+	/**
+	 * Creates a new exception from the state of a watchdog.
+	 * @param w The watchdog that killed the process
+	 */
+	public ResourceLimitException(/*@ non_null @*/ ProcessWatchdog w)
+	{
+		super("NuSMV exceeded its " + (ProcessWatchdog.TIMEOUT.equals(w.getExceededLimit()) ? "time" : "memory") + " limit");
+		m_limit = w.getExceededLimit();
+		m_usage = w.getUsage();
+	}
+
+	/**
+	 * Gets the limit that was exceeded.
+	 * @return {@link ProcessWatchdog#TIMEOUT} or {@link ProcessWatchdog#MEMOUT}
+	 */
+	public String getLimit()
+	{
+		return m_limit;
+	}
+
+	/**
+	 * Gets the resources consumed by the process until it was killed.
+	 * @return The resource usage
+	 */
+	public ResourceUsage getUsage()
+	{
+		return m_usage;
+	}
+}
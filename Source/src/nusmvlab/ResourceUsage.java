@@ -0,0 +1,140 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+/**
+ * The resources consumed by a NuSMV process during a call, as observed by
+ * a {@link ProcessWatchdog}. Values that could not be measured are equal
+ * to -1.
+ */
+public class ResourceUsage
+{
+	/**
+	 * The CPU time (in ms) spent by the process in user mode.
+	 */
+	protected final long m_userTime;
+
+	/**
+	 * The CPU time (in ms) spent by the process in kernel mode.
+	 */
+	protected final long m_systemTime;
+
+	/**
+	 * The wall-clock time (in ms) of the call.
+	 */
+	protected final long m_wallTime;
+
+	/**
+	 * The peak resident memory (in kB) of the process.
+	 */
+	protected final long m_peakMemory;
+
+	/**
+	 * Creates a new resource usage.
+	 * @param user_time The CPU time (in ms) spent in user mode
+	 * @param system_time The CPU time (in ms) spent in kernel mode
+	 * @param wall_time The wall-clock time (in ms) of the call
+	 * @param peak_memory The peak resident memory (in kB)
+	 */
+	public ResourceUsage(long user_time, long system_time, long wall_time, long peak_memory)
+	{
+		super();
+		m_userTime = user_time;
+		m_systemTime = system_time;
+		m_wallTime = wall_time;
+		m_peakMemory = peak_memory;
+	}
+
+	/**
+	 * Gets the CPU time spent by the process in user mode.
+	 * @return The time in ms
+	 */
+	public long getUserTime()
+	{
+		return m_userTime;
+	}
+
+	/**
+	 * Gets the CPU time spent by the process in kernel mode.
+	 * @return The time in ms
+	 */
+	public long getSystemTime()
+	{
+		return m_systemTime;
+	}
+
+	/**
+	 * Gets the wall-clock time of the call.
+	 * @return The time in ms
+	 */
+	public long getWallTime()
+	{
+		return m_wallTime;
+	}
+
+	/**
+	 * Gets the peak resident memory of the process.
+	 * @return The memory in kB
+	 */
+	public long getPeakMemory()
+	{
+		return m_peakMemory;
+	}
+
+	/**
+	 * Combines the resources consumed by processes that ran at the same
+	 * time. CPU times are added, and the peak memory is that of the process
+	 * that used the most memory. The peak memory is thus the memory of a
+	 * single process, like for an experiment that runs only one; the
+	 * {@link ExperimentScheduler} multiplies it by the number of processes
+	 * run at the same time when it reserves memory for an experiment.
+	 * @param usages The resources consumed by each process
+	 * @param wall_time The wall-clock time (in ms) from the start of the
+	 * first process to the end of the last
+	 * @return The combined resource usage
+	 */
+	/*@ non_null @*/ public static ResourceUsage combine(/*@ non_null @*/ Iterable<ResourceUsage> usages, long wall_time)
+	{
+		long user_time = -1, system_time = -1, peak_memory = -1;
+		for (ResourceUsage u : usages)
+		{
+			if (u.m_userTime >= 0)
+			{
+				user_time = Math.max(user_time, 0) + u.m_userTime;
+			}
+			if (u.m_systemTime >= 0)
+			{
+				system_time = Math.max(system_time, 0) + u.m_systemTime;
+			}
+			peak_memory = Math.max(peak_memory, u.m_peakMemory);
+		}
+		return new ResourceUsage(user_time, system_time, wall_time, peak_memory);
+	}
+
+	/**
+	 * Fills the output parameters of an experiment with this resource usage.
+	 * @param e The experiment
+	 */
+	public void fillExperiment(/*@ non_null @*/ NuSMVExperiment e)
+	{
+		e.writeMeasure(NuSMVExperiment.USER_TIME, m_userTime);
+		e.writeMeasure(NuSMVExperiment.SYSTEM_TIME, m_systemTime);
+		e.writeMeasure(NuSMVExperiment.WALL_TIME, m_wallTime);
+		e.writeMeasure(NuSMVExperiment.PEAK_MEMORY, m_peakMemory);
+	}
+}
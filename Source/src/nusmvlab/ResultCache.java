@@ -0,0 +1,269 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A persistent store of the results produced by NuSMV, kept on disk from
+ * one execution of the lab to the next. Results are indexed by a hash of
+ * everything that can influence them: the exact text of the model and
+ * property, the model checker binary, and the commands sent to it. An
+ * experiment whose key is found in the cache can therefore reuse the
+ * stored results instead of calling NuSMV again.
+ * <p>
+ * Each entry is stored in its own file, named after the key. An entry is
+ * first written to a temporary file and then moved in place, so that
+ * experiments running concurrently never see a partially written entry.
+ */
+public class ResultCache
+{
+	/**
+	 * The directory where entries are stored.
+	 */
+	protected final File m_directory;
+
+	/**
+	 * Whether lookups are disabled, forcing every experiment to be measured
+	 * again. New results are still written to the cache.
+	 */
+	protected final boolean m_remeasure;
+
+	/**
+	 * A string identifying each model checker binary that was looked up.
+	 */
+	protected static final transient Map<String,String> s_checkerIds = new HashMap<String,String>();
+
+	/**
+	 * Creates a new result cache.
+	 * @param directory The directory where entries are stored; it is created
+	 * if it does not exist
+	 * @param remeasure Set to <tt>true</tt> to ignore the results already in
+	 * the cache
+	 */
+	public ResultCache(/*@ non_null @*/ File directory, boolean remeasure)
+	{
+		super();
+		m_directory = directory;
+		m_remeasure = remeasure;
+		m_directory.mkdirs();
+	}
+
+	/**
+	 * Gets the results stored for a key.
+	 * @param key The key
+	 * @return A map from attribute names to values, or <tt>null</tt> if no
+	 * results are stored for this key or lookups are disabled
+	 */
+	public Map<String,Object> get(/*@ non_null @*/ String key)
+	{
+		if (m_remeasure)
+		{
+			return null;
+		}
+		File f = new File(m_directory, key + ".properties");
+		if (!f.exists())
+		{
+			return null;
+		}
+		Properties props = new Properties();
+		try (InputStream is = new FileInputStream(f))
+		{
+			props.load(is);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		Map<String,Object> results = new LinkedHashMap<String,Object>();
+		for (String name : props.stringPropertyNames())
+		{
+			results.put(name, parseValue(props.getProperty(name)));
+		}
+		return results;
+	}
+
+	/**
+	 * Stores the results of an experiment. Failing to write the entry is not
+	 * an error; the results are simply not cached.
+	 * @param key The key
+	 * @param results A map from attribute names to values
+	 */
+	public void put(/*@ non_null @*/ String key, /*@ non_null @*/ Map<String,Object> results)
+	{
+		Properties props = new Properties();
+		for (Map.Entry<String,Object> entry : results.entrySet())
+		{
+			if (entry.getValue() != null)
+			{
+				props.setProperty(entry.getKey(), entry.getValue().toString());
+			}
+		}
+		try
+		{
+			File tmp = File.createTempFile(key, ".tmp", m_directory);
+			try (OutputStream os = new FileOutputStream(tmp))
+			{
+				props.store(os, null);
+			}
+			Files.move(tmp.toPath(), new File(m_directory, key + ".properties").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			// Do nothing; the results will be measured again next time
+		}
+	}
+
+	/**
+	 * Converts a value read from a cache entry back into a number, when it
+	 * represents one.
+	 * @param s The value
+	 * @return The value as a number or a string
+	 */
+	protected static Object parseValue(/*@ non_null @*/ String s)
+	{
+		try
+		{
+			return Long.parseLong(s);
+		}
+		catch (NumberFormatException e)
+		{
+			// Not an integer
+		}
+		try
+		{
+			return Float.parseFloat(s);
+		}
+		catch (NumberFormatException e)
+		{
+			// Not a number
+		}
+		return s;
+	}
+
+	/**
+	 * Computes a cache key from a list of strings.
+	 * @param parts The strings
+	 * @return The hexadecimal SHA-256 hash of the strings
+	 */
+	/*@ non_null @*/ public static String getKey(String ... parts)
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			for (String part : parts)
+			{
+				byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+				// Prefix each part by its length, so that parts cannot run into each other
+				md.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+				md.update((byte) ':');
+				md.update(bytes);
+			}
+			return toHex(md.digest());
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes an array of bytes in hexadecimal.
+	 * @param bytes The bytes
+	 * @return The hexadecimal string
+	 */
+	/*@ non_null @*/ public static String toHex(/*@ non_null @*/ byte[] bytes)
+	{
+		StringBuilder out = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+		{
+			out.append(String.format("%02x", b));
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Gets a string identifying a model checker binary. The binary is looked
+	 * up in the directories of the <tt>PATH</tt>, and identified by its
+	 * location, size and modification date, so that installing a new version
+	 * of the model checker invalidates the results of the previous one.
+	 * @param command The command used to call the model checker
+	 * @return The identifier
+	 */
+	/*@ non_null @*/ public static String getCheckerId(/*@ non_null @*/ String command)
+	{
+		synchronized (s_checkerIds)
+		{
+			String id = s_checkerIds.get(command);
+			if (id == null)
+			{
+				id = command;
+				File f = findExecutable(command);
+				if (f != null)
+				{
+					id = f.getAbsolutePath() + ":" + f.length() + ":" + f.lastModified();
+				}
+				s_checkerIds.put(command, id);
+			}
+			return id;
+		}
+	}
+
+	/**
+	 * Finds the file corresponding to a command.
+	 * @param command The command
+	 * @return The file, or <tt>null</tt> if it could not be found
+	 */
+	protected static File findExecutable(/*@ non_null @*/ String command)
+	{
+		File f = new File(command);
+		if (command.contains(File.separator))
+		{
+			return f.isFile() ? f : null;
+		}
+		String path = System.getenv("PATH");
+		if (path == null)
+		{
+			return null;
+		}
+		for (String dir : path.split(File.pathSeparator))
+		{
+			f = new File(dir, command);
+			if (f.isFile() && f.canExecute())
+			{
+				return f;
+			}
+		}
+		return null;
+	}
+}
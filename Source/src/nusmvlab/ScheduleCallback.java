@@ -0,0 +1,177 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.Comparator;
+import java.util.Map;
+
+import ca.uqac.lif.labpal.server.BlankPageCallback;
+import ca.uqac.lif.labpal.server.LabPalServer;
+
+/**
+ * Page added to the lab's web interface that runs all the experiments of
+ * the lab in parallel using an {@link ExperimentScheduler}, and shows the
+ * progress of this scheduler. The page itself only shows the progress; the
+ * scheduler is started by a form posted to the {@link Start} callback, so
+ * that merely loading or reloading a URL never starts a run.
+ */
+public class ScheduleCallback extends BlankPageCallback
+{
+	/**
+	 * The number of experiments that may run at the same time.
+	 */
+	protected final int m_threads;
+
+	/**
+	 * The total memory (in kB) that running experiments may use, or 0 for
+	 * no limit.
+	 */
+	protected final long m_memoryBudget;
+
+	/**
+	 * The policy used to order the experiments.
+	 */
+	protected final Comparator<NuSMVExperiment> m_policy;
+
+	/**
+	 * The scheduler last started from this page, or <tt>null</tt> if none
+	 * was started.
+	 */
+	protected ExperimentScheduler m_scheduler = null;
+
+	/**
+	 * The thread running the scheduler.
+	 */
+	protected Thread m_thread = null;
+
+	/**
+	 * Creates a new instance of the callback.
+	 * @param server The server this callback is associated to
+	 * @param threads The number of experiments that may run at the same time
+	 * @param memory_budget The total memory (in kB) that running experiments
+	 * may use, or 0 for no limit
+	 * @param policy The policy used to order the experiments
+	 */
+	public ScheduleCallback(LabPalServer server, int threads, long memory_budget, Comparator<NuSMVExperiment> policy)
+	{
+		super(server, Method.GET, "/schedule");
+		setTitle("Parallel run");
+		m_threads = threads;
+		m_memoryBudget = memory_budget;
+		m_policy = policy;
+	}
+
+	/**
+	 * Starts a scheduler on all the experiments of the lab that are not yet
+	 * done, unless a scheduler is already running.
+	 */
+	protected synchronized void start()
+	{
+		if (m_thread != null && m_thread.isAlive())
+		{
+			return;
+		}
+		CostModel model = NuSMVExperiment.getCostModel();
+		if (model != null)
+		{
+			// Include the experiments completed since the lab started
+			model.fit();
+		}
+		m_scheduler = new ExperimentScheduler(m_threads, m_memoryBudget, m_policy);
+		m_scheduler.addAll(ExperimentScheduler.filter(getServer().getLaboratory().getExperiments()));
+		m_thread = new Thread(m_scheduler, "scheduler");
+		m_thread.setDaemon(true);
+		m_thread.start();
+	}
+
+	@Override
+	public synchronized String getCustomContent(Map<String, String> params)
+	{
+		StringBuilder contents = new StringBuilder();
+		contents.append("<p>This page runs all the experiments that are not yet done using ");
+		contents.append(m_threads).append(" concurrent NuSMV processes");
+		if (m_memoryBudget > 0)
+		{
+			contents.append(", within a predicted memory budget of ").append(m_memoryBudget / 1024).append(" MB");
+		}
+		contents.append(".</p>\n");
+		if (m_scheduler == null)
+		{
+			contents.append(getStartForm("Start"));
+			return contents.toString();
+		}
+		contents.append("<ul>\n");
+		contents.append("<li>Waiting: ").append(m_scheduler.getWaiting()).append("</li>\n");
+		contents.append("<li>Running: ").append(m_scheduler.getRunning()).append("</li>\n");
+		contents.append("<li>Finished: ").append(m_scheduler.getFinished()).append("</li>\n");
+		contents.append("<li>Predicted memory in use: ").append(m_scheduler.getMemoryInUse() / 1024).append(" MB</li>\n");
+		long remaining = m_scheduler.getPredictedTimeRemaining();
+		if (remaining >= 0)
+		{
+			contents.append("<li>Predicted time remaining: ").append(remaining / 1000).append(" s</li>\n");
+		}
+		contents.append("</ul>\n");
+		if (!m_thread.isAlive())
+		{
+			contents.append(getStartForm("Start again"));
+		}
+		return contents.toString();
+	}
+
+	/**
+	 * Gets the form that starts the scheduler.
+	 * @param label The label of the button
+	 * @return The HTML code of the form
+	 */
+	protected static String getStartForm(String label)
+	{
+		return "<form method=\"post\" action=\"/schedule/start\"><p><input type=\"submit\" value=\"" + label + "\" /></p></form>\n";
+	}
+
+	/**
+	 * Callback that receives the form posted to start the scheduler of a
+	 * {@link ScheduleCallback}, and shows the progress of the scheduler it
+	 * started.
+	 */
+	public static class Start extends BlankPageCallback
+	{
+		/**
+		 * The page whose scheduler is started.
+		 */
+		protected final ScheduleCallback m_page;
+
+		/**
+		 * Creates a new instance of the callback.
+		 * @param server The server this callback is associated to
+		 * @param page The page whose scheduler is started
+		 */
+		public Start(LabPalServer server, /*@ non_null @*/ ScheduleCallback page)
+		{
+			super(server, Method.POST, "/schedule/start");
+			setTitle("Parallel run");
+			m_page = page;
+		}
+
+		@Override
+		public String getCustomContent(Map<String, String> params)
+		{
+			m_page.start();
+			return m_page.getCustomContent(params);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+/**
+ * Decides the verdict of an experiment before any call to NuSMV, when it
+ * follows from the formula of the property alone. The formula is
+ * simplified (see {@link Formula}); a property that becomes <tt>TRUE</tt>
+ * or <tt>FALSE</tt>, such as "No full queues" on a chain without queues, is
+ * decided at once.
+ */
+public class StaticCheck
+{
+	/**
+	 * The name of parameter "Statically decided".
+	 */
+	public static final transient String STATICALLY_DECIDED = "Statically decided";
+
+	/**
+	 * Private constructor, to prevent instantiation.
+	 */
+	private StaticCheck()
+	{
+		super();
+	}
+
+	/**
+	 * Attempts to decide a property without calling NuSMV. Only the formula
+	 * of the property is looked at, so the verdict holds for every model.
+	 * @param property The property
+	 * @return <tt>TRUE</tt> or <tt>FALSE</tt> if the verdict is known, or
+	 * <tt>null</tt> if the model must be checked
+	 */
+	public static Formula decide(/*@ non_null @*/ PropertyProvider property)
+	{
+		Formula f = property.getFormula();
+		if (f == Formula.TRUE || f == Formula.FALSE)
+		{
+			return f;
+		}
+		return null;
+	}
+}
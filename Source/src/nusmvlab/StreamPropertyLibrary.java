@@ -19,19 +19,42 @@ package nusmvlab;
 
 import ca.uqac.lif.nusmv4j.ArrayVariable;
 import ca.uqac.lif.labpal.region.Point;
+import nusmvlab.Formula.Operator;
 
+import static nusmvlab.PropertyProvider.INVARIANT;
+import static nusmvlab.PropertyProvider.OBSERVER;
 import static nusmvlab.PropertyProvider.PROPERTY;
+import static nusmvlab.PropertyProvider.SPEC_FORM;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Library that produces property providers based on the contents of a
  * region.
+ * <p>
+ * When the region asks for the {@link PropertyProvider#INVARIANT} form of a
+ * property, the library looks at the formula written by the provider. If
+ * the formula only states that a propositional condition holds in every
+ * state (<i>G p</i>, <i>AG p</i>, <i>!F p</i>, or a conjunction of such
+ * formulas), it is rewritten as an <tt>INVARSPEC</tt>, which NuSMV checks by
+ * a simple exploration of the reachable states. When it asks for the
+ * {@link PropertyProvider#OBSERVER} form, the formula of an LTL property is
+ * compiled into observer modules by the {@link ObserverCompiler}.
  */
 public class StreamPropertyLibrary implements Library<PropertyProvider>
 {	
+	/**
+	 * The properties created so far for each model, so that the formula of
+	 * a property is only built and printed once per model.
+	 */
+	protected final transient Map<ModelId,Map<String,PropertyProvider>> m_cache;
+	
 	/**
 	 * A library that can be used to fetch models. Some properties are expressed
 	 * differently depending on the actual NuSMV file on which they are applied.
@@ -45,13 +68,71 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 	{
 		super();
 		m_models = models;
+		m_cache = new HashMap<ModelId,Map<String,PropertyProvider>>();
 	}
 	
 	@Override
 	public PropertyProvider get(Point r)
+	{
+		return get(r, m_models.get(r));
+	}
+
+	/**
+	 * Gets the property for a point, expressed on a given model.
+	 * @param r The point
+	 * @param model The model on which the property is evaluated
+	 * @return The property, or <tt>null</tt> if the point does not
+	 * correspond to a valid property
+	 */
+	public PropertyProvider get(Point r, ModelProvider model)
+	{
+		String name = r.getString(PROPERTY);
+		if (name == null || model == null)
+		{
+			return null;
+		}
+		String form = r.getString(SPEC_FORM);
+		String key = name + "/" + form + "/" + getBound(r);
+		ModelId id = new ModelId(r, model.m_domainSize);
+		synchronized (m_cache)
+		{
+			Map<String,PropertyProvider> props = m_cache.get(id);
+			if (props == null)
+			{
+				props = new HashMap<String,PropertyProvider>();
+				m_cache.put(id, props);
+			}
+			if (props.containsKey(key))
+			{
+				return props.get(key);
+			}
+			PropertyProvider prop = getTemporal(r, model);
+			if (prop != null && form != null && form.compareTo(INVARIANT) == 0)
+			{
+				Formula invariant = getInvariant(prop.getFormula());
+				// A property that cannot be expressed as an invariant is not created
+				prop = invariant == null ? null : new InvariantProperty(prop, invariant);
+			}
+			else if (prop != null && form != null && form.compareTo(OBSERVER) == 0)
+			{
+				// Only LTL formulas are compiled into observers
+				prop = prop instanceof LTLPropertyProvider ? ObserverCompiler.compile((LTLPropertyProvider) prop) : null;
+			}
+			props.put(key, prop);
+			return prop;
+		}
+	}
+
+	/**
+	 * Gets the property for a point, written as a temporal formula.
+	 * @param r The point
+	 * @param model The model on which the property is evaluated
+	 * @return The property, or <tt>null</tt> if the point does not
+	 * correspond to a valid property
+	 */
+	protected PropertyProvider getTemporal(Point r, ModelProvider model)
 	{
 		String name = r.getString(PROPERTY);
-		ModelProvider model = m_models.get(r);
 		if (name == null || model == null)
 		{
 			return null;
@@ -67,7 +148,7 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 		if (name.compareTo(BoundedLiveness.NAME) == 0)
 		{
-			return new BoundedLiveness(b_model.getInputPipeIds(), b_model.getOutputPipeIds());
+			return new BoundedLiveness(b_model.getInputPipeIds(), b_model.getOutputPipeIds(), getBound(r));
 		}
 		if (name.compareTo(OutputAlwaysEven.NAME) == 0)
 		{
@@ -88,6 +169,176 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		return null;
 	}
 	
+	/**
+	 * Reads the bound of the "Bounded liveness" property in a point.
+	 * @param r The point
+	 * @return The bound, equal to {@link BoundedLiveness#DEFAULT_BOUND} if
+	 * the point does not specify it
+	 */
+	protected static int getBound(Point r)
+	{
+		Object o = r.get(BoundedLiveness.BOUND);
+		if (o instanceof Number)
+		{
+			return ((Number) o).intValue();
+		}
+		return BoundedLiveness.DEFAULT_BOUND;
+	}
+	
+	/**
+	 * Gets the invariant equivalent to an LTL or CTL formula. The formula
+	 * is recognized as an invariant if it is a conjunction of formulas of
+	 * the form <i>G p</i>, <i>AG p</i>, <i>!F p</i> or <i>!EF p</i>, where
+	 * <i>p</i> contains no temporal operator.
+	 * @param formula The formula
+	 * @return The propositional condition that must hold in every state, or
+	 * <tt>null</tt> if the formula is not an invariant
+	 */
+	public static Formula getInvariant(/*@ non_null @*/ Formula formula)
+	{
+		List<Formula> conditions = new ArrayList<Formula>();
+		for (Formula c : formula.getConjuncts())
+		{
+			Formula p = null;
+			if (c == Formula.TRUE)
+			{
+				p = c;
+			}
+			else if (c.getOperator() == Operator.G || c.getOperator() == Operator.AG)
+			{
+				p = c.getOperand();
+			}
+			else if (c.getOperator() == Operator.NOT)
+			{
+				Formula n = c.getOperand();
+				if (n.getOperator() == Operator.F || n.getOperator() == Operator.EF)
+				{
+					p = Formula.not(n.getOperand());
+				}
+			}
+			if (p == null || p.isTemporal())
+			{
+				return null;
+			}
+			conditions.add(p);
+		}
+		return Formula.and(conditions);
+	}
+	
+	/**
+	 * Splits the formula of a property into conjuncts that can be checked
+	 * separately. The formula is true if and only if all its conjuncts are
+	 * true.
+	 * @param prop The property provider
+	 * @return The list of conjuncts, which contains only the formula itself
+	 * if it cannot be decomposed
+	 */
+	/*@ non_null @*/ public static List<Formula> getConjuncts(/*@ non_null @*/ PropertyProvider prop)
+	{
+		List<Formula> conjuncts = new ArrayList<Formula>();
+		addConjuncts(prop.getFormula(), conjuncts);
+		return conjuncts;
+	}
+	
+	/**
+	 * Adds the conjuncts of a formula to a list. Since <i>G</i> and
+	 * <i>AG</i> distribute over conjunction, <i>G (p &amp; q)</i> is split
+	 * into <i>G p</i> and <i>G q</i>.
+	 * @param f The formula
+	 * @param conjuncts The list to which the conjuncts are added
+	 */
+	protected static void addConjuncts(Formula f, List<Formula> conjuncts)
+	{
+		if (f.getOperator() == Operator.AND)
+		{
+			for (Formula c : f.getOperands())
+			{
+				addConjuncts(c, conjuncts);
+			}
+			return;
+		}
+		if ((f.getOperator() == Operator.G || f.getOperator() == Operator.AG) && f.getOperand().getOperator() == Operator.AND)
+		{
+			for (Formula c : f.getOperand().getOperands())
+			{
+				addConjuncts(Formula.temporal(f.getOperator(), c), conjuncts);
+			}
+			return;
+		}
+		conjuncts.add(f);
+	}
+	
+	/**
+	 * Gets the formula stating that an event is present on all the inputs
+	 * of a processor chain.
+	 * @param input_pipe_ids The set of IDs corresponding to the inputs of
+	 * the processor chain
+	 * @return The formula
+	 */
+	/*@ non_null @*/ protected static Formula getInputsPresent(Set<Integer> input_pipe_ids)
+	{
+		List<Formula> present = new ArrayList<Formula>();
+		for (int id : input_pipe_ids)
+		{
+			present.add(Formula.atom("inb_" + id + "[0]"));
+		}
+		return Formula.and(present);
+	}
+	
+	/**
+	 * A property written as an invariant instead of the temporal formula of
+	 * the provider it replaces.
+	 */
+	protected static class InvariantProperty implements PropertyProvider
+	{
+		/**
+		 * The provider of the temporal formula.
+		 */
+		protected final PropertyProvider m_property;
+		
+		/**
+		 * The condition that must hold in every reachable state.
+		 */
+		protected final Formula m_invariant;
+		
+		/**
+		 * Creates a new invariant property.
+		 * @param property The provider of the temporal formula
+		 * @param invariant The condition that must hold in every reachable
+		 * state
+		 */
+		public InvariantProperty(/*@ non_null @*/ PropertyProvider property, /*@ non_null @*/ Formula invariant)
+		{
+			super();
+			m_property = property;
+			m_invariant = invariant;
+		}
+		
+		@Override
+		public void printToFile(PrintStream ps)
+		{
+			ps.println(m_invariant + ";");
+		}
+		
+		@Override
+		public void fillExperiment(NuSMVExperiment e)
+		{
+			m_property.fillExperiment(e);
+		}
+		
+		@Override
+		public Logic getLogic()
+		{
+			return Logic.INVAR;
+		}
+		
+		@Override
+		public Formula getFormula()
+		{
+			return m_invariant;
+		}
+	}
+	
 	/**
 	 * Stipulates that a state variable x, when it reaches 0, remains at 0
 	 * forever.
@@ -108,9 +359,10 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			ps.println("AG (x = 0 -> AG (x = 0));");
+			Formula x_null = Formula.atom("x = 0");
+			return Formula.temporal(Operator.AG, Formula.implies(x_null, Formula.temporal(Operator.AG, x_null)));
 		}
 	}
 	
@@ -149,35 +401,21 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			int i = 0;
+			Formula inputs = getInputsPresent(m_inputPipeIds);
+			List<Formula> conjuncts = new ArrayList<Formula>();
 			for (int id : m_outputPipeIds)
 			{
-				if (i > 0)
-				{
-					ps.print(" & ");
-				}
-				int j = 0;
-				ps.print("G ((");
-				for (int in_id : m_inputPipeIds)
-				{
-					if (j > 0)
-					{
-						ps.print(" & ");
-					}
-					ps.print("inb_" + in_id + "[0]");
-					j++;
-				}
-				ps.print(") -> (F ob_" + id + "[0]))");
-				i++;
+				conjuncts.add(Formula.globally(Formula.implies(inputs, Formula.eventually(Formula.atom("ob_" + id + "[0]")))));
 			}
-			ps.println(";");
+			return Formula.and(conjuncts);
 		}
 	}
 	
 	/**
-	 * Stipulates that a processor chain can always output one more event.
+	 * Stipulates that a processor chain always outputs one more event at
+	 * most <i>n</i> steps after it receives an event on all its inputs.
 	 */
 	protected static class BoundedLiveness extends LTLPropertyProvider
 	{
@@ -186,6 +424,16 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		 */
 		public static final transient String NAME = "Bounded liveness";
 		
+		/**
+		 * The name of parameter "Bound"
+		 */
+		public static final transient String BOUND = "Bound";
+		
+		/**
+		 * The bound used when a point does not specify one
+		 */
+		public static final transient int DEFAULT_BOUND = 2;
+		
 		/**
 		 * The set of IDs corresponding to the outputs of the processor chain.
 		 */
@@ -196,43 +444,52 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		 */
 		protected final Set<Integer> m_outputPipeIds;
 		
+		/**
+		 * The maximum number of steps between the input events and the
+		 * output event.
+		 */
+		protected final int m_bound;
+		
 		/**
 		 * Creates a new instance of the property.
 		 * @param output_pipe_ids The set of IDs corresponding to the outputs of
 		 * the processor chain
+		 * @param bound The maximum number of steps between the input events
+		 * and the output event
 		 */
-		public BoundedLiveness(Set<Integer> input_pipe_ids, Set<Integer> output_pipe_ids)
+		public BoundedLiveness(Set<Integer> input_pipe_ids, Set<Integer> output_pipe_ids, int bound)
 		{
 			super(NAME);
 			m_inputPipeIds = input_pipe_ids;
 			m_outputPipeIds = output_pipe_ids;
+			m_bound = bound;
+		}
+		
+		@Override
+		public void fillExperiment(NuSMVExperiment e)
+		{
+			super.fillExperiment(e);
+			e.describe(BOUND, "The maximum number of steps between an input event and the next output event");
+			e.writeInput(BOUND, m_bound);
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			int i = 0;
+			Formula inputs = getInputsPresent(m_inputPipeIds);
+			List<Formula> conjuncts = new ArrayList<Formula>();
 			for (int id : m_outputPipeIds)
 			{
-				if (i > 0)
-				{
-					ps.print(" & ");
-				}
-				int j = 0;
-				ps.print("G ((");
-				for (int in_id : m_inputPipeIds)
+				// ob | X (ob | X ( ... ob)), with m_bound nested X
+				Formula ob = Formula.atom("ob_" + id + "[0]");
+				Formula within = ob;
+				for (int i = 0; i < m_bound; i++)
 				{
-					if (j > 0)
-					{
-						ps.print(" & ");
-					}
-					ps.print("inb_" + in_id + "[0]");
-					j++;
+					within = Formula.or(ob, Formula.next(within));
 				}
-				ps.print(") -> (ob_" + id + "[0] |  X (ob_" + id + "[0] | X (ob_" + id + "[0]))))");
-				i++;
+				conjuncts.add(Formula.globally(Formula.implies(inputs, within)));
 			}
-			ps.println(";");
+			return Formula.and(conjuncts);
 		}
 	}
 	
@@ -263,19 +520,14 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			int i = 0;
+			List<Formula> conjuncts = new ArrayList<Formula>();
 			for (int id : m_pipeIds)
 			{
-				if (i > 0)
-				{
-					ps.print(" & ");
-				}
-				ps.print("(AG (ob_" + id + "[0] -> (oc_" + id + "[0] mod 2) = 0)))");
-				i++;
+				conjuncts.add(Formula.temporal(Operator.AG, Formula.implies(Formula.atom("ob_" + id + "[0]"), Formula.atom("(oc_" + id + "[0] mod 2) = 0"))));
 			}
-			ps.println(";");
+			return Formula.and(conjuncts);
 		}
 	}
 	
@@ -307,16 +559,10 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			if (m_pipeIds.size() < 2)
-			{
-				// You need at least two outputs to state that they are equal
-				ps.print("TRUE;");
-				return;
-			}
-			ps.print("G (");
-			int i = 0;
+			// With fewer than two outputs, the conjunction is empty and the formula is TRUE
+			List<Formula> conjuncts = new ArrayList<Formula>();
 			for (int id1 : m_pipeIds)
 			{
 				for (int id2 : m_pipeIds)
@@ -325,16 +571,11 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 					{
 						continue;
 					}
-					if (i > 0)
-					{
-						ps.print(" & ");
-					}
-					ps.print("(ob_" + id1 + "[0] = ob_" + id2 + "[0] & (ob_" + id1 + "[0] -> (oc_" + id1 + "[0] = oc_" + id2 + "[0])))");
-					i++;
+					conjuncts.add(Formula.atom("ob_" + id1 + "[0] = ob_" + id2 + "[0]"));
+					conjuncts.add(Formula.implies(Formula.atom("ob_" + id1 + "[0]"), Formula.atom("oc_" + id1 + "[0] = oc_" + id2 + "[0]")));
 				}
-				i++;
 			}
-			ps.println(");");
+			return Formula.globally(Formula.and(conjuncts));
 		}
 	}
 	
@@ -366,19 +607,14 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			int i = 0;
+			List<Formula> conjuncts = new ArrayList<Formula>();
 			for (int id : m_pipeIds)
 			{
-				if (i > 0)
-				{
-					ps.print(" & ");
-				}
-				ps.print("(G (ob_" + id + "[0] -> oc_" + id + "[0]))");
-				i++;
+				conjuncts.add(Formula.globally(Formula.implies(Formula.atom("ob_" + id + "[0]"), Formula.atom("oc_" + id + "[0]"))));
 			}
-			ps.println(";");
+			return Formula.and(conjuncts);
 		}
 	}
 	
@@ -429,23 +665,15 @@ public class StreamPropertyLibrary implements Library<PropertyProvider>
 		}
 
 		@Override
-		public void printToFile(PrintStream ps)
+		protected Formula createFormula()
 		{
-			if (m_queueVars.length == 0)
+			// Without queues, the disjunction is empty and the formula is TRUE
+			List<Formula> full = new ArrayList<Formula>();
+			for (ArrayVariable v : m_queueVars)
 			{
-				ps.print("TRUE;");
-				return;
-			}
-			ps.print("! (F (");
-			for (int i = 0; i < m_queueVars.length; i++)
-			{
-				if (i > 0)
-				{
-					ps.print(" | ");
-				}
-				ps.print(m_queueVars[i].getName() + "[" + (m_queueVars[i].getDimension() - 1) + "]");
+				full.add(Formula.atom(v.getName() + "[" + (v.getDimension() - 1) + "]"));
 			}
-			ps.println("));");
+			return Formula.not(Formula.eventually(Formula.or(full)));
 		}
 	}
 }
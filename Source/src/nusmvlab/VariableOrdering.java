@@ -0,0 +1,240 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import ca.uqac.lif.cep.nusmv.ProcessorModule;
+import ca.uqac.lif.nusmv4j.ArrayVariable;
+import ca.uqac.lif.nusmv4j.Module;
+import ca.uqac.lif.nusmv4j.ModuleDomain;
+import ca.uqac.lif.nusmv4j.Variable;
+
+/**
+ * Produces a static ordering of the variables of a model for NuSMV's BDD
+ * engine, based on the structure of the processor pipeline the model comes
+ * from. Processors are visited along the connections of the pipeline, so
+ * that the variables of a processor come right after those of the
+ * processors that feed it. Within a processor, the queue arrays come first,
+ * and the arrays are interleaved slot by slot, so that the value and the
+ * flag of each queue slot end up next to each other.
+ * <p>
+ * The resulting list of variables is meant to be written to a file passed
+ * to NuSMV with the <tt>-i</tt> option. Variables that do not belong to any
+ * processor, such as the inputs and outputs of the pipeline, are not
+ * listed; NuSMV places them after the variables of the file.
+ */
+public class VariableOrdering
+{
+	/**
+	 * The name of parameter "Variable ordering".
+	 */
+	public static final transient String ORDERING = "Variable ordering";
+
+	/**
+	 * The ordering chosen by NuSMV itself.
+	 */
+	public static final transient String DEFAULT = "Default";
+
+	/**
+	 * Processors are visited from the inputs of the pipeline to its outputs.
+	 */
+	public static final transient String TOPOLOGICAL = "Topological";
+
+	/**
+	 * Processors are visited from the outputs of the pipeline to its inputs.
+	 */
+	public static final transient String REVERSE = "Reverse";
+
+	/**
+	 * NuSMV starts from its own ordering and improves it by dynamic
+	 * reordering.
+	 */
+	public static final transient String DYNAMIC = "Dynamic";
+
+	/**
+	 * NuSMV starts from the ordering learned on a smaller configuration of
+	 * the same query, if any, and improves it by dynamic reordering.
+	 */
+	public static final transient String TRANSFER = "Transfer";
+
+	/**
+	 * A comparator that sorts variables by name, so that the ordering does
+	 * not depend on the iteration order of sets.
+	 */
+	protected static final transient Comparator<Variable> s_byName = Comparator.comparing(Variable::getName);
+
+	/**
+	 * Private constructor, to prevent instantiation.
+	 */
+	private VariableOrdering()
+	{
+		super();
+	}
+
+	/**
+	 * Determines if an ordering is computed from the structure of the
+	 * pipeline alone.
+	 * @param ordering The name of the ordering
+	 * @return <tt>true</tt> if the ordering is static, <tt>false</tt>
+	 * otherwise
+	 */
+	public static boolean isStatic(/*@ non_null @*/ String ordering)
+	{
+		return ordering.compareTo(TOPOLOGICAL) == 0 || ordering.compareTo(REVERSE) == 0;
+	}
+
+	/**
+	 * Determines if an ordering is improved by NuSMV's dynamic reordering
+	 * while the model is being built and checked.
+	 * @param ordering The name of the ordering
+	 * @return <tt>true</tt> if the ordering is dynamic, <tt>false</tt>
+	 * otherwise
+	 */
+	public static boolean isDynamic(/*@ non_null @*/ String ordering)
+	{
+		return ordering.compareTo(DYNAMIC) == 0 || ordering.compareTo(TRANSFER) == 0;
+	}
+
+	/**
+	 * Computes the ordering of the variables of a model.
+	 * @param modules The modules of the model
+	 * @param graph The graph of the pipeline the model comes from
+	 * @param ordering The name of the ordering to compute
+	 * @return The fully qualified names of the variables, in order, or
+	 * <tt>null</tt> if the ordering is not static
+	 */
+	public static List<String> getOrder(/*@ non_null @*/ Set<Module> modules, /*@ non_null @*/ PipelineGraph graph, /*@ non_null @*/ String ordering)
+	{
+		if (!isStatic(ordering))
+		{
+			return null;
+		}
+		List<ProcessorModule> processors = graph.getTopologicalOrder();
+		if (ordering.compareTo(REVERSE) == 0)
+		{
+			Collections.reverse(processors);
+		}
+		Map<Module,String> paths = new IdentityHashMap<Module,String>();
+		for (ProcessorModule p : processors)
+		{
+			paths.put(p, null);
+		}
+		for (Module m : modules)
+		{
+			if (m.getName().compareTo("main") == 0)
+			{
+				findInstances(m, "", paths);
+			}
+		}
+		List<String> order = new ArrayList<String>();
+		for (ProcessorModule p : processors)
+		{
+			String path = paths.get(p);
+			if (path != null)
+			{
+				listVariables(p, path + ".", order);
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Finds the name under which each processor of the pipeline is
+	 * instantiated in a hierarchy of modules.
+	 * @param m The current module to examine
+	 * @param prefix The prefix of the instances in the current module
+	 * @param paths A map whose keys are the processors to find; the values
+	 * are filled with the names of their instances
+	 */
+	protected static void findInstances(Module m, String prefix, Map<Module,String> paths)
+	{
+		for (Map.Entry<String,ModuleDomain> e : new TreeMap<String,ModuleDomain>(m.getSubModules()).entrySet())
+		{
+			Module sub = e.getValue().getModule();
+			String path = prefix + e.getKey();
+			if (paths.containsKey(sub))
+			{
+				if (paths.get(sub) == null)
+				{
+					paths.put(sub, path);
+				}
+			}
+			else
+			{
+				findInstances(sub, path + ".", paths);
+			}
+		}
+	}
+
+	/**
+	 * Lists the variables of a module instance and of its sub-modules.
+	 * @param m The module
+	 * @param prefix The prefix of the variables of the module
+	 * @param order The list to which the variables are added
+	 */
+	protected static void listVariables(Module m, String prefix, List<String> order)
+	{
+		List<ArrayVariable> arrays = new ArrayList<ArrayVariable>();
+		List<Variable> scalars = new ArrayList<Variable>();
+		for (Variable v : m.getVariables())
+		{
+			if (v instanceof ArrayVariable)
+			{
+				arrays.add((ArrayVariable) v);
+			}
+			else
+			{
+				scalars.add(v);
+			}
+		}
+		// Queue arrays first, then the other arrays
+		arrays.sort(Comparator.comparing((ArrayVariable v) -> !v.getName().startsWith("bfb_")).thenComparing(s_byName));
+		scalars.sort(s_byName);
+		int max_dim = 0;
+		for (ArrayVariable v : arrays)
+		{
+			max_dim = Math.max(max_dim, v.getDimension());
+		}
+		for (int i = 0; i < max_dim; i++)
+		{
+			for (ArrayVariable v : arrays)
+			{
+				if (i < v.getDimension())
+				{
+					order.add(prefix + v.getName() + "[" + i + "]");
+				}
+			}
+		}
+		for (Variable v : scalars)
+		{
+			order.add(prefix + v.getName());
+		}
+		for (Map.Entry<String,ModuleDomain> e : new TreeMap<String,ModuleDomain>(m.getSubModules()).entrySet())
+		{
+			listVariables(e.getValue().getModule(), prefix + e.getKey() + ".", order);
+		}
+	}
+}
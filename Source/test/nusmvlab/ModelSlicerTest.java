@@ -0,0 +1,250 @@
+/*
+  A benchmark for NuSMV extensions to BeepBeep 3
+  Copyright (C) 2021-2022 Alexis Bédard and Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package nusmvlab;
+
+import static ca.uqac.lif.labpal.region.ExtensionDomain.extension;
+import static ca.uqac.lif.labpal.region.ProductRegion.product;
+import static nusmvlab.ModelProvider.DOMAIN_SIZE;
+import static nusmvlab.ModelProvider.QUERY;
+import static nusmvlab.ModelProvider.QUEUE_SIZE;
+import static nusmvlab.PropertyProvider.PROPERTY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import ca.uqac.lif.labpal.region.Point;
+import ca.uqac.lif.labpal.region.Region;
+import nusmvlab.PropertyProvider.Logic;
+import nusmvlab.StreamPropertyLibrary.Liveness;
+import nusmvlab.StreamPropertyLibrary.NoFullQueues;
+import nusmvlab.StreamPropertyLibrary.OutputAlwaysEven;
+
+/**
+ * Unit tests for {@link ModelSlicer}. The models of the pipelines that come
+ * with the lab are sliced with respect to the properties of the lab, and the
+ * verdicts given by NuSMV on the sliced models are compared with those it
+ * gives on the complete models. These comparisons are skipped if NuSMV
+ * cannot be found.
+ */
+public class ModelSlicerTest
+{
+	/**
+	 * The pattern of the lines giving the verdict of a specification in the
+	 * output of NuSMV.
+	 */
+	protected static final Pattern s_verdictPattern = Pattern.compile("^-- (specification|invariant) .* is (true|false)");
+
+	/**
+	 * Checks that slicing never adds variables, and that it removes some when
+	 * the property only depends on the queue flags of a chain whose flags do
+	 * not depend on data values. In such a case, the variables holding the
+	 * values are outside the cone of influence of the property.
+	 */
+	@Test
+	public void testVariablesRemoved() throws IOException
+	{
+		NuSMVModelLibrary models = new NuSMVModelLibrary();
+		StreamPropertyLibrary properties = new StreamPropertyLibrary(models);
+		int checked = 0, shrunk = 0;
+		for (Point p : getPoints())
+		{
+			ModelProvider model = models.get(p);
+			PropertyProvider property = properties.get(p, model);
+			if (model == null || property == null)
+			{
+				continue;
+			}
+			ModelSlicer slicer = new ModelSlicer(toString(model));
+			String sliced = slicer.slice(getSpec(property));
+			assertTrue(sliced.contains("MODULE main"), p.toString());
+			assertTrue(slicer.getVariablesAfter() <= slicer.getVariablesBefore(), p.toString());
+			if (p.getString(PROPERTY).compareTo(NoFullQueues.NAME) == 0
+					&& DataIndependence.isDataIndependent(models.getGraph(new ModelId(p), NuSMVModelLibrary.getParameter(p).x)))
+			{
+				assertTrue(slicer.getVariablesAfter() < slicer.getVariablesBefore(), p.toString());
+				shrunk++;
+			}
+			checked++;
+		}
+		assertTrue(checked > 0);
+		assertTrue(shrunk > 0);
+	}
+
+	/**
+	 * Checks that NuSMV gives the same verdicts on the sliced models as on
+	 * the complete models.
+	 */
+	@Test
+	public void testSameVerdicts() throws IOException, InterruptedException
+	{
+		assumeTrue(isNuSMVAvailable(), "NuSMV cannot be found");
+		NuSMVModelLibrary models = new NuSMVModelLibrary();
+		StreamPropertyLibrary properties = new StreamPropertyLibrary(models);
+		int checked = 0;
+		for (Point p : getPoints())
+		{
+			ModelProvider model = models.get(p);
+			PropertyProvider property = properties.get(p, model);
+			if (model == null || property == null)
+			{
+				continue;
+			}
+			String text = toString(model);
+			String spec = getSpec(property);
+			String sliced = new ModelSlicer(text).slice(spec);
+			List<String> expected = getVerdicts(text, spec);
+			assertFalse(expected.isEmpty(), p.toString());
+			assertEquals(expected, getVerdicts(sliced, spec), p.toString());
+			checked++;
+		}
+		assertTrue(checked > 0);
+	}
+
+	/**
+	 * Gets the points for which the slicer is tested: the pipelines that come
+	 * with the lab, with small queues and domains so that NuSMV can check
+	 * them quickly.
+	 * @return The points
+	 */
+	protected static List<Point> getPoints()
+	{
+		List<Point> points = new ArrayList<Point>();
+		Region r = product(
+				extension(QUERY, (Object[]) NuSMVModelLibrary.getQueryNames()),
+				extension(PROPERTY, NoFullQueues.NAME, Liveness.NAME, OutputAlwaysEven.NAME),
+				extension(QUEUE_SIZE, 1, 2),
+				extension(DOMAIN_SIZE, 2));
+		for (Region p_r : r.all(QUERY, PROPERTY, QUEUE_SIZE, DOMAIN_SIZE))
+		{
+			points.add(p_r.asPoint());
+		}
+		return points;
+	}
+
+	/**
+	 * Checks a model with NuSMV, using its default (BDD) engine.
+	 * @param model The text of the model, without specifications
+	 * @param spec The text of the specifications
+	 * @return The verdicts of the specifications, in the order NuSMV gives
+	 * them
+	 */
+	protected static List<String> getVerdicts(String model, String spec) throws IOException, InterruptedException
+	{
+		File f = File.createTempFile("slicer-", ".smv");
+		try
+		{
+			Files.write(f.toPath(), (model + "\n" + spec).getBytes(StandardCharsets.UTF_8));
+			ProcessBuilder pb = new ProcessBuilder(NuSMVExperiment.NUSMV_PATH, f.getAbsolutePath());
+			pb.redirectErrorStream(true);
+			Process p = pb.start();
+			List<String> verdicts = new ArrayList<String>();
+			try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = br.readLine()) != null)
+				{
+					Matcher mat = s_verdictPattern.matcher(line);
+					if (mat.find())
+					{
+						verdicts.add(mat.group(2));
+					}
+				}
+			}
+			p.waitFor();
+			return verdicts;
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+
+	/**
+	 * Gets the specification section for a property, as written by
+	 * {@link NuSMVExperiment#printSpec(PrintStream)}.
+	 * @param property The property
+	 * @return The text of the section
+	 */
+	protected static String getSpec(PropertyProvider property) throws IOException
+	{
+		String keyword = "LTLSPEC";
+		if (property.getLogic() == Logic.CTL)
+		{
+			keyword = "CTLSPEC";
+		}
+		else if (property.getLogic() == Logic.INVAR)
+		{
+			keyword = "INVARSPEC";
+		}
+		return keyword + "\n" + toString(property);
+	}
+
+	/**
+	 * Gets the text written by a provider.
+	 * @param provider The provider
+	 * @return The text
+	 */
+	protected static String toString(NuSMVProvider provider) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos, true, "UTF-8");
+		provider.printToFile(ps);
+		ps.close();
+		return baos.toString("UTF-8");
+	}
+
+	/**
+	 * Determines if NuSMV can be started.
+	 * @return <tt>true</tt> if NuSMV can be started, <tt>false</tt> otherwise
+	 */
+	protected static boolean isNuSMVAvailable()
+	{
+		try
+		{
+			Process p = new ProcessBuilder(NuSMVExperiment.NUSMV_PATH, "-h").redirectErrorStream(true).start();
+			p.getInputStream().readAllBytes();
+			p.waitFor();
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+}